@@ -19,27 +19,49 @@
 package ai.rapids.cudf;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Column builder from Arrow data. This builder takes in byte buffers referencing
  * Arrow data and allows efficient building of CUDF ColumnVectors from that Arrow data.
  * The caller can add multiple batches where each batch corresponds to Arrow data
- * and those batches get concatenated together after being converted to CUDF
- * ColumnVectors.
- * This currently only supports primitive types and Strings, Decimals and nested types
- * such as list and struct are not supported.
+ * and those batches get merged together on the host into a single column, which is then
+ * copied to the device at once.
+ * <p/>
+ * Primitive types, Strings, Decimals, lists and structs are supported. For lists and structs
+ * the data of the children is added to the builders returned by {@link #getChild(int)}, one
+ * batch for each batch added to the parent.
  */
 public final class ArrowColumnBuilder implements AutoCloseable {
+    /** Arrow decimals are always 128-bit */
+    private static final int ARROW_DECIMAL_SIZE = 16;
+
     private DType type;
     private final ArrayList<ByteBuffer> data = new ArrayList<>();
     private final ArrayList<ByteBuffer> validity = new ArrayList<>();
     private final ArrayList<ByteBuffer> offsets = new ArrayList<>();
     private final ArrayList<Long> nullCount = new ArrayList<>();
     private final ArrayList<Long> rows = new ArrayList<>();
+    private final ArrayList<ArrowColumnBuilder> children = new ArrayList<>();
 
     public ArrowColumnBuilder(HostColumnVector.DataType type) {
       this.type = type.getType();
+      for (int i = 0; i < type.getNumChildren(); i++) {
+        children.add(new ArrowColumnBuilder(type.getChild(i)));
+      }
+    }
+
+    /**
+     * Get the builder for a child of a list or struct column. The Arrow data of the child
+     * vector needs to be added to it for each batch added to this builder.
+     * @param index the index of the child, always 0 for a list.
+     * @return the builder for that child.
+     */
+    public ArrowColumnBuilder getChild(int index) {
+      return children.get(index);
     }
 
     /**
@@ -48,8 +70,12 @@ public final class ArrowColumnBuilder implements AutoCloseable {
      * Note, this takes all data, validity, and offsets buffers, but they may not all
      * be needed based on the data type. The buffer should be null if its not used
      * for that type.
-     * This API only supports primitive types and Strings, Decimals and nested types
-     * such as list and struct are not supported.
+     * For a list or struct only the validity, and offsets for a list, are used. The data of
+     * the children is added to the child builders. The offsets of a list batch do not need to
+     * start at 0, as they do not for a sliced Arrow list. Only the child rows that they
+     * reference are copied.
+     * Decimal values are the 128-bit unscaled values from Arrow, and are expected to already be
+     * at the scale of the DType. A value that does not fit in the DType is an error when building.
      * @param rows - number of rows in this Arrow buffer
      * @param nullCount - number of null values in this Arrow buffer
      * @param data - ByteBuffer of the Arrow data buffer
@@ -70,28 +96,422 @@ public final class ArrowColumnBuilder implements AutoCloseable {
      * @return - new ColumnVector
      */
     public final ColumnVector buildAndPutOnDevice() {
+      try (HostColumnVector host = buildOnHost()) {
+        return host.copyToDevice();
+      }
+    }
+
+    /**
+     * Merge all of the Arrow batches into a single column on the host. The data is copied
+     * contiguously, with offsets rebased and validity bits shifted into place for each batch.
+     * @return - new HostColumnVector
+     */
+    public final HostColumnVector buildOnHost() {
+      if (rows.isEmpty()) {
+        throw new IllegalStateException("Can't build a ColumnVector when no Arrow batches specified");
+      }
       int numBatches = rows.size();
-      ArrayList<ColumnVector> allVecs = new ArrayList<>(numBatches);
-      ColumnVector vecRet;
+      long[] firstRows = new long[numBatches];
+      long[] numRows = new long[numBatches];
+      for (int i = 0; i < numBatches; i++) {
+        numRows[i] = rows.get(i);
+      }
+      return (HostColumnVector) build(true, firstRows, numRows);
+    }
+
+    /**
+     * Build the column from rows firstRows[i] to firstRows[i] + numRows[i] of each batch. The
+     * top level takes every row. A list only takes the child rows that its offsets reference,
+     * so sliced Arrow lists are rebased instead of copying values that no list holds.
+     */
+    private HostColumnVectorCore build(boolean isTopLevel, long[] firstRows, long[] numRows) {
+      int numBatches = rows.size();
+      for (ArrowColumnBuilder child : children) {
+        if (child.rows.size() != numBatches) {
+          throw new IllegalArgumentException("Expected " + numBatches + " batches for a child of " +
+            type + " but found " + child.rows.size());
+        }
+      }
+      long totalRows = 0;
+      long totalNulls = 0;
+      for (int i = 0; i < numBatches; i++) {
+        if (firstRows[i] + numRows[i] > rows.get(i)) {
+          throw new IllegalArgumentException("Rows " + firstRows[i] + " to " +
+            (firstRows[i] + numRows[i]) + " of batch " + i + " are needed but it has " +
+            rows.get(i));
+        }
+        totalRows += numRows[i];
+        totalNulls += countNulls(i, firstRows[i], numRows[i]);
+      }
+      if (totalRows > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Total number of rows " + totalRows +
+          " is larger than is supported for a single column");
+      }
+
+      HostMemoryBuffer dataBuffer = null;
+      HostMemoryBuffer validBuffer = null;
+      HostMemoryBuffer offsetsBuffer = null;
+      List<HostColumnVectorCore> childColumns = new ArrayList<>();
       try {
-        for (int i = 0; i < numBatches; i++) {
-          allVecs.add(ColumnVector.fromArrow(type, rows.get(i), nullCount.get(i),
-            data.get(i), validity.get(i), offsets.get(i)));
-        }
-        if (numBatches == 1) {
-          vecRet = allVecs.get(0);
-        } else if (numBatches > 1) {
-          vecRet = ColumnVector.concatenate(allVecs.toArray(new ColumnVector[0]));
+        if (totalNulls > 0) {
+          validBuffer = buildValidity(totalRows, firstRows, numRows);
+        }
+        switch (type.getTypeId()) {
+          case STRING:
+            offsetsBuffer = HostMemoryBuffer.allocate((totalRows + 1) * HostColumnVector.OFFSET_SIZE);
+            dataBuffer = buildStrings(offsetsBuffer, firstRows, numRows);
+            break;
+          case LIST: {
+            offsetsBuffer = HostMemoryBuffer.allocate((totalRows + 1) * HostColumnVector.OFFSET_SIZE);
+            long[] childFirstRows = new long[numBatches];
+            long[] childNumRows = new long[numBatches];
+            buildListOffsets(offsetsBuffer, firstRows, numRows, childFirstRows, childNumRows);
+            childColumns.add(children.get(0).build(false, childFirstRows, childNumRows));
+            break;
+          }
+          case STRUCT:
+            for (ArrowColumnBuilder child : children) {
+              for (int i = 0; i < numBatches; i++) {
+                if (!child.rows.get(i).equals(rows.get(i))) {
+                  throw new IllegalArgumentException("Struct child has " + child.rows.get(i) +
+                    " rows in batch " + i + " but the struct has " + rows.get(i));
+                }
+              }
+              childColumns.add(child.build(false, firstRows, numRows));
+            }
+            break;
+          case BOOL8:
+            dataBuffer = buildBools(totalRows, firstRows, numRows);
+            break;
+          case DECIMAL32:
+          case DECIMAL64:
+            dataBuffer = buildDecimals(totalRows, firstRows, numRows);
+            break;
+          default:
+            dataBuffer = buildFixedWidth(totalRows, firstRows, numRows);
+        }
+
+        HostColumnVectorCore ret;
+        if (isTopLevel) {
+          ret = new HostColumnVector(type, totalRows, Optional.of(totalNulls), dataBuffer,
+            validBuffer, offsetsBuffer, childColumns);
         } else {
-          throw new IllegalStateException("Can't build a ColumnVector when no Arrow batches specified");
+          ret = new HostColumnVectorCore(type, totalRows, Optional.of(totalNulls), dataBuffer,
+            validBuffer, offsetsBuffer, childColumns);
         }
+        dataBuffer = null;
+        validBuffer = null;
+        offsetsBuffer = null;
+        childColumns = null;
+        return ret;
       } finally {
-        // close the vectors that were concatenated
-        if (numBatches > 1) {
-          allVecs.forEach(cv -> cv.close());
+        if (dataBuffer != null) {
+          dataBuffer.close();
         }
+        if (validBuffer != null) {
+          validBuffer.close();
+        }
+        if (offsetsBuffer != null) {
+          offsetsBuffer.close();
+        }
+        if (childColumns != null) {
+          childColumns.forEach(HostColumnVectorCore::close);
+        }
+      }
+    }
+
+    /**
+     * The null count of a range of rows in a batch. Only a range that is not the whole batch
+     * needs its validity bits counted.
+     */
+    private long countNulls(int batch, long firstRow, long numRows) {
+      long batchNulls = nullCount.get(batch);
+      if (batchNulls == 0 || numRows == 0) {
+        return 0;
+      }
+      if (firstRow == 0 && numRows == rows.get(batch)) {
+        return batchNulls;
+      }
+      ByteBuffer valid = checkValidity(batch, firstRow, numRows);
+      long nulls = 0;
+      for (long r = firstRow; r < firstRow + numRows; r++) {
+        if (((valid.get((int) (r >> 3)) >> (r & 7)) & 1) == 0) {
+          nulls++;
+        }
+      }
+      return nulls;
+    }
+
+    private HostMemoryBuffer buildValidity(long totalRows, long[] firstRows, long[] numRows) {
+      long maxRows = 0;
+      for (long r : numRows) {
+        maxRows = Math.max(maxRows, r);
+      }
+      long length = BitVectorHelper.getValidityAllocationSizeInBytes(totalRows);
+      HostMemoryBuffer valid = HostMemoryBuffer.allocate(length);
+      boolean success = false;
+      // A range can start part way into a byte, so leave room for up to 7 more bits
+      try (HostMemoryBuffer batchValid = HostMemoryBuffer.allocate(
+             BitVectorHelper.getValidityAllocationSizeInBytes(maxRows + 7))) {
+        valid.setMemory(0, length, (byte) 0);
+        long rowOffset = 0;
+        for (int i = 0; i < rows.size(); i++) {
+          long firstRow = firstRows[i];
+          long count = numRows[i];
+          if (nullCount.get(i) > 0 && count > 0) {
+            ByteBuffer src = checkValidity(i, firstRow, count);
+            int firstByte = (int) (firstRow >> 3);
+            int endByte = (int) ((firstRow + count + 7) >> 3);
+            copyBytes(batchValid, 0, src, firstByte, endByte - firstByte);
+            BitVectorHelper.copyBits(batchValid, firstRow & 7, valid, rowOffset, count);
+          } else {
+            BitVectorHelper.setValidRange(valid, rowOffset, count);
+          }
+          rowOffset += count;
+        }
+        success = true;
+        return valid;
+      } finally {
+        if (!success) {
+          valid.close();
+        }
+      }
+    }
+
+    private HostMemoryBuffer buildFixedWidth(long totalRows, long[] firstRows, long[] numRows) {
+      int size = type.getSizeInBytes();
+      HostMemoryBuffer ret = HostMemoryBuffer.allocate(totalRows * size);
+      boolean success = false;
+      try {
+        long dataOffset = 0;
+        for (int i = 0; i < rows.size(); i++) {
+          int start = (int) (firstRows[i] * size);
+          int length = (int) (numRows[i] * size);
+          copyBytes(ret, dataOffset, checkData(i, start + length), start, length);
+          dataOffset += length;
+        }
+        success = true;
+        return ret;
+      } finally {
+        if (!success) {
+          ret.close();
+        }
+      }
+    }
+
+    /**
+     * Arrow packs booleans into bits, but CUDF stores a byte for each row.
+     */
+    private HostMemoryBuffer buildBools(long totalRows, long[] firstRows, long[] numRows) {
+      HostMemoryBuffer ret = HostMemoryBuffer.allocate(totalRows);
+      boolean success = false;
+      try {
+        long rowOffset = 0;
+        for (int i = 0; i < rows.size(); i++) {
+          int firstRow = (int) firstRows[i];
+          int count = (int) numRows[i];
+          ByteBuffer bits = checkData(i, (firstRow + count + 7) / 8);
+          for (int r = 0; r < count; r++) {
+            int bit = firstRow + r;
+            ret.setByte(rowOffset + r, (byte) ((bits.get(bit >> 3) >> (bit & 7)) & 1));
+          }
+          rowOffset += count;
+        }
+        success = true;
+        return ret;
+      } finally {
+        if (!success) {
+          ret.close();
+        }
+      }
+    }
+
+    /**
+     * Narrow the 128-bit Arrow decimals to the 32 or 64-bit CUDF ones. Null rows are zeroed so
+     * whatever Arrow left in them cannot fail the range check.
+     */
+    private HostMemoryBuffer buildDecimals(long totalRows, long[] firstRows, long[] numRows) {
+      boolean is32 = type.getTypeId() == DType.DTypeEnum.DECIMAL32;
+      int size = type.getSizeInBytes();
+      HostMemoryBuffer ret = HostMemoryBuffer.allocate(totalRows * size);
+      boolean success = false;
+      try {
+        long rowOffset = 0;
+        for (int i = 0; i < rows.size(); i++) {
+          int firstRow = (int) firstRows[i];
+          int count = (int) numRows[i];
+          ByteBuffer values = checkData(i, (firstRow + count) * ARROW_DECIMAL_SIZE);
+          ByteBuffer valid = nullCount.get(i) > 0 && count > 0 ?
+            checkValidity(i, firstRow, count) : null;
+          for (int r = 0; r < count; r++) {
+            int row = firstRow + r;
+            long low = 0;
+            if (valid == null || ((valid.get(row >> 3) >> (row & 7)) & 1) != 0) {
+              low = values.getLong(row * ARROW_DECIMAL_SIZE);
+              long high = values.getLong(row * ARROW_DECIMAL_SIZE + 8);
+              if (high != (low >> 63) || (is32 && low != (int) low)) {
+                throw new IllegalArgumentException("Decimal value at row " + (rowOffset + r) +
+                  " does not fit in " + type);
+              }
+            }
+            if (is32) {
+              ret.setInt((rowOffset + r) * size, (int) low);
+            } else {
+              ret.setLong((rowOffset + r) * size, low);
+            }
+          }
+          rowOffset += count;
+        }
+        success = true;
+        return ret;
+      } finally {
+        if (!success) {
+          ret.close();
+        }
+      }
+    }
+
+    /**
+     * Rebase the string offsets of each batch onto the end of the previous one and copy the
+     * character data that they reference.
+     * @return the character data.
+     */
+    private HostMemoryBuffer buildStrings(HostMemoryBuffer outOffsets, long[] firstRows,
+                                          long[] numRows) {
+      long dataLength = 0;
+      for (int i = 0; i < rows.size(); i++) {
+        int firstRow = (int) firstRows[i];
+        int count = (int) numRows[i];
+        if (count > 0) {
+          ByteBuffer off = checkOffsets(i, firstRow + count);
+          dataLength += off.getInt((firstRow + count) * HostColumnVector.OFFSET_SIZE) -
+            off.getInt(firstRow * HostColumnVector.OFFSET_SIZE);
+        }
+      }
+      if (dataLength > Integer.MAX_VALUE) {
+        throw new IllegalStateException("A string buffer is not supported over 2GB in size");
+      }
+      // We need at least one byte or we will get NULL back for data
+      HostMemoryBuffer ret = HostMemoryBuffer.allocate(Math.max(1, dataLength));
+      boolean success = false;
+      try {
+        outOffsets.setInt(0, 0);
+        long rowOffset = 0;
+        int dataOffset = 0;
+        for (int i = 0; i < rows.size(); i++) {
+          int firstRow = (int) firstRows[i];
+          int count = (int) numRows[i];
+          if (count == 0) {
+            continue;
+          }
+          ByteBuffer off = checkOffsets(i, firstRow + count);
+          int start = off.getInt(firstRow * HostColumnVector.OFFSET_SIZE);
+          int end = off.getInt((firstRow + count) * HostColumnVector.OFFSET_SIZE);
+          for (int r = 0; r <= count; r++) {
+            outOffsets.setInt((rowOffset + r) * HostColumnVector.OFFSET_SIZE,
+              dataOffset + off.getInt((firstRow + r) * HostColumnVector.OFFSET_SIZE) - start);
+          }
+          checkData(i, end);
+          copyBytes(ret, dataOffset, data.get(i), start, end - start);
+          dataOffset += end - start;
+          rowOffset += count;
+        }
+        success = true;
+        return ret;
+      } finally {
+        if (!success) {
+          ret.close();
+        }
+      }
+    }
+
+    /**
+     * Rebase the list offsets of each batch onto the end of the child rows taken from the
+     * batches before it. Only the child rows that the offsets reference are taken, so the
+     * offsets of a sliced Arrow list do not need to start at 0 or end at the last child row.
+     * @param childFirstRows filled in with the first child row taken from each batch.
+     * @param childNumRows filled in with the number of child rows taken from each batch.
+     */
+    private void buildListOffsets(HostMemoryBuffer outOffsets, long[] firstRows, long[] numRows,
+                                  long[] childFirstRows, long[] childNumRows) {
+      ArrowColumnBuilder child = children.get(0);
+      outOffsets.setInt(0, 0);
+      long rowOffset = 0;
+      long childOffset = 0;
+      for (int i = 0; i < rows.size(); i++) {
+        int firstRow = (int) firstRows[i];
+        int count = (int) numRows[i];
+        if (count == 0) {
+          continue;
+        }
+        long childRows = child.rows.get(i);
+        ByteBuffer off = checkOffsets(i, firstRow + count);
+        int start = off.getInt(firstRow * HostColumnVector.OFFSET_SIZE);
+        int end = off.getInt((firstRow + count) * HostColumnVector.OFFSET_SIZE);
+        if (start < 0 || end < start || end > childRows) {
+          throw new IllegalArgumentException("Offsets of batch " + i + " reference child rows " +
+            start + " to " + end + " but its child has " + childRows + " rows");
+        }
+        for (int r = 0; r <= count; r++) {
+          int value = off.getInt((firstRow + r) * HostColumnVector.OFFSET_SIZE);
+          outOffsets.setInt((rowOffset + r) * HostColumnVector.OFFSET_SIZE,
+            (int) (childOffset + value - start));
+        }
+        childFirstRows[i] = start;
+        childNumRows[i] = end - start;
+        rowOffset += count;
+        childOffset += end - start;
+      }
+    }
+
+    private ByteBuffer checkData(int batch, int length) {
+      ByteBuffer buffer = data.get(batch);
+      if (length > 0 && (buffer == null || buffer.remaining() < length)) {
+        throw new IllegalArgumentException("Data buffer of batch " + batch + " is smaller than " +
+          "the " + length + " bytes needed");
+      }
+      return buffer == null ? null : littleEndian(buffer);
+    }
+
+    private ByteBuffer checkValidity(int batch, long firstRow, long numRows) {
+      ByteBuffer buffer = validity.get(batch);
+      if (buffer == null || buffer.remaining() < (firstRow + numRows + 7) / 8) {
+        throw new IllegalArgumentException("Batch " + batch + " has nulls but its validity " +
+          "buffer does not cover rows " + firstRow + " to " + (firstRow + numRows));
+      }
+      return littleEndian(buffer);
+    }
+
+    private ByteBuffer checkOffsets(int batch, int numRows) {
+      ByteBuffer buffer = offsets.get(batch);
+      if (buffer == null || buffer.remaining() < (numRows + 1) * HostColumnVector.OFFSET_SIZE) {
+        throw new IllegalArgumentException("Offsets buffer of batch " + batch + " is smaller " +
+          "than the " + (numRows + 1) + " offsets needed");
+      }
+      return littleEndian(buffer);
+    }
+
+    /**
+     * A view of the buffer from its position, so absolute reads start at 0, in Arrow's byte order.
+     */
+    private static ByteBuffer littleEndian(ByteBuffer buffer) {
+      return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void copyBytes(HostMemoryBuffer dst, long dstOffset, ByteBuffer src,
+                                  int srcOffset, int length) {
+      if (length == 0) {
+        return;
+      }
+      if (src.hasArray()) {
+        dst.setBytes(dstOffset, src.array(), src.arrayOffset() + src.position() + srcOffset,
+          length);
+      } else {
+        ByteBuffer from = src.duplicate();
+        from.position(from.position() + srcOffset);
+        from.limit(from.position() + length);
+        dst.asByteBuffer(dstOffset, length).put(from);
       }
-      return vecRet;
     }
 
     @Override
@@ -108,6 +528,7 @@ public final class ArrowColumnBuilder implements AutoCloseable {
         ", offsets=" + offsets +
         ", nullCount=" + nullCount +
         ", rows=" + rows +
+        ", children=" + children +
         '}';
     }
 }
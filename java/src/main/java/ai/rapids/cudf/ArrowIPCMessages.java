@@ -0,0 +1,667 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The parts of the Arrow IPC stream format shared by {@link HostArrowIPCWriter} and
+ * {@link HostArrowIPCReader}. Message metadata is a FlatBuffer, so this has just enough of a
+ * FlatBuffer encoder and decoder for the Schema and RecordBatch messages, without depending on
+ * the FlatBuffers or Arrow libraries.
+ */
+final class ArrowIPCMessages {
+  /** Marks the start of a message in the stream format since Arrow 0.15 */
+  static final int CONTINUATION = 0xFFFFFFFF;
+  /** Metadata version V4 */
+  static final short METADATA_VERSION = 3;
+  /** Buffers in the body are aligned and padded to this many bytes */
+  static final int BODY_ALIGNMENT = 64;
+
+  // MessageHeader union
+  static final byte HEADER_SCHEMA = 1;
+  static final byte HEADER_DICTIONARY_BATCH = 2;
+  static final byte HEADER_RECORD_BATCH = 3;
+
+  // Type union
+  static final byte TYPE_INT = 2;
+  static final byte TYPE_FLOATING_POINT = 3;
+  static final byte TYPE_UTF8 = 5;
+  static final byte TYPE_BOOL = 6;
+  static final byte TYPE_DECIMAL = 7;
+  static final byte TYPE_DATE = 8;
+  static final byte TYPE_TIMESTAMP = 10;
+  static final byte TYPE_LIST = 12;
+  static final byte TYPE_STRUCT = 13;
+  static final byte TYPE_DURATION = 18;
+
+  private static final short UNIT_SECOND = 0;
+  private static final short UNIT_MILLISECOND = 1;
+  private static final short UNIT_MICROSECOND = 2;
+  private static final short UNIT_NANOSECOND = 3;
+  private static final short DATE_DAY = 0;
+  private static final short DATE_MILLISECOND = 1;
+  private static final short PRECISION_SINGLE = 1;
+  private static final short PRECISION_DOUBLE = 2;
+
+  private static final int DECIMAL32_PRECISION = 9;
+  private static final int DECIMAL64_PRECISION = 18;
+  /** The only width the reader converts, what Arrow writes when no width is set */
+  private static final int DECIMAL_BIT_WIDTH = 128;
+
+  private ArrowIPCMessages() {}
+
+  static long padTo(long value, int alignment) {
+    return (value + alignment - 1) / alignment * alignment;
+  }
+
+  /**
+   * A column in an Arrow schema.
+   */
+  static final class Field {
+    final String name;
+    final boolean nullable;
+    final DType type;
+    final List<Field> children;
+
+    Field(String name, boolean nullable, DType type, List<Field> children) {
+      this.name = name;
+      this.nullable = nullable;
+      this.type = type;
+      this.children = children;
+    }
+
+    boolean sameTypes(HostColumnVectorCore column) {
+      if (!type.equals(column.getType()) || children.size() != column.getNumChildren()) {
+        return false;
+      }
+      for (int i = 0; i < children.size(); i++) {
+        if (!children.get(i).sameTypes(column.getChildColumnView(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+  // ENCODING
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * A FlatBuffer table being built. Fields are added by their id in the schema.
+   */
+  static final class FlatTable {
+    private static final class Slot {
+      final int id;
+      final int size;
+      final long value;
+      final Object ref;
+      int position;
+
+      Slot(int id, int size, long value, Object ref) {
+        this.id = id;
+        this.size = size;
+        this.value = value;
+        this.ref = ref;
+      }
+    }
+
+    /** A vector of structs that are all made of longs */
+    private static final class LongStructs {
+      final long[] values;
+
+      LongStructs(long[] values) {
+        this.values = values;
+      }
+    }
+
+    private final List<Slot> slots = new ArrayList<>();
+
+    FlatTable addByte(int id, int value) {
+      slots.add(new Slot(id, 1, value, null));
+      return this;
+    }
+
+    FlatTable addBool(int id, boolean value) {
+      return addByte(id, value ? 1 : 0);
+    }
+
+    FlatTable addShort(int id, int value) {
+      slots.add(new Slot(id, 2, value, null));
+      return this;
+    }
+
+    FlatTable addInt(int id, int value) {
+      slots.add(new Slot(id, 4, value, null));
+      return this;
+    }
+
+    FlatTable addLong(int id, long value) {
+      slots.add(new Slot(id, 8, value, null));
+      return this;
+    }
+
+    FlatTable addTable(int id, FlatTable table) {
+      slots.add(new Slot(id, 4, 0, table));
+      return this;
+    }
+
+    FlatTable addString(int id, String value) {
+      slots.add(new Slot(id, 4, 0, value.getBytes(StandardCharsets.UTF_8)));
+      return this;
+    }
+
+    FlatTable addTables(int id, List<FlatTable> tables) {
+      slots.add(new Slot(id, 4, 0, tables));
+      return this;
+    }
+
+    /**
+     * Add a vector of structs of two longs each, like FieldNode and Buffer.
+     */
+    FlatTable addLongPairs(int id, long[] values) {
+      slots.add(new Slot(id, 4, 0, new LongStructs(values)));
+      return this;
+    }
+  }
+
+  /**
+   * Writes a FlatBuffer front to back. Tables are preceded by their vtable and everything a
+   * table references is written after it, so all offsets point forward like the format needs.
+   */
+  private static final class FlatWriter {
+    private ByteBuffer out = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    private void ensure(int bytes) {
+      if (out.remaining() < bytes) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2,
+            out.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+        out.flip();
+        bigger.put(out);
+        out = bigger;
+      }
+    }
+
+    private void align(int alignment) {
+      int pad = (int) (padTo(out.position(), alignment) - out.position());
+      ensure(pad);
+      for (int i = 0; i < pad; i++) {
+        out.put((byte) 0);
+      }
+    }
+
+    private void put(int size, long value) {
+      ensure(size);
+      switch (size) {
+        case 1:
+          out.put((byte) value);
+          break;
+        case 2:
+          out.putShort((short) value);
+          break;
+        case 4:
+          out.putInt((int) value);
+          break;
+        default:
+          out.putLong(value);
+      }
+    }
+
+    byte[] finish(FlatTable root) {
+      put(4, 0);
+      int rootPosition = writeTable(root);
+      out.putInt(0, rootPosition);
+      align(8);
+      return Arrays.copyOf(out.array(), out.position());
+    }
+
+    private int writeTable(FlatTable table) {
+      int numIds = 0;
+      int maxSize = 4;
+      for (FlatTable.Slot slot : table.slots) {
+        numIds = Math.max(numIds, slot.id + 1);
+        maxSize = Math.max(maxSize, slot.size);
+      }
+      align(2);
+      int vtablePosition = out.position();
+      int vtableSize = 4 + 2 * numIds;
+      ensure(vtableSize);
+      for (int i = 0; i < vtableSize; i++) {
+        out.put((byte) 0);
+      }
+      align(maxSize);
+      int tablePosition = out.position();
+      put(4, tablePosition - vtablePosition);
+      // Largest first keeps the padding between fields down
+      List<FlatTable.Slot> sorted = new ArrayList<>(table.slots);
+      sorted.sort(Comparator.comparingInt((FlatTable.Slot s) -> s.size).reversed());
+      for (FlatTable.Slot slot : sorted) {
+        align(slot.size);
+        slot.position = out.position();
+        put(slot.size, slot.value);
+      }
+      out.putShort(vtablePosition, (short) vtableSize);
+      out.putShort(vtablePosition + 2, (short) (out.position() - tablePosition));
+      for (FlatTable.Slot slot : table.slots) {
+        out.putShort(vtablePosition + 4 + 2 * slot.id, (short) (slot.position - tablePosition));
+      }
+      for (FlatTable.Slot slot : table.slots) {
+        if (slot.ref != null) {
+          int target = writeRef(slot.ref);
+          out.putInt(slot.position, target - slot.position);
+        }
+      }
+      return tablePosition;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int writeRef(Object ref) {
+      if (ref instanceof FlatTable) {
+        return writeTable((FlatTable) ref);
+      } else if (ref instanceof byte[]) {
+        byte[] bytes = (byte[]) ref;
+        align(4);
+        int position = out.position();
+        put(4, bytes.length);
+        ensure(bytes.length + 1);
+        out.put(bytes);
+        out.put((byte) 0);
+        return position;
+      } else if (ref instanceof FlatTable.LongStructs) {
+        long[] values = ((FlatTable.LongStructs) ref).values;
+        // The structs after the length need to be 8 byte aligned
+        align(8);
+        if (values.length > 0) {
+          put(4, 0);
+        }
+        int position = out.position();
+        put(4, values.length / 2);
+        for (long v : values) {
+          put(8, v);
+        }
+        return position;
+      } else {
+        List<FlatTable> tables = (List<FlatTable>) ref;
+        align(4);
+        int position = out.position();
+        put(4, tables.size());
+        int first = out.position();
+        for (int i = 0; i < tables.size(); i++) {
+          put(4, 0);
+        }
+        for (int i = 0; i < tables.size(); i++) {
+          int slot = first + 4 * i;
+          out.putInt(slot, writeTable(tables.get(i)) - slot);
+        }
+        return position;
+      }
+    }
+  }
+
+  /**
+   * Encode a message, padded to 8 bytes like the stream format needs.
+   */
+  static byte[] encodeMessage(byte headerType, FlatTable header, long bodyLength) {
+    FlatTable message = new FlatTable()
+        .addShort(0, METADATA_VERSION)
+        .addByte(1, headerType)
+        .addTable(2, header)
+        .addLong(3, bodyLength);
+    return new FlatWriter().finish(message);
+  }
+
+  static FlatTable encodeSchema(List<Field> fields) {
+    List<FlatTable> encoded = new ArrayList<>(fields.size());
+    for (Field f : fields) {
+      encoded.add(encodeField(f));
+    }
+    // endianness 0 is little
+    return new FlatTable().addShort(0, 0).addTables(1, encoded);
+  }
+
+  private static FlatTable encodeField(Field field) {
+    List<FlatTable> children = new ArrayList<>(field.children.size());
+    for (Field c : field.children) {
+      children.add(encodeField(c));
+    }
+    FlatTable type = new FlatTable();
+    byte typeType;
+    switch (field.type.getTypeId()) {
+      case INT8:
+      case INT16:
+      case INT32:
+      case INT64:
+        typeType = TYPE_INT;
+        type.addInt(0, field.type.getSizeInBytes() * 8).addBool(1, true);
+        break;
+      case UINT8:
+      case UINT16:
+      case UINT32:
+      case UINT64:
+        typeType = TYPE_INT;
+        type.addInt(0, field.type.getSizeInBytes() * 8).addBool(1, false);
+        break;
+      case FLOAT32:
+        typeType = TYPE_FLOATING_POINT;
+        type.addShort(0, PRECISION_SINGLE);
+        break;
+      case FLOAT64:
+        typeType = TYPE_FLOATING_POINT;
+        type.addShort(0, PRECISION_DOUBLE);
+        break;
+      case BOOL8:
+        typeType = TYPE_BOOL;
+        break;
+      case TIMESTAMP_DAYS:
+        typeType = TYPE_DATE;
+        type.addShort(0, DATE_DAY);
+        break;
+      case TIMESTAMP_SECONDS:
+      case TIMESTAMP_MILLISECONDS:
+      case TIMESTAMP_MICROSECONDS:
+      case TIMESTAMP_NANOSECONDS:
+        typeType = TYPE_TIMESTAMP;
+        type.addShort(0, timeUnit(field.type));
+        break;
+      case DURATION_SECONDS:
+      case DURATION_MILLISECONDS:
+      case DURATION_MICROSECONDS:
+      case DURATION_NANOSECONDS:
+        typeType = TYPE_DURATION;
+        type.addShort(0, timeUnit(field.type));
+        break;
+      case DECIMAL32:
+      case DECIMAL64:
+        typeType = TYPE_DECIMAL;
+        type.addInt(0, field.type.getTypeId() == DType.DTypeEnum.DECIMAL32 ?
+            DECIMAL32_PRECISION : DECIMAL64_PRECISION)
+            .addInt(1, -field.type.getScale());
+        break;
+      case STRING:
+        typeType = TYPE_UTF8;
+        break;
+      case LIST:
+        typeType = TYPE_LIST;
+        break;
+      case STRUCT:
+        typeType = TYPE_STRUCT;
+        break;
+      default:
+        throw new UnsupportedOperationException(field.type + " cannot be written as Arrow IPC");
+    }
+    return new FlatTable()
+        .addString(0, field.name)
+        .addBool(1, field.nullable)
+        .addByte(2, typeType)
+        .addTable(3, type)
+        .addTables(5, children);
+  }
+
+  private static short timeUnit(DType type) {
+    switch (type.getTypeId()) {
+      case TIMESTAMP_SECONDS:
+      case DURATION_SECONDS:
+        return UNIT_SECOND;
+      case TIMESTAMP_MILLISECONDS:
+      case DURATION_MILLISECONDS:
+        return UNIT_MILLISECOND;
+      case TIMESTAMP_MICROSECONDS:
+      case DURATION_MICROSECONDS:
+        return UNIT_MICROSECOND;
+      default:
+        return UNIT_NANOSECOND;
+    }
+  }
+
+  /**
+   * Encode a record batch header.
+   * @param nodes the length and null count of each column in depth first order.
+   * @param buffers the offset in the body and length of each buffer.
+   */
+  static FlatTable encodeRecordBatch(long length, long[] nodes, long[] buffers) {
+    return new FlatTable().addLong(0, length).addLongPairs(1, nodes).addLongPairs(2, buffers);
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+  // DECODING
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Reads a FlatBuffer. Positions are offsets into the buffer and a missing table, string or
+   * vector is -1.
+   */
+  static final class FlatReader {
+    private final ByteBuffer bb;
+
+    FlatReader(ByteBuffer bb) {
+      this.bb = bb.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    int root() {
+      return bb.getInt(0);
+    }
+
+    private int field(int table, int id) {
+      int vtable = table - bb.getInt(table);
+      int vtableSize = bb.getShort(vtable) & 0xFFFF;
+      int entry = 4 + 2 * id;
+      return entry < vtableSize ? bb.getShort(vtable + entry) & 0xFFFF : 0;
+    }
+
+    byte getByte(int table, int id, byte defaultValue) {
+      int off = field(table, id);
+      return off == 0 ? defaultValue : bb.get(table + off);
+    }
+
+    boolean getBool(int table, int id, boolean defaultValue) {
+      return getByte(table, id, (byte) (defaultValue ? 1 : 0)) != 0;
+    }
+
+    short getShort(int table, int id, short defaultValue) {
+      int off = field(table, id);
+      return off == 0 ? defaultValue : bb.getShort(table + off);
+    }
+
+    int getInt(int table, int id, int defaultValue) {
+      int off = field(table, id);
+      return off == 0 ? defaultValue : bb.getInt(table + off);
+    }
+
+    long getLong(int table, int id, long defaultValue) {
+      int off = field(table, id);
+      return off == 0 ? defaultValue : bb.getLong(table + off);
+    }
+
+    private int indirect(int table, int id) {
+      int off = field(table, id);
+      if (off == 0) {
+        return -1;
+      }
+      int position = table + off;
+      return position + bb.getInt(position);
+    }
+
+    int getTable(int table, int id) {
+      return indirect(table, id);
+    }
+
+    String getString(int table, int id) {
+      int position = indirect(table, id);
+      if (position < 0) {
+        return null;
+      }
+      byte[] bytes = new byte[bb.getInt(position)];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = bb.get(position + 4 + i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int getVector(int table, int id) {
+      return indirect(table, id);
+    }
+
+    int vectorLength(int vector) {
+      return vector < 0 ? 0 : bb.getInt(vector);
+    }
+
+    int vectorTable(int vector, int index) {
+      int position = vector + 4 + 4 * index;
+      return position + bb.getInt(position);
+    }
+
+    long vectorLong(int vector, int index) {
+      return bb.getLong(vector + 4 + 8 * index);
+    }
+  }
+
+  static List<Field> decodeSchema(FlatReader reader, int schema) {
+    if (reader.getShort(schema, 0, (short) 0) != 0) {
+      throw new UnsupportedOperationException("Big endian Arrow data is not supported");
+    }
+    int fields = reader.getVector(schema, 1);
+    int numFields = reader.vectorLength(fields);
+    List<Field> ret = new ArrayList<>(numFields);
+    for (int i = 0; i < numFields; i++) {
+      ret.add(decodeField(reader, reader.vectorTable(fields, i)));
+    }
+    return ret;
+  }
+
+  private static Field decodeField(FlatReader reader, int field) {
+    String name = reader.getString(field, 0);
+    boolean nullable = reader.getBool(field, 1, false);
+    byte typeType = reader.getByte(field, 2, (byte) 0);
+    int type = reader.getTable(field, 3);
+    if (reader.getTable(field, 4) >= 0) {
+      throw new UnsupportedOperationException("Dictionary encoded column " + name +
+          " is not supported");
+    }
+    int childVector = reader.getVector(field, 5);
+    int numChildren = reader.vectorLength(childVector);
+    List<Field> children = new ArrayList<>(numChildren);
+    for (int i = 0; i < numChildren; i++) {
+      children.add(decodeField(reader, reader.vectorTable(childVector, i)));
+    }
+    DType dtype;
+    switch (typeType) {
+      case TYPE_INT: {
+        int bitWidth = reader.getInt(type, 0, 0);
+        boolean signed = reader.getBool(type, 1, false);
+        switch (bitWidth) {
+          case 8:
+            dtype = signed ? DType.INT8 : DType.UINT8;
+            break;
+          case 16:
+            dtype = signed ? DType.INT16 : DType.UINT16;
+            break;
+          case 32:
+            dtype = signed ? DType.INT32 : DType.UINT32;
+            break;
+          case 64:
+            dtype = signed ? DType.INT64 : DType.UINT64;
+            break;
+          default:
+            throw new IllegalArgumentException("Unexpected int width " + bitWidth);
+        }
+        break;
+      }
+      case TYPE_FLOATING_POINT: {
+        short precision = reader.getShort(type, 0, (short) 0);
+        if (precision == PRECISION_SINGLE) {
+          dtype = DType.FLOAT32;
+        } else if (precision == PRECISION_DOUBLE) {
+          dtype = DType.FLOAT64;
+        } else {
+          throw new UnsupportedOperationException("Half precision floats are not supported");
+        }
+        break;
+      }
+      case TYPE_BOOL:
+        dtype = DType.BOOL8;
+        break;
+      case TYPE_UTF8:
+        dtype = DType.STRING;
+        break;
+      case TYPE_DATE:
+        dtype = reader.getShort(type, 0, DATE_MILLISECOND) == DATE_DAY ?
+            DType.TIMESTAMP_DAYS : DType.TIMESTAMP_MILLISECONDS;
+        break;
+      case TYPE_TIMESTAMP:
+        dtype = fromTimeUnit(reader.getShort(type, 0, (short) 0), true);
+        break;
+      case TYPE_DURATION:
+        dtype = fromTimeUnit(reader.getShort(type, 0, UNIT_MILLISECOND), false);
+        break;
+      case TYPE_DECIMAL: {
+        int precision = reader.getInt(type, 0, 0);
+        int scale = reader.getInt(type, 1, 0);
+        int bitWidth = reader.getInt(type, 2, DECIMAL_BIT_WIDTH);
+        if (bitWidth != DECIMAL_BIT_WIDTH) {
+          throw new UnsupportedOperationException("Decimal bit width " + bitWidth +
+              " of column " + name + " is not supported");
+        }
+        if (precision <= DECIMAL32_PRECISION) {
+          dtype = DType.create(DType.DTypeEnum.DECIMAL32, -scale);
+        } else if (precision <= DECIMAL64_PRECISION) {
+          dtype = DType.create(DType.DTypeEnum.DECIMAL64, -scale);
+        } else {
+          throw new UnsupportedOperationException("Decimal precision " + precision +
+              " is larger than is supported");
+        }
+        break;
+      }
+      case TYPE_LIST:
+        if (children.size() != 1) {
+          throw new IllegalArgumentException("A list needs exactly one child");
+        }
+        dtype = DType.LIST;
+        break;
+      case TYPE_STRUCT:
+        dtype = DType.STRUCT;
+        break;
+      default:
+        throw new UnsupportedOperationException("Arrow type " + typeType + " of column " + name +
+            " is not supported");
+    }
+    return new Field(name, nullable, dtype, children);
+  }
+
+  private static DType fromTimeUnit(short unit, boolean timestamp) {
+    switch (unit) {
+      case UNIT_SECOND:
+        return timestamp ? DType.TIMESTAMP_SECONDS : DType.DURATION_SECONDS;
+      case UNIT_MILLISECOND:
+        return timestamp ? DType.TIMESTAMP_MILLISECONDS : DType.DURATION_MILLISECONDS;
+      case UNIT_MICROSECOND:
+        return timestamp ? DType.TIMESTAMP_MICROSECONDS : DType.DURATION_MICROSECONDS;
+      case UNIT_NANOSECOND:
+        return timestamp ? DType.TIMESTAMP_NANOSECONDS : DType.DURATION_NANOSECONDS;
+      default:
+        throw new IllegalArgumentException("Unexpected time unit " + unit);
+    }
+  }
+}
@@ -1,6 +1,6 @@
 /*
  *
- *  Copyright (c) 2019, NVIDIA CORPORATION.
+ *  Copyright (c) 2019-2021, NVIDIA CORPORATION.
  *
  *  Licensed under the Apache License, Version 2.0 (the "License");
  *  you may not use this file except in compliance with the License.
@@ -19,7 +19,7 @@
 package ai.rapids.cudf;
 
 /**
- * This class does bit manipulation using byte arithmetic
+ * This class does bit manipulation using byte and 64-bit word arithmetic
  */
 final class BitVectorHelper {
 
@@ -110,4 +110,327 @@ final class BitVectorHelper {
     int i = b & (1 << (index % 8));
     return i == 0;
   }
+
+  /**
+   * Copy a range of validity bits from src to dst, 64 bits at a time. The bits in dst outside of
+   * the destination range are left untouched, so ranges can be appended one after the other.
+   * The offsets can be any bit, so this also shifts bits into place.
+   * @param src the buffer to read the bits from.
+   * @param srcBitOffset the first bit in src to copy.
+   * @param dst the buffer to write the bits to.
+   * @param dstBitOffset the first bit in dst to write.
+   * @param numBits the number of bits to copy.
+   */
+  static void copyBits(HostMemoryBuffer src, long srcBitOffset,
+                       HostMemoryBuffer dst, long dstBitOffset, long numBits) {
+    applyBits(BitOp.COPY, src, srcBitOffset, dst, dstBitOffset, numBits);
+  }
+
+  /**
+   * AND a range of validity bits from src into dst, 64 bits at a time, so a row in dst stays
+   * valid only if it is also valid in src. The bits in dst outside of the range are left
+   * untouched.
+   * @param src the buffer to read the bits from.
+   * @param srcBitOffset the first bit in src to read.
+   * @param dst the buffer to update.
+   * @param dstBitOffset the first bit in dst to update.
+   * @param numBits the number of bits to merge.
+   */
+  static void andBits(HostMemoryBuffer src, long srcBitOffset,
+                      HostMemoryBuffer dst, long dstBitOffset, long numBits) {
+    applyBits(BitOp.AND, src, srcBitOffset, dst, dstBitOffset, numBits);
+  }
+
+  /**
+   * OR a range of validity bits from src into dst, 64 bits at a time, so a row in dst becomes
+   * valid if it is valid in src. The bits in dst outside of the range are left untouched.
+   * @param src the buffer to read the bits from.
+   * @param srcBitOffset the first bit in src to read.
+   * @param dst the buffer to update.
+   * @param dstBitOffset the first bit in dst to update.
+   * @param numBits the number of bits to merge.
+   */
+  static void orBits(HostMemoryBuffer src, long srcBitOffset,
+                     HostMemoryBuffer dst, long dstBitOffset, long numBits) {
+    applyBits(BitOp.OR, src, srcBitOffset, dst, dstBitOffset, numBits);
+  }
+
+  private enum BitOp {
+    COPY,
+    AND,
+    OR
+  }
+
+  private static void applyBits(BitOp op, HostMemoryBuffer src, long srcBitOffset,
+                                HostMemoryBuffer dst, long dstBitOffset, long numBits) {
+    assert src.length * 8 >= srcBitOffset + numBits : "reading past the end of src";
+    assert dst.length * 8 >= dstBitOffset + numBits : "validity vector bigger then available " +
+        "space on dst: " + (dst.length * 8 - dstBitOffset) + " space needed: " + numBits;
+    long done = 0;
+    while (done < numBits) {
+      long dstBit = dstBitOffset + done;
+      long dstWordOffset = (dstBit / 64) * 8;
+      int dstShift = (int) (dstBit % 64);
+      int toApply = (int) Math.min(64 - dstShift, numBits - done);
+      long mask = toApply == 64 ? -1L : (1L << toApply) - 1;
+      long bits = getBitsAt(src, srcBitOffset + done) & mask;
+      long word = getWord(dst, dstWordOffset);
+      switch (op) {
+        case COPY:
+          word = (word & ~(mask << dstShift)) | (bits << dstShift);
+          break;
+        case AND:
+          word &= ~((~bits & mask) << dstShift);
+          break;
+        case OR:
+          word |= bits << dstShift;
+          break;
+        default:
+          throw new IllegalStateException("Unexpected operation " + op);
+      }
+      setWord(dst, dstWordOffset, word);
+      done += toApply;
+    }
+  }
+
+  /**
+   * Copy a range of validity bits into a new buffer so the first bit of the range becomes bit 0,
+   * like the validity of a slice of a column. Any padding bits after the range are valid.
+   * @param src the buffer to read the bits from.
+   * @param srcBitOffset the first bit to copy.
+   * @param numBits the number of bits to copy.
+   * @return the new buffer, owned by the caller.
+   */
+  static HostMemoryBuffer shiftBits(HostMemoryBuffer src, long srcBitOffset, long numBits) {
+    long length = getValidityAllocationSizeInBytes(numBits);
+    HostMemoryBuffer ret = HostMemoryBuffer.allocate(length);
+    boolean success = false;
+    try {
+      ret.setMemory(0, length, (byte) 0xFF);
+      copyBits(src, srcBitOffset, ret, 0, numBits);
+      success = true;
+    } finally {
+      if (!success) {
+        ret.close();
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Merge the validity of several columns with the same number of rows, the way
+   * mergeAndSetValidity does with BinaryOp.BITWISE_AND on the GPU: a row is valid only if it
+   * is valid in every column. Columns without a validity buffer have no nulls.
+   * @param rows the number of rows in each column.
+   * @param columns the columns to merge.
+   * @return a new validity buffer owned by the caller, or null if no column had a validity
+   * buffer and so every row is valid.
+   */
+  static HostMemoryBuffer mergeAnd(long rows, HostColumnVectorCore... columns) {
+    return merge(BitOp.AND, rows, columns);
+  }
+
+  /**
+   * Merge the validity of several columns with the same number of rows, the way
+   * mergeAndSetValidity does with BinaryOp.BITWISE_OR on the GPU: a row is valid if it is
+   * valid in any column. Columns without a validity buffer have no nulls.
+   * @param rows the number of rows in each column.
+   * @param columns the columns to merge.
+   * @return a new validity buffer owned by the caller, or null if any column had no validity
+   * buffer and so every row is valid.
+   */
+  static HostMemoryBuffer mergeOr(long rows, HostColumnVectorCore... columns) {
+    for (HostColumnVectorCore cv : columns) {
+      if (cv.getValidity() == null) {
+        return null;
+      }
+    }
+    return merge(BitOp.OR, rows, columns);
+  }
+
+  private static HostMemoryBuffer merge(BitOp op, long rows, HostColumnVectorCore[] columns) {
+    HostMemoryBuffer ret = null;
+    boolean success = false;
+    try {
+      for (HostColumnVectorCore cv : columns) {
+        if (cv.getRowCount() != rows) {
+          throw new IllegalArgumentException("Expected " + rows + " rows but found a column " +
+              "with " + cv.getRowCount() + " rows");
+        }
+        HostMemoryBuffer valid = cv.getValidity();
+        if (valid == null) {
+          continue;
+        }
+        if (ret == null) {
+          ret = shiftBits(valid, 0, rows);
+        } else {
+          applyBits(op, valid, 0, ret, 0, rows);
+        }
+      }
+      success = true;
+    } finally {
+      if (!success && ret != null) {
+        ret.close();
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Set a range of bits in dst to valid (1), 64 bits at a time. The bits outside of the range are
+   * left untouched.
+   * @param dst the buffer to update.
+   * @param dstBitOffset the first bit to set.
+   * @param numBits the number of bits to set.
+   */
+  static void setValidRange(HostMemoryBuffer dst, long dstBitOffset, long numBits) {
+    assert dst.length * 8 >= dstBitOffset + numBits : "setting bits past the end of dst";
+    long set = 0;
+    while (set < numBits) {
+      long dstBit = dstBitOffset + set;
+      long dstWordOffset = (dstBit / 64) * 8;
+      int dstShift = (int) (dstBit % 64);
+      int toSet = (int) Math.min(64 - dstShift, numBits - set);
+      long mask = toSet == 64 ? -1L : (1L << toSet) - 1;
+      setWord(dst, dstWordOffset, getWord(dst, dstWordOffset) | (mask << dstShift));
+      set += toSet;
+    }
+  }
+
+  /**
+   * Set a range of bits in dst to null (0), 64 bits at a time. The bits outside of the range are
+   * left untouched.
+   * @param dst the buffer to update.
+   * @param dstBitOffset the first bit to clear.
+   * @param numBits the number of bits to clear.
+   */
+  static void setNullRange(HostMemoryBuffer dst, long dstBitOffset, long numBits) {
+    assert dst.length * 8 >= dstBitOffset + numBits : "clearing bits past the end of dst";
+    long cleared = 0;
+    while (cleared < numBits) {
+      long dstBit = dstBitOffset + cleared;
+      long dstWordOffset = (dstBit / 64) * 8;
+      int dstShift = (int) (dstBit % 64);
+      int toClear = (int) Math.min(64 - dstShift, numBits - cleared);
+      long mask = toClear == 64 ? -1L : (1L << toClear) - 1;
+      setWord(dst, dstWordOffset, getWord(dst, dstWordOffset) & ~(mask << dstShift));
+      cleared += toClear;
+    }
+  }
+
+  /**
+   * Count the number of nulls (0 bits) in the first rows bits of a validity buffer.
+   */
+  static long countNulls(HostMemoryBuffer valid, long rows) {
+    return countNulls(valid, 0, rows);
+  }
+
+  /**
+   * Count the number of nulls (0 bits) in a range of bits that can start at any bit.
+   */
+  static long countNulls(HostMemoryBuffer valid, long bitOffset, long numBits) {
+    long validCount = 0;
+    if (bitOffset % 64 == 0) {
+      long byteOffset = bitOffset / 8;
+      long fullWords = numBits / 64;
+      for (long i = 0; i < fullWords; i++) {
+        validCount += Long.bitCount(getWord(valid, byteOffset + i * 8));
+      }
+      int remaining = (int) (numBits % 64);
+      if (remaining > 0) {
+        validCount += Long.bitCount(getWord(valid, byteOffset + fullWords * 8) &
+            ((1L << remaining) - 1));
+      }
+    } else {
+      for (long i = 0; i < numBits; i += 64) {
+        long bits = getBitsAt(valid, bitOffset + i);
+        long left = numBits - i;
+        if (left < 64) {
+          bits &= (1L << left) - 1;
+        }
+        validCount += Long.bitCount(bits);
+      }
+    }
+    return numBits - validCount;
+  }
+
+  /**
+   * Check if every bit in a range is valid (1). This stops at the first word with a null in it.
+   */
+  static boolean isAllValid(HostMemoryBuffer valid, long bitOffset, long numBits) {
+    for (long i = 0; i < numBits; i += 64) {
+      long left = numBits - i;
+      long mask = left < 64 ? (1L << left) - 1 : -1L;
+      if ((getBitsAt(valid, bitOffset + i) & mask) != mask) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Check if every bit in a range is null (0). This stops at the first word with a valid row
+   * in it.
+   */
+  static boolean isAllNull(HostMemoryBuffer valid, long bitOffset, long numBits) {
+    for (long i = 0; i < numBits; i += 64) {
+      long left = numBits - i;
+      long mask = left < 64 ? (1L << left) - 1 : -1L;
+      if ((getBitsAt(valid, bitOffset + i) & mask) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Read the 64 validity bits for rows [wordIndex * 64, wordIndex * 64 + 64). Bits past the end
+   * of the buffer are returned as 0.
+   */
+  static long getValidityWord(HostMemoryBuffer valid, long wordIndex) {
+    return getWord(valid, wordIndex * 8);
+  }
+
+  /**
+   * Read 64 bits starting at an arbitrary bit offset. Bit 0 of the result is the bit at
+   * bitOffset. Any bits that would fall off the end of the buffer are returned as 0.
+   */
+  private static long getBitsAt(HostMemoryBuffer buffer, long bitOffset) {
+    long byteOffset = bitOffset / 8;
+    int shift = (int) (bitOffset % 8);
+    long bits = getWord(buffer, byteOffset) >>> shift;
+    if (shift > 0 && byteOffset + 8 < buffer.length) {
+      bits |= ((long) (buffer.getByte(byteOffset + 8) & 0xFF)) << (64 - shift);
+    }
+    return bits;
+  }
+
+  /**
+   * Read a little endian 64-bit word at a byte offset, treating anything past the end of the
+   * buffer as 0.
+   */
+  private static long getWord(HostMemoryBuffer buffer, long byteOffset) {
+    if (byteOffset + 8 <= buffer.length) {
+      return buffer.getLong(byteOffset);
+    }
+    long word = 0;
+    for (long i = byteOffset; i < buffer.length; i++) {
+      word |= ((long) (buffer.getByte(i) & 0xFF)) << ((i - byteOffset) * 8);
+    }
+    return word;
+  }
+
+  /**
+   * Write a little endian 64-bit word at a byte offset, dropping anything that would go past the
+   * end of the buffer.
+   */
+  private static void setWord(HostMemoryBuffer buffer, long byteOffset, long word) {
+    if (byteOffset + 8 <= buffer.length) {
+      buffer.setLong(byteOffset, word);
+    } else {
+      for (long i = byteOffset; i < buffer.length; i++) {
+        buffer.setByte(i, (byte) (word >>> ((i - byteOffset) * 8)));
+      }
+    }
+  }
 }
@@ -0,0 +1,485 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Splits CSV data in a host buffer, usually a memory mapped file, into chunks that each hold
+ * whole records so they can be parsed independently and concurrently.
+ * <p/>
+ * A newline only ends a record when it is not inside of a quoted value, and whether a byte is
+ * inside of quotes depends on everything before it. To avoid one long serial scan the data is
+ * cut into equal pieces, and each piece is scanned in parallel once for every state it could
+ * start in: at the start of a field, in the middle of one, inside quotes, just after a quote or
+ * inside a comment line. A short serial pass then walks the pieces, picking the result for the
+ * state the previous piece really ended in.
+ * <p/>
+ * Like the parser, a quote only starts a quoted value at the start of a field. A quote in the
+ * middle of an unquoted value is part of the value, and two quotes in a row inside of a quoted
+ * value are one literal quote.
+ * <pre>
+ * try (HostMemoryBuffer mapped = HostMemoryBuffer.mapFile(file, MapMode.READ_ONLY, 0, len)) {
+ *   CSVSplitter splitter = CSVSplitter.split(opts, mapped, 0, len, 8, pool);
+ *   Table[] tables = splitter.readCSV(schema, pool);
+ * }
+ * </pre>
+ */
+public final class CSVSplitter {
+  /** At the start of a field, which includes the start of a record */
+  private static final int NORMAL = 0;
+  private static final int IN_FIELD = 1;
+  private static final int IN_QUOTE = 2;
+  /** Just after a quote inside of a quoted value, which either closes it or escapes a quote */
+  private static final int AFTER_QUOTE = 3;
+  private static final int IN_COMMENT = 4;
+  private static final int NUM_STATES = 5;
+
+  private static final int STAGING_SIZE = 64 * 1024;
+
+  /**
+   * A range of the buffer that holds whole records.
+   */
+  public static final class Chunk {
+    private final long offset;
+    private final long length;
+
+    Chunk(long offset, long length) {
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /** Returns the offset of the chunk in the buffer that was split. */
+    public long getOffset() {
+      return offset;
+    }
+
+    public long getLength() {
+      return length;
+    }
+
+    @Override
+    public String toString() {
+      return "Chunk{offset=" + offset + ", length=" + length + '}';
+    }
+  }
+
+  private final CSVOptions opts;
+  private final HostMemoryBuffer buffer;
+  private final long headerOffset;
+  private final long headerLength;
+  private final List<Chunk> chunks;
+
+  private CSVSplitter(CSVOptions opts, HostMemoryBuffer buffer, long headerOffset,
+                      long headerLength, List<Chunk> chunks) {
+    this.opts = opts;
+    this.buffer = buffer;
+    this.headerOffset = headerOffset;
+    this.headerLength = headerLength;
+    this.chunks = Collections.unmodifiableList(chunks);
+  }
+
+  /**
+   * Get the chunks, in order. There may be fewer than were asked for if records are long or
+   * the data is small.
+   */
+  public List<Chunk> getChunks() {
+    return chunks;
+  }
+
+  /** Returns the offset of the header record in the buffer, or -1 if there is no header. */
+  public long getHeaderOffset() {
+    return headerOffset;
+  }
+
+  /** Returns the length of the header record, including its newline, or 0 if there is none. */
+  public long getHeaderLength() {
+    return headerLength;
+  }
+
+  /**
+   * Reads bytes from a host buffer through a small array, so scanning does not pay for a
+   * bounds checked native access per byte.
+   */
+  private static final class Cursor {
+    private final HostMemoryBuffer buffer;
+    private final byte[] staging = new byte[STAGING_SIZE];
+    private long stagingStart = 0;
+    private int stagingLength = 0;
+
+    Cursor(HostMemoryBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    byte get(long pos, long end) {
+      long index = pos - stagingStart;
+      if (index < 0 || index >= stagingLength) {
+        stagingStart = pos;
+        stagingLength = (int) Math.min(staging.length, end - pos);
+        buffer.getBytes(staging, 0, pos, stagingLength);
+        index = 0;
+      }
+      return staging[(int) index];
+    }
+  }
+
+  /**
+   * The result of scanning a piece of the data from a given state.
+   */
+  private static final class ScanResult {
+    /** Where the first record after the start of the piece starts, or -1 if none does */
+    long firstRecord = -1;
+    /** The state at the end of the piece */
+    int endState;
+  }
+
+  /**
+   * Scan a range of the data.
+   * @param stopAtRecord stop at the start of the first record, without an end state.
+   */
+  private static ScanResult scan(Cursor cursor, long start, long end, int state,
+                                 boolean atRecordStart, byte delim, byte quote, byte comment,
+                                 boolean stopAtRecord) {
+    ScanResult ret = new ScanResult();
+    for (long pos = start; pos < end; pos++) {
+      byte b = cursor.get(pos, end);
+      boolean newRecord = false;
+      switch (state) {
+        case IN_QUOTE:
+          if (b == quote) {
+            state = AFTER_QUOTE;
+          }
+          break;
+        case IN_COMMENT:
+          if (b == '\n') {
+            state = NORMAL;
+            newRecord = true;
+          }
+          break;
+        case AFTER_QUOTE:
+          if (b == quote) {
+            state = IN_QUOTE;
+          } else if (b == delim) {
+            state = NORMAL;
+          } else if (b == '\n') {
+            state = NORMAL;
+            newRecord = true;
+          } else {
+            // Anything between the closing quote and the delimiter is ignored
+            state = IN_FIELD;
+          }
+          break;
+        case IN_FIELD:
+          if (b == delim) {
+            state = NORMAL;
+          } else if (b == '\n') {
+            state = NORMAL;
+            newRecord = true;
+          }
+          break;
+        default:
+          if (atRecordStart && comment != 0 && b == comment) {
+            state = IN_COMMENT;
+          } else if (quote != 0 && b == quote) {
+            state = IN_QUOTE;
+          } else if (b == '\n') {
+            newRecord = true;
+          } else if (b != delim) {
+            state = IN_FIELD;
+          }
+          break;
+      }
+      atRecordStart = newRecord;
+      if (newRecord && ret.firstRecord < 0) {
+        ret.firstRecord = pos + 1;
+        if (stopAtRecord) {
+          return ret;
+        }
+      }
+    }
+    ret.endState = state;
+    return ret;
+  }
+
+  /**
+   * The results of scanning one piece of the data for each state it could start in.
+   */
+  private static final class Piece {
+    final long start;
+    final long end;
+    final long[] firstRecord = new long[NUM_STATES];
+    final int[] endState = new int[NUM_STATES];
+
+    Piece(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    void scanAll(HostMemoryBuffer buffer, long dataStart, boolean isFirst, byte delim,
+                 byte quote, byte comment) {
+      Cursor cursor = new Cursor(buffer);
+      boolean atRecordStart = start == dataStart || cursor.get(start - 1, end) == '\n';
+      for (int state = 0; state < NUM_STATES; state++) {
+        if (isFirst && state != NORMAL) {
+          continue;
+        }
+        if ((state == IN_COMMENT && comment == 0) ||
+            ((state == IN_QUOTE || state == AFTER_QUOTE) && quote == 0)) {
+          // Impossible, so it is never picked
+          continue;
+        }
+        ScanResult first = scan(cursor, start, end, state, state == NORMAL && atRecordStart,
+            delim, quote, comment, true);
+        firstRecord[state] = first.firstRecord;
+        if (first.firstRecord < 0) {
+          // scan again to find the end state, this is rare because it is a piece without
+          // a single record boundary in it
+          endState[state] = scan(cursor, start, end, state, state == NORMAL && atRecordStart,
+              delim, quote, comment, false).endState;
+          continue;
+        }
+        // Every state is the same once a record starts, so only scan the rest once per start
+        boolean found = false;
+        for (int prev = 0; prev < state; prev++) {
+          if (firstRecord[prev] == first.firstRecord) {
+            endState[state] = endState[prev];
+            found = true;
+            break;
+          }
+        }
+        if (!found) {
+          endState[state] = scan(cursor, first.firstRecord, end, NORMAL, true, delim, quote,
+              comment, false).endState;
+        }
+      }
+    }
+  }
+
+  /**
+   * Split CSV data into chunks of whole records.
+   * @param opts the options the data will be parsed with. The delimiter, quote, comment and
+   *             header row are used to find records.
+   * @param buffer the buffer holding the data.
+   * @param offset where the data starts in the buffer.
+   * @param len the length of the data.
+   * @param numChunks how many chunks to try and split the data into.
+   * @param pool used to scan pieces of the data in parallel, or null to scan them on the
+   *             calling thread.
+   * @return the splitter, which does not own the buffer.
+   */
+  public static CSVSplitter split(CSVOptions opts, HostMemoryBuffer buffer, long offset,
+                                  long len, int numChunks, ExecutorService pool) {
+    if (numChunks <= 0) {
+      throw new IllegalArgumentException("The number of chunks must be positive");
+    }
+    if (offset < 0 || len < 0 || offset + len > buffer.getLength()) {
+      throw new IllegalArgumentException("Range " + offset + " + " + len + " is outside of " +
+          "a buffer of " + buffer.getLength() + " bytes");
+    }
+    byte delim = opts.getDelim();
+    byte quote = opts.getQuote();
+    byte comment = opts.getComment();
+    long end = offset + len;
+
+    // Find the header and skip everything before it
+    long dataStart = offset;
+    long headerOffset = -1;
+    long headerLength = 0;
+    int headerRow = opts.getHeaderRow();
+    if (headerRow >= 0) {
+      Cursor cursor = new Cursor(buffer);
+      for (int row = 0; row <= headerRow && dataStart < end; row++) {
+        ScanResult r = scan(cursor, dataStart, end, NORMAL, true, delim, quote, comment, true);
+        long next = r.firstRecord < 0 ? end : r.firstRecord;
+        if (row == headerRow) {
+          headerOffset = dataStart;
+          headerLength = next - dataStart;
+        }
+        dataStart = next;
+      }
+    }
+
+    List<Chunk> chunks = new ArrayList<>();
+    long dataLength = end - dataStart;
+    if (dataLength <= 0) {
+      return new CSVSplitter(opts, buffer, headerOffset, headerLength, chunks);
+    }
+    int numPieces = (int) Math.max(1, Math.min(numChunks, dataLength));
+
+    // First pass, scan each piece for every state it could start in. Each piece after the
+    // first starts one byte early, so a record that starts right at the cut is found.
+    Piece[] pieces = new Piece[numPieces];
+    long pieceStart = dataStart;
+    for (int i = 0; i < numPieces; i++) {
+      long pieceEnd = i == numPieces - 1 ? end : dataStart + dataLength * (i + 1) / numPieces - 1;
+      pieces[i] = new Piece(pieceStart, pieceEnd);
+      pieceStart = pieceEnd;
+    }
+    if (pool == null || numPieces == 1) {
+      for (int i = 0; i < numPieces; i++) {
+        pieces[i].scanAll(buffer, dataStart, i == 0, delim, quote, comment);
+      }
+    } else {
+      List<Future<?>> futures = new ArrayList<>(numPieces);
+      for (int i = 0; i < numPieces; i++) {
+        Piece p = pieces[i];
+        boolean isFirst = i == 0;
+        long start = dataStart;
+        futures.add(pool.submit(() -> p.scanAll(buffer, start, isFirst, delim, quote,
+            comment)));
+      }
+      waitFor(futures);
+    }
+
+    // Second pass, follow the real state from piece to piece
+    List<Long> starts = new ArrayList<>(numPieces);
+    starts.add(dataStart);
+    int state = NORMAL;
+    for (int i = 0; i < numPieces; i++) {
+      Piece p = pieces[i];
+      long first = p.firstRecord[state];
+      if (i > 0 && first >= 0 && first < end && first > starts.get(starts.size() - 1)) {
+        starts.add(first);
+      }
+      state = p.endState[state];
+    }
+    for (int i = 0; i < starts.size(); i++) {
+      long chunkEnd = i == starts.size() - 1 ? end : starts.get(i + 1);
+      chunks.add(new Chunk(starts.get(i), chunkEnd - starts.get(i)));
+    }
+    return new CSVSplitter(opts, buffer, headerOffset, headerLength, chunks);
+  }
+
+  private static void waitFor(List<? extends Future<?>> futures) {
+    RuntimeException error = null;
+    for (Future<?> f : futures) {
+      try {
+        f.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        if (error == null) {
+          error = new RuntimeException("Interrupted while splitting CSV data", e);
+        }
+      } catch (ExecutionException e) {
+        if (error == null) {
+          error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() :
+              new RuntimeException(e.getCause());
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * Read one chunk on the GPU. If the column names come from the header it is put in front of
+   * the chunk, otherwise the chunk is read in place without one.
+   */
+  private Table readChunk(Schema schema, int index) {
+    Chunk chunk = chunks.get(index);
+    if (headerLength == 0 || schema.getColumnNames() != null) {
+      return Table.readCSV(schema, opts, buffer, chunk.offset, chunk.length, -1);
+    }
+    if (index == 0) {
+      // The first chunk follows the header in the buffer
+      return Table.readCSV(schema, opts, buffer, headerOffset,
+          chunk.offset + chunk.length - headerOffset, 0);
+    }
+    try (HostMemoryBuffer withHeader = HostMemoryBuffer.allocate(headerLength + chunk.length)) {
+      withHeader.copyFromHostBuffer(0, buffer, headerOffset, headerLength);
+      withHeader.copyFromHostBuffer(headerLength, buffer, chunk.offset, chunk.length);
+      return Table.readCSV(schema, opts, withHeader, 0, withHeader.getLength(), 0);
+    }
+  }
+
+  /**
+   * Read each chunk as its own table on the GPU.
+   * @param schema the schema of the data. If it does not name the columns they are taken from
+   *               the header, which is then given to the reader of every chunk.
+   * @param pool used to read chunks concurrently, or null to read them on the calling thread.
+   * @return a table per chunk, in order, owned by the caller.
+   */
+  public Table[] readCSV(Schema schema, ExecutorService pool) {
+    Table[] ret = new Table[chunks.size()];
+    boolean success = false;
+    try {
+      if (pool == null) {
+        for (int i = 0; i < ret.length; i++) {
+          ret[i] = readChunk(schema, i);
+        }
+      } else {
+        List<Future<Table>> futures = new ArrayList<>(ret.length);
+        for (int i = 0; i < ret.length; i++) {
+          int index = i;
+          futures.add(pool.submit(() -> readChunk(schema, index)));
+        }
+        try {
+          waitFor(futures);
+        } finally {
+          // Collect everything that was read, even on failure, so it can be closed
+          for (int i = 0; i < ret.length; i++) {
+            try {
+              ret[i] = futures.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+              // Already reported by waitFor
+            }
+          }
+        }
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        for (Table t : ret) {
+          if (t != null) {
+            t.close();
+          }
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Memory map a CSV file, split it and read each chunk as its own table on the GPU.
+   * @param numChunks how many chunks to try and split the file into.
+   * @param pool used to split and read chunks concurrently, or null to do it all on the
+   *             calling thread.
+   * @return a table per chunk, in order, owned by the caller.
+   */
+  public static Table[] readCSV(Schema schema, CSVOptions opts, File path, int numChunks,
+                                ExecutorService pool) throws IOException {
+    long len = path.length();
+    if (len == 0) {
+      return new Table[0];
+    }
+    try (HostMemoryBuffer mapped = HostMemoryBuffer.mapFile(path, FileChannel.MapMode.READ_ONLY,
+        0, len)) {
+      return split(opts, mapped, 0, len, numChunks, pool).readCSV(schema, pool);
+    }
+  }
+}
@@ -0,0 +1,517 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Builds a non-nested host column whose buffers grow in chunks instead of being doubled and
+ * copied like {@link HostColumnVector.ColumnBuilder}. The first chunk of each buffer is sized
+ * from a capacity plan, the estimated number of rows times the bytes per row, so when the plan
+ * is right nothing grows at all. When it is not more chunks are added and the data already
+ * written stays where it is. {@link #build()} copies the chunks into a single buffer of exactly
+ * the right size, or hands over the only chunk if it does not have much slack.
+ * <p/>
+ * Unlike a ColumnBuilder a ChunkedColumnBuilder can be reused after it is built, which is how
+ * {@link HostTableBuilder} rolls over into new batches.
+ */
+public final class ChunkedColumnBuilder implements AutoCloseable {
+  /** Default size of the chunks added once the planned capacity is used up. */
+  public static final long DEFAULT_CHUNK_BYTES = 8 * 1024 * 1024;
+  /** Default estimate for the average length in bytes of a string. */
+  public static final int DEFAULT_STRING_BYTES_PER_ROW = 16;
+
+  private final DType type;
+  private final long chunkBytes;
+  private final Chunks data;
+  private final Chunks offsets;
+  private Chunks valid = null;
+  private long estimatedRows;
+  private long bytesPerRow;
+  private long rows = 0;
+  private long nullCount = 0;
+  private long dataLength = 0;
+
+  /**
+   * Create a builder.
+   * @param type the type of the column, nested types are not supported.
+   * @param estimatedRows the number of rows to plan capacity for.
+   * @param bytesPerRow the estimated average size in bytes of a string, ignored for fixed
+   *                    width types.
+   * @param chunkBytes the size of the chunks added after the planned capacity is used.
+   */
+  public ChunkedColumnBuilder(DType type, long estimatedRows, int bytesPerRow, long chunkBytes) {
+    if (type.isNestedType() || type.equals(DType.EMPTY)) {
+      throw new UnsupportedOperationException(type + " is not supported");
+    }
+    if (chunkBytes < 64) {
+      throw new IllegalArgumentException("Chunks must be at least 64 bytes");
+    }
+    this.type = type;
+    this.chunkBytes = chunkBytes;
+    this.data = new Chunks(chunkBytes, false);
+    this.offsets = type.equals(DType.STRING) ? new Chunks(chunkBytes, false) : null;
+    setCapacityHint(estimatedRows, bytesPerRow);
+  }
+
+  /**
+   * Create a builder using {@link #DEFAULT_CHUNK_BYTES}.
+   */
+  public ChunkedColumnBuilder(DType type, long estimatedRows, int bytesPerRow) {
+    this(type, estimatedRows, bytesPerRow, DEFAULT_CHUNK_BYTES);
+  }
+
+  /**
+   * Create a builder using {@link #DEFAULT_STRING_BYTES_PER_ROW} and
+   * {@link #DEFAULT_CHUNK_BYTES}.
+   */
+  public ChunkedColumnBuilder(DType type, long estimatedRows) {
+    this(type, estimatedRows, DEFAULT_STRING_BYTES_PER_ROW, DEFAULT_CHUNK_BYTES);
+  }
+
+  /**
+   * Update the capacity plan. This only has an effect on buffers that have not been allocated
+   * yet, so it is normally called right after {@link #build()}.
+   * @param estimatedRows the number of rows to plan capacity for.
+   * @param bytesPerRow the estimated average size in bytes of a string, ignored for fixed
+   *                    width types.
+   */
+  public void setCapacityHint(long estimatedRows, int bytesPerRow) {
+    if (estimatedRows < 0 || bytesPerRow < 0) {
+      throw new IllegalArgumentException("Capacity hints cannot be negative");
+    }
+    this.estimatedRows = Math.max(1, estimatedRows);
+    this.bytesPerRow = type.equals(DType.STRING) ? bytesPerRow : type.getSizeInBytes();
+  }
+
+  public DType getType() {
+    return type;
+  }
+
+  /**
+   * Get the number of rows appended since the column was last built.
+   */
+  public long getRowCount() {
+    return rows;
+  }
+
+  public long getNullCount() {
+    return nullCount;
+  }
+
+  /**
+   * Get the number of bytes of data, offsets and validity the appended rows need. This is what
+   * the built column will take up, not how much memory is allocated right now.
+   */
+  public long getSizeInBytes() {
+    long ret = dataLength;
+    if (offsets != null) {
+      ret += (rows + 1) * HostColumnVector.OFFSET_SIZE;
+    }
+    if (valid != null) {
+      ret += BitVectorHelper.getValidityLengthInBytes(rows);
+    }
+    return ret;
+  }
+
+  /**
+   * Get the number of bytes in the data buffer for the rows appended since the last build.
+   */
+  public long getDataLength() {
+    return dataLength;
+  }
+
+  private long fixedWidthOffset() {
+    long off = dataLength;
+    data.reserve(off + type.getSizeInBytes(), estimatedRows * bytesPerRow);
+    dataLength += type.getSizeInBytes();
+    return off;
+  }
+
+  private ChunkedColumnBuilder endRow() {
+    if (rows + 1 >= Integer.MAX_VALUE) {
+      throw new IllegalStateException("A column cannot have more than " +
+          (Integer.MAX_VALUE - 1) + " rows");
+    }
+    rows++;
+    if (offsets != null) {
+      offsets.reserve((rows + 1) * HostColumnVector.OFFSET_SIZE,
+          (estimatedRows + 1) * HostColumnVector.OFFSET_SIZE);
+      if (rows == 1) {
+        offsets.setInt(0, 0);
+      }
+      offsets.setInt(rows * HostColumnVector.OFFSET_SIZE, (int) dataLength);
+    }
+    if (valid != null) {
+      valid.reserve(BitVectorHelper.getValidityLengthInBytes(rows),
+          BitVectorHelper.getValidityAllocationSizeInBytes(estimatedRows));
+    }
+    return this;
+  }
+
+  public ChunkedColumnBuilder append(byte value) {
+    assert type.isBackedByByte() : type + " is not stored as a byte.";
+    data.setByte(fixedWidthOffset(), value);
+    return endRow();
+  }
+
+  public ChunkedColumnBuilder append(boolean value) {
+    assert type.equals(DType.BOOL8) : type + " is not a supported boolean type.";
+    data.setByte(fixedWidthOffset(), value ? (byte) 1 : 0);
+    return endRow();
+  }
+
+  public ChunkedColumnBuilder append(short value) {
+    assert type.isBackedByShort() : type + " is not stored as a short.";
+    data.setShort(fixedWidthOffset(), value);
+    return endRow();
+  }
+
+  public ChunkedColumnBuilder append(int value) {
+    assert type.isBackedByInt() : type + " is not stored as a int.";
+    data.setInt(fixedWidthOffset(), value);
+    return endRow();
+  }
+
+  public ChunkedColumnBuilder append(long value) {
+    assert type.isBackedByLong() : type + " is not stored as a long.";
+    data.setLong(fixedWidthOffset(), value);
+    return endRow();
+  }
+
+  public ChunkedColumnBuilder append(float value) {
+    assert type.equals(DType.FLOAT32) : type + " is not a supported float type.";
+    data.setFloat(fixedWidthOffset(), value);
+    return endRow();
+  }
+
+  public ChunkedColumnBuilder append(double value) {
+    assert type.equals(DType.FLOAT64) : type + " is not a supported double type.";
+    data.setDouble(fixedWidthOffset(), value);
+    return endRow();
+  }
+
+  public ChunkedColumnBuilder append(BigDecimal value) {
+    // Rescale input decimal with UNNECESSARY policy, which accepts no precision loss.
+    BigInteger unscaledVal = value.setScale(-type.getScale(), RoundingMode.UNNECESSARY)
+        .unscaledValue();
+    if (type.typeId == DType.DTypeEnum.DECIMAL32) {
+      data.setInt(fixedWidthOffset(), unscaledVal.intValueExact());
+    } else if (type.typeId == DType.DTypeEnum.DECIMAL64) {
+      data.setLong(fixedWidthOffset(), unscaledVal.longValueExact());
+    } else {
+      throw new IllegalStateException(type + " is not a supported decimal type.");
+    }
+    return endRow();
+  }
+
+  public ChunkedColumnBuilder append(String value) {
+    assert value != null : "appendNull must be used to append null strings";
+    return appendUTF8String(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public ChunkedColumnBuilder appendUTF8String(byte[] value) {
+    return appendUTF8String(value, 0, value.length);
+  }
+
+  public ChunkedColumnBuilder appendUTF8String(byte[] value, int srcOffset, int length) {
+    assert value != null : "appendNull must be used to append null strings";
+    assert srcOffset >= 0;
+    assert length >= 0;
+    assert srcOffset + length <= value.length;
+    assert type.equals(DType.STRING) : " type " + type + " is not String";
+    if (dataLength + length > Integer.MAX_VALUE) {
+      throw new IllegalStateException("A string column cannot have more than " +
+          Integer.MAX_VALUE + " bytes of data, build or roll over to a new batch first");
+    }
+    if (length > 0) {
+      data.reserve(dataLength + length, estimatedRows * bytesPerRow);
+      data.setBytes(dataLength, value, srcOffset, length);
+      dataLength += length;
+    }
+    return endRow();
+  }
+
+  public ChunkedColumnBuilder appendNull() {
+    if (!type.equals(DType.STRING)) {
+      fixedWidthOffset();
+    }
+    endRow();
+    if (valid == null) {
+      valid = new Chunks(Math.max(64, chunkBytes / 8), true);
+      valid.reserve(BitVectorHelper.getValidityLengthInBytes(rows),
+          BitVectorHelper.getValidityAllocationSizeInBytes(estimatedRows));
+    }
+    long index = rows - 1;
+    byte current = valid.getByte(index / 8);
+    valid.setByte(index / 8, (byte) (current & ~(1 << (index % 8))));
+    nullCount++;
+    return this;
+  }
+
+  /**
+   * Build the column from everything appended since the last build. The chunks are compacted
+   * into exactly sized buffers and the builder is reset so it can be used again.
+   */
+  public HostColumnVector build() {
+    HostMemoryBuffer d = null;
+    HostMemoryBuffer o = null;
+    HostMemoryBuffer v = null;
+    boolean success = false;
+    try {
+      if (dataLength > 0) {
+        d = data.compact(dataLength);
+      }
+      if (offsets != null) {
+        if (rows == 0) {
+          o = HostMemoryBuffer.allocate(HostColumnVector.OFFSET_SIZE);
+          o.setInt(0, 0);
+        } else {
+          o = offsets.compact((rows + 1) * HostColumnVector.OFFSET_SIZE);
+        }
+      }
+      if (valid != null) {
+        long validLength = BitVectorHelper.getValidityAllocationSizeInBytes(rows);
+        // The padding past the last row is set to valid like ColumnBuilder does
+        valid.reserve(validLength, validLength);
+        v = valid.compact(validLength);
+      }
+      HostColumnVector ret = new HostColumnVector(type, rows, Optional.of(nullCount), d, v, o,
+          new ArrayList<>());
+      success = true;
+      return ret;
+    } finally {
+      if (!success) {
+        for (HostMemoryBuffer b : Arrays.asList(d, o, v)) {
+          if (b != null) {
+            b.close();
+          }
+        }
+      }
+      data.clear();
+      if (offsets != null) {
+        offsets.clear();
+      }
+      if (valid != null) {
+        valid.close();
+        valid = null;
+      }
+      rows = 0;
+      nullCount = 0;
+      dataLength = 0;
+    }
+  }
+
+  @Override
+  public void close() {
+    data.close();
+    if (offsets != null) {
+      offsets.close();
+    }
+    if (valid != null) {
+      valid.close();
+      valid = null;
+    }
+  }
+
+  /**
+   * A logical buffer made of a list of chunks. Appends always go to the end, so the last chunk
+   * is cached. Every chunk is a multiple of 64 bytes, so aligned values of 8 bytes or less are
+   * never split between two chunks.
+   */
+  static final class Chunks implements AutoCloseable {
+    /** When the only chunk has no more than 1/SLACK_FRACTION slack it is used as is. */
+    private static final int SLACK_FRACTION = 8;
+
+    private final long chunkBytes;
+    private final boolean fillValid;
+    private final ArrayList<HostMemoryBuffer> buffers = new ArrayList<>();
+    private long[] starts = new long[8];
+    private long capacity = 0;
+    private HostMemoryBuffer last = null;
+    private long lastStart = 0;
+
+    Chunks(long chunkBytes, boolean fillValid) {
+      this.chunkBytes = chunkBytes;
+      this.fillValid = fillValid;
+    }
+
+    private static long roundUp(long bytes) {
+      return ((bytes + 63) / 64) * 64;
+    }
+
+    /**
+     * Make sure there is room for at least end bytes.
+     * @param planned the size to use for the first chunk.
+     */
+    void reserve(long end, long planned) {
+      if (end <= capacity) {
+        return;
+      }
+      long size = buffers.isEmpty() ? Math.max(planned, end) :
+          Math.max(chunkBytes, end - capacity);
+      size = roundUp(size);
+      HostMemoryBuffer chunk = HostMemoryBuffer.allocate(size);
+      if (fillValid) {
+        chunk.setMemory(0, size, (byte) 0xFF);
+      }
+      if (buffers.size() == starts.length) {
+        starts = Arrays.copyOf(starts, starts.length * 2);
+      }
+      starts[buffers.size()] = capacity;
+      buffers.add(chunk);
+      last = chunk;
+      lastStart = capacity;
+      capacity += size;
+    }
+
+    private int find(long offset) {
+      int i = buffers.size() - 1;
+      while (starts[i] > offset) {
+        i--;
+      }
+      return i;
+    }
+
+    byte getByte(long offset) {
+      if (offset >= lastStart) {
+        return last.getByte(offset - lastStart);
+      }
+      int i = find(offset);
+      return buffers.get(i).getByte(offset - starts[i]);
+    }
+
+    void setByte(long offset, byte value) {
+      if (offset >= lastStart) {
+        last.setByte(offset - lastStart, value);
+      } else {
+        int i = find(offset);
+        buffers.get(i).setByte(offset - starts[i], value);
+      }
+    }
+
+    void setShort(long offset, short value) {
+      if (offset >= lastStart) {
+        last.setShort(offset - lastStart, value);
+      } else {
+        int i = find(offset);
+        buffers.get(i).setShort(offset - starts[i], value);
+      }
+    }
+
+    void setInt(long offset, int value) {
+      if (offset >= lastStart) {
+        last.setInt(offset - lastStart, value);
+      } else {
+        int i = find(offset);
+        buffers.get(i).setInt(offset - starts[i], value);
+      }
+    }
+
+    void setLong(long offset, long value) {
+      if (offset >= lastStart) {
+        last.setLong(offset - lastStart, value);
+      } else {
+        int i = find(offset);
+        buffers.get(i).setLong(offset - starts[i], value);
+      }
+    }
+
+    void setFloat(long offset, float value) {
+      setInt(offset, Float.floatToRawIntBits(value));
+    }
+
+    void setDouble(long offset, double value) {
+      setLong(offset, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Copy bytes in, splitting them across chunks if needed.
+     */
+    void setBytes(long offset, byte[] src, long srcOffset, long length) {
+      int i = find(offset);
+      while (length > 0) {
+        HostMemoryBuffer chunk = buffers.get(i);
+        long chunkOffset = offset - starts[i];
+        long toCopy = Math.min(length, chunk.getLength() - chunkOffset);
+        chunk.setBytes(chunkOffset, src, srcOffset, toCopy);
+        offset += toCopy;
+        srcOffset += toCopy;
+        length -= toCopy;
+        i++;
+      }
+    }
+
+    /**
+     * Turn the first length bytes into a single buffer owned by the caller and release all of
+     * the chunks.
+     */
+    HostMemoryBuffer compact(long length) {
+      assert length <= capacity : length + " is larger than the capacity " + capacity;
+      try {
+        if (buffers.size() == 1 && capacity - length <= capacity / SLACK_FRACTION) {
+          return buffers.remove(0);
+        }
+        HostMemoryBuffer ret = HostMemoryBuffer.allocate(length);
+        copyTo(ret, 0, length);
+        return ret;
+      } finally {
+        clear();
+      }
+    }
+
+    /**
+     * Copy the first length bytes into another buffer.
+     */
+    void copyTo(HostMemoryBuffer dst, long dstOffset, long length) {
+      assert length <= capacity : length + " is larger than the capacity " + capacity;
+      long copied = 0;
+      for (int i = 0; i < buffers.size() && copied < length; i++) {
+        HostMemoryBuffer chunk = buffers.get(i);
+        long toCopy = Math.min(chunk.getLength(), length - copied);
+        dst.copyFromHostBuffer(dstOffset + copied, chunk, 0, toCopy);
+        copied += toCopy;
+      }
+    }
+
+    /**
+     * Release all of the chunks.
+     */
+    void clear() {
+      for (HostMemoryBuffer chunk : buffers) {
+        chunk.close();
+      }
+      buffers.clear();
+      capacity = 0;
+      last = null;
+      lastStart = 0;
+    }
+
+    @Override
+    public void close() {
+      clear();
+    }
+  }
+}
@@ -0,0 +1,324 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A single logical host column made up of several chunks, like the batches an operator
+ * received, without concatenating them. Row lookups find the chunk with a binary search over
+ * the row offset of each chunk. The chunk of the last lookup is remembered so walking the rows
+ * in order does not search at all.
+ * <p/>
+ * For bulk work {@link #forEachChunk(ChunkVisitor)} hands out each chunk with the row it starts
+ * at, so the work can run directly against the chunk buffers or a {@link HostColumnCursor}.
+ * When a consumer really does need contiguous buffers {@link #getCompacted()} concatenates the
+ * chunks once and keeps the result.
+ */
+public final class ChunkedHostColumn implements AutoCloseable {
+
+  /**
+   * Visits the chunks of a column in order.
+   */
+  public interface ChunkVisitor {
+    /**
+     * @param chunk the chunk.
+     * @param startRow the row of the logical column where the chunk starts.
+     */
+    void visit(HostColumnVectorCore chunk, long startRow);
+  }
+
+  private final HostColumnVectorCore[] chunks;
+  private final List<HostColumnVector> owned;
+  /** The row each chunk starts at, plus the total row count at the end. */
+  private final long[] starts;
+  private final DType type;
+  private HostColumnVector compacted = null;
+  private int lastChunk = 0;
+
+  private ChunkedHostColumn(HostColumnVectorCore[] chunks, List<HostColumnVector> owned) {
+    if (chunks.length == 0) {
+      throw new IllegalArgumentException("At least one chunk is needed");
+    }
+    this.type = chunks[0].getType();
+    this.chunks = chunks;
+    this.owned = owned;
+    this.starts = new long[chunks.length + 1];
+    for (int i = 0; i < chunks.length; i++) {
+      if (!type.equals(chunks[i].getType())) {
+        throw new IllegalArgumentException("All chunks must have the same type, expected " +
+            type + " but found " + chunks[i].getType());
+      }
+      starts[i + 1] = starts[i] + chunks[i].getRowCount();
+    }
+  }
+
+  /**
+   * Create a column from vectors. The reference count of each vector is incremented, so the
+   * caller still owns the vectors it passed in.
+   */
+  public static ChunkedHostColumn fromVectors(HostColumnVector... chunks) {
+    List<HostColumnVector> owned = new ArrayList<>(chunks.length);
+    for (HostColumnVector cv : chunks) {
+      owned.add(cv.incRefCount());
+    }
+    try {
+      return new ChunkedHostColumn(chunks.clone(), owned);
+    } catch (RuntimeException e) {
+      for (HostColumnVector cv : owned) {
+        cv.close();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Create a column from views, like the children of other columns. The views are not owned
+   * by the returned column and must stay open for as long as it is used.
+   */
+  public static ChunkedHostColumn fromViews(List<? extends HostColumnVectorCore> chunks) {
+    return new ChunkedHostColumn(chunks.toArray(new HostColumnVectorCore[0]),
+        new ArrayList<>());
+  }
+
+  public DType getType() {
+    return type;
+  }
+
+  public long getRowCount() {
+    return starts[chunks.length];
+  }
+
+  public long getNullCount() {
+    long ret = 0;
+    for (HostColumnVectorCore chunk : chunks) {
+      ret += chunk.getNullCount();
+    }
+    return ret;
+  }
+
+  public boolean hasNulls() {
+    return getNullCount() > 0;
+  }
+
+  public int getNumChunks() {
+    return chunks.length;
+  }
+
+  public HostColumnVectorCore getChunk(int index) {
+    return chunks[index];
+  }
+
+  /**
+   * Get the row of the logical column where a chunk starts.
+   */
+  public long getChunkStartRow(int index) {
+    return starts[index];
+  }
+
+  /**
+   * Find the chunk that holds a row.
+   */
+  public int findChunk(long row) {
+    if (row < 0 || row >= getRowCount()) {
+      throw new IndexOutOfBoundsException("Row " + row + " is out of range for " +
+          getRowCount() + " rows");
+    }
+    int last = lastChunk;
+    if (row >= starts[last] && row < starts[last + 1]) {
+      return last;
+    }
+    if (last + 1 < chunks.length && row >= starts[last + 1] && row < starts[last + 2]) {
+      lastChunk = last + 1;
+      return last + 1;
+    }
+    int found = Arrays.binarySearch(starts, row);
+    // An exact match is the start of a chunk, but empty chunks share a start with the next one
+    int chunk = found >= 0 ? found : -found - 2;
+    while (starts[chunk + 1] <= row) {
+      chunk++;
+    }
+    lastChunk = chunk;
+    return chunk;
+  }
+
+  private long localRow(int chunk, long row) {
+    return row - starts[chunk];
+  }
+
+  public boolean isNull(long row) {
+    int c = findChunk(row);
+    return chunks[c].isNull(localRow(c, row));
+  }
+
+  public byte getByte(long row) {
+    int c = findChunk(row);
+    return chunks[c].getByte(localRow(c, row));
+  }
+
+  public boolean getBoolean(long row) {
+    int c = findChunk(row);
+    return chunks[c].getBoolean(localRow(c, row));
+  }
+
+  public short getShort(long row) {
+    int c = findChunk(row);
+    return chunks[c].getShort(localRow(c, row));
+  }
+
+  public int getInt(long row) {
+    int c = findChunk(row);
+    return chunks[c].getInt(localRow(c, row));
+  }
+
+  public long getLong(long row) {
+    int c = findChunk(row);
+    return chunks[c].getLong(localRow(c, row));
+  }
+
+  public float getFloat(long row) {
+    int c = findChunk(row);
+    return chunks[c].getFloat(localRow(c, row));
+  }
+
+  public double getDouble(long row) {
+    int c = findChunk(row);
+    return chunks[c].getDouble(localRow(c, row));
+  }
+
+  public BigDecimal getBigDecimal(long row) {
+    int c = findChunk(row);
+    return chunks[c].getBigDecimal(localRow(c, row));
+  }
+
+  public byte[] getUTF8(long row) {
+    int c = findChunk(row);
+    return chunks[c].getUTF8(localRow(c, row));
+  }
+
+  /**
+   * Point a view at the string in a row without copying it.
+   * @return view, for chaining.
+   */
+  public Utf8View getUTF8View(long row, Utf8View view) {
+    int c = findChunk(row);
+    return chunks[c].getUTF8View(localRow(c, row), view);
+  }
+
+  public String getJavaString(long row) {
+    int c = findChunk(row);
+    return chunks[c].getJavaString(localRow(c, row));
+  }
+
+  public List getList(long row) {
+    int c = findChunk(row);
+    return chunks[c].getList(localRow(c, row));
+  }
+
+  public HostColumnVector.StructData getStruct(long row) {
+    int c = findChunk(row);
+    return chunks[c].getStruct((int) localRow(c, row));
+  }
+
+  /**
+   * Visit every chunk in order.
+   */
+  public void forEachChunk(ChunkVisitor visitor) {
+    for (int i = 0; i < chunks.length; i++) {
+      visitor.visit(chunks[i], starts[i]);
+    }
+  }
+
+  /**
+   * Visit the chunks that overlap a range of rows, in order.
+   * @param startRow the first row of the range.
+   * @param endRow one past the last row of the range.
+   */
+  public void forEachChunk(long startRow, long endRow, ChunkVisitor visitor) {
+    if (startRow < 0 || startRow > endRow || endRow > getRowCount()) {
+      throw new IndexOutOfBoundsException("Range " + startRow + " to " + endRow +
+          " is out of range for " + getRowCount() + " rows");
+    }
+    if (startRow == endRow) {
+      return;
+    }
+    for (int i = findChunk(startRow); i < chunks.length && starts[i] < endRow; i++) {
+      visitor.visit(chunks[i], starts[i]);
+    }
+  }
+
+  /**
+   * Copy the values of a range of rows of a column stored as longs into an array, a chunk at a
+   * time. The values copied for null rows are undefined.
+   */
+  public void getLongs(long startRow, long[] dst, int dstOffset, int count) {
+    assert type.isBackedByLong() : type + " is not stored as a long.";
+    if (count < 0 || dstOffset < 0 || dstOffset + count > dst.length) {
+      throw new IndexOutOfBoundsException("Not enough room to copy " + count + " values");
+    }
+    long endRow = startRow + count;
+    forEachChunk(startRow, endRow, (chunk, chunkStart) -> {
+      long from = Math.max(startRow, chunkStart);
+      long to = Math.min(endRow, chunkStart + chunk.getRowCount());
+      if (to > from) {
+        chunk.getData().getLongs(dst, dstOffset + (from - startRow), (from - chunkStart) * 8,
+            (int) (to - from));
+      }
+    });
+  }
+
+  /**
+   * Get the column as a single contiguous vector. If there is only one chunk and it is a
+   * vector it is returned as is. Otherwise the chunks are concatenated the first time this is
+   * called and the result is kept. The returned vector is owned by this column, call
+   * {@link HostColumnVector#incRefCount()} to keep it after this column is closed.
+   */
+  public HostColumnVector getCompacted() {
+    if (compacted == null) {
+      if (chunks.length == 1 && chunks[0] instanceof HostColumnVector) {
+        compacted = ((HostColumnVector) chunks[0]).incRefCount();
+      } else {
+        compacted = HostColumnVector.concatenateViews(chunks);
+      }
+    }
+    return compacted;
+  }
+
+  /**
+   * Has the column been compacted into a single vector yet.
+   */
+  public boolean isCompacted() {
+    return compacted != null;
+  }
+
+  @Override
+  public void close() {
+    if (compacted != null) {
+      compacted.close();
+      compacted = null;
+    }
+    for (HostColumnVector cv : owned) {
+      cv.close();
+    }
+    owned.clear();
+  }
+}
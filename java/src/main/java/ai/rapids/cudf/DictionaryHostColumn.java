@@ -0,0 +1,511 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * A dictionary encoded host string column. Each row is an INT32 code that indexes into a
+ * dictionary of unique strings. Nulls are stored in the validity of the codes and the
+ * dictionary itself never has nulls.
+ * <p/>
+ * The dictionary is sorted byte wise, the same order the device uses for strings, so ordering
+ * two rows only needs their codes. Hashes are computed once per dictionary entry and looked up
+ * by code. Strings are only decoded when they are asked for, and {@link #decode()} builds a
+ * plain STRING column for code that needs one.
+ */
+public final class DictionaryHostColumn implements AutoCloseable {
+  private final HostColumnVector codes;
+  private final HostColumnVector dictionary;
+
+  private DictionaryHostColumn(HostColumnVector codes, HostColumnVector dictionary) {
+    this.codes = codes;
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * Create a builder.
+   * @param estimatedRows the number of rows to plan capacity for.
+   */
+  public static Builder builder(long estimatedRows) {
+    return new Builder(estimatedRows);
+  }
+
+  /**
+   * Dictionary encode a STRING column.
+   */
+  public static DictionaryHostColumn encode(HostColumnVectorCore strings) {
+    if (!strings.getType().equals(DType.STRING)) {
+      throw new IllegalArgumentException("Only STRING columns can be dictionary encoded, not " +
+          strings.getType());
+    }
+    long numRows = strings.getRowCount();
+    try (Builder builder = new Builder(numRows)) {
+      HostMemoryBuffer data = strings.getData();
+      HostMemoryBuffer offsets = strings.getOffsets();
+      boolean hasValidity = strings.hasValidityVector();
+      byte[] value = new byte[0];
+      for (long row = 0; row < numRows; row++) {
+        if (hasValidity && strings.isNull(row)) {
+          builder.appendNull();
+        } else {
+          int start = offsets.getInt(row * HostColumnVector.OFFSET_SIZE);
+          int len = offsets.getInt((row + 1) * HostColumnVector.OFFSET_SIZE) - start;
+          if (value.length < len) {
+            value = new byte[Math.max(len, value.length * 2)];
+          }
+          if (len > 0) {
+            data.getBytes(value, 0, start, len);
+          }
+          builder.appendUTF8String(value, len);
+        }
+      }
+      return builder.build();
+    }
+  }
+
+  public long getRowCount() {
+    return codes.getRowCount();
+  }
+
+  public long getNullCount() {
+    return codes.getNullCount();
+  }
+
+  public boolean isNull(long row) {
+    return codes.isNull(row);
+  }
+
+  /**
+   * Get the INT32 codes. The column is owned by this object.
+   */
+  public HostColumnVector getCodes() {
+    return codes;
+  }
+
+  /**
+   * Get the sorted, unique, non-null STRING dictionary. The column is owned by this object.
+   */
+  public HostColumnVector getDictionary() {
+    return dictionary;
+  }
+
+  public int getDictionarySize() {
+    return (int) dictionary.getRowCount();
+  }
+
+  /**
+   * Get the code of a non-null row.
+   */
+  public int getCode(long row) {
+    assert !codes.isNull(row) : "row " + row + " is null";
+    return codes.getInt(row);
+  }
+
+  /**
+   * Point a view at the string of a non-null row without decoding it.
+   * @return view, for chaining.
+   */
+  public Utf8View getUTF8View(long row, Utf8View view) {
+    return dictionary.getUTF8View(getCode(row), view);
+  }
+
+  public String getJavaString(long row) {
+    return dictionary.getJavaString(getCode(row));
+  }
+
+  /**
+   * Compare two non-null rows using only their codes. This orders the rows the same way as
+   * comparing their strings byte wise.
+   */
+  public int compareRows(long lhsRow, long rhsRow) {
+    return Integer.compare(getCode(lhsRow), getCode(rhsRow));
+  }
+
+  /**
+   * Compute the MURMUR3 hash of each row, the same as
+   * {@link HostHashing#murmurHash3(int, HostColumnVectorCore...)} on the decoded column. Each
+   * dictionary entry is hashed once and rows look up the hash of their code.
+   */
+  public int[] murmurHash3(int seed) {
+    int dictSize = getDictionarySize();
+    int[] dictHashes = new int[dictSize];
+    HostMemoryBuffer data = dictionary.getData();
+    HostMemoryBuffer offsets = dictionary.getOffsets();
+    for (int i = 0; i < dictSize; i++) {
+      int start = offsets.getInt(i * (long) HostColumnVector.OFFSET_SIZE);
+      int end = offsets.getInt((i + 1) * (long) HostColumnVector.OFFSET_SIZE);
+      dictHashes[i] = HostHashing.hashCombine(0,
+          HostHashing.murmurHash3Bytes(seed, data, start, end - start, false));
+    }
+    int numRows = (int) getRowCount();
+    int[] ret = new int[numRows];
+    int nullHash = HostHashing.hashCombine(0, HostHashing.NULL_HASH);
+    boolean hasValidity = codes.hasValidityVector();
+    HostMemoryBuffer codeData = codes.getData();
+    for (int row = 0; row < numRows; row++) {
+      if (hasValidity && codes.isNull(row)) {
+        ret[row] = nullHash;
+      } else {
+        ret[row] = dictHashes[codeData.getInt(row * 4L)];
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Decode into a plain STRING column. The caller owns the returned column.
+   */
+  public HostColumnVector decode() {
+    int numRows = (int) getRowCount();
+    HostMemoryBuffer dictData = dictionary.getData();
+    HostMemoryBuffer dictOffsets = dictionary.getOffsets();
+    HostMemoryBuffer codeData = codes.getData();
+    boolean hasValidity = codes.hasValidityVector();
+    long total = 0;
+    for (int row = 0; row < numRows; row++) {
+      if (!hasValidity || !codes.isNull(row)) {
+        int code = codeData.getInt(row * 4L);
+        total += dictOffsets.getInt((code + 1) * (long) HostColumnVector.OFFSET_SIZE) -
+            dictOffsets.getInt(code * (long) HostColumnVector.OFFSET_SIZE);
+      }
+    }
+    if (total > Integer.MAX_VALUE) {
+      throw new IllegalStateException("The decoded column would have " + total +
+          " bytes of data, which is more than a STRING column can hold");
+    }
+    HostMemoryBuffer data = null;
+    HostMemoryBuffer offsets = null;
+    HostMemoryBuffer valid = null;
+    boolean success = false;
+    try {
+      data = total > 0 ? HostMemoryBuffer.allocate(total) : null;
+      offsets = HostMemoryBuffer.allocate((numRows + 1) * (long) HostColumnVector.OFFSET_SIZE);
+      offsets.setInt(0, 0);
+      int end = 0;
+      for (int row = 0; row < numRows; row++) {
+        if (!hasValidity || !codes.isNull(row)) {
+          int code = codeData.getInt(row * 4L);
+          int start = dictOffsets.getInt(code * (long) HostColumnVector.OFFSET_SIZE);
+          int len = dictOffsets.getInt((code + 1) * (long) HostColumnVector.OFFSET_SIZE) - start;
+          if (len > 0) {
+            data.copyFromHostBuffer(end, dictData, start, len);
+            end += len;
+          }
+        }
+        offsets.setInt((row + 1) * (long) HostColumnVector.OFFSET_SIZE, end);
+      }
+      if (getNullCount() > 0) {
+        HostMemoryBuffer codeValid = codes.getValidity();
+        valid = HostMemoryBuffer.allocate(codeValid.getLength());
+        valid.copyFromHostBuffer(0, codeValid, 0, codeValid.getLength());
+      }
+      HostColumnVector ret = new HostColumnVector(DType.STRING, numRows,
+          Optional.of(getNullCount()), data, valid, offsets, new ArrayList<>());
+      success = true;
+      return ret;
+    } finally {
+      if (!success) {
+        for (HostMemoryBuffer b : Arrays.asList(data, offsets, valid)) {
+          if (b != null) {
+            b.close();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the amount of host memory used by the codes and the dictionary.
+   */
+  public long getHostMemorySize() {
+    return codes.getHostMemorySize() + dictionary.getHostMemorySize();
+  }
+
+  @Override
+  public void close() {
+    codes.close();
+    dictionary.close();
+  }
+
+  /**
+   * Builds a dictionary encoded column one row at a time. Unique strings are found with an open
+   * addressing hash set that, along with the dictionary data, lives off heap.
+   */
+  public static final class Builder implements AutoCloseable {
+    private static final int INITIAL_SLOTS = 1024;
+
+    private final ChunkedColumnBuilder codes;
+    private final Utf8View view = new Utf8View();
+    /** Slots of the hash set, each is 0 if empty or the dictionary index + 1. */
+    private HostMemoryBuffer slots;
+    private int mask;
+    /** The hash of each dictionary entry, used for probing and for growing the set. */
+    private HostMemoryBuffer hashes;
+    private HostMemoryBuffer dictData;
+    private HostMemoryBuffer dictOffsets;
+    private long dictDataLength = 0;
+    private int dictSize = 0;
+
+    private Builder(long estimatedRows) {
+      codes = new ChunkedColumnBuilder(DType.INT32, estimatedRows);
+      boolean success = false;
+      try {
+        slots = HostMemoryBuffer.allocate(INITIAL_SLOTS * 4L);
+        slots.setMemory(0, slots.getLength(), (byte) 0);
+        mask = INITIAL_SLOTS - 1;
+        hashes = HostMemoryBuffer.allocate(INITIAL_SLOTS / 2 * 4L);
+        dictOffsets = HostMemoryBuffer.allocate((INITIAL_SLOTS / 2 + 1) * 4L);
+        dictOffsets.setInt(0, 0);
+        dictData = HostMemoryBuffer.allocate(INITIAL_SLOTS * 8L);
+        success = true;
+      } finally {
+        if (!success) {
+          close();
+        }
+      }
+    }
+
+    /**
+     * Get the number of unique strings seen so far.
+     */
+    public int getDictionarySize() {
+      return dictSize;
+    }
+
+    public long getRowCount() {
+      return codes.getRowCount();
+    }
+
+    public Builder append(String value) {
+      assert value != null : "appendNull must be used to append null strings";
+      byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+      return appendUTF8String(utf8, utf8.length);
+    }
+
+    public Builder appendUTF8String(byte[] value) {
+      return appendUTF8String(value, value.length);
+    }
+
+    /**
+     * Append the first length bytes of value.
+     */
+    public Builder appendUTF8String(byte[] value, int length) {
+      assert value != null : "appendNull must be used to append null strings";
+      assert length >= 0 && length <= value.length;
+      codes.append(findOrInsert(value, length));
+      return this;
+    }
+
+    public Builder appendNull() {
+      codes.appendNull();
+      return this;
+    }
+
+    private boolean entryEquals(int entry, byte[] value, int length) {
+      int start = dictOffsets.getInt(entry * 4L);
+      int end = dictOffsets.getInt((entry + 1) * 4L);
+      if (end - start != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (dictData.getByte(start + i) != value[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int findOrInsert(byte[] value, int length) {
+      int hash = HostHashing.murmurHash3Bytes(0, value, 0, length);
+      int slot = hash & mask;
+      while (true) {
+        int entry = slots.getInt(slot * 4L) - 1;
+        if (entry < 0) {
+          break;
+        }
+        if (hashes.getInt(entry * 4L) == hash && entryEquals(entry, value, length)) {
+          return entry;
+        }
+        slot = (slot + 1) & mask;
+      }
+      if (dictDataLength + length > Integer.MAX_VALUE) {
+        throw new IllegalStateException("A dictionary cannot have more than " +
+            Integer.MAX_VALUE + " bytes of data");
+      }
+      int entry = dictSize;
+      dictData = grow(dictData, dictDataLength + length);
+      if (length > 0) {
+        dictData.setBytes(dictDataLength, value, 0, length);
+      }
+      dictDataLength += length;
+      dictOffsets = grow(dictOffsets, (entry + 2) * 4L);
+      dictOffsets.setInt((entry + 1) * 4L, (int) dictDataLength);
+      hashes = grow(hashes, (entry + 1) * 4L);
+      hashes.setInt(entry * 4L, hash);
+      slots.setInt(slot * 4L, entry + 1);
+      dictSize++;
+      // Keep the set at most half full so probe sequences stay short
+      if (dictSize * 2L > mask + 1L) {
+        rehash();
+      }
+      return entry;
+    }
+
+    private void rehash() {
+      long newSlots = (mask + 1L) * 2;
+      if (newSlots > Integer.MAX_VALUE) {
+        throw new IllegalStateException("Too many unique values for a dictionary");
+      }
+      HostMemoryBuffer next = HostMemoryBuffer.allocate(newSlots * 4);
+      try {
+        next.setMemory(0, next.getLength(), (byte) 0);
+        int newMask = (int) newSlots - 1;
+        for (int entry = 0; entry < dictSize; entry++) {
+          int slot = hashes.getInt(entry * 4L) & newMask;
+          while (next.getInt(slot * 4L) != 0) {
+            slot = (slot + 1) & newMask;
+          }
+          next.setInt(slot * 4L, entry + 1);
+        }
+        slots.close();
+        slots = next;
+        next = null;
+        mask = newMask;
+      } finally {
+        if (next != null) {
+          next.close();
+        }
+      }
+    }
+
+    private static HostMemoryBuffer grow(HostMemoryBuffer buffer, long needed) {
+      if (buffer.getLength() >= needed) {
+        return buffer;
+      }
+      HostMemoryBuffer ret = HostMemoryBuffer.allocate(Math.max(needed, buffer.getLength() * 2));
+      try {
+        ret.copyFromHostBuffer(0, buffer, 0, buffer.getLength());
+      } catch (RuntimeException e) {
+        ret.close();
+        throw e;
+      }
+      buffer.close();
+      return ret;
+    }
+
+    /**
+     * Build the column. The dictionary is sorted and the codes are remapped to match.
+     */
+    public DictionaryHostColumn build() {
+      // Sort the dictionary byte wise
+      Integer[] order = new Integer[dictSize];
+      for (int i = 0; i < dictSize; i++) {
+        order[i] = i;
+      }
+      Utf8View other = new Utf8View();
+      Arrays.sort(order, (a, b) -> entryView(a, view).compareTo(entryView(b, other)));
+      int[] remap = new int[dictSize];
+      for (int i = 0; i < dictSize; i++) {
+        remap[order[i]] = i;
+      }
+      HostColumnVector dictionary = null;
+      HostColumnVector builtCodes = null;
+      HostMemoryBuffer sortedData = null;
+      HostMemoryBuffer sortedOffsets = null;
+      try {
+        sortedData = dictDataLength > 0 ? HostMemoryBuffer.allocate(dictDataLength) : null;
+        sortedOffsets = HostMemoryBuffer.allocate((dictSize + 1) * 4L);
+        sortedOffsets.setInt(0, 0);
+        int end = 0;
+        for (int i = 0; i < dictSize; i++) {
+          int entry = order[i];
+          int start = dictOffsets.getInt(entry * 4L);
+          int len = dictOffsets.getInt((entry + 1) * 4L) - start;
+          if (len > 0) {
+            sortedData.copyFromHostBuffer(end, dictData, start, len);
+            end += len;
+          }
+          sortedOffsets.setInt((i + 1) * 4L, end);
+        }
+        dictionary = new HostColumnVector(DType.STRING, dictSize, Optional.of(0L), sortedData,
+            null, sortedOffsets, new ArrayList<>());
+        sortedData = null;
+        sortedOffsets = null;
+        builtCodes = codes.build();
+        HostMemoryBuffer codeData = builtCodes.getData();
+        boolean hasValidity = builtCodes.hasValidityVector();
+        for (long row = 0; row < builtCodes.getRowCount(); row++) {
+          long at = row * 4;
+          codeData.setInt(at, hasValidity && builtCodes.isNull(row) ? 0 :
+              remap[codeData.getInt(at)]);
+        }
+        DictionaryHostColumn ret = new DictionaryHostColumn(builtCodes, dictionary);
+        builtCodes = null;
+        dictionary = null;
+        return ret;
+      } finally {
+        if (sortedData != null) {
+          sortedData.close();
+        }
+        if (sortedOffsets != null) {
+          sortedOffsets.close();
+        }
+        if (dictionary != null) {
+          dictionary.close();
+        }
+        if (builtCodes != null) {
+          builtCodes.close();
+        }
+        resetDictionary();
+      }
+    }
+
+    private Utf8View entryView(int entry, Utf8View v) {
+      int start = dictOffsets.getInt(entry * 4L);
+      int end = dictOffsets.getInt((entry + 1) * 4L);
+      return v.wrap(dictData, start, end - start);
+    }
+
+    private void resetDictionary() {
+      if (slots != null) {
+        slots.setMemory(0, slots.getLength(), (byte) 0);
+      }
+      dictSize = 0;
+      dictDataLength = 0;
+    }
+
+    @Override
+    public void close() {
+      codes.close();
+      for (HostMemoryBuffer b : Arrays.asList(slots, hashes, dictData, dictOffsets)) {
+        if (b != null) {
+          b.close();
+        }
+      }
+      slots = null;
+      hashes = null;
+      dictData = null;
+      dictOffsets = null;
+    }
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The parts of the row group and stripe filters of {@link ParquetFooter} and {@link ORCFooter}
+ * that do not depend on the file format. A filter is a tree of comparisons, null checks and
+ * logical operators. It is checked against one row group or stripe at a time through
+ * {@link Statistics}, which each footer implements for its own format.
+ */
+abstract class FooterFilter {
+  /**
+   * How a column is compared to a literal.
+   */
+  enum Op {
+    EQUAL,
+    LESS,
+    LESS_EQUAL,
+    GREATER,
+    GREATER_EQUAL
+  }
+
+  /**
+   * A literal that a column is compared to. Exactly one of the values is set.
+   */
+  static final class Literal {
+    final Long longValue;
+    final Double doubleValue;
+    final byte[] bytesValue;
+
+    private Literal(Long longValue, Double doubleValue, byte[] bytesValue) {
+      this.longValue = longValue;
+      this.doubleValue = doubleValue;
+      this.bytesValue = bytesValue;
+    }
+  }
+
+  /**
+   * The statistics of the columns in one row group or stripe.
+   */
+  interface Statistics {
+    /**
+     * Could the column have any nulls. True if it is not known.
+     */
+    boolean mightHaveNulls(String column);
+
+    /**
+     * Could the column have any values that are not null. True if it is not known.
+     */
+    boolean mightHaveValues(String column);
+
+    /**
+     * Compare a literal to the min and max values of a column.
+     * @return the literal compared to the min and to the max, or null if the statistics are
+     * missing, cannot be trusted, or cannot be compared to the literal.
+     */
+    int[] compareToBounds(String column, Literal literal);
+  }
+
+  /**
+   * A range of bytes in a file. Each footer has its own public subclass.
+   */
+  static class Range {
+    final long offset;
+    final long length;
+
+    Range(long offset, long length) {
+      this.offset = offset;
+      this.length = length;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public long getLength() {
+      return length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == null || o.getClass() != getClass()) {
+        return false;
+      }
+      Range other = (Range) o;
+      return offset == other.offset && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(offset) * 31 + Long.hashCode(length);
+    }
+
+    @Override
+    public String toString() {
+      return "ByteRange{offset=" + offset + ", length=" + length + '}';
+    }
+  }
+
+  /**
+   * Could any row in the row group or stripe that the statistics are for match.
+   */
+  abstract boolean mightMatch(Statistics stats);
+
+  static FooterFilter compare(String column, Op op, long value) {
+    return new CompareFilter(column, op, new Literal(value, null, null));
+  }
+
+  static FooterFilter compare(String column, Op op, double value) {
+    return new CompareFilter(column, op, new Literal(null, value, null));
+  }
+
+  static FooterFilter compare(String column, Op op, String value) {
+    return new CompareFilter(column, op,
+        new Literal(null, null, value.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  static FooterFilter isNull(String column, boolean isNull) {
+    return new NullFilter(column, isNull);
+  }
+
+  static FooterFilter and(FooterFilter... filters) {
+    return new LogicalFilter(true, filters);
+  }
+
+  static FooterFilter or(FooterFilter... filters) {
+    return new LogicalFilter(false, filters);
+  }
+
+  private static final class LogicalFilter extends FooterFilter {
+    private final boolean isAnd;
+    private final FooterFilter[] children;
+
+    LogicalFilter(boolean isAnd, FooterFilter[] children) {
+      this.isAnd = isAnd;
+      this.children = children;
+    }
+
+    @Override
+    boolean mightMatch(Statistics stats) {
+      for (FooterFilter f : children) {
+        if (f.mightMatch(stats) != isAnd) {
+          return !isAnd;
+        }
+      }
+      return isAnd;
+    }
+  }
+
+  private static final class NullFilter extends FooterFilter {
+    private final String column;
+    private final boolean isNull;
+
+    NullFilter(String column, boolean isNull) {
+      this.column = column;
+      this.isNull = isNull;
+    }
+
+    @Override
+    boolean mightMatch(Statistics stats) {
+      return isNull ? stats.mightHaveNulls(column) : stats.mightHaveValues(column);
+    }
+  }
+
+  private static final class CompareFilter extends FooterFilter {
+    private final String column;
+    private final Op op;
+    private final Literal literal;
+
+    CompareFilter(String column, Op op, Literal literal) {
+      this.column = column;
+      this.op = op;
+      this.literal = literal;
+    }
+
+    @Override
+    boolean mightMatch(Statistics stats) {
+      if (!stats.mightHaveValues(column)) {
+        // Every value is null and null never compares as true
+        return false;
+      }
+      int[] cmp = stats.compareToBounds(column, literal);
+      if (cmp == null) {
+        return true;
+      }
+      int cmpMin = cmp[0];
+      int cmpMax = cmp[1];
+      switch (op) {
+        case EQUAL:
+          return cmpMin >= 0 && cmpMax <= 0;
+        case LESS:
+          return cmpMin > 0;
+        case LESS_EQUAL:
+          return cmpMin >= 0;
+        case GREATER:
+          return cmpMax < 0;
+        case GREATER_EQUAL:
+          return cmpMax <= 0;
+        default:
+          throw new IllegalStateException("Unexpected comparison " + op);
+      }
+    }
+  }
+
+  /**
+   * Compare a numeric literal to the bounds of an integral column.
+   */
+  static int[] compareToBounds(Literal literal, long min, long max) {
+    if (literal.longValue != null) {
+      return new int[]{Long.compare(literal.longValue, min), Long.compare(literal.longValue, max)};
+    }
+    return compareToBounds(literal, (double) min, (double) max);
+  }
+
+  /**
+   * Compare a numeric literal to the bounds of a floating point column.
+   */
+  static int[] compareToBounds(Literal literal, double min, double max) {
+    if (literal.bytesValue != null) {
+      return null;
+    }
+    double lit = literal.longValue != null ? literal.longValue : literal.doubleValue;
+    if (Double.isNaN(min) || Double.isNaN(max) || Double.isNaN(lit)) {
+      return null;
+    }
+    // Compare with operators so -0.0 and 0.0 are equal
+    return new int[]{lit < min ? -1 : (lit > min ? 1 : 0), lit < max ? -1 : (lit > max ? 1 : 0)};
+  }
+
+  /**
+   * Compare a string literal to the bounds of a string or binary column, in unsigned byte order.
+   */
+  static int[] compareToBounds(Literal literal, byte[] min, byte[] max) {
+    if (literal.bytesValue == null) {
+      return null;
+    }
+    return new int[]{compareUnsigned(literal.bytesValue, min),
+        compareUnsigned(literal.bytesValue, max)};
+  }
+
+  static int compareUnsigned(byte[] a, byte[] b) {
+    int len = Math.min(a.length, b.length);
+    for (int i = 0; i < len; i++) {
+      int ai = a[i] & 0xFF;
+      int bi = b[i] & 0xFF;
+      if (ai != bi) {
+        return ai - bi;
+      }
+    }
+    return Integer.compare(a.length, b.length);
+  }
+}
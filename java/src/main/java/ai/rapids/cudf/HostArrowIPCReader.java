@@ -0,0 +1,403 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads an Arrow IPC stream that is already in host memory, like a memory mapped file, into
+ * host columns without going through the GPU. The data, offsets and validity of the columns
+ * are slices of the stream's buffer, which stays valid until this reader and every column read
+ * from it are closed.
+ * <p/>
+ * Data is only copied where the layouts differ: booleans are unpacked from bits, decimals are
+ * narrowed from 128 bits, and validity buffers that are not padded like CUDF needs are copied
+ * into ones that are. Dictionary encoded columns are not supported.
+ */
+public final class HostArrowIPCReader implements AutoCloseable {
+  private final HostMemoryBuffer source;
+  private final List<ArrowIPCMessages.Field> schema;
+  private long position = 0;
+  private boolean atEnd = false;
+  private boolean closed = false;
+
+  /**
+   * Read a stream from a host buffer. The reader keeps its own reference to the buffer, so the
+   * caller can close theirs.
+   */
+  public HostArrowIPCReader(HostMemoryBuffer buffer) {
+    this.source = buffer.slice(0, buffer.getLength());
+    boolean success = false;
+    try {
+      Message message = nextMessage();
+      if (message == null || message.headerType != ArrowIPCMessages.HEADER_SCHEMA) {
+        throw new IllegalArgumentException("An Arrow IPC stream needs to start with a schema");
+      }
+      schema = ArrowIPCMessages.decodeSchema(message.reader, message.header);
+      success = true;
+    } finally {
+      if (!success) {
+        source.close();
+      }
+    }
+  }
+
+  /**
+   * Memory map a file and read the stream in it.
+   */
+  public static HostArrowIPCReader open(File file) throws IOException {
+    try (HostMemoryBuffer mapped = HostMemoryBuffer.mapFile(file, FileChannel.MapMode.READ_ONLY,
+        0, file.length())) {
+      return new HostArrowIPCReader(mapped);
+    }
+  }
+
+  /**
+   * Get the names of the top level columns.
+   */
+  public String[] getColumnNames() {
+    String[] ret = new String[schema.size()];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = schema.get(i).name;
+    }
+    return ret;
+  }
+
+  /**
+   * Get the types of the top level columns.
+   */
+  public DType[] getColumnTypes() {
+    DType[] ret = new DType[schema.size()];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = schema.get(i).type;
+    }
+    return ret;
+  }
+
+  private static final class Message {
+    final byte headerType;
+    final ArrowIPCMessages.FlatReader reader;
+    final int header;
+    final long bodyOffset;
+    final long bodyLength;
+
+    Message(byte headerType, ArrowIPCMessages.FlatReader reader, int header, long bodyOffset,
+            long bodyLength) {
+      this.headerType = headerType;
+      this.reader = reader;
+      this.header = header;
+      this.bodyOffset = bodyOffset;
+      this.bodyLength = bodyLength;
+    }
+  }
+
+  /**
+   * Read the next message, or null at the end of the stream. The metadata is copied to the
+   * heap because it is small, the body is not.
+   */
+  private Message nextMessage() {
+    if (atEnd || position + 4 > source.getLength()) {
+      atEnd = true;
+      return null;
+    }
+    int metadataLength = source.getInt(position);
+    position += 4;
+    // Streams from before Arrow 0.15 have no continuation marker
+    if (metadataLength == ArrowIPCMessages.CONTINUATION) {
+      if (position + 4 > source.getLength()) {
+        throw new IllegalArgumentException("Arrow IPC stream ends in the middle of a message");
+      }
+      metadataLength = source.getInt(position);
+      position += 4;
+    }
+    if (metadataLength == 0) {
+      atEnd = true;
+      return null;
+    }
+    if (metadataLength < 0 || position + metadataLength > source.getLength()) {
+      throw new IllegalArgumentException("Arrow IPC message of " + metadataLength +
+          " bytes is past the end of the stream");
+    }
+    byte[] metadata = new byte[metadataLength];
+    source.getBytes(metadata, 0, position, metadataLength);
+    position += metadataLength;
+    try {
+      ArrowIPCMessages.FlatReader reader =
+          new ArrowIPCMessages.FlatReader(ByteBuffer.wrap(metadata));
+      int message = reader.root();
+      byte headerType = reader.getByte(message, 1, (byte) 0);
+      int header = reader.getTable(message, 2);
+      long bodyLength = reader.getLong(message, 3, 0);
+      if (header < 0 || bodyLength < 0 || position + bodyLength > source.getLength()) {
+        throw new IllegalArgumentException("Malformed Arrow IPC message");
+      }
+      Message ret = new Message(headerType, reader, header, position, bodyLength);
+      position += bodyLength;
+      return ret;
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Malformed Arrow IPC message metadata", e);
+    }
+  }
+
+  /**
+   * Cursors over the nodes and buffers of a record batch as the columns are built.
+   */
+  private static final class Batch {
+    final ArrowIPCMessages.FlatReader reader;
+    final int nodes;
+    final int buffers;
+    final long bodyOffset;
+    final long bodyLength;
+    int nodeIndex = 0;
+    int bufferIndex = 0;
+
+    Batch(Message message) {
+      this.reader = message.reader;
+      this.nodes = reader.getVector(message.header, 1);
+      this.buffers = reader.getVector(message.header, 2);
+      if (reader.getTable(message.header, 3) >= 0) {
+        throw new UnsupportedOperationException("Compressed record batches are not supported");
+      }
+      this.bodyOffset = message.bodyOffset;
+      this.bodyLength = message.bodyLength;
+    }
+  }
+
+  /**
+   * Read the next record batch.
+   * @return the columns of the batch, or null at the end of the stream.
+   */
+  public HostColumnVector[] next() {
+    if (closed) {
+      throw new IllegalStateException("Read from a closed reader");
+    }
+    Message message;
+    do {
+      message = nextMessage();
+      if (message == null) {
+        return null;
+      }
+      if (message.headerType == ArrowIPCMessages.HEADER_DICTIONARY_BATCH) {
+        throw new UnsupportedOperationException("Dictionary batches are not supported");
+      }
+      // Anything else is skipped, like the reference readers do
+    } while (message.headerType != ArrowIPCMessages.HEADER_RECORD_BATCH);
+
+    Batch batch = new Batch(message);
+    HostColumnVector[] ret = new HostColumnVector[schema.size()];
+    boolean success = false;
+    try {
+      for (int i = 0; i < ret.length; i++) {
+        ret[i] = (HostColumnVector) readColumn(batch, schema.get(i), true);
+      }
+      success = true;
+      return ret;
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Malformed Arrow IPC record batch", e);
+    } finally {
+      if (!success) {
+        for (HostColumnVector c : ret) {
+          if (c != null) {
+            c.close();
+          }
+        }
+      }
+    }
+  }
+
+  private HostMemoryBuffer nextBuffer(Batch batch, long minLength) {
+    int index = batch.bufferIndex++;
+    if (index >= batch.reader.vectorLength(batch.buffers)) {
+      throw new IllegalArgumentException("Record batch has too few buffers for the schema");
+    }
+    long offset = batch.reader.vectorLong(batch.buffers, 2 * index);
+    long length = batch.reader.vectorLong(batch.buffers, 2 * index + 1);
+    if (offset < 0 || length < minLength || offset + length > batch.bodyLength) {
+      throw new IllegalArgumentException("Buffer " + index + " of " + length + " bytes at " +
+          offset + " does not fit the record batch");
+    }
+    return length == 0 ? null : source.slice(batch.bodyOffset + offset, length);
+  }
+
+  private HostColumnVectorCore readColumn(Batch batch, ArrowIPCMessages.Field field,
+                                          boolean isTopLevel) {
+    int nodeIndex = batch.nodeIndex++;
+    if (nodeIndex >= batch.reader.vectorLength(batch.nodes)) {
+      throw new IllegalArgumentException("Record batch has too few nodes for the schema");
+    }
+    long rows = batch.reader.vectorLong(batch.nodes, 2 * nodeIndex);
+    long nullCount = batch.reader.vectorLong(batch.nodes, 2 * nodeIndex + 1);
+    if (rows > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Column of " + rows + " rows is larger than is " +
+          "supported");
+    }
+    DType type = field.type;
+    HostMemoryBuffer valid = null;
+    HostMemoryBuffer data = null;
+    HostMemoryBuffer offsets = null;
+    List<HostColumnVectorCore> children = new ArrayList<>();
+    try {
+      valid = readValidity(batch, rows, nullCount);
+      switch (type.getTypeId()) {
+        case STRING: {
+          offsets = readOffsets(batch, rows);
+          data = nextBuffer(batch, 0);
+          if (data == null) {
+            // CUDF wants at least one byte of string data
+            data = HostMemoryBuffer.allocate(1);
+          }
+          break;
+        }
+        case LIST:
+          offsets = readOffsets(batch, rows);
+          children.add(readColumn(batch, field.children.get(0), false));
+          break;
+        case STRUCT:
+          for (ArrowIPCMessages.Field child : field.children) {
+            children.add(readColumn(batch, child, false));
+          }
+          break;
+        case BOOL8:
+          try (HostMemoryBuffer bits = nextBuffer(batch, (rows + 7) / 8)) {
+            data = HostMemoryBuffer.allocate(rows);
+            for (long r = 0; r < rows; r++) {
+              data.setByte(r, (byte) ((bits.getByte(r / 8) >> (r % 8)) & 1));
+            }
+          }
+          break;
+        case DECIMAL32:
+        case DECIMAL64:
+          try (HostMemoryBuffer wide = nextBuffer(batch, rows * 16)) {
+            data = narrowDecimals(wide, type, rows, valid);
+          }
+          break;
+        default:
+          data = nextBuffer(batch, rows * type.getSizeInBytes());
+      }
+      HostColumnVectorCore ret;
+      if (isTopLevel) {
+        ret = new HostColumnVector(type, rows, Optional.of(nullCount), data, valid, offsets,
+            children);
+      } else {
+        ret = new HostColumnVectorCore(type, rows, Optional.of(nullCount), data, valid, offsets,
+            children);
+      }
+      data = null;
+      valid = null;
+      offsets = null;
+      children = null;
+      return ret;
+    } finally {
+      if (data != null) {
+        data.close();
+      }
+      if (valid != null) {
+        valid.close();
+      }
+      if (offsets != null) {
+        offsets.close();
+      }
+      if (children != null) {
+        children.forEach(HostColumnVectorCore::close);
+      }
+    }
+  }
+
+  /**
+   * CUDF copies validity padded to 64 bytes, so a buffer that is not padded that far is copied.
+   */
+  private HostMemoryBuffer readValidity(Batch batch, long rows, long nullCount) {
+    HostMemoryBuffer valid = nextBuffer(batch, nullCount > 0 ? (rows + 7) / 8 : 0);
+    if (nullCount == 0) {
+      if (valid != null) {
+        valid.close();
+      }
+      return null;
+    }
+    long padded = BitVectorHelper.getValidityAllocationSizeInBytes(rows);
+    if (valid.getLength() >= padded) {
+      return valid;
+    }
+    try {
+      HostMemoryBuffer ret = HostMemoryBuffer.allocate(padded);
+      ret.setMemory(0, padded, (byte) 0);
+      ret.copyFromHostBuffer(0, valid, 0, valid.getLength());
+      return ret;
+    } finally {
+      valid.close();
+    }
+  }
+
+  private HostMemoryBuffer readOffsets(Batch batch, long rows) {
+    HostMemoryBuffer offsets = nextBuffer(batch,
+        rows == 0 ? 0 : (rows + 1) * HostColumnVector.OFFSET_SIZE);
+    if (offsets == null) {
+      // An empty column may have no offsets at all
+      offsets = HostMemoryBuffer.allocate(HostColumnVector.OFFSET_SIZE);
+      offsets.setInt(0, 0);
+    }
+    return offsets;
+  }
+
+  private static HostMemoryBuffer narrowDecimals(HostMemoryBuffer wide, DType type, long rows,
+                                                 HostMemoryBuffer valid) {
+    boolean is32 = type.getTypeId() == DType.DTypeEnum.DECIMAL32;
+    int size = type.getSizeInBytes();
+    HostMemoryBuffer ret = HostMemoryBuffer.allocate(Math.max(1, rows * size));
+    boolean success = false;
+    try {
+      for (long r = 0; r < rows; r++) {
+        long low = 0;
+        if (valid == null || !BitVectorHelper.isNull(valid, r)) {
+          low = wide.getLong(r * 16);
+          long high = wide.getLong(r * 16 + 8);
+          if (high != (low >> 63) || (is32 && low != (int) low)) {
+            throw new IllegalArgumentException("Decimal value at row " + r + " does not fit in " +
+                type);
+          }
+        }
+        if (is32) {
+          ret.setInt(r * size, (int) low);
+        } else {
+          ret.setLong(r * size, low);
+        }
+      }
+      success = true;
+      return ret;
+    } finally {
+      if (!success) {
+        ret.close();
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      source.close();
+    }
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes host columns as an Arrow IPC stream without going through the GPU. The buffers of
+ * each column are written to the channel straight from their off heap addresses, so the data
+ * is not copied except for BOOL8, which Arrow stores as bits, and decimals, which Arrow stores
+ * as 128-bit values.
+ * <p/>
+ * The schema is taken from the first batch written, with column names and nullability from
+ * the options, which are flattened the same way as for
+ * {@link Table#writeArrowIPCChunked(ArrowIPCWriterOptions, File)}. If no names are set the
+ * columns are not named.
+ */
+public final class HostArrowIPCWriter implements AutoCloseable {
+  /** The most written from one ByteBuffer view of a host buffer */
+  private static final int MAX_VIEW_SIZE = 1 << 30;
+  private static final ByteBuffer PADDING = ByteBuffer.allocate(ArrowIPCMessages.BODY_ALIGNMENT);
+
+  private final ArrowIPCWriterOptions options;
+  private final WritableByteChannel channel;
+  private final boolean ownsChannel;
+  private List<ArrowIPCMessages.Field> schema = null;
+  private long bytesWritten = 0;
+  private boolean closed = false;
+
+  /**
+   * Write to a channel, which is left open when this is closed.
+   */
+  public HostArrowIPCWriter(ArrowIPCWriterOptions options, WritableByteChannel channel) {
+    this(options, channel, false);
+  }
+
+  private HostArrowIPCWriter(ArrowIPCWriterOptions options, WritableByteChannel channel,
+                             boolean ownsChannel) {
+    this.options = options;
+    this.channel = channel;
+    this.ownsChannel = ownsChannel;
+  }
+
+  /**
+   * Write to a file, replacing anything that is already in it.
+   */
+  public static HostArrowIPCWriter open(ArrowIPCWriterOptions options, File file)
+      throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    return new HostArrowIPCWriter(options, channel, true);
+  }
+
+  /**
+   * Get the number of bytes written so far.
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * Collects the nodes and buffers of a record batch in the order Arrow lays them out.
+   */
+  private static final class Body implements AutoCloseable {
+    final List<Long> nodes = new ArrayList<>();
+    final List<Long> buffers = new ArrayList<>();
+    final List<HostMemoryBuffer> sources = new ArrayList<>();
+    final List<Long> lengths = new ArrayList<>();
+    final List<HostMemoryBuffer> temporary = new ArrayList<>();
+    long length = 0;
+
+    void addNode(long rows, long nullCount) {
+      nodes.add(rows);
+      nodes.add(nullCount);
+    }
+
+    void addBuffer(HostMemoryBuffer source, long bufferLength) {
+      buffers.add(length);
+      buffers.add(bufferLength);
+      if (bufferLength > 0) {
+        sources.add(source);
+        lengths.add(bufferLength);
+      }
+      length += ArrowIPCMessages.padTo(bufferLength, ArrowIPCMessages.BODY_ALIGNMENT);
+    }
+
+    HostMemoryBuffer allocateTemporary(long bufferLength) {
+      HostMemoryBuffer ret = HostMemoryBuffer.allocate(bufferLength);
+      temporary.add(ret);
+      return ret;
+    }
+
+    static long[] toArray(List<Long> values) {
+      long[] ret = new long[values.size()];
+      for (int i = 0; i < ret.length; i++) {
+        ret[i] = values.get(i);
+      }
+      return ret;
+    }
+
+    @Override
+    public void close() {
+      temporary.forEach(HostMemoryBuffer::close);
+    }
+  }
+
+  /**
+   * Write the columns as one record batch. They all need the same number of rows, and the same
+   * types as the first batch written.
+   */
+  public void write(HostColumnVector... columns) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Write to a closed writer");
+    }
+    if (columns.length == 0) {
+      throw new IllegalArgumentException("At least one column is needed");
+    }
+    long rows = columns[0].getRowCount();
+    for (HostColumnVector c : columns) {
+      if (c.getRowCount() != rows) {
+        throw new IllegalArgumentException("All columns need the same number of rows, expected " +
+            rows + " but found " + c.getRowCount());
+      }
+    }
+    if (schema == null) {
+      List<ArrowIPCMessages.Field> fields = buildSchema(columns);
+      writeMessage(ArrowIPCMessages.encodeMessage(ArrowIPCMessages.HEADER_SCHEMA,
+          ArrowIPCMessages.encodeSchema(fields), 0));
+      schema = fields;
+    } else {
+      if (schema.size() != columns.length) {
+        throw new IllegalArgumentException("Expected " + schema.size() + " columns but found " +
+            columns.length);
+      }
+      for (int i = 0; i < columns.length; i++) {
+        if (!schema.get(i).sameTypes(columns[i])) {
+          throw new IllegalArgumentException("Column " + i + " does not match the types of the " +
+              "first batch written");
+        }
+      }
+    }
+    try (Body body = new Body()) {
+      for (HostColumnVector c : columns) {
+        addColumn(body, c);
+      }
+      writeMessage(ArrowIPCMessages.encodeMessage(ArrowIPCMessages.HEADER_RECORD_BATCH,
+          ArrowIPCMessages.encodeRecordBatch(rows, Body.toArray(body.nodes),
+              Body.toArray(body.buffers)), body.length));
+      writeBody(body);
+    }
+  }
+
+  private List<ArrowIPCMessages.Field> buildSchema(HostColumnVector[] columns) {
+    String[] names = options.getColumnNames();
+    boolean[] nullability = options.getColumnNullability();
+    int[] nameIndex = new int[]{0};
+    List<ArrowIPCMessages.Field> ret = new ArrayList<>(columns.length);
+    for (HostColumnVector c : columns) {
+      ret.add(buildField(c, names, nullability, nameIndex, false));
+    }
+    if (names.length > 0 && nameIndex[0] != names.length) {
+      throw new IllegalArgumentException(names.length + " column names were set but " +
+          nameIndex[0] + " are needed");
+    }
+    return ret;
+  }
+
+  private static ArrowIPCMessages.Field buildField(HostColumnVectorCore column, String[] names,
+                                                   boolean[] nullability, int[] nameIndex,
+                                                   boolean isListChild) {
+    String name = "";
+    boolean nullable = true;
+    if (isListChild) {
+      name = "element";
+    } else if (names.length > 0) {
+      if (nameIndex[0] >= names.length) {
+        throw new IllegalArgumentException("Only " + names.length + " column names were set " +
+            "but more are needed");
+      }
+      name = names[nameIndex[0]];
+      nullable = nullability[nameIndex[0]];
+      nameIndex[0]++;
+    }
+    List<ArrowIPCMessages.Field> children = Collections.emptyList();
+    if (column.getNumChildren() > 0) {
+      children = new ArrayList<>(column.getNumChildren());
+      boolean isList = column.getType().equals(DType.LIST);
+      for (int i = 0; i < column.getNumChildren(); i++) {
+        children.add(buildField(column.getChildColumnView(i), names, nullability, nameIndex,
+            isList));
+      }
+    }
+    return new ArrowIPCMessages.Field(name, nullable, column.getType(), children);
+  }
+
+  private static void addColumn(Body body, HostColumnVectorCore column) {
+    long rows = column.getRowCount();
+    long nullCount = column.getNullCount();
+    body.addNode(rows, nullCount);
+    HostMemoryBuffer valid = column.getValidity();
+    if (nullCount > 0 && valid != null) {
+      // Pad it like CUDF does when there is room, so a reader can use the buffer as is
+      long validLength = Math.min(valid.getLength(),
+          BitVectorHelper.getValidityAllocationSizeInBytes(rows));
+      body.addBuffer(valid, validLength);
+    } else {
+      body.addBuffer(null, 0);
+    }
+    DType type = column.getType();
+    switch (type.getTypeId()) {
+      case STRING: {
+        HostMemoryBuffer offsets = column.getOffsets();
+        if (rows == 0 || offsets == null) {
+          body.addBuffer(null, 0);
+          body.addBuffer(null, 0);
+        } else {
+          body.addBuffer(offsets, (rows + 1) * HostColumnVector.OFFSET_SIZE);
+          body.addBuffer(column.getData(), column.getEndListOffset(rows - 1));
+        }
+        break;
+      }
+      case LIST: {
+        HostMemoryBuffer offsets = column.getOffsets();
+        if (rows == 0 || offsets == null) {
+          body.addBuffer(null, 0);
+        } else {
+          body.addBuffer(offsets, (rows + 1) * HostColumnVector.OFFSET_SIZE);
+        }
+        addColumn(body, column.getChildColumnView(0));
+        break;
+      }
+      case STRUCT:
+        for (int i = 0; i < column.getNumChildren(); i++) {
+          addColumn(body, column.getChildColumnView(i));
+        }
+        break;
+      case BOOL8: {
+        long length = (rows + 7) / 8;
+        HostMemoryBuffer bits = body.allocateTemporary(Math.max(1, length));
+        bits.setMemory(0, bits.getLength(), (byte) 0);
+        HostMemoryBuffer data = column.getData();
+        for (long r = 0; r < rows; r++) {
+          if (data.getByte(r) != 0) {
+            long index = r / 8;
+            bits.setByte(index, (byte) (bits.getByte(index) | (1 << (r % 8))));
+          }
+        }
+        body.addBuffer(bits, length);
+        break;
+      }
+      case DECIMAL32:
+      case DECIMAL64: {
+        HostMemoryBuffer wide = body.allocateTemporary(Math.max(1, rows * 16));
+        HostMemoryBuffer data = column.getData();
+        boolean is32 = type.getTypeId() == DType.DTypeEnum.DECIMAL32;
+        for (long r = 0; r < rows; r++) {
+          long value = is32 ? data.getInt(r * 4) : data.getLong(r * 8);
+          wide.setLong(r * 16, value);
+          wide.setLong(r * 16 + 8, value >> 63);
+        }
+        body.addBuffer(wide, rows * 16);
+        break;
+      }
+      default:
+        body.addBuffer(column.getData(), rows * type.getSizeInBytes());
+    }
+  }
+
+  private void writeMessage(byte[] metadata) throws IOException {
+    ByteBuffer prefix = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    prefix.putInt(ArrowIPCMessages.CONTINUATION);
+    prefix.putInt(metadata.length);
+    prefix.flip();
+    writeFully(new ByteBuffer[]{prefix, ByteBuffer.wrap(metadata)});
+  }
+
+  private void writeBody(Body body) throws IOException {
+    List<ByteBuffer> views = new ArrayList<>();
+    for (int i = 0; i < body.sources.size(); i++) {
+      HostMemoryBuffer source = body.sources.get(i);
+      long length = body.lengths.get(i);
+      for (long offset = 0; offset < length; offset += MAX_VIEW_SIZE) {
+        views.add(source.asByteBuffer(offset, (int) Math.min(MAX_VIEW_SIZE, length - offset)));
+      }
+      int pad = (int) (ArrowIPCMessages.padTo(length, ArrowIPCMessages.BODY_ALIGNMENT) - length);
+      if (pad > 0) {
+        ByteBuffer padding = PADDING.duplicate();
+        padding.limit(pad);
+        views.add(padding);
+      }
+    }
+    writeFully(views.toArray(new ByteBuffer[0]));
+  }
+
+  private void writeFully(ByteBuffer[] buffers) throws IOException {
+    if (channel instanceof GatheringByteChannel) {
+      GatheringByteChannel gathering = (GatheringByteChannel) channel;
+      int first = 0;
+      while (first < buffers.length) {
+        bytesWritten += gathering.write(buffers, first, buffers.length - first);
+        while (first < buffers.length && !buffers[first].hasRemaining()) {
+          first++;
+        }
+      }
+    } else {
+      for (ByteBuffer b : buffers) {
+        while (b.hasRemaining()) {
+          bytesWritten += channel.write(b);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the end of the stream. Nothing can be written after this.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      ByteBuffer end = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+      end.putInt(ArrowIPCMessages.CONTINUATION);
+      end.putInt(0);
+      end.flip();
+      writeFully(new ByteBuffer[]{end});
+    } finally {
+      if (ownsChannel) {
+        channel.close();
+      }
+    }
+  }
+}
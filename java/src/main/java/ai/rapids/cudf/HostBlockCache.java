@@ -0,0 +1,551 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cache of byte ranges of files in host memory, for data that is read over and over like
+ * Parquet and ORC footers or hot row groups. A range is looked up by the file, its offset and
+ * length, and the time the file was last modified, so a file that changes is read again.
+ * <p/>
+ * Each {@link #get(File, long, long)} returns a slice of the cached buffer that the caller
+ * needs to close, and that can be passed to APIs like
+ * {@link Table#readParquet(ParquetOptions, HostMemoryBuffer, long, long)}. The memory of a
+ * range is freed once it has been evicted and every slice of it is closed, so slices that are
+ * still open when a range is evicted are not counted against the budget.
+ * <p/>
+ * When many threads ask for the same range at once it is only read from the file once, and the
+ * others wait for that read. Ranges are evicted least recently used first. With the TINY_LFU
+ * policy a new range is only cached if it has been asked for more often than the ranges it
+ * would evict, so a scan that touches data once does not push out data that is used all the
+ * time. Counts are kept in a small sketch that is halved periodically so old popularity fades.
+ */
+public final class HostBlockCache implements AutoCloseable {
+  /** The most read from a file into one ByteBuffer view of a host buffer */
+  private static final int MAX_VIEW_SIZE = 1 << 30;
+
+  public enum EvictionPolicy {
+    /** Cache every range, evicting the least recently used ones to make room */
+    LRU,
+    /** Only cache a range if it is used more often than the ranges it would evict */
+    TINY_LFU
+  }
+
+  public static final class Builder {
+    private final long maxBytes;
+    private EvictionPolicy policy = EvictionPolicy.TINY_LFU;
+    private boolean preferPinned = false;
+
+    private Builder(long maxBytes) {
+      if (maxBytes <= 0) {
+        throw new IllegalArgumentException("The cache needs a positive size " + maxBytes);
+      }
+      this.maxBytes = maxBytes;
+    }
+
+    public Builder withEvictionPolicy(EvictionPolicy policy) {
+      this.policy = policy;
+      return this;
+    }
+
+    /**
+     * Cache ranges in pinned memory from the {@link PinnedMemoryPool} when it has room, which
+     * makes copying them to the device faster.
+     */
+    public Builder withPreferPinned(boolean preferPinned) {
+      this.preferPinned = preferPinned;
+      return this;
+    }
+
+    public HostBlockCache build() {
+      return new HostBlockCache(this);
+    }
+  }
+
+  /**
+   * Create a builder for a cache.
+   * @param maxBytes the most bytes of ranges to keep cached.
+   */
+  public static Builder builder(long maxBytes) {
+    return new Builder(maxBytes);
+  }
+
+  private static final class Key {
+    final String path;
+    final long offset;
+    final long length;
+    final long modified;
+
+    Key(String path, long offset, long length, long modified) {
+      this.path = path;
+      this.offset = offset;
+      this.length = length;
+      this.modified = modified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return offset == other.offset && length == other.length && modified == other.modified &&
+          path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+      int h = path.hashCode();
+      h = 31 * h + Long.hashCode(offset);
+      h = 31 * h + Long.hashCode(length);
+      return 31 * h + Long.hashCode(modified);
+    }
+
+    @Override
+    public String toString() {
+      return path + "[" + offset + ", " + (offset + length) + ") modified " + modified;
+    }
+  }
+
+  /**
+   * A range that is being read. Threads that want it too wait, and get a slice of it handed
+   * to them when it is done.
+   */
+  private static final class Load {
+    final ArrayDeque<HostMemoryBuffer> handouts = new ArrayDeque<>();
+    int waiters = 0;
+    boolean done = false;
+    Throwable error = null;
+  }
+
+  /**
+   * Approximate counts of how often each key was asked for, in a count-min sketch of 4 rows.
+   * Every counter is halved after enough increments so the counts favor recent use.
+   */
+  private static final class FrequencySketch {
+    private static final int MAX_COUNT = 15;
+    private final int[][] counters = new int[4][];
+    private final int mask;
+    private final int resetAfter;
+    private int increments = 0;
+
+    FrequencySketch(int width) {
+      int size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+      for (int i = 0; i < counters.length; i++) {
+        counters[i] = new int[size];
+      }
+      mask = size - 1;
+      resetAfter = 10 * size;
+    }
+
+    private int index(int hash, int row) {
+      int h = hash * (0x9E3779B9 + 2 * row);
+      return (h ^ (h >>> 16)) & mask;
+    }
+
+    void increment(Object key) {
+      int hash = key.hashCode();
+      for (int row = 0; row < counters.length; row++) {
+        int i = index(hash, row);
+        if (counters[row][i] < MAX_COUNT) {
+          counters[row][i]++;
+        }
+      }
+      if (++increments >= resetAfter) {
+        for (int[] row : counters) {
+          for (int i = 0; i < row.length; i++) {
+            row[i] >>>= 1;
+          }
+        }
+        increments /= 2;
+      }
+    }
+
+    int frequency(Object key) {
+      int hash = key.hashCode();
+      int ret = MAX_COUNT;
+      for (int row = 0; row < counters.length; row++) {
+        ret = Math.min(ret, counters[row][index(hash, row)]);
+      }
+      return ret;
+    }
+  }
+
+  private final long maxBytes;
+  private final EvictionPolicy policy;
+  private final boolean preferPinned;
+  private final FrequencySketch sketch;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition loadFinished = lock.newCondition();
+  // All guarded by lock. The map is in access order, so the eldest is least recently used.
+  private final LinkedHashMap<Key, HostMemoryBuffer> cached = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<Key, Load> loading = new HashMap<>();
+  private long cachedBytes = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long coalesced = 0;
+  private long evictions = 0;
+  private long rejections = 0;
+  private long bytesRead = 0;
+  private long readNanos = 0;
+  private boolean closed = false;
+
+  private HostBlockCache(Builder builder) {
+    this.maxBytes = builder.maxBytes;
+    this.policy = builder.policy;
+    this.preferPinned = builder.preferPinned;
+    // Size the sketch for ranges of about 64KB, which is small for footers and row groups
+    long expectedEntries = Math.min(1 << 20, Math.max(1024, maxBytes / (64 * 1024)));
+    this.sketch = policy == EvictionPolicy.TINY_LFU ? new FrequencySketch((int) expectedEntries)
+        : null;
+  }
+
+  /**
+   * Get a range of a file, reading it if it is not cached.
+   * @param file the file to read.
+   * @param offset where the range starts in the file.
+   * @param length how many bytes to get.
+   * @return a buffer holding the range that the caller needs to close.
+   */
+  public HostMemoryBuffer get(File file, long offset, long length) throws IOException {
+    if (offset < 0 || length <= 0) {
+      throw new IllegalArgumentException("Invalid range of " + length + " bytes at " + offset);
+    }
+    Key key = new Key(file.getCanonicalPath(), offset, length, file.lastModified());
+    Load load;
+    boolean isLoader = false;
+    lock.lock();
+    try {
+      if (closed) {
+        throw new IllegalStateException("The cache is closed");
+      }
+      if (sketch != null) {
+        sketch.increment(key);
+      }
+      HostMemoryBuffer buffer = cached.get(key);
+      if (buffer != null) {
+        hits++;
+        return buffer.slice(0, length);
+      }
+      load = loading.get(key);
+      if (load == null) {
+        misses++;
+        load = new Load();
+        loading.put(key, load);
+        isLoader = true;
+      } else {
+        coalesced++;
+        load.waiters++;
+        while (!load.done) {
+          loadFinished.awaitUninterruptibly();
+        }
+        if (load.error != null) {
+          throw new IOException("Reading " + key + " failed", load.error);
+        }
+        return load.handouts.poll();
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    HostMemoryBuffer buffer = null;
+    long start = System.nanoTime();
+    try {
+      buffer = readRange(file, offset, length);
+    } catch (Throwable t) {
+      lock.lock();
+      try {
+        loading.remove(key);
+        load.error = t;
+        load.done = true;
+        loadFinished.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      throw t;
+    }
+    lock.lock();
+    try {
+      readNanos += System.nanoTime() - start;
+      bytesRead += length;
+      loading.remove(key);
+      for (int i = 0; i < load.waiters; i++) {
+        load.handouts.add(buffer.slice(0, length));
+      }
+      load.done = true;
+      loadFinished.signalAll();
+      if (admit(key, length)) {
+        cached.put(key, buffer);
+        cachedBytes += length;
+        return buffer.slice(0, length);
+      }
+      rejections++;
+      return buffer;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private HostMemoryBuffer readRange(File file, long offset, long length) throws IOException {
+    HostMemoryBuffer buffer = HostMemoryBuffer.allocate(length, preferPinned);
+    boolean success = false;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (offset + length > channel.size()) {
+        throw new EOFException("Range of " + length + " bytes at " + offset + " is past the " +
+            "end of " + file + " which is " + channel.size() + " bytes");
+      }
+      long done = 0;
+      while (done < length) {
+        int viewLength = (int) Math.min(MAX_VIEW_SIZE, length - done);
+        ByteBuffer view = buffer.asByteBuffer(done, viewLength);
+        while (view.hasRemaining()) {
+          if (channel.read(view, offset + done + view.position()) < 0) {
+            throw new EOFException("Unexpected end of " + file);
+          }
+        }
+        done += viewLength;
+      }
+      success = true;
+      return buffer;
+    } finally {
+      if (!success) {
+        buffer.close();
+      }
+    }
+  }
+
+  /**
+   * Make room for a new range if it should be cached. Must hold the lock.
+   * @return true if the range can be added.
+   */
+  private boolean admit(Key key, long length) {
+    if (closed || length > maxBytes) {
+      return false;
+    }
+    long needed = cachedBytes + length - maxBytes;
+    if (needed <= 0) {
+      return true;
+    }
+    List<Key> victims = new ArrayList<>();
+    long freed = 0;
+    int victimFrequency = 0;
+    Iterator<Map.Entry<Key, HostMemoryBuffer>> it = cached.entrySet().iterator();
+    while (freed < needed && it.hasNext()) {
+      Key victim = it.next().getKey();
+      victims.add(victim);
+      freed += victim.length;
+      if (sketch != null) {
+        victimFrequency += sketch.frequency(victim);
+      }
+    }
+    if (sketch != null && sketch.frequency(key) <= victimFrequency) {
+      return false;
+    }
+    for (Key victim : victims) {
+      evict(victim);
+    }
+    return true;
+  }
+
+  private void evict(Key key) {
+    HostMemoryBuffer buffer = cached.remove(key);
+    if (buffer != null) {
+      cachedBytes -= key.length;
+      evictions++;
+      buffer.close();
+    }
+  }
+
+  /**
+   * Drop every cached range of a file.
+   */
+  public void invalidate(File file) throws IOException {
+    String path = file.getCanonicalPath();
+    lock.lock();
+    try {
+      List<Key> toRemove = new ArrayList<>();
+      for (Key key : cached.keySet()) {
+        if (key.path.equals(path)) {
+          toRemove.add(key);
+        }
+      }
+      toRemove.forEach(this::evict);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of lookups that were cached.
+   */
+  public long getHitCount() {
+    lock.lock();
+    try {
+      return hits;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of lookups that had to read the file.
+   */
+  public long getMissCount() {
+    lock.lock();
+    try {
+      return misses;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of lookups that waited for another thread reading the same range.
+   */
+  public long getCoalescedCount() {
+    lock.lock();
+    try {
+      return coalesced;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the fraction of lookups that did not read the file.
+   */
+  public double getHitRate() {
+    lock.lock();
+    try {
+      long total = hits + misses + coalesced;
+      return total == 0 ? 0 : (double) (hits + coalesced) / total;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of ranges evicted to make room for others.
+   */
+  public long getEvictionCount() {
+    lock.lock();
+    try {
+      return evictions;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of ranges that were read but not cached, because they were too large or
+   * less popular than what they would have evicted.
+   */
+  public long getRejectedCount() {
+    lock.lock();
+    try {
+      return rejections;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of bytes of ranges that are cached.
+   */
+  public long getCachedBytes() {
+    lock.lock();
+    try {
+      return cachedBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of ranges that are cached.
+   */
+  public int getNumCached() {
+    lock.lock();
+    try {
+      return cached.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of bytes read from files.
+   */
+  public long getBytesRead() {
+    lock.lock();
+    try {
+      return bytesRead;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the time spent reading from files.
+   */
+  public long getReadNanos() {
+    lock.lock();
+    try {
+      return readNanos;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Drop all of the cached ranges. Slices that are still open stay valid until they are closed.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      for (HostMemoryBuffer buffer : cached.values()) {
+        buffer.close();
+      }
+      cached.clear();
+      cachedBytes = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
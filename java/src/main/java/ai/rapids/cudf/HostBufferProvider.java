@@ -1,6 +1,6 @@
 /*
  *
- *  Copyright (c) 2020, NVIDIA CORPORATION.
+ *  Copyright (c) 2020-2021, NVIDIA CORPORATION.
  *
  *  Licensed under the Apache License, Version 2.0 (the "License");
  *  you may not use this file except in compliance with the License.
@@ -23,7 +23,8 @@ package ai.rapids.cudf;
  */
 public interface HostBufferProvider extends AutoCloseable {
   /**
-   * Place data into the given buffer.
+   * Place data into the given buffer. The buffer may be a view of memory owned by the caller,
+   * like a native reader, so it must not be kept or closed after this returns.
    * @param buffer the buffer to put data into.
    * @param len the maximum amount of data to put into buffer.  Less is okay if at EOF.
    * @return the actual amount of data put into the buffer.
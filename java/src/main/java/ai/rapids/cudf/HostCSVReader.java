@@ -0,0 +1,578 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses CSV data into host columns on the CPU, for when there is no GPU or the data is too
+ * small to be worth sending to one. It takes the same {@link Schema} and {@link CSVOptions} as
+ * {@link Table#readCSV(Schema, CSVOptions, HostMemoryBuffer, long, long)}.
+ * <p/>
+ * The data is split into chunks of whole records with {@link CSVSplitter} and each chunk is
+ * parsed on its own thread into its own set of {@link ChunkedColumnBuilder}s. Numbers are parsed
+ * straight from the bytes with {@link HostNumberParser}. At the end the columns of every chunk
+ * are concatenated.
+ * <p/>
+ * Like the GPU reader, the schema decides the columns by position, missing trailing fields are
+ * null, and unquoted values that match one of the null values, including the same defaults the
+ * GPU reader uses, are null. Values that cannot be parsed as the type of their column are also
+ * read as null. Only boolean, integer, floating point, decimal and string columns are supported.
+ */
+public final class HostCSVReader {
+  private static final String[] DEFAULT_NULL_VALUES = {"", "#N/A", "#N/A N/A", "#NA",
+      "-1.#IND", "-1.#QNAN", "-NaN", "-nan", "1.#IND", "1.#QNAN", "<NA>", "N/A", "NA", "NULL",
+      "NaN", "n/a", "nan", "null"};
+  private static final String[] DEFAULT_TRUE_VALUES = {"True", "TRUE", "true"};
+  private static final String[] DEFAULT_FALSE_VALUES = {"False", "FALSE", "false"};
+
+  private static final int INITIAL_WINDOW = 1024 * 1024;
+
+  private HostCSVReader() {
+  }
+
+  /**
+   * The parts of the options and schema every chunk parser needs.
+   */
+  private static final class Context {
+    final DType[] types;
+    /** For each column in the file, the output column it goes to or -1 to skip it */
+    final int[] outputIndex;
+    final int numOutputs;
+    final byte delim;
+    final byte quote;
+    final byte comment;
+    final byte[][] nullValues;
+    final byte[][] trueValues;
+    final byte[][] falseValues;
+
+    Context(Schema schema, CSVOptions opts) {
+      String[] names = schema.getColumnNames();
+      int[] typeIds = schema.getTypeIds();
+      int[] scales = schema.getTypeScales();
+      if (names == null || typeIds == null) {
+        throw new UnsupportedOperationException("Inferring the schema is not supported on " +
+            "the host, pass a schema with the name and type of every column");
+      }
+      Set<String> include = new HashSet<>(Arrays.asList(opts.getIncludeColumnNames()));
+      types = new DType[names.length];
+      outputIndex = new int[names.length];
+      int outputs = 0;
+      for (int i = 0; i < names.length; i++) {
+        DType type = DType.fromNative(typeIds[i], scales[i]);
+        if (!isSupported(type)) {
+          throw new UnsupportedOperationException("Reading " + type + " from CSV is not " +
+              "supported on the host");
+        }
+        if (include.isEmpty() || include.contains(names[i])) {
+          types[outputs] = type;
+          outputIndex[i] = outputs++;
+        } else {
+          outputIndex[i] = -1;
+        }
+      }
+      numOutputs = outputs;
+      delim = opts.getDelim();
+      quote = opts.getQuote();
+      comment = opts.getComment();
+      nullValues = toBytes(DEFAULT_NULL_VALUES, opts.getNullValues());
+      trueValues = toBytes(DEFAULT_TRUE_VALUES, opts.getTrueValues());
+      falseValues = toBytes(DEFAULT_FALSE_VALUES, opts.getFalseValues());
+    }
+
+    private static boolean isSupported(DType type) {
+      switch (type.getTypeId()) {
+        case BOOL8:
+        case INT8:
+        case INT16:
+        case INT32:
+        case INT64:
+        case UINT8:
+        case UINT16:
+        case UINT32:
+        case UINT64:
+        case FLOAT32:
+        case FLOAT64:
+        case DECIMAL32:
+        case DECIMAL64:
+        case STRING:
+          return true;
+        default:
+          return false;
+      }
+    }
+
+    private static byte[][] toBytes(String[] defaults, String[] extra) {
+      Set<String> all = new LinkedHashSet<>(Arrays.asList(defaults));
+      all.addAll(Arrays.asList(extra));
+      byte[][] ret = new byte[all.size()][];
+      int i = 0;
+      for (String s : all) {
+        ret[i++] = s.getBytes(StandardCharsets.UTF_8);
+      }
+      return ret;
+    }
+  }
+
+  private static boolean matchesAny(byte[][] values, byte[] data, int start, int end) {
+    int len = end - start;
+    for (byte[] v : values) {
+      if (v.length == len) {
+        boolean match = true;
+        for (int i = 0; i < len && match; i++) {
+          match = v[i] == data[start + i];
+        }
+        if (match) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parses one chunk of whole records into its own builders.
+   */
+  private static final class ChunkParser implements AutoCloseable {
+    private final Context ctx;
+    private final ChunkedColumnBuilder[] builders;
+    private byte[] window = new byte[INITIAL_WINDOW];
+    private int windowLength = 0;
+    private byte[] unescaped = new byte[256];
+
+    ChunkParser(Context ctx, long chunkLength) {
+      this.ctx = ctx;
+      this.builders = new ChunkedColumnBuilder[ctx.numOutputs];
+      // A rough guess of 8 bytes per field is enough to size the first allocation
+      long estimatedRows = chunkLength / (8L * Math.max(1, ctx.outputIndex.length)) + 1;
+      boolean success = false;
+      try {
+        for (int i = 0; i < builders.length; i++) {
+          builders[i] = new ChunkedColumnBuilder(ctx.types[i], estimatedRows);
+        }
+        success = true;
+      } finally {
+        if (!success) {
+          close();
+        }
+      }
+    }
+
+    /**
+     * Find the end of the record that starts at start, not counting the newline. Like
+     * parseRecord, a quote only opens a quoted value at the start of a field, or right after
+     * the closing quote, where the two are one literal quote.
+     * @return the end, or -1 if the window ends first.
+     */
+    private int findRecordEnd(int start, boolean atEnd) {
+      boolean isComment = ctx.comment != 0 && start < windowLength &&
+          window[start] == ctx.comment;
+      boolean inQuote = false;
+      boolean afterQuote = false;
+      boolean fieldStart = true;
+      for (int i = start; i < windowLength; i++) {
+        byte b = window[i];
+        if (isComment) {
+          if (b == '\n') {
+            return i;
+          }
+        } else if (inQuote) {
+          if (b == ctx.quote) {
+            inQuote = false;
+            afterQuote = true;
+          }
+        } else if (b == '\n') {
+          return i;
+        } else if (ctx.quote != 0 && b == ctx.quote && (fieldStart || afterQuote)) {
+          inQuote = true;
+          fieldStart = false;
+          afterQuote = false;
+        } else {
+          fieldStart = b == ctx.delim;
+          afterQuote = false;
+        }
+      }
+      return atEnd ? windowLength : -1;
+    }
+
+    void parse(HostMemoryBuffer buffer, long offset, long length) {
+      long pos = offset;
+      long end = offset + length;
+      int recordStart = 0;
+      while (true) {
+        boolean atEnd = pos == end;
+        int recordEnd = recordStart < windowLength ? findRecordEnd(recordStart, atEnd) : -1;
+        if (recordEnd >= 0) {
+          parseRecord(recordStart, recordEnd);
+          recordStart = recordEnd + 1;
+          continue;
+        }
+        if (atEnd) {
+          return;
+        }
+        // Keep the partial record and read more data after it
+        int keep = windowLength - recordStart;
+        if (keep == window.length) {
+          window = Arrays.copyOf(window, window.length * 2);
+        } else if (recordStart > 0) {
+          System.arraycopy(window, recordStart, window, 0, keep);
+        }
+        windowLength = keep;
+        recordStart = 0;
+        int amount = (int) Math.min(window.length - windowLength, end - pos);
+        buffer.getBytes(window, windowLength, pos, amount);
+        windowLength += amount;
+        pos += amount;
+      }
+    }
+
+    private void parseRecord(int start, int end) {
+      if (end > start && window[end - 1] == '\r') {
+        end--;
+      }
+      if (start == end || (ctx.comment != 0 && window[start] == ctx.comment)) {
+        // Blank lines and comments are skipped
+        return;
+      }
+      int field = 0;
+      int p = start;
+      while (true) {
+        int fieldEnd;
+        int next;
+        if (ctx.quote != 0 && p < end && window[p] == ctx.quote) {
+          // A quoted value, where two quotes in a row are one literal quote
+          int valueLength = 0;
+          int q = p + 1;
+          while (q < end) {
+            if (window[q] == ctx.quote) {
+              if (q + 1 < end && window[q + 1] == ctx.quote) {
+                unescaped = ensure(unescaped, valueLength + 1);
+                unescaped[valueLength++] = ctx.quote;
+                q += 2;
+                continue;
+              }
+              q++;
+              break;
+            }
+            unescaped = ensure(unescaped, valueLength + 1);
+            unescaped[valueLength++] = window[q++];
+          }
+          // Anything between the closing quote and the delimiter is ignored
+          fieldEnd = q;
+          while (fieldEnd < end && window[fieldEnd] != ctx.delim) {
+            fieldEnd++;
+          }
+          next = fieldEnd;
+          appendField(field, unescaped, 0, valueLength, true);
+        } else {
+          fieldEnd = p;
+          while (fieldEnd < end && window[fieldEnd] != ctx.delim) {
+            fieldEnd++;
+          }
+          next = fieldEnd;
+          appendField(field, window, p, fieldEnd, false);
+        }
+        field++;
+        if (next >= end) {
+          break;
+        }
+        p = next + 1;
+        if (p == end) {
+          // A trailing delimiter means one more empty field
+          appendField(field++, window, p, p, false);
+          break;
+        }
+      }
+      for (; field < ctx.outputIndex.length; field++) {
+        int out = ctx.outputIndex[field];
+        if (out >= 0) {
+          builders[out].appendNull();
+        }
+      }
+    }
+
+    private static byte[] ensure(byte[] b, int size) {
+      return size <= b.length ? b : Arrays.copyOf(b, Math.max(size, b.length * 2));
+    }
+
+    private void appendField(int field, byte[] data, int start, int end, boolean quoted) {
+      if (field >= ctx.outputIndex.length || ctx.outputIndex[field] < 0) {
+        return;
+      }
+      ChunkedColumnBuilder b = builders[ctx.outputIndex[field]];
+      DType type = b.getType();
+      if (!quoted && matchesAny(ctx.nullValues, data, start, end)) {
+        b.appendNull();
+        return;
+      }
+      if (type.equals(DType.STRING)) {
+        b.appendUTF8String(data, start, end - start);
+        return;
+      }
+      // Numbers and booleans may be padded with spaces
+      while (start < end && data[start] == ' ') {
+        start++;
+      }
+      while (end > start && data[end - 1] == ' ') {
+        end--;
+      }
+      try {
+        appendValue(b, type, data, start, end);
+      } catch (NumberFormatException | ArithmeticException e) {
+        b.appendNull();
+      }
+    }
+
+    private void appendValue(ChunkedColumnBuilder b, DType type, byte[] data, int start,
+                             int end) {
+      boolean isTrue = matchesAny(ctx.trueValues, data, start, end);
+      if (isTrue || matchesAny(ctx.falseValues, data, start, end)) {
+        if (type.equals(DType.BOOL8)) {
+          b.append(isTrue);
+          return;
+        }
+        // Like the GPU reader, true and false values are also 1 and 0 in numeric columns
+        data = isTrue ? new byte[]{'1'} : new byte[]{'0'};
+        start = 0;
+        end = 1;
+      }
+      switch (type.getTypeId()) {
+        case BOOL8:
+          b.append(HostNumberParser.parseLongUTF8(data, start, end - start) != 0);
+          break;
+        case INT8:
+          b.append((byte) inRange(data, start, end, Byte.MIN_VALUE, Byte.MAX_VALUE));
+          break;
+        case UINT8:
+          b.append((byte) inRange(data, start, end, 0, 0xFFL));
+          break;
+        case INT16:
+          b.append((short) inRange(data, start, end, Short.MIN_VALUE, Short.MAX_VALUE));
+          break;
+        case UINT16:
+          b.append((short) inRange(data, start, end, 0, 0xFFFFL));
+          break;
+        case INT32:
+          b.append((int) inRange(data, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE));
+          break;
+        case UINT32:
+          b.append((int) inRange(data, start, end, 0, 0xFFFFFFFFL));
+          break;
+        case INT64:
+          b.append(HostNumberParser.parseLongUTF8(data, start, end - start));
+          break;
+        case UINT64:
+          b.append(HostNumberParser.parseUnsignedLongUTF8(data, start, end - start));
+          break;
+        case FLOAT32:
+          b.append(HostNumberParser.parseFloatUTF8(data, start, end - start));
+          break;
+        case FLOAT64:
+          b.append(HostNumberParser.parseDoubleUTF8(data, start, end - start));
+          break;
+        case DECIMAL32:
+          b.append(Math.toIntExact(HostNumberParser.parseUnscaledDecimalUTF8(data, start,
+              end - start, type.getScale(), RoundingMode.HALF_UP)));
+          break;
+        case DECIMAL64:
+          b.append(HostNumberParser.parseUnscaledDecimalUTF8(data, start, end - start,
+              type.getScale(), RoundingMode.HALF_UP));
+          break;
+        default:
+          throw new IllegalStateException("Unexpected type " + type);
+      }
+    }
+
+    private static long inRange(byte[] data, int start, int end, long min, long max) {
+      long ret = HostNumberParser.parseLongUTF8(data, start, end - start);
+      if (ret < min || ret > max) {
+        throw new ArithmeticException("Value " + ret + " out of range");
+      }
+      return ret;
+    }
+
+    HostColumnVector[] build() {
+      HostColumnVector[] ret = new HostColumnVector[builders.length];
+      boolean success = false;
+      try {
+        for (int i = 0; i < builders.length; i++) {
+          ret[i] = builders[i].build();
+        }
+        success = true;
+        return ret;
+      } finally {
+        if (!success) {
+          closeAll(ret);
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      for (ChunkedColumnBuilder b : builders) {
+        if (b != null) {
+          b.close();
+        }
+      }
+    }
+  }
+
+  private static void closeAll(HostColumnVector[] columns) {
+    if (columns == null) {
+      return;
+    }
+    for (HostColumnVector c : columns) {
+      if (c != null) {
+        c.close();
+      }
+    }
+  }
+
+  private static HostColumnVector[] parseChunk(Context ctx, HostMemoryBuffer buffer,
+                                               CSVSplitter.Chunk chunk) {
+    try (ChunkParser parser = new ChunkParser(ctx, chunk.getLength())) {
+      parser.parse(buffer, chunk.getOffset(), chunk.getLength());
+      return parser.build();
+    }
+  }
+
+  /**
+   * Parse CSV data held in a host buffer.
+   * @param schema the name and type of every column in the data.
+   * @param opts various CSV parsing options.
+   * @param buffer raw UTF8 formatted bytes.
+   * @param offset the starting offset into buffer.
+   * @param len the number of bytes to parse.
+   * @param numChunks how many chunks to split the data into to parse in parallel.
+   * @param pool the threads to parse with, or null to parse on the calling thread.
+   * @return a column for each included column in the schema, owned by the caller.
+   */
+  public static HostColumnVector[] readCSV(Schema schema, CSVOptions opts,
+                                           HostMemoryBuffer buffer, long offset, long len,
+                                           int numChunks, ExecutorService pool) {
+    Context ctx = new Context(schema, opts);
+    List<CSVSplitter.Chunk> chunks =
+        CSVSplitter.split(opts, buffer, offset, len, numChunks, pool).getChunks();
+    List<HostColumnVector[]> parsed = new ArrayList<>(chunks.size());
+    try {
+      if (pool == null || chunks.size() <= 1) {
+        for (CSVSplitter.Chunk chunk : chunks) {
+          parsed.add(parseChunk(ctx, buffer, chunk));
+        }
+      } else {
+        List<Future<HostColumnVector[]>> futures = new ArrayList<>(chunks.size());
+        for (CSVSplitter.Chunk chunk : chunks) {
+          futures.add(pool.submit(() -> parseChunk(ctx, buffer, chunk)));
+        }
+        RuntimeException error = null;
+        for (Future<HostColumnVector[]> f : futures) {
+          try {
+            parsed.add(f.get());
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = error != null ? error : new RuntimeException("Interrupted reading CSV", e);
+          } catch (ExecutionException e) {
+            error = error != null ? error : e.getCause() instanceof RuntimeException ?
+                (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+          }
+        }
+        if (error != null) {
+          throw error;
+        }
+      }
+      return merge(ctx, parsed);
+    } finally {
+      for (HostColumnVector[] columns : parsed) {
+        closeAll(columns);
+      }
+    }
+  }
+
+  private static HostColumnVector[] merge(Context ctx, List<HostColumnVector[]> parsed) {
+    HostColumnVector[] ret = new HostColumnVector[ctx.numOutputs];
+    boolean success = false;
+    try {
+      for (int c = 0; c < ret.length; c++) {
+        if (parsed.isEmpty()) {
+          try (ChunkedColumnBuilder b = new ChunkedColumnBuilder(ctx.types[c], 0)) {
+            ret[c] = b.build();
+          }
+        } else if (parsed.size() == 1) {
+          // Hand over the only column, so it is not closed with the rest
+          ret[c] = parsed.get(0)[c];
+          parsed.get(0)[c] = null;
+        } else {
+          HostColumnVector[] parts = new HostColumnVector[parsed.size()];
+          for (int i = 0; i < parts.length; i++) {
+            parts[i] = parsed.get(i)[c];
+          }
+          ret[c] = HostColumnVector.concatenate(parts);
+        }
+      }
+      success = true;
+      return ret;
+    } finally {
+      if (!success) {
+        closeAll(ret);
+      }
+    }
+  }
+
+  /**
+   * Parse CSV data on the calling thread.
+   */
+  public static HostColumnVector[] readCSV(Schema schema, CSVOptions opts, byte[] data) {
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(Math.max(1, data.length))) {
+      buffer.setBytes(0, data, 0, data.length);
+      return readCSV(schema, opts, buffer, 0, data.length, 1, null);
+    }
+  }
+
+  /**
+   * Memory map a CSV file and parse it.
+   * @param numChunks how many chunks to split the file into to parse in parallel.
+   * @param pool the threads to parse with, or null to parse on the calling thread.
+   * @return a column for each included column in the schema, owned by the caller.
+   */
+  public static HostColumnVector[] readCSV(Schema schema, CSVOptions opts, File path,
+                                           int numChunks, ExecutorService pool)
+      throws IOException {
+    long len = path.length();
+    if (len == 0) {
+      return readCSV(schema, opts, new byte[0]);
+    }
+    try (HostMemoryBuffer mapped = HostMemoryBuffer.mapFile(path, FileChannel.MapMode.READ_ONLY,
+        0, len)) {
+      return readCSV(schema, opts, mapped, 0, len, numChunks, pool);
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+/**
+ * A cursor that walks a host column, including LIST and STRUCT columns, by reading the
+ * offsets, validity and child columns directly. Unlike {@link HostColumnVectorCore#getList}
+ * and {@link HostColumnVectorCore#getStruct} nothing is boxed and nothing is allocated per
+ * row. All of the cursors for child columns are created up front and are repositioned as the
+ * parent moves.
+ * <p/>
+ * A cursor iterates over a range of rows. For a top level column that range is every row. For
+ * the elements of a list the range is the child rows of the current list entry.
+ * <pre>
+ * HostColumnCursor lists = new HostColumnCursor(listOfInts);
+ * while (lists.next()) {
+ *   if (!lists.isNull()) {
+ *     HostColumnCursor elements = lists.elements();
+ *     while (elements.next()) {
+ *       sum += elements.isNull() ? 0 : elements.getInt();
+ *     }
+ *   }
+ * }
+ * </pre>
+ * Cursors are not thread safe and are only valid while the column they read is open.
+ */
+public final class HostColumnCursor {
+  private final HostColumnVectorCore column;
+  private final DType type;
+  private final HostMemoryBuffer valid;
+  private final HostMemoryBuffer offsets;
+  private final long dataAddress;
+  private final HostColumnCursor[] children;
+  private long row;
+  private long start;
+  private long end;
+
+  /**
+   * Create a cursor over all of the rows in a column. The cursor starts before the first row.
+   */
+  public HostColumnCursor(HostColumnVectorCore column) {
+    this.column = column;
+    this.type = column.getType();
+    this.valid = column.getValidity();
+    this.offsets = column.getOffsets();
+    HostMemoryBuffer data = column.getData();
+    this.dataAddress = data == null ? 0 : data.getAddress();
+    int numChildren = column.getNumChildren();
+    this.children = new HostColumnCursor[numChildren];
+    for (int i = 0; i < numChildren; i++) {
+      children[i] = new HostColumnCursor(column.getChildColumnView(i));
+    }
+    reset(0, column.getRowCount());
+  }
+
+  /**
+   * Get the column this cursor reads.
+   */
+  public HostColumnVectorCore getColumn() {
+    return column;
+  }
+
+  /**
+   * Get the type of the column.
+   */
+  public DType getType() {
+    return type;
+  }
+
+  /**
+   * Restrict the cursor to the rows [start, end) and place it before start.
+   * @return this cursor.
+   */
+  public HostColumnCursor reset(long start, long end) {
+    assert start >= 0 && start <= end && end <= column.getRowCount() :
+        "range " + start + " to " + end + " is out of range for " + column.getRowCount() + " rows";
+    this.start = start;
+    this.end = end;
+    this.row = start - 1;
+    return this;
+  }
+
+  /**
+   * Move to the next row in the range.
+   * @return true if the cursor is on a row, false if the range is done.
+   */
+  public boolean next() {
+    if (row < end) {
+      row++;
+    }
+    return row < end;
+  }
+
+  /**
+   * Move to a specific row of the column. This does not change the range that
+   * {@link #next()} iterates over.
+   * @return this cursor.
+   */
+  public HostColumnCursor at(long row) {
+    assert row >= 0 && row < column.getRowCount() :
+        "row " + row + " is out of range for " + column.getRowCount() + " rows";
+    this.row = row;
+    return this;
+  }
+
+  /**
+   * Get the row of the column that the cursor is on.
+   */
+  public long getRow() {
+    return row;
+  }
+
+  /**
+   * Get the number of rows in the range being iterated over.
+   */
+  public long getRangeSize() {
+    return end - start;
+  }
+
+  private void assertOnRow() {
+    assert row >= 0 && row < column.getRowCount() : "cursor is not on a row";
+  }
+
+  /**
+   * Is the current row null.
+   */
+  public boolean isNull() {
+    assertOnRow();
+    return valid != null && BitVectorHelper.isNull(valid, row);
+  }
+
+  public byte getByte() {
+    assert type.isBackedByByte() : type + " is not stored as a byte.";
+    assertOnRow();
+    return UnsafeMemoryAccessor.getByte(dataAddress + row);
+  }
+
+  public boolean getBoolean() {
+    assert type.equals(DType.BOOL8) : type + " is not a supported boolean type.";
+    assertOnRow();
+    return UnsafeMemoryAccessor.getByte(dataAddress + row) != 0;
+  }
+
+  public short getShort() {
+    assert type.isBackedByShort() : type + " is not stored as a short.";
+    assertOnRow();
+    return UnsafeMemoryAccessor.getShort(dataAddress + row * 2);
+  }
+
+  public int getInt() {
+    assert type.isBackedByInt() : type + " is not stored as a int.";
+    assertOnRow();
+    return UnsafeMemoryAccessor.getInt(dataAddress + row * 4);
+  }
+
+  public long getLong() {
+    assert type.isBackedByLong() : type + " is not stored as a long.";
+    assertOnRow();
+    return UnsafeMemoryAccessor.getLong(dataAddress + row * 8);
+  }
+
+  public float getFloat() {
+    assert type.equals(DType.FLOAT32) : type + " is not a supported float type.";
+    assertOnRow();
+    return UnsafeMemoryAccessor.getFloat(dataAddress + row * 4);
+  }
+
+  public double getDouble() {
+    assert type.equals(DType.FLOAT64) : type + " is not a supported double type.";
+    assertOnRow();
+    return UnsafeMemoryAccessor.getDouble(dataAddress + row * 8);
+  }
+
+  /**
+   * Point a view at the string in the current row.
+   * @return view, for chaining.
+   */
+  public Utf8View getUTF8(Utf8View view) {
+    assert type.equals(DType.STRING) : type + " is not a supported string type.";
+    assertOnRow();
+    int startOffset = offsets.getInt(row * HostColumnVector.OFFSET_SIZE);
+    int endOffset = offsets.getInt((row + 1) * HostColumnVector.OFFSET_SIZE);
+    return view.wrap(column.getData(), startOffset, endOffset - startOffset);
+  }
+
+  /**
+   * Get the number of elements in the list, or bytes in the string, in the current row.
+   */
+  public int getListSize() {
+    assert type.equals(DType.LIST) || type.equals(DType.STRING) :
+        type + " is not a supported string or list type.";
+    assertOnRow();
+    return offsets.getInt((row + 1) * HostColumnVector.OFFSET_SIZE) -
+        offsets.getInt(row * HostColumnVector.OFFSET_SIZE);
+  }
+
+  /**
+   * Get a cursor over the elements of the list in the current row. The returned cursor is
+   * owned by this one and is reset each time this is called.
+   */
+  public HostColumnCursor elements() {
+    assert type.equals(DType.LIST) : type + " is not a list.";
+    assertOnRow();
+    int startOffset = offsets.getInt(row * HostColumnVector.OFFSET_SIZE);
+    int endOffset = offsets.getInt((row + 1) * HostColumnVector.OFFSET_SIZE);
+    return children[0].reset(startOffset, endOffset);
+  }
+
+  /**
+   * Get a cursor on the element at index of the list in the current row.
+   */
+  public HostColumnCursor element(int index) {
+    assert type.equals(DType.LIST) : type + " is not a list.";
+    assert index >= 0 && index < getListSize() : "element " + index + " is out of range";
+    return children[0].at(offsets.getInt(row * HostColumnVector.OFFSET_SIZE) + index);
+  }
+
+  /**
+   * Get the number of fields in a STRUCT column, or 1 for a LIST column.
+   */
+  public int getNumChildren() {
+    return children.length;
+  }
+
+  /**
+   * Get a cursor on a field of the struct in the current row. The returned cursor is owned by
+   * this one and iterates over the same range as this cursor.
+   */
+  public HostColumnCursor field(int index) {
+    assert type.equals(DType.STRUCT) : type + " is not a struct.";
+    assertOnRow();
+    HostColumnCursor child = children[index];
+    child.start = start;
+    child.end = end;
+    child.row = row;
+    return child;
+  }
+}
@@ -0,0 +1,547 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Statistics about a host column that are useful for planning, like picking a join strategy or
+ * sizing a hash table, before a batch is sent to the GPU. They are all computed in one pass
+ * over the column that walks the validity 64 rows at a time and skips over the nulls:
+ * <ul>
+ *   <li>the null count and null fraction</li>
+ *   <li>an estimate of the number of distinct non-null values, from a {@link HostHyperLogLog}</li>
+ *   <li>the min and max non-null values, NaN is ignored for floating point columns</li>
+ *   <li>the average length in bytes of the non-null values of a STRING column</li>
+ * </ul>
+ * Nested columns only get row and null counts.
+ * <p/>
+ * Statistics for batches of the same column can be merged, and can be written to a stream in
+ * front of a table written with {@link JCudfSerialization} so a reader can look at them before
+ * deciding how to read the table.
+ */
+public final class HostColumnStatistics {
+  private static final int STATS_MAGIC_NUMBER = 0x43535441;
+  private static final short VERSION_NUMBER = 0x0000;
+
+  private final DType type;
+  private final HostHyperLogLog sketch;
+  private long rowCount = 0;
+  private long nullCount = 0;
+  private boolean hasMinMax = false;
+  private long minLong = 0;
+  private long maxLong = 0;
+  private double minDouble = 0;
+  private double maxDouble = 0;
+  private byte[] minBytes = null;
+  private byte[] maxBytes = null;
+  private long stringBytes = 0;
+
+  private HostColumnStatistics(DType type, HostHyperLogLog sketch) {
+    this.type = type;
+    this.sketch = sketch;
+  }
+
+  /**
+   * Compute statistics for a column with a sketch of the default precision.
+   */
+  public static HostColumnStatistics compute(HostColumnVectorCore column) {
+    return compute(column, HostHyperLogLog.DEFAULT_PRECISION);
+  }
+
+  /**
+   * Compute statistics for a column.
+   * @param column the column.
+   * @param precision the precision of the distinct count sketch, see {@link HostHyperLogLog}.
+   */
+  public static HostColumnStatistics compute(HostColumnVectorCore column, int precision) {
+    DType type = column.getType();
+    HostColumnStatistics ret = new HostColumnStatistics(type,
+        type.isNestedType() ? null : new HostHyperLogLog(precision));
+    ret.rowCount = column.getRowCount();
+    HostMemoryBuffer valid = column.getValidity();
+    ret.nullCount = valid == null ? 0 : BitVectorHelper.countNulls(valid, ret.rowCount);
+    if (type.isNestedType() || ret.nullCount == ret.rowCount) {
+      return ret;
+    }
+    if (type.equals(DType.STRING)) {
+      ret.scanStrings(column);
+    } else if (type.equals(DType.FLOAT32) || type.equals(DType.FLOAT64)) {
+      ret.scanDoubles(column);
+    } else {
+      ret.scanLongs(column);
+    }
+    return ret;
+  }
+
+  /**
+   * Compute statistics for each column of a table.
+   */
+  public static HostColumnStatistics[] computeAll(HostColumnVectorCore... columns) {
+    HostColumnStatistics[] ret = new HostColumnStatistics[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      ret[i] = compute(columns[i]);
+    }
+    return ret;
+  }
+
+  /**
+   * Get the validity bits for a word of 64 rows, masked to the rows in the column.
+   */
+  private static long validWord(HostMemoryBuffer valid, long word, long rows) {
+    long bits = valid == null ? -1L : BitVectorHelper.getValidityWord(valid, word);
+    long left = rows - word * 64;
+    return left < 64 ? bits & ((1L << left) - 1) : bits;
+  }
+
+  private boolean isUnsigned() {
+    switch (type.typeId) {
+      case UINT8:
+      case UINT16:
+      case UINT32:
+      case UINT64:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private void scanLongs(HostColumnVectorCore column) {
+    HostMemoryBuffer data = column.getData();
+    HostMemoryBuffer valid = column.getValidity();
+    int size = type.getSizeInBytes();
+    boolean unsigned = isUnsigned();
+    long min = 0;
+    long max = 0;
+    boolean first = true;
+    for (long word = 0; word * 64 < rowCount; word++) {
+      long bits = validWord(valid, word, rowCount);
+      while (bits != 0) {
+        long row = word * 64 + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        long value;
+        switch (size) {
+          case 1:
+            value = unsigned ? data.getByte(row) & 0xFFL : data.getByte(row);
+            break;
+          case 2:
+            value = unsigned ? data.getShort(row * 2) & 0xFFFFL : data.getShort(row * 2);
+            break;
+          case 4:
+            value = unsigned ? data.getInt(row * 4) & 0xFFFFFFFFL : data.getInt(row * 4);
+            break;
+          default:
+            value = data.getLong(row * 8);
+            break;
+        }
+        sketch.add(value);
+        if (first) {
+          min = value;
+          max = value;
+          first = false;
+        } else if (unsigned) {
+          min = Long.compareUnsigned(value, min) < 0 ? value : min;
+          max = Long.compareUnsigned(value, max) > 0 ? value : max;
+        } else {
+          min = Math.min(min, value);
+          max = Math.max(max, value);
+        }
+      }
+    }
+    hasMinMax = !first;
+    minLong = min;
+    maxLong = max;
+  }
+
+  private void scanDoubles(HostColumnVectorCore column) {
+    HostMemoryBuffer data = column.getData();
+    HostMemoryBuffer valid = column.getValidity();
+    boolean isFloat = type.equals(DType.FLOAT32);
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    boolean any = false;
+    for (long word = 0; word * 64 < rowCount; word++) {
+      long bits = validWord(valid, word, rowCount);
+      while (bits != 0) {
+        long row = word * 64 + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        double value = isFloat ? data.getFloat(row * 4) : data.getDouble(row * 8);
+        // -0.0 and 0.0 are the same value, and all NaNs are one value
+        sketch.add(Double.doubleToLongBits(value == 0.0 ? 0.0 : value));
+        if (!Double.isNaN(value)) {
+          any = true;
+          min = Math.min(min, value);
+          max = Math.max(max, value);
+        }
+      }
+    }
+    hasMinMax = any;
+    minDouble = min;
+    maxDouble = max;
+  }
+
+  private void scanStrings(HostColumnVectorCore column) {
+    HostMemoryBuffer valid = column.getValidity();
+    Utf8View current = new Utf8View();
+    Utf8View min = null;
+    Utf8View max = null;
+    long total = 0;
+    for (long word = 0; word * 64 < rowCount; word++) {
+      long bits = validWord(valid, word, rowCount);
+      while (bits != 0) {
+        long row = word * 64 + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        column.getUTF8View(row, current);
+        int length = current.getByteLength();
+        total += length;
+        sketch.addBytes(current.getBuffer(), current.getOffset(), length);
+        if (min == null) {
+          min = column.getUTF8View(row, new Utf8View());
+          max = column.getUTF8View(row, new Utf8View());
+        } else if (current.compareTo(min) < 0) {
+          Utf8View tmp = min;
+          min = current;
+          current = tmp;
+        } else if (current.compareTo(max) > 0) {
+          Utf8View tmp = max;
+          max = current;
+          current = tmp;
+        }
+      }
+    }
+    stringBytes = total;
+    if (min != null) {
+      hasMinMax = true;
+      minBytes = min.getBytes();
+      maxBytes = max.getBytes();
+    }
+  }
+
+  private static int compareUTF8(byte[] a, byte[] b) {
+    int len = Math.min(a.length, b.length);
+    for (int i = 0; i < len; i++) {
+      int ai = a[i] & 0xFF;
+      int bi = b[i] & 0xFF;
+      if (ai != bi) {
+        return ai - bi;
+      }
+    }
+    return Integer.compare(a.length, b.length);
+  }
+
+  /**
+   * Combine the statistics of two batches of the same column. Both must have been computed
+   * with the same sketch precision.
+   * @return new statistics covering the rows of both.
+   */
+  public HostColumnStatistics merge(HostColumnStatistics other) {
+    if (!type.equals(other.type)) {
+      throw new IllegalArgumentException("Cannot merge statistics of " + other.type +
+          " into statistics of " + type);
+    }
+    HostColumnStatistics ret = new HostColumnStatistics(type,
+        sketch == null ? null : sketch.copy());
+    if (ret.sketch != null) {
+      ret.sketch.merge(other.sketch);
+    }
+    ret.rowCount = rowCount + other.rowCount;
+    ret.nullCount = nullCount + other.nullCount;
+    ret.stringBytes = stringBytes + other.stringBytes;
+    ret.hasMinMax = hasMinMax || other.hasMinMax;
+    if (!hasMinMax || !other.hasMinMax) {
+      HostColumnStatistics from = hasMinMax ? this : other;
+      ret.minLong = from.minLong;
+      ret.maxLong = from.maxLong;
+      ret.minDouble = from.minDouble;
+      ret.maxDouble = from.maxDouble;
+      ret.minBytes = from.minBytes;
+      ret.maxBytes = from.maxBytes;
+    } else if (type.equals(DType.STRING)) {
+      ret.minBytes = compareUTF8(minBytes, other.minBytes) <= 0 ? minBytes : other.minBytes;
+      ret.maxBytes = compareUTF8(maxBytes, other.maxBytes) >= 0 ? maxBytes : other.maxBytes;
+    } else if (type.equals(DType.FLOAT32) || type.equals(DType.FLOAT64)) {
+      ret.minDouble = Math.min(minDouble, other.minDouble);
+      ret.maxDouble = Math.max(maxDouble, other.maxDouble);
+    } else if (isUnsigned()) {
+      ret.minLong = Long.compareUnsigned(minLong, other.minLong) <= 0 ? minLong : other.minLong;
+      ret.maxLong = Long.compareUnsigned(maxLong, other.maxLong) >= 0 ? maxLong : other.maxLong;
+    } else {
+      ret.minLong = Math.min(minLong, other.minLong);
+      ret.maxLong = Math.max(maxLong, other.maxLong);
+    }
+    return ret;
+  }
+
+  public DType getType() {
+    return type;
+  }
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  public long getNullCount() {
+    return nullCount;
+  }
+
+  /**
+   * Get the fraction of the rows that are null, or 0 if there are no rows.
+   */
+  public double getNullFraction() {
+    return rowCount == 0 ? 0 : (double) nullCount / rowCount;
+  }
+
+  /**
+   * Get an estimate of the number of distinct non-null values.
+   */
+  public long getDistinctCount() {
+    if (sketch == null) {
+      throw new IllegalStateException("Distinct counts are not computed for " + type);
+    }
+    return Math.min(sketch.estimate(), rowCount - nullCount);
+  }
+
+  /**
+   * Get a copy of the distinct count sketch, or null for nested types.
+   */
+  public HostHyperLogLog getSketch() {
+    return sketch == null ? null : sketch.copy();
+  }
+
+  /**
+   * Are there min and max values. There are not for nested types or if every value is null
+   * or NaN.
+   */
+  public boolean hasMinMax() {
+    return hasMinMax;
+  }
+
+  private void checkMinMax() {
+    if (!hasMinMax) {
+      throw new IllegalStateException("There are no min and max values");
+    }
+  }
+
+  /**
+   * Get the min value of an integral, timestamp, duration or decimal column as a long.
+   * Unsigned values are zero extended, UINT64 values should be compared as unsigned.
+   */
+  public long getMinLong() {
+    assert type.isBackedByByte() || type.isBackedByShort() || type.isBackedByInt() ||
+        type.isBackedByLong() : type + " is not stored as an integer.";
+    checkMinMax();
+    return minLong;
+  }
+
+  /**
+   * Get the max value of an integral, timestamp, duration or decimal column as a long.
+   */
+  public long getMaxLong() {
+    assert type.isBackedByByte() || type.isBackedByShort() || type.isBackedByInt() ||
+        type.isBackedByLong() : type + " is not stored as an integer.";
+    checkMinMax();
+    return maxLong;
+  }
+
+  public double getMinDouble() {
+    assert type.equals(DType.FLOAT32) || type.equals(DType.FLOAT64) : type +
+        " is not a floating point type.";
+    checkMinMax();
+    return minDouble;
+  }
+
+  public double getMaxDouble() {
+    assert type.equals(DType.FLOAT32) || type.equals(DType.FLOAT64) : type +
+        " is not a floating point type.";
+    checkMinMax();
+    return maxDouble;
+  }
+
+  public BigDecimal getMinDecimal() {
+    assert type.isDecimalType() : type + " is not a decimal type.";
+    checkMinMax();
+    return new BigDecimal(BigInteger.valueOf(minLong), -type.getScale());
+  }
+
+  public BigDecimal getMaxDecimal() {
+    assert type.isDecimalType() : type + " is not a decimal type.";
+    checkMinMax();
+    return new BigDecimal(BigInteger.valueOf(maxLong), -type.getScale());
+  }
+
+  /**
+   * Get the UTF-8 bytes of the min value of a STRING column.
+   */
+  public byte[] getMinUTF8() {
+    assert type.equals(DType.STRING) : type + " is not a string type.";
+    checkMinMax();
+    return minBytes.clone();
+  }
+
+  /**
+   * Get the UTF-8 bytes of the max value of a STRING column.
+   */
+  public byte[] getMaxUTF8() {
+    assert type.equals(DType.STRING) : type + " is not a string type.";
+    checkMinMax();
+    return maxBytes.clone();
+  }
+
+  public String getMinString() {
+    return new String(getMinUTF8(), StandardCharsets.UTF_8);
+  }
+
+  public String getMaxString() {
+    return new String(getMaxUTF8(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Get the total number of bytes in the non-null values of a STRING column.
+   */
+  public long getTotalStringBytes() {
+    assert type.equals(DType.STRING) : type + " is not a string type.";
+    return stringBytes;
+  }
+
+  /**
+   * Get the average length in bytes of the non-null values of a STRING column, or 0 if they
+   * are all null.
+   */
+  public double getAverageStringLength() {
+    assert type.equals(DType.STRING) : type + " is not a string type.";
+    long nonNull = rowCount - nullCount;
+    return nonNull == 0 ? 0 : (double) stringBytes / nonNull;
+  }
+
+  /**
+   * Write the statistics to a stream.
+   */
+  public void writeTo(DataOutputStream dout) throws IOException {
+    dout.writeInt(type.typeId.getNativeId());
+    dout.writeInt(type.getScale());
+    dout.writeLong(rowCount);
+    dout.writeLong(nullCount);
+    dout.writeBoolean(hasMinMax);
+    if (hasMinMax) {
+      if (type.equals(DType.STRING)) {
+        dout.writeInt(minBytes.length);
+        dout.write(minBytes);
+        dout.writeInt(maxBytes.length);
+        dout.write(maxBytes);
+      } else if (type.equals(DType.FLOAT32) || type.equals(DType.FLOAT64)) {
+        dout.writeDouble(minDouble);
+        dout.writeDouble(maxDouble);
+      } else {
+        dout.writeLong(minLong);
+        dout.writeLong(maxLong);
+      }
+    }
+    if (type.equals(DType.STRING)) {
+      dout.writeLong(stringBytes);
+    }
+    if (sketch != null) {
+      sketch.writeTo(dout);
+    }
+  }
+
+  /**
+   * Read statistics that were written with {@link #writeTo(DataOutputStream)}.
+   */
+  public static HostColumnStatistics readFrom(DataInputStream din) throws IOException {
+    DType type = DType.fromNative(din.readInt(), din.readInt());
+    long rowCount = din.readLong();
+    long nullCount = din.readLong();
+    boolean hasMinMax = din.readBoolean();
+    long minLong = 0;
+    long maxLong = 0;
+    double minDouble = 0;
+    double maxDouble = 0;
+    byte[] minBytes = null;
+    byte[] maxBytes = null;
+    if (hasMinMax) {
+      if (type.equals(DType.STRING)) {
+        minBytes = new byte[din.readInt()];
+        din.readFully(minBytes);
+        maxBytes = new byte[din.readInt()];
+        din.readFully(maxBytes);
+      } else if (type.equals(DType.FLOAT32) || type.equals(DType.FLOAT64)) {
+        minDouble = din.readDouble();
+        maxDouble = din.readDouble();
+      } else {
+        minLong = din.readLong();
+        maxLong = din.readLong();
+      }
+    }
+    long stringBytes = type.equals(DType.STRING) ? din.readLong() : 0;
+    HostHyperLogLog sketch = type.isNestedType() ? null : HostHyperLogLog.readFrom(din);
+    HostColumnStatistics ret = new HostColumnStatistics(type, sketch);
+    ret.rowCount = rowCount;
+    ret.nullCount = nullCount;
+    ret.hasMinMax = hasMinMax;
+    ret.minLong = minLong;
+    ret.maxLong = maxLong;
+    ret.minDouble = minDouble;
+    ret.maxDouble = maxDouble;
+    ret.minBytes = minBytes;
+    ret.maxBytes = maxBytes;
+    ret.stringBytes = stringBytes;
+    return ret;
+  }
+
+  /**
+   * Write the statistics for the columns of a table, with a magic number and version like the
+   * table headers {@link JCudfSerialization} writes.
+   */
+  public static void writeTable(DataOutputStream dout, HostColumnStatistics... columns)
+      throws IOException {
+    dout.writeInt(STATS_MAGIC_NUMBER);
+    dout.writeShort(VERSION_NUMBER);
+    dout.writeInt(columns.length);
+    for (HostColumnStatistics column : columns) {
+      column.writeTo(dout);
+    }
+  }
+
+  /**
+   * Read the statistics for the columns of a table that were written with
+   * {@link #writeTable(DataOutputStream, HostColumnStatistics...)}.
+   */
+  public static HostColumnStatistics[] readTable(DataInputStream din) throws IOException {
+    int num = din.readInt();
+    if (num != STATS_MAGIC_NUMBER) {
+      throw new IllegalStateException("THIS DOES NOT LOOK LIKE CUDF COLUMN STATISTICS. " +
+          "Expected magic number " + STATS_MAGIC_NUMBER + " Found " + num);
+    }
+    short version = din.readShort();
+    if (version != VERSION_NUMBER) {
+      throw new IllegalStateException("READING THE WRONG STATISTICS FORMAT VERSION FOUND "
+          + version + " EXPECTED " + VERSION_NUMBER);
+    }
+    HostColumnStatistics[] ret = new HostColumnStatistics[din.readInt()];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = readFrom(din);
+    }
+    return ret;
+  }
+}
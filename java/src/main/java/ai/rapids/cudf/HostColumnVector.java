@@ -233,6 +233,246 @@ public final class HostColumnVector extends HostColumnVectorCore {
     }
   }
 
+  /////////////////////////////////////////////////////////////////////////////
+  // HOST CONCATENATION
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Create a new vector by concatenating multiple host columns together without going to the
+   * device. All columns must have the same type, including the types of any nested children.
+   * The size of every output buffer is calculated before any data is copied, so each column and
+   * child column in the result is backed by a single contiguous set of buffers.
+   * @param columns the columns to concatenate.
+   * @return the new HostColumnVector.
+   */
+  public static HostColumnVector concatenate(HostColumnVector... columns) {
+    return concatenateViews(columns);
+  }
+
+  /**
+   * Concatenate columns that may not be top level vectors, like the children of another column.
+   * @param columns the columns to concatenate.
+   * @return the new HostColumnVector.
+   */
+  static HostColumnVector concatenateViews(HostColumnVectorCore[] columns) {
+    if (columns.length < 1) {
+      throw new IllegalArgumentException("Concatenate requires at least 1 column");
+    }
+    long[] rowOffsets = new long[columns.length];
+    long[] numRows = new long[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      numRows[i] = columns[i].getRowCount();
+    }
+    return (HostColumnVector) concatenate(columns[0].getType(), columns, rowOffsets, numRows, true);
+  }
+
+  /**
+   * Concatenate row ranges of host columns. Ranges are needed because the children of a list
+   * column may only be partially referenced by the offsets of the parent.
+   */
+  private static HostColumnVectorCore concatenate(DType type, HostColumnVectorCore[] columns,
+                                                  long[] rowOffsets, long[] numRows,
+                                                  boolean isTopLevel) {
+    long totalRows = 0;
+    for (int i = 0; i < columns.length; i++) {
+      if (!type.equals(columns[i].getType())) {
+        throw new IllegalArgumentException("All columns must have the same type, expected " +
+            type + " but found " + columns[i].getType());
+      }
+      totalRows += numRows[i];
+    }
+    if (totalRows > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Total number of rows " + totalRows +
+          " is larger than is supported for a single column");
+    }
+
+    HostMemoryBuffer data = null;
+    HostMemoryBuffer valid = null;
+    HostMemoryBuffer offsets = null;
+    List<HostColumnVectorCore> children = new ArrayList<>();
+    try {
+      long nullCount = 0;
+      boolean needsValidity = false;
+      for (int i = 0; i < columns.length; i++) {
+        needsValidity |= numRows[i] > 0 && mayHaveNulls(columns[i]);
+      }
+      if (needsValidity) {
+        valid = concatValidity(columns, rowOffsets, numRows, totalRows);
+        nullCount = BitVectorHelper.countNulls(valid, totalRows);
+        if (nullCount == 0) {
+          valid.close();
+          valid = null;
+        }
+      }
+
+      if (type.equals(DType.STRING)) {
+        offsets = HostMemoryBuffer.allocate((totalRows + 1) * OFFSET_SIZE);
+        long dataLen = concatOffsets(columns, rowOffsets, numRows, offsets, null, null);
+        if (dataLen > Integer.MAX_VALUE) {
+          throw new IllegalStateException("A string buffer is not supported over 2GB in size");
+        }
+        // We need at least one byte or we will get NULL back for data
+        data = HostMemoryBuffer.allocate(Math.max(1, dataLen));
+        long dataOffset = 0;
+        for (int i = 0; i < columns.length; i++) {
+          if (numRows[i] > 0) {
+            long start = columns[i].getStartListOffset(rowOffsets[i]);
+            long end = columns[i].getEndListOffset(rowOffsets[i] + numRows[i] - 1);
+            if (end == start) {
+              // Builders leave the data null when every string is null or empty
+              continue;
+            }
+            if (columns[i].getData() == null) {
+              throw new IllegalStateException("Column " + i + " has " + (end - start) +
+                  " bytes of strings but no data buffer");
+            }
+            data.copyFromHostBuffer(dataOffset, columns[i].getData(), start, end - start);
+            dataOffset += end - start;
+          }
+        }
+      } else if (type.equals(DType.LIST)) {
+        offsets = HostMemoryBuffer.allocate((totalRows + 1) * OFFSET_SIZE);
+        HostColumnVectorCore[] childColumns = new HostColumnVectorCore[columns.length];
+        long[] childRowOffsets = new long[columns.length];
+        long[] childNumRows = new long[columns.length];
+        concatOffsets(columns, rowOffsets, numRows, offsets, childRowOffsets, childNumRows);
+        for (int i = 0; i < columns.length; i++) {
+          childColumns[i] = columns[i].getChildColumnView(0);
+        }
+        children.add(concatenate(childColumns[0].getType(), childColumns, childRowOffsets,
+            childNumRows, false));
+      } else if (type.equals(DType.STRUCT)) {
+        int numChildren = columns[0].getNumChildren();
+        for (int childIndex = 0; childIndex < numChildren; childIndex++) {
+          HostColumnVectorCore[] childColumns = new HostColumnVectorCore[columns.length];
+          for (int i = 0; i < columns.length; i++) {
+            if (columns[i].getNumChildren() != numChildren) {
+              throw new IllegalArgumentException("All struct columns must have the same number " +
+                  "of children, expected " + numChildren + " but found " +
+                  columns[i].getNumChildren());
+            }
+            childColumns[i] = columns[i].getChildColumnView(childIndex);
+          }
+          children.add(concatenate(childColumns[0].getType(), childColumns, rowOffsets, numRows,
+              false));
+        }
+      } else {
+        int sizeInBytes = type.getSizeInBytes();
+        data = HostMemoryBuffer.allocate(totalRows * sizeInBytes);
+        long dataOffset = 0;
+        for (int i = 0; i < columns.length; i++) {
+          if (numRows[i] > 0) {
+            data.copyFromHostBuffer(dataOffset, columns[i].getData(),
+                rowOffsets[i] * sizeInBytes, numRows[i] * sizeInBytes);
+            dataOffset += numRows[i] * sizeInBytes;
+          }
+        }
+      }
+
+      HostColumnVectorCore ret;
+      if (isTopLevel) {
+        ret = new HostColumnVector(type, totalRows, Optional.of(nullCount), data, valid, offsets,
+            children);
+      } else {
+        ret = new HostColumnVectorCore(type, totalRows, Optional.of(nullCount), data, valid,
+            offsets, children);
+      }
+      data = null;
+      valid = null;
+      offsets = null;
+      children = null;
+      return ret;
+    } finally {
+      if (data != null) {
+        data.close();
+      }
+      if (valid != null) {
+        valid.close();
+      }
+      if (offsets != null) {
+        offsets.close();
+      }
+      if (children != null) {
+        for (HostColumnVectorCore child : children) {
+          child.close();
+        }
+      }
+    }
+  }
+
+  private static boolean mayHaveNulls(HostColumnVectorCore column) {
+    return column.hasValidityVector() &&
+        (!column.nullCount.isPresent() || column.nullCount.get() > 0);
+  }
+
+  private static HostMemoryBuffer concatValidity(HostColumnVectorCore[] columns,
+                                                 long[] rowOffsets, long[] numRows,
+                                                 long totalRows) {
+    HostMemoryBuffer valid =
+        HostMemoryBuffer.allocate(BitVectorHelper.getValidityAllocationSizeInBytes(totalRows));
+    try {
+      long dstBitOffset = 0;
+      for (int i = 0; i < columns.length; i++) {
+        if (numRows[i] > 0) {
+          if (mayHaveNulls(columns[i])) {
+            BitVectorHelper.copyBits(columns[i].getValidity(), rowOffsets[i], valid,
+                dstBitOffset, numRows[i]);
+          } else {
+            BitVectorHelper.setValidRange(valid, dstBitOffset, numRows[i]);
+          }
+          dstBitOffset += numRows[i];
+        }
+      }
+      HostMemoryBuffer ret = valid;
+      valid = null;
+      return ret;
+    } finally {
+      if (valid != null) {
+        valid.close();
+      }
+    }
+  }
+
+  /**
+   * Write out rebased offsets for the given row ranges of STRING or LIST columns.
+   * @param childRowOffsets if not null it is filled in with the first child row for each range.
+   * @param childNumRows if not null it is filled in with the number of child rows for each range.
+   * @return the total number of child rows (or string bytes) referenced by the output offsets.
+   */
+  private static long concatOffsets(HostColumnVectorCore[] columns, long[] rowOffsets,
+                                    long[] numRows, HostMemoryBuffer offsets,
+                                    long[] childRowOffsets, long[] childNumRows) {
+    long outputIndex = 0;
+    long base = 0;
+    offsets.setInt(0, 0);
+    for (int i = 0; i < columns.length; i++) {
+      long start = 0;
+      long end = 0;
+      if (numRows[i] > 0) {
+        HostMemoryBuffer srcOffsets = columns[i].getOffsets();
+        start = srcOffsets.getInt(rowOffsets[i] * OFFSET_SIZE);
+        end = srcOffsets.getInt((rowOffsets[i] + numRows[i]) * OFFSET_SIZE);
+        long rebase = base - start;
+        if (rebase == 0) {
+          offsets.copyFromHostBuffer((outputIndex + 1) * OFFSET_SIZE, srcOffsets,
+              (rowOffsets[i] + 1) * OFFSET_SIZE, numRows[i] * OFFSET_SIZE);
+        } else {
+          for (long row = 1; row <= numRows[i]; row++) {
+            int srcOffset = srcOffsets.getInt((rowOffsets[i] + row) * OFFSET_SIZE);
+            offsets.setInt((outputIndex + row) * OFFSET_SIZE, (int) (srcOffset + rebase));
+          }
+        }
+        outputIndex += numRows[i];
+        base += end - start;
+      }
+      if (childRowOffsets != null) {
+        childRowOffsets[i] = start;
+        childNumRows[i] = end - start;
+      }
+    }
+    return base;
+  }
+
   /////////////////////////////////////////////////////////////////////////////
   // BUILDER
   /////////////////////////////////////////////////////////////////////////////
@@ -1243,7 +1483,7 @@ public final class HostColumnVector extends HostColumnVectorCore {
       assert value != null : "appendNull must be used to append null strings";
       assert srcOffset >= 0;
       assert length >= 0;
-      assert value.length + srcOffset <= length;
+      assert srcOffset + length <= value.length;
       assert type.equals(DType.STRING) : " type " + type + " is not String";
       currentIndex++;
       growBuffersAndRows(false, length);
@@ -1481,6 +1721,94 @@ public final class HostColumnVector extends HostColumnVectorCore {
       return this;
     }
 
+    /**
+     * Parse a number and append it as the type of the column, without going through
+     * java.math.BigDecimal or any other intermediate object. Decimals are rescaled with
+     * UNNECESSARY RoundingMode. See {@link HostNumberParser} for the accepted formats.
+     * @param value the text of the number.
+     */
+    public final Builder appendParsed(CharSequence value) {
+      return appendParsed(null, value, 0, value.length(), RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * Parse a number and append it as the type of the column. Decimals are rescaled according to
+     * the scale of the column type and roundingMode.
+     * @param value the text of the number.
+     * @param roundingMode rounding mode determines rescaling behavior of decimals.
+     */
+    public final Builder appendParsed(CharSequence value, RoundingMode roundingMode) {
+      return appendParsed(null, value, 0, value.length(), roundingMode);
+    }
+
+    /**
+     * Parse a number from UTF-8 bytes and append it as the type of the column. Decimals are
+     * rescaled with UNNECESSARY RoundingMode.
+     */
+    public final Builder appendParsedUTF8(byte[] value, int offset, int length) {
+      return appendParsed(value, null, offset, offset + length, RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * Parse a number from UTF-8 bytes and append it as the type of the column. Decimals are
+     * rescaled according to the scale of the column type and roundingMode.
+     */
+    public final Builder appendParsedUTF8(byte[] value, int offset, int length,
+                                          RoundingMode roundingMode) {
+      return appendParsed(value, null, offset, offset + length, roundingMode);
+    }
+
+    private Builder appendParsed(byte[] bytes, CharSequence chars, int start, int end,
+                                 RoundingMode roundingMode) {
+      switch (type.typeId) {
+        case DECIMAL32:
+          return appendUnscaledDecimal(Math.toIntExact(HostNumberParser.parseUnscaledDecimal(
+              bytes, chars, start, end, type.getScale(), roundingMode)));
+        case DECIMAL64:
+          return appendUnscaledDecimal(HostNumberParser.parseUnscaledDecimal(
+              bytes, chars, start, end, type.getScale(), roundingMode));
+        case FLOAT32:
+          return append(bytes != null ?
+              HostNumberParser.parseFloatUTF8(bytes, start, end - start) :
+              HostNumberParser.parseFloat(chars, start, end));
+        case FLOAT64:
+          return append(bytes != null ?
+              HostNumberParser.parseDoubleUTF8(bytes, start, end - start) :
+              HostNumberParser.parseDouble(chars, start, end));
+        case UINT64:
+          return append(HostNumberParser.parseUnsignedLong(bytes, chars, start, end));
+        case INT8:
+          return append((byte) parsedInRange(bytes, chars, start, end,
+              Byte.MIN_VALUE, Byte.MAX_VALUE));
+        case UINT8:
+          return append((byte) parsedInRange(bytes, chars, start, end, 0, 0xFFL));
+        case INT16:
+          return append((short) parsedInRange(bytes, chars, start, end,
+              Short.MIN_VALUE, Short.MAX_VALUE));
+        case UINT16:
+          return append((short) parsedInRange(bytes, chars, start, end, 0, 0xFFFFL));
+        case UINT32:
+          return append((int) parsedInRange(bytes, chars, start, end, 0, 0xFFFFFFFFL));
+        default:
+          if (type.isBackedByInt()) {
+            return append((int) parsedInRange(bytes, chars, start, end,
+                Integer.MIN_VALUE, Integer.MAX_VALUE));
+          } else if (type.isBackedByLong()) {
+            return append(HostNumberParser.parseLong(bytes, chars, start, end));
+          }
+          throw new UnsupportedOperationException("Parsing " + type + " is not supported");
+      }
+    }
+
+    private static long parsedInRange(byte[] bytes, CharSequence chars, int start, int end,
+                                      long min, long max) {
+      long ret = HostNumberParser.parseLong(bytes, chars, start, end);
+      if (ret < min || ret > max) {
+        throw new ArithmeticException("Value " + ret + " out of range");
+      }
+      return ret;
+    }
+
     public Builder append(String value) {
       assert value != null : "appendNull must be used to append null strings";
       return appendUTF8String(value.getBytes(StandardCharsets.UTF_8));
@@ -1497,6 +1825,20 @@ public final class HostColumnVector extends HostColumnVectorCore {
       assert value.length + offset <= length;
       assert type.equals(DType.STRING);
       assert currentIndex < rows;
+      ensureStringCapacity(length);
+      if (length > 0) {
+        data.setBytes(currentStringByteIndex, value, offset, length);
+      }
+      currentStringByteIndex += length;
+      currentIndex++;
+      offsets.setInt(currentIndex * OFFSET_SIZE, currentStringByteIndex);
+      return this;
+    }
+
+    /**
+     * Grow the string data buffer if needed so that length more bytes can be appended.
+     */
+    private void ensureStringCapacity(long length) {
       // just for strings we want to throw a real exception if we would overrun the buffer
       long oldLen = data.getLength();
       long newLen = oldLen;
@@ -1520,13 +1862,6 @@ public final class HostColumnVector extends HostColumnVectorCore {
           }
         }
       }
-      if (length > 0) {
-        data.setBytes(currentStringByteIndex, value, offset, length);
-      }
-      currentStringByteIndex += length;
-      currentIndex++;
-      offsets.setInt(currentIndex * OFFSET_SIZE, currentStringByteIndex);
-      return this;
     }
 
     public Builder appendArray(byte... values) {
@@ -1758,8 +2093,26 @@ public final class HostColumnVector extends HostColumnVectorCore {
       assert columnVector.type.equals(type);
 
       if (type.equals(DType.STRING)) {
+        if (columnVector.rows > 0) {
+          int start = (int) columnVector.getStartListOffset(0);
+          int end = (int) columnVector.getEndListOffset(columnVector.rows - 1);
+          int length = end - start;
+          ensureStringCapacity(length);
+          if (length > 0) {
+            data.copyFromHostBuffer(currentStringByteIndex, columnVector.offHeap.data, start,
+                length);
+          }
+          int rebase = currentStringByteIndex - start;
+          for (long i = 1; i <= columnVector.rows; i++) {
+            int srcOffset = columnVector.offHeap.offsets.getInt(i * OFFSET_SIZE);
+            offsets.setInt((currentIndex + i) * OFFSET_SIZE, srcOffset + rebase);
+          }
+          currentStringByteIndex += length;
+        }
+      } else if (type.isNestedType()) {
         throw new UnsupportedOperationException(
-            "Appending a string column vector client side is not currently supported");
+            "Appending a nested column vector client side is not supported, please use " +
+                "HostColumnVector.concatenate instead");
       } else {
         data.copyFromHostBuffer(currentIndex * type.getSizeInBytes(), columnVector.offHeap.data,
             0L,
@@ -1773,7 +2126,7 @@ public final class HostColumnVector extends HostColumnVectorCore {
           allocateBitmaskAndSetDefaultValues();
         }
         //copy values from intCudfColumn to this
-        BitVectorHelper.append(columnVector.offHeap.valid, valid, currentIndex,
+        BitVectorHelper.copyBits(columnVector.offHeap.valid, 0, valid, currentIndex,
             columnVector.rows);
         nullCount += otherNc;
       }
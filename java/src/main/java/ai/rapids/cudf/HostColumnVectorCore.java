@@ -146,7 +146,7 @@ public class HostColumnVectorCore implements AutoCloseable {
     byte[] rawData = new byte[size];
     if (size > 0) {
       offHeap.data.getBytes(rawData, 0, start, size);
-      return new String(rawData);
+      return new String(rawData, StandardCharsets.UTF_8);
     } else {
       return new String();
     }
@@ -362,6 +362,21 @@ public class HostColumnVectorCore implements AutoCloseable {
     return rawData;
   }
 
+  /**
+   * Point a view at the UTF8 bytes at index without copying them. The view is only valid
+   * while this column is open.
+   * @param index the row to look at.
+   * @param view the view to update.
+   * @return view, for chaining.
+   */
+  public Utf8View getUTF8View(long index, Utf8View view) {
+    assert type.equals(DType.STRING) : type + " is not a supported string type.";
+    assertsForGet(index);
+    int start = (int)getStartListOffset(index);
+    int size = (int)getEndListOffset(index) - start;
+    return view.wrap(offHeap.data, start, size);
+  }
+
   /**
    * Get the value at index.  This API is slow as it has to translate the
    * string representation.  Please use it with caution.
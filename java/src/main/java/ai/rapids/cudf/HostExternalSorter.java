@@ -0,0 +1,512 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sorts host tables that may be larger than host memory. Batches are buffered until a memory
+ * budget is reached, then sorted into a run and spilled to a local file in the
+ * {@link JCudfSerialization} format. Once all of the input has been added the runs are merged
+ * with a loser tree and returned as sorted batches of a target number of rows.
+ * <p/>
+ * If all of the input fits within the budget nothing is written to disk. The sort is stable:
+ * rows that compare as equal are returned in the order they were added.
+ * <p/>
+ * A typical use looks like
+ * <pre>
+ * try (HostExternalSorter sorter = new HostExternalSorter(args, budget, spillDir, rows)) {
+ *   for (HostColumnVector[] batch : input) {
+ *     sorter.add(batch);
+ *   }
+ *   HostColumnVector[] sorted;
+ *   while ((sorted = sorter.next()) != null) {
+ *     ...
+ *   }
+ * }
+ * </pre>
+ */
+public final class HostExternalSorter implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(HostExternalSorter.class);
+
+  private final HostRowComparator comparator;
+  private final long memoryBudgetBytes;
+  private final File spillDir;
+  private final int outputBatchRows;
+
+  private final List<HostColumnVector[]> pending = new ArrayList<>();
+  private long pendingBytes = 0;
+  private long pendingRows = 0;
+  private final List<Run> runs = new ArrayList<>();
+  private Merger merger = null;
+  private boolean closed = false;
+
+  /**
+   * Create a new sorter.
+   * @param args the columns to sort by and how to sort them.
+   * @param memoryBudgetBytes how much host memory buffered input may use before it is sorted
+   *                          and spilled to disk.
+   * @param spillDir the directory to write runs to.
+   * @param outputBatchRows the number of rows in each output batch. This is also the number of
+   *                        rows in each chunk of a spilled run, so while merging about this
+   *                        many rows per run are held in memory.
+   */
+  public HostExternalSorter(OrderByArg[] args, long memoryBudgetBytes, File spillDir,
+                            int outputBatchRows) {
+    if (memoryBudgetBytes <= 0) {
+      throw new IllegalArgumentException("The memory budget must be positive");
+    }
+    if (outputBatchRows <= 0) {
+      throw new IllegalArgumentException("The output batch size must be positive");
+    }
+    this.comparator = new HostRowComparator(args);
+    this.memoryBudgetBytes = memoryBudgetBytes;
+    this.spillDir = spillDir;
+    this.outputBatchRows = outputBatchRows;
+  }
+
+  /**
+   * Add a batch to be sorted. The sorter takes its own reference to the columns so the caller
+   * should still close them.
+   */
+  public void add(HostColumnVector[] batch) throws IOException {
+    if (closed || merger != null) {
+      throw new IllegalStateException("Cannot add data after the output has started");
+    }
+    if (batch.length == 0) {
+      throw new IllegalArgumentException("A table must have at least one column");
+    }
+    comparator.checkTable(batch);
+    long numRows = batch[0].getRowCount();
+    long bytes = 0;
+    for (HostColumnVector column : batch) {
+      if (column.getRowCount() != numRows) {
+        throw new IllegalArgumentException("All columns must have the same number of rows");
+      }
+      bytes += column.getHostMemorySize();
+    }
+    if (numRows == 0) {
+      return;
+    }
+    if (pendingRows + numRows > Integer.MAX_VALUE) {
+      spill();
+    }
+    HostColumnVector[] held = new HostColumnVector[batch.length];
+    for (int i = 0; i < batch.length; i++) {
+      held[i] = batch[i].incRefCount();
+    }
+    pending.add(held);
+    pendingBytes += bytes;
+    pendingRows += numRows;
+    if (pendingBytes >= memoryBudgetBytes) {
+      spill();
+    }
+  }
+
+  /**
+   * Get the number of runs that have been spilled to disk so far.
+   */
+  public int getNumSpilledRuns() {
+    return runs.size();
+  }
+
+  /**
+   * Get the next sorted batch. The first call finishes the input, after which no more data can
+   * be added.
+   * @return the next batch, which the caller must close, or null if there is no more data.
+   */
+  public HostColumnVector[] next() throws IOException {
+    if (closed) {
+      throw new IllegalStateException("The sorter is closed");
+    }
+    if (merger == null) {
+      if (!pending.isEmpty()) {
+        HostColumnVector[] sorted = sortPending();
+        if (runs.isEmpty()) {
+          runs.add(new MemoryRun(sorted, outputBatchRows));
+        } else {
+          runs.add(writeRun(sorted));
+        }
+      }
+      merger = new Merger(runs, comparator);
+    }
+    return merger.next(outputBatchRows);
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      for (HostColumnVector[] batch : pending) {
+        HostGather.closeAll(batch);
+      }
+      pending.clear();
+      if (merger != null) {
+        merger.close();
+      }
+      for (Run run : runs) {
+        run.close();
+      }
+      runs.clear();
+    }
+  }
+
+  private void spill() throws IOException {
+    if (pending.isEmpty()) {
+      return;
+    }
+    HostColumnVector[] sorted = sortPending();
+    runs.add(writeRun(sorted));
+  }
+
+  /**
+   * Sort all of the pending batches into a single table and release them.
+   */
+  private HostColumnVector[] sortPending() {
+    try (NvtxRange range = new NvtxRange("host sort run", NvtxColor.ORANGE)) {
+      HostColumnVector[] table;
+      if (pending.size() == 1) {
+        table = pending.get(0);
+      } else {
+        table = new HostColumnVector[pending.get(0).length];
+        try {
+          HostColumnVector[] columns = new HostColumnVector[pending.size()];
+          for (int c = 0; c < table.length; c++) {
+            for (int b = 0; b < columns.length; b++) {
+              columns[b] = pending.get(b)[c];
+            }
+            table[c] = HostColumnVector.concatenate(columns);
+          }
+        } catch (Exception e) {
+          HostGather.closeAll(table);
+          throw e;
+        }
+        for (HostColumnVector[] batch : pending) {
+          HostGather.closeAll(batch);
+        }
+      }
+      pending.clear();
+      pendingBytes = 0;
+      pendingRows = 0;
+      try {
+        int numRows = (int) table[0].getRowCount();
+        int[] order = comparator.sortedOrder(table, numRows);
+        return HostGather.gather(table, order, 0, numRows);
+      } finally {
+        HostGather.closeAll(table);
+      }
+    }
+  }
+
+  private Run writeRun(HostColumnVector[] sorted) throws IOException {
+    try (NvtxRange range = new NvtxRange("host sort spill", NvtxColor.RED)) {
+      File file = File.createTempFile("cudf-sort-run-", ".bin", spillDir);
+      file.deleteOnExit();
+      long numRows = sorted[0].getRowCount();
+      boolean success = false;
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(file)))) {
+        for (long start = 0; start < numRows; start += outputBatchRows) {
+          JCudfSerialization.writeToStream(sorted, out, start,
+              Math.min(outputBatchRows, numRows - start));
+        }
+        success = true;
+      } finally {
+        HostGather.closeAll(sorted);
+        if (!success && !file.delete()) {
+          log.warn("Could not delete spill file " + file);
+        }
+      }
+      log.debug("Spilled a sorted run of " + numRows + " rows to " + file);
+      return new FileRun(file);
+    }
+  }
+
+  /**
+   * A sorted run that is returned in chunks.
+   */
+  private interface Run extends AutoCloseable {
+    /**
+     * Get the next chunk of the run, or null if the run is done. The caller must close it.
+     */
+    HostColumnVector[] nextChunk() throws IOException;
+
+    @Override
+    void close();
+  }
+
+  /**
+   * A run that never left memory.
+   */
+  private static final class MemoryRun implements Run {
+    private HostColumnVector[] sorted;
+    private final int chunkRows;
+    private long start = 0;
+
+    MemoryRun(HostColumnVector[] sorted, int chunkRows) {
+      this.sorted = sorted;
+      this.chunkRows = chunkRows;
+    }
+
+    @Override
+    public HostColumnVector[] nextChunk() {
+      if (sorted == null) {
+        return null;
+      }
+      long numRows = sorted[0].getRowCount();
+      if (start == 0 && numRows <= chunkRows) {
+        // Hand over the whole table without copying it
+        HostColumnVector[] ret = sorted;
+        sorted = null;
+        return ret;
+      }
+      if (start >= numRows) {
+        close();
+        return null;
+      }
+      int count = (int) Math.min(chunkRows, numRows - start);
+      int[] rows = new int[count];
+      for (int i = 0; i < count; i++) {
+        rows[i] = (int) (start + i);
+      }
+      start += count;
+      return HostGather.gather(sorted, rows, 0, count);
+    }
+
+    @Override
+    public void close() {
+      if (sorted != null) {
+        HostGather.closeAll(sorted);
+        sorted = null;
+      }
+    }
+  }
+
+  /**
+   * A run that was spilled to a file as a sequence of serialized tables.
+   */
+  private static final class FileRun implements Run {
+    private final File file;
+    private DataInputStream in = null;
+
+    FileRun(File file) {
+      this.file = file;
+    }
+
+    @Override
+    public HostColumnVector[] nextChunk() throws IOException {
+      if (in == null) {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      }
+      return JCudfSerialization.readHostColumnsFrom(in);
+    }
+
+    @Override
+    public void close() {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          log.warn("Error closing spill file " + file, e);
+        }
+        in = null;
+      }
+      if (file.exists() && !file.delete()) {
+        log.warn("Could not delete spill file " + file);
+      }
+    }
+  }
+
+  /**
+   * Merges sorted runs using a loser tree. Each internal node of the tree holds the run that
+   * lost the comparison at that node and the overall winner is kept separately, so replacing
+   * the winner only needs one comparison per level of the tree.
+   */
+  private static final class Merger implements AutoCloseable {
+    private final List<Run> runs;
+    private final HostRowComparator comparator;
+    private final int numRuns;
+    /** The current chunk for each run, or null if the run is done. */
+    private final HostColumnVector[][] chunks;
+    private final int[] positions;
+    /** The index in sources of each run's current chunk for the batch being built. */
+    private final int[] sourceIds;
+    /** All chunks referenced by the batch being built. */
+    private final List<HostColumnVector[]> sources = new ArrayList<>();
+    private final int[] tree;
+    private int winner;
+
+    Merger(List<Run> runs, HostRowComparator comparator) throws IOException {
+      this.runs = runs;
+      this.comparator = comparator;
+      this.numRuns = runs.size();
+      this.chunks = new HostColumnVector[numRuns][];
+      this.positions = new int[numRuns];
+      this.sourceIds = new int[numRuns];
+      this.tree = new int[Math.max(1, numRuns)];
+      for (int r = 0; r < numRuns; r++) {
+        loadChunk(r);
+      }
+      winner = numRuns == 0 ? -1 : build(1);
+      if (numRuns > 0) {
+        tree[0] = winner;
+      }
+    }
+
+    /**
+     * Play the initial matches for the subtree rooted at node. Leaves are numbered
+     * numRuns to 2 * numRuns - 1 and leaf numRuns + r is run r.
+     * @return the winner of the subtree.
+     */
+    private int build(int node) {
+      if (node >= numRuns) {
+        return node - numRuns;
+      }
+      int left = build(2 * node);
+      int right = build(2 * node + 1);
+      if (beats(left, right)) {
+        tree[node] = right;
+        return left;
+      }
+      tree[node] = left;
+      return right;
+    }
+
+    private void loadChunk(int run) throws IOException {
+      HostColumnVector[] chunk = runs.get(run).nextChunk();
+      while (chunk != null && chunk[0].getRowCount() == 0) {
+        HostGather.closeAll(chunk);
+        chunk = runs.get(run).nextChunk();
+      }
+      chunks[run] = chunk;
+      positions[run] = 0;
+      if (chunk != null) {
+        sourceIds[run] = sources.size();
+        sources.add(chunk);
+      }
+    }
+
+    /**
+     * Does run a produce its next row before run b? Finished runs lose to everything and ties
+     * go to the earlier run, which keeps the merge stable.
+     */
+    private boolean beats(int a, int b) {
+      if (chunks[a] == null) {
+        return false;
+      }
+      if (chunks[b] == null) {
+        return true;
+      }
+      int ret = comparator.compare(chunks[a], positions[a], chunks[b], positions[b]);
+      return ret < 0 || (ret == 0 && a < b);
+    }
+
+    HostColumnVector[] next(int maxRows) throws IOException {
+      if (winner < 0 || chunks[winner] == null) {
+        return null;
+      }
+      try (NvtxRange range = new NvtxRange("host sort merge", NvtxColor.YELLOW)) {
+        int[] outSources = new int[maxRows];
+        int[] outRows = new int[maxRows];
+        int count = 0;
+        while (count < maxRows && chunks[winner] != null) {
+          outSources[count] = sourceIds[winner];
+          outRows[count] = positions[winner];
+          count++;
+          positions[winner]++;
+          if (positions[winner] >= chunks[winner][0].getRowCount()) {
+            // The old chunk stays in sources until the batch is gathered
+            loadChunk(winner);
+          }
+          replay(winner);
+        }
+        HostColumnVector[][] tables = sources.toArray(new HostColumnVector[0][]);
+        HostColumnVector[] ret;
+        if (tables.length == 1) {
+          ret = HostGather.gather(tables[0], outRows, 0, count);
+        } else {
+          ret = HostGather.gather(tables, outSources, outRows, 0, count);
+        }
+        releaseSources();
+        return ret;
+      }
+    }
+
+    /**
+     * Replay the matches from a run's leaf to the root after its current row changed.
+     */
+    private void replay(int run) {
+      int current = run;
+      for (int node = (run + numRuns) >>> 1; node > 0; node >>>= 1) {
+        if (beats(tree[node], current)) {
+          int tmp = tree[node];
+          tree[node] = current;
+          current = tmp;
+        }
+      }
+      winner = current;
+      tree[0] = winner;
+    }
+
+    /**
+     * Close every chunk that is no longer current and renumber the ones that are.
+     */
+    private void releaseSources() {
+      for (HostColumnVector[] source : sources) {
+        boolean current = false;
+        for (int r = 0; r < numRuns && !current; r++) {
+          current = chunks[r] == source;
+        }
+        if (!current) {
+          HostGather.closeAll(source);
+        }
+      }
+      sources.clear();
+      for (int r = 0; r < numRuns; r++) {
+        if (chunks[r] != null) {
+          sourceIds[r] = sources.size();
+          sources.add(chunks[r]);
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      for (HostColumnVector[] source : sources) {
+        HostGather.closeAll(source);
+      }
+      sources.clear();
+      for (int r = 0; r < numRuns; r++) {
+        chunks[r] = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Gathers rows from one or more host columns into a new host column. This is the host side
+ * building block for operations that pick a subset of rows in an arbitrary order, like
+ * partitioning, top-K and merging sorted runs. The output buffers are sized exactly before any
+ * data is copied.
+ */
+final class HostGather {
+  private HostGather() {}
+
+  /**
+   * Gather rows from a single column.
+   * @param column the column to gather from.
+   * @param rows the row indices to gather.
+   * @param start the first entry in rows to use.
+   * @param count the number of entries in rows to use.
+   * @return the gathered column.
+   */
+  static HostColumnVector gather(HostColumnVectorCore column, int[] rows, int start, int count) {
+    return (HostColumnVector) gather(column.getType(), new HostColumnVectorCore[]{column}, null,
+        rows, start, count, true);
+  }
+
+  /**
+   * Gather rows from multiple columns of the same type.
+   * @param columns the columns to gather from.
+   * @param sourceIds for each output row the index into columns that the row comes from.
+   * @param rows for each output row the row index in its source column.
+   * @param start the first entry in sourceIds and rows to use.
+   * @param count the number of entries to use.
+   * @return the gathered column.
+   */
+  static HostColumnVector gather(HostColumnVectorCore[] columns, int[] sourceIds, int[] rows,
+                                 int start, int count) {
+    return (HostColumnVector) gather(columns[0].getType(), columns, sourceIds, rows, start, count,
+        true);
+  }
+
+  /**
+   * Gather the same rows from each column in a table.
+   */
+  static HostColumnVector[] gather(HostColumnVector[] table, int[] rows, int start, int count) {
+    HostColumnVector[] ret = new HostColumnVector[table.length];
+    try {
+      for (int i = 0; i < table.length; i++) {
+        ret[i] = gather(table[i], rows, start, count);
+      }
+      HostColumnVector[] tmp = ret;
+      ret = null;
+      return tmp;
+    } finally {
+      if (ret != null) {
+        closeAll(ret);
+      }
+    }
+  }
+
+  /**
+   * Gather the same rows from each column in a set of tables with the same schema.
+   */
+  static HostColumnVector[] gather(HostColumnVector[][] tables, int[] sourceIds, int[] rows,
+                                   int start, int count) {
+    int numColumns = tables[0].length;
+    HostColumnVector[] ret = new HostColumnVector[numColumns];
+    try {
+      HostColumnVectorCore[] columns = new HostColumnVectorCore[tables.length];
+      for (int c = 0; c < numColumns; c++) {
+        for (int t = 0; t < tables.length; t++) {
+          columns[t] = tables[t][c];
+        }
+        ret[c] = gather(columns, sourceIds, rows, start, count);
+      }
+      HostColumnVector[] tmp = ret;
+      ret = null;
+      return tmp;
+    } finally {
+      if (ret != null) {
+        closeAll(ret);
+      }
+    }
+  }
+
+  static void closeAll(HostColumnVector[] columns) {
+    for (HostColumnVector column : columns) {
+      if (column != null) {
+        column.close();
+      }
+    }
+  }
+
+  private static HostColumnVectorCore source(HostColumnVectorCore[] columns, int[] sourceIds,
+                                             int index) {
+    return sourceIds == null ? columns[0] : columns[sourceIds[index]];
+  }
+
+  private static HostColumnVectorCore gather(DType type, HostColumnVectorCore[] columns,
+                                             int[] sourceIds, int[] rows, int start, int count,
+                                             boolean isTopLevel) {
+    for (HostColumnVectorCore column : columns) {
+      if (!type.equals(column.getType())) {
+        throw new IllegalArgumentException("All columns must have the same type, expected " +
+            type + " but found " + column.getType());
+      }
+    }
+    HostMemoryBuffer data = null;
+    HostMemoryBuffer valid = null;
+    HostMemoryBuffer offsets = null;
+    List<HostColumnVectorCore> children = new ArrayList<>();
+    try {
+      long nullCount = 0;
+      boolean needsValidity = false;
+      for (HostColumnVectorCore column : columns) {
+        needsValidity |= column.hasValidityVector();
+      }
+      if (needsValidity && count > 0) {
+        valid = HostMemoryBuffer.allocate(BitVectorHelper.getValidityAllocationSizeInBytes(count));
+        nullCount = gatherValidity(columns, sourceIds, rows, start, count, valid);
+        if (nullCount == 0) {
+          valid.close();
+          valid = null;
+        }
+      }
+
+      if (type.equals(DType.STRING) || type.equals(DType.LIST)) {
+        offsets = HostMemoryBuffer.allocate((count + 1L) * HostColumnVector.OFFSET_SIZE);
+        long total = 0;
+        offsets.setInt(0, 0);
+        for (int i = 0; i < count; i++) {
+          HostColumnVectorCore column = source(columns, sourceIds, start + i);
+          HostMemoryBuffer srcOffsets = column.getOffsets();
+          long row = rows[start + i];
+          total += srcOffsets.getInt((row + 1) * HostColumnVector.OFFSET_SIZE) -
+              srcOffsets.getInt(row * HostColumnVector.OFFSET_SIZE);
+          if (total > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Gathered " + type + " data is too large for a " +
+                "single column");
+          }
+          offsets.setInt((i + 1L) * HostColumnVector.OFFSET_SIZE, (int) total);
+        }
+        if (type.equals(DType.STRING)) {
+          // We need at least one byte or we will get NULL back for data
+          data = HostMemoryBuffer.allocate(Math.max(1, total));
+          long outOffset = 0;
+          for (int i = 0; i < count; i++) {
+            HostColumnVectorCore column = source(columns, sourceIds, start + i);
+            HostMemoryBuffer srcOffsets = column.getOffsets();
+            long row = rows[start + i];
+            int srcStart = srcOffsets.getInt(row * HostColumnVector.OFFSET_SIZE);
+            int len = srcOffsets.getInt((row + 1) * HostColumnVector.OFFSET_SIZE) - srcStart;
+            if (len > 0) {
+              data.copyFromHostBuffer(outOffset, column.getData(), srcStart, len);
+              outOffset += len;
+            }
+          }
+        } else {
+          int[] childSourceIds = sourceIds == null ? null : new int[(int) total];
+          int[] childRows = new int[(int) total];
+          int childIndex = 0;
+          for (int i = 0; i < count; i++) {
+            HostColumnVectorCore column = source(columns, sourceIds, start + i);
+            HostMemoryBuffer srcOffsets = column.getOffsets();
+            long row = rows[start + i];
+            int childStart = srcOffsets.getInt(row * HostColumnVector.OFFSET_SIZE);
+            int childEnd = srcOffsets.getInt((row + 1) * HostColumnVector.OFFSET_SIZE);
+            for (int childRow = childStart; childRow < childEnd; childRow++) {
+              if (childSourceIds != null) {
+                childSourceIds[childIndex] = sourceIds[start + i];
+              }
+              childRows[childIndex++] = childRow;
+            }
+          }
+          HostColumnVectorCore[] childColumns = new HostColumnVectorCore[columns.length];
+          for (int c = 0; c < columns.length; c++) {
+            childColumns[c] = columns[c].getChildColumnView(0);
+          }
+          children.add(gather(childColumns[0].getType(), childColumns, childSourceIds, childRows,
+              0, childRows.length, false));
+        }
+      } else if (type.equals(DType.STRUCT)) {
+        int numChildren = columns[0].getNumChildren();
+        for (int childIndex = 0; childIndex < numChildren; childIndex++) {
+          HostColumnVectorCore[] childColumns = new HostColumnVectorCore[columns.length];
+          for (int c = 0; c < columns.length; c++) {
+            childColumns[c] = columns[c].getChildColumnView(childIndex);
+          }
+          children.add(gather(childColumns[0].getType(), childColumns, sourceIds, rows, start,
+              count, false));
+        }
+      } else {
+        int size = type.getSizeInBytes();
+        data = HostMemoryBuffer.allocate((long) count * size);
+        gatherFixedWidth(columns, sourceIds, rows, start, count, size, data);
+      }
+
+      HostColumnVectorCore ret;
+      if (isTopLevel) {
+        ret = new HostColumnVector(type, count, Optional.of(nullCount), data, valid, offsets,
+            children);
+      } else {
+        ret = new HostColumnVectorCore(type, count, Optional.of(nullCount), data, valid, offsets,
+            children);
+      }
+      data = null;
+      valid = null;
+      offsets = null;
+      children = null;
+      return ret;
+    } finally {
+      if (data != null) {
+        data.close();
+      }
+      if (valid != null) {
+        valid.close();
+      }
+      if (offsets != null) {
+        offsets.close();
+      }
+      if (children != null) {
+        for (HostColumnVectorCore child : children) {
+          child.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Gather validity bits, building up 64 bits at a time before writing them out.
+   * @return the number of nulls in the output.
+   */
+  private static long gatherValidity(HostColumnVectorCore[] columns, int[] sourceIds, int[] rows,
+                                     int start, int count, HostMemoryBuffer valid) {
+    long nullCount = 0;
+    long word = 0;
+    for (int i = 0; i < count; i++) {
+      HostColumnVectorCore column = source(columns, sourceIds, start + i);
+      HostMemoryBuffer srcValid = column.getValidity();
+      if (srcValid == null || !BitVectorHelper.isNull(srcValid, rows[start + i])) {
+        word |= 1L << (i % 64);
+      } else {
+        nullCount++;
+      }
+      if (i % 64 == 63) {
+        valid.setLong((i / 64) * 8L, word);
+        word = 0;
+      }
+    }
+    if (count % 64 != 0) {
+      valid.setLong((count / 64) * 8L, word);
+    }
+    return nullCount;
+  }
+
+  private static void gatherFixedWidth(HostColumnVectorCore[] columns, int[] sourceIds,
+                                       int[] rows, int start, int count, int size,
+                                       HostMemoryBuffer data) {
+    if (sourceIds == null) {
+      HostMemoryBuffer src = columns[0].getData();
+      switch (size) {
+        case 1:
+          for (int i = 0; i < count; i++) {
+            data.setByte(i, src.getByte(rows[start + i]));
+          }
+          break;
+        case 2:
+          for (int i = 0; i < count; i++) {
+            data.setShort(i * 2L, src.getShort(rows[start + i] * 2L));
+          }
+          break;
+        case 4:
+          for (int i = 0; i < count; i++) {
+            data.setInt(i * 4L, src.getInt(rows[start + i] * 4L));
+          }
+          break;
+        case 8:
+          for (int i = 0; i < count; i++) {
+            data.setLong(i * 8L, src.getLong(rows[start + i] * 8L));
+          }
+          break;
+        default:
+          throw new IllegalStateException("Unexpected type size " + size);
+      }
+    } else {
+      for (int i = 0; i < count; i++) {
+        HostMemoryBuffer src = columns[sourceIds[start + i]].getData();
+        data.copyFromHostBuffer((long) i * size, src, (long) rows[start + i] * size, size);
+      }
+    }
+  }
+}
@@ -0,0 +1,594 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Host side implementations of the {@link HashType} algorithms and of hash partitioning. These
+ * produce the same hash values, bit for bit, as the device implementations so that rows
+ * processed on the CPU can be routed to the same partitions as rows processed on the GPU.
+ * <p>
+ * Hashes are computed a column at a time over the raw host buffers, with each column's hash
+ * combined into a running per-row hash, so no per-row objects are created.
+ */
+public final class HostHashing {
+  /** The hash value used by cudf for a null when computing MURMUR3 and IDENTITY row hashes. */
+  static final int NULL_HASH = 0xFFFFFFFF;
+
+  /**
+   * The seed that Spark uses for the murmur3 hash in its HashPartitioning.
+   */
+  public static final int SPARK_PARTITION_SEED = 42;
+
+  private static final int C1 = 0xcc9e2d51;
+  private static final int C2 = 0x1b873593;
+
+  private HostHashing() {}
+
+  /////////////////////////////////////////////////////////////////////////////
+  // ROW HASHES
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Compute the MURMUR3 hash of each row in the same way that cudf does for hash partitioning,
+   * with a seed of 0. The hash of the first column is seeded, and the hash of each following
+   * column is combined into it using the boost hash_combine algorithm.
+   * @param columns the columns to hash, which must all have the same number of rows.
+   * @return the hash of each row.
+   */
+  public static int[] murmurHash3(HostColumnVectorCore... columns) {
+    return murmurHash3(0, columns);
+  }
+
+  /**
+   * Compute the MURMUR3 hash of each row in the same way that cudf does for hash partitioning.
+   * @param seed the seed for the hash of the first column.
+   * @param columns the columns to hash, which must all have the same number of rows.
+   * @return the hash of each row.
+   */
+  public static int[] murmurHash3(int seed, HostColumnVectorCore... columns) {
+    int numRows = checkColumns(columns);
+    int[] hashes = new int[numRows];
+    for (int c = 0; c < columns.length; c++) {
+      HostColumnVectorCore column = columns[c];
+      if (column.getType().isNestedType()) {
+        throw new IllegalArgumentException("MURMUR3 hashing of " + column.getType() +
+            " columns is not supported");
+      }
+      // the first column is combined into 0 with the seed, the rest are hashed with seed 0.
+      murmurHash3Column(column, c == 0 ? seed : 0, hashes, c > 0);
+    }
+    return hashes;
+  }
+
+  /**
+   * Compute the hash of each row using the HASH_SPARK_MURMUR3 algorithm. This matches
+   * {@link ColumnVector#spark32BitMurmurHash3(int, ColumnView[])}, and Spark's own Murmur3Hash
+   * expression. The hash of each column is used as the seed for the next one, nulls leave the
+   * running hash unchanged, and struct columns are hashed by their leaf columns in order.
+   * @param seed the initial seed.
+   * @param columns the columns to hash, which must all have the same number of rows.
+   * @return the hash of each row.
+   */
+  public static int[] spark32BitMurmurHash3(int seed, HostColumnVectorCore... columns) {
+    int numRows = checkColumns(columns);
+    int[] hashes = new int[numRows];
+    Arrays.fill(hashes, seed);
+    for (HostColumnVectorCore leaf : leafColumns(columns)) {
+      sparkHashColumn(leaf, hashes);
+    }
+    return hashes;
+  }
+
+  /**
+   * Compute the IDENTITY hash of each row, the same way cudf does for hash partitioning. Only
+   * integral and floating point types are supported. Like cudf, a floating point value is
+   * converted to an unsigned 32-bit integer, not hashed by its bits.
+   * @param columns the columns to hash, which must all have the same number of rows.
+   * @return the hash of each row.
+   */
+  public static int[] identityHash(HostColumnVectorCore... columns) {
+    int numRows = checkColumns(columns);
+    int[] hashes = new int[numRows];
+    for (int c = 0; c < columns.length; c++) {
+      HostColumnVectorCore column = columns[c];
+      DType type = column.getType();
+      boolean signed = false;
+      boolean floating = false;
+      switch (type.getTypeId()) {
+        case INT8:
+        case INT16:
+        case INT32:
+        case INT64:
+          signed = true;
+          break;
+        case BOOL8:
+        case UINT8:
+        case UINT16:
+        case UINT32:
+        case UINT64:
+          break;
+        case FLOAT32:
+        case FLOAT64:
+          floating = true;
+          break;
+        default:
+          throw new IllegalArgumentException("IDENTITY hashing of " + type +
+              " columns is not supported");
+      }
+      int size = type.getSizeInBytes();
+      HostMemoryBuffer data = column.getData();
+      for (int row = 0; row < numRows; row++) {
+        int h;
+        long offset = (long) row * size;
+        if (column.isNull(row)) {
+          h = NULL_HASH;
+        } else if (floating) {
+          h = toUInt32(size == 4 ? data.getFloat(offset) : data.getDouble(offset));
+        } else {
+          switch (size) {
+            case 1:
+              h = signed ? data.getByte(offset) : data.getByte(offset) & 0xFF;
+              break;
+            case 2:
+              h = signed ? data.getShort(offset) : data.getShort(offset) & 0xFFFF;
+              break;
+            case 4:
+              h = data.getInt(offset);
+              break;
+            default:
+              h = (int) data.getLong(offset);
+              break;
+          }
+        }
+        hashes[row] = c == 0 ? hashCombine(0, h) : hashCombine(hashes[row], h);
+      }
+    }
+    return hashes;
+  }
+
+  /**
+   * Compute the hash of each row with the given algorithm.
+   * @param type the type of hash to compute.
+   * @param seed the seed for the hash, ignored for IDENTITY.
+   * @param columns the columns to hash, which must all have the same number of rows.
+   * @return the hash of each row.
+   */
+  public static int[] hash(HashType type, int seed, HostColumnVectorCore... columns) {
+    switch (type) {
+      case IDENTITY:
+        return identityHash(columns);
+      case MURMUR3:
+        return murmurHash3(seed, columns);
+      case HASH_SPARK_MURMUR3:
+        return spark32BitMurmurHash3(seed, columns);
+      default:
+        throw new UnsupportedOperationException("Host hashing with " + type +
+            " is not supported");
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+  // PARTITIONING
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Compute the partition that each row belongs to. For IDENTITY and MURMUR3 this matches
+   * {@link Table.TableOperation#hashPartition(HashType, int)}, which takes the unsigned hash
+   * modulo the number of partitions. For HASH_SPARK_MURMUR3 it matches Spark's
+   * HashPartitioning, a positive modulo of the Spark murmur3 hash seeded with
+   * {@link #SPARK_PARTITION_SEED}.
+   * @param type the type of hash to use.
+   * @param numPartitions the number of partitions.
+   * @param keys the columns to hash.
+   * @return the partition number for each row.
+   */
+  public static int[] partitionMap(HashType type, int numPartitions,
+                                   HostColumnVectorCore... keys) {
+    if (numPartitions <= 0) {
+      throw new IllegalArgumentException("The number of partitions must be positive");
+    }
+    int[] map;
+    if (type == HashType.HASH_SPARK_MURMUR3) {
+      map = spark32BitMurmurHash3(SPARK_PARTITION_SEED, keys);
+      for (int i = 0; i < map.length; i++) {
+        int mod = map[i] % numPartitions;
+        map[i] = mod < 0 ? mod + numPartitions : mod;
+      }
+    } else {
+      map = hash(type, 0, keys);
+      if ((numPartitions & (numPartitions - 1)) == 0) {
+        int mask = numPartitions - 1;
+        for (int i = 0; i < map.length; i++) {
+          map[i] = map[i] & mask;
+        }
+      } else {
+        for (int i = 0; i < map.length; i++) {
+          map[i] = Integer.remainderUnsigned(map[i], numPartitions);
+        }
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Hash partition a table on the host and write the rows of each partition to its own
+   * stream in the {@link JCudfSerialization} format. The rows in each partition stay in the
+   * same relative order that they had in the input. Partitions that end up with no rows have
+   * nothing written to their stream.
+   * @param table the columns of the table to partition.
+   * @param keyIndices the indices of the columns in table to hash.
+   * @param type the type of hash to use.
+   * @param partitionStreams one stream per partition.
+   * @return the number of rows written to each partition.
+   * @throws IOException on any error writing to the streams.
+   */
+  public static int[] hostHashPartition(HostColumnVector[] table, int[] keyIndices,
+                                        HashType type,
+                                        OutputStream[] partitionStreams) throws IOException {
+    int numPartitions = partitionStreams.length;
+    HostColumnVectorCore[] keys = new HostColumnVectorCore[keyIndices.length];
+    for (int i = 0; i < keyIndices.length; i++) {
+      keys[i] = table[keyIndices[i]];
+    }
+    int[] map = partitionMap(type, numPartitions, keys);
+    // A counting sort of the row indices by partition keeps each partition stable.
+    int[] counts = new int[numPartitions];
+    for (int p : map) {
+      counts[p]++;
+    }
+    int[] starts = new int[numPartitions + 1];
+    for (int p = 0; p < numPartitions; p++) {
+      starts[p + 1] = starts[p] + counts[p];
+    }
+    int[] next = Arrays.copyOf(starts, numPartitions);
+    int[] rows = new int[map.length];
+    for (int row = 0; row < map.length; row++) {
+      rows[next[map[row]]++] = row;
+    }
+    for (int p = 0; p < numPartitions; p++) {
+      if (counts[p] > 0) {
+        HostColumnVector[] partition = HostGather.gather(table, rows, starts[p], counts[p]);
+        try {
+          JCudfSerialization.writeToStream(partition, partitionStreams[p], 0, counts[p]);
+        } finally {
+          HostGather.closeAll(partition);
+        }
+      }
+    }
+    return counts;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+  // HELPER METHODS
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static int checkColumns(HostColumnVectorCore[] columns) {
+    if (columns.length < 1) {
+      throw new IllegalArgumentException("Hashing requires at least 1 column of input");
+    }
+    long numRows = columns[0].getRowCount();
+    for (HostColumnVectorCore column : columns) {
+      if (column.getRowCount() != numRows) {
+        throw new IllegalArgumentException("Row count mismatch, all columns must be the same " +
+            "size");
+      }
+    }
+    return (int) numRows;
+  }
+
+  private static List<HostColumnVectorCore> leafColumns(HostColumnVectorCore[] columns) {
+    List<HostColumnVectorCore> leaves = new ArrayList<>();
+    for (HostColumnVectorCore column : columns) {
+      addLeafColumns(column, leaves);
+    }
+    return leaves;
+  }
+
+  private static void addLeafColumns(HostColumnVectorCore column,
+                                     List<HostColumnVectorCore> leaves) {
+    DType type = column.getType();
+    if (type.equals(DType.STRUCT)) {
+      for (int i = 0; i < column.getNumChildren(); i++) {
+        addLeafColumns(column.getChildColumnView(i), leaves);
+      }
+    } else if (type.equals(DType.LIST)) {
+      throw new IllegalArgumentException("List columns are not supported");
+    } else {
+      leaves.add(column);
+    }
+  }
+
+  /**
+   * Convert a floating point value to an unsigned 32-bit integer the way the GPU does. The value
+   * is truncated toward zero and clamped to the range, and NaN becomes 0.
+   */
+  private static int toUInt32(double value) {
+    if (!(value > 0)) {
+      return 0;
+    }
+    if (value >= 4294967296.0) {
+      return -1;
+    }
+    return (int) (long) value;
+  }
+
+  /**
+   * The boost hash_combine algorithm used by cudf to combine hashes of multiple columns.
+   */
+  static int hashCombine(int lhs, int rhs) {
+    return lhs ^ (rhs + 0x9e3779b9 + (lhs << 6) + (lhs >>> 2));
+  }
+
+  private static int mixK1(int k1) {
+    k1 *= C1;
+    k1 = Integer.rotateLeft(k1, 15);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static int mixH1(int h1, int k1) {
+    h1 ^= mixK1(k1);
+    h1 = Integer.rotateLeft(h1, 13);
+    return h1 * 5 + 0xe6546b64;
+  }
+
+  private static int fmix32(int h, int len) {
+    h ^= len;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  static int murmurHash3Int(int seed, int value) {
+    return fmix32(mixH1(seed, value), 4);
+  }
+
+  static int murmurHash3Long(int seed, long value) {
+    int h1 = mixH1(seed, (int) value);
+    h1 = mixH1(h1, (int) (value >>> 32));
+    return fmix32(h1, 8);
+  }
+
+  /**
+   * Murmur3 of a value that is smaller than 4 bytes, using the standard tail processing.
+   */
+  static int murmurHash3Tail(int seed, int value, int len) {
+    int k1 = len == 1 ? value & 0xFF : value & 0xFFFF;
+    return fmix32(seed ^ mixK1(k1), len);
+  }
+
+  /**
+   * Murmur3 of a range of bytes in an array, the same as the cudf MURMUR3 hash of a string
+   * holding those bytes.
+   */
+  static int murmurHash3Bytes(int seed, byte[] data, int offset, int len) {
+    int h1 = seed;
+    int nblocks = len / 4;
+    for (int i = 0; i < nblocks; i++) {
+      int at = offset + i * 4;
+      int k1 = (data[at] & 0xFF) | (data[at + 1] & 0xFF) << 8 | (data[at + 2] & 0xFF) << 16 |
+          (data[at + 3] & 0xFF) << 24;
+      h1 = mixH1(h1, k1);
+    }
+    int tail = offset + nblocks * 4;
+    int k1 = 0;
+    switch (len & 3) {
+      case 3:
+        k1 ^= (data[tail + 2] & 0xFF) << 16;
+        // fall through
+      case 2:
+        k1 ^= (data[tail + 1] & 0xFF) << 8;
+        // fall through
+      case 1:
+        k1 ^= data[tail] & 0xFF;
+        h1 ^= mixK1(k1);
+        break;
+      default:
+        break;
+    }
+    return fmix32(h1, len);
+  }
+
+  /**
+   * Murmur3 of a range of bytes in a host buffer.
+   * @param spark if true use Spark's byte by byte, sign extended, tail processing.
+   */
+  static int murmurHash3Bytes(int seed, HostMemoryBuffer buffer, long offset, int len,
+                              boolean spark) {
+    int h1 = seed;
+    int nblocks = len / 4;
+    for (int i = 0; i < nblocks; i++) {
+      h1 = mixH1(h1, buffer.getInt(offset + i * 4L));
+    }
+    long tail = offset + nblocks * 4L;
+    if (spark) {
+      for (int i = nblocks * 4; i < len; i++) {
+        h1 = mixH1(h1, buffer.getByte(offset + i));
+      }
+    } else {
+      int k1 = 0;
+      switch (len & 3) {
+        case 3:
+          k1 ^= (buffer.getByte(tail + 2) & 0xFF) << 16;
+          // fall through
+        case 2:
+          k1 ^= (buffer.getByte(tail + 1) & 0xFF) << 8;
+          // fall through
+        case 1:
+          k1 ^= buffer.getByte(tail) & 0xFF;
+          h1 ^= mixK1(k1);
+          break;
+        default:
+          break;
+      }
+    }
+    return fmix32(h1, len);
+  }
+
+  /**
+   * Hash each row of a MURMUR3 column and either store it or combine it into hashes.
+   */
+  private static void murmurHash3Column(HostColumnVectorCore column, int seed, int[] hashes,
+                                        boolean combine) {
+    DType type = column.getType();
+    HostMemoryBuffer data = column.getData();
+    boolean hasValidity = column.hasValidityVector();
+    int numRows = hashes.length;
+    for (int row = 0; row < numRows; row++) {
+      int h;
+      if (hasValidity && column.isNull(row)) {
+        h = NULL_HASH;
+      } else {
+        switch (type.getTypeId()) {
+          case BOOL8:
+            h = murmurHash3Tail(seed, data.getByte(row) != 0 ? 1 : 0, 1);
+            break;
+          case INT8:
+          case UINT8:
+            h = murmurHash3Tail(seed, data.getByte(row), 1);
+            break;
+          case INT16:
+          case UINT16:
+            h = murmurHash3Tail(seed, data.getShort(row * 2L), 2);
+            break;
+          case FLOAT32: {
+            float f = data.getFloat(row * 4L);
+            int bits;
+            if (f == 0.0f) {
+              bits = 0;
+            } else if (Float.isNaN(f)) {
+              bits = Float.floatToIntBits(Float.NaN);
+            } else {
+              bits = Float.floatToRawIntBits(f);
+            }
+            h = murmurHash3Int(seed, bits);
+            break;
+          }
+          case FLOAT64: {
+            double d = data.getDouble(row * 8L);
+            long bits;
+            if (d == 0.0) {
+              bits = 0;
+            } else if (Double.isNaN(d)) {
+              bits = Double.doubleToLongBits(Double.NaN);
+            } else {
+              bits = Double.doubleToRawLongBits(d);
+            }
+            h = murmurHash3Long(seed, bits);
+            break;
+          }
+          case STRING: {
+            HostMemoryBuffer offsets = column.getOffsets();
+            int start = offsets.getInt(row * 4L);
+            int end = offsets.getInt((row + 1) * 4L);
+            h = murmurHash3Bytes(seed, data, start, end - start, false);
+            break;
+          }
+          default:
+            if (type.getSizeInBytes() == 4) {
+              h = murmurHash3Int(seed, data.getInt(row * 4L));
+            } else if (type.getSizeInBytes() == 8) {
+              h = murmurHash3Long(seed, data.getLong(row * 8L));
+            } else {
+              throw new IllegalArgumentException("MURMUR3 hashing of " + type +
+                  " columns is not supported");
+            }
+        }
+      }
+      hashes[row] = combine ? hashCombine(hashes[row], h) : hashCombine(0, h);
+    }
+  }
+
+  /**
+   * Update the running hash of each row with the Spark murmur3 hash of a leaf column.
+   */
+  private static void sparkHashColumn(HostColumnVectorCore column, int[] hashes) {
+    DType type = column.getType();
+    HostMemoryBuffer data = column.getData();
+    boolean hasValidity = column.hasValidityVector();
+    int numRows = hashes.length;
+    for (int row = 0; row < numRows; row++) {
+      if (hasValidity && column.isNull(row)) {
+        continue;
+      }
+      int seed = hashes[row];
+      int h;
+      switch (type.getTypeId()) {
+        case BOOL8:
+          h = murmurHash3Int(seed, data.getByte(row) != 0 ? 1 : 0);
+          break;
+        case INT8:
+          h = murmurHash3Int(seed, data.getByte(row));
+          break;
+        case UINT8:
+          h = murmurHash3Int(seed, data.getByte(row) & 0xFF);
+          break;
+        case INT16:
+          h = murmurHash3Int(seed, data.getShort(row * 2L));
+          break;
+        case UINT16:
+          h = murmurHash3Int(seed, data.getShort(row * 2L) & 0xFFFF);
+          break;
+        case FLOAT32: {
+          float f = data.getFloat(row * 4L);
+          int bits = Float.isNaN(f) ? Float.floatToIntBits(Float.NaN) : Float.floatToRawIntBits(f);
+          h = murmurHash3Int(seed, bits);
+          break;
+        }
+        case FLOAT64: {
+          double d = data.getDouble(row * 8L);
+          long bits = Double.isNaN(d) ? Double.doubleToLongBits(Double.NaN) :
+              Double.doubleToRawLongBits(d);
+          h = murmurHash3Long(seed, bits);
+          break;
+        }
+        case STRING: {
+          HostMemoryBuffer offsets = column.getOffsets();
+          int start = offsets.getInt(row * 4L);
+          int end = offsets.getInt((row + 1) * 4L);
+          h = murmurHash3Bytes(seed, data, start, end - start, true);
+          break;
+        }
+        case DECIMAL32:
+          // Spark hashes every decimal that fits in a long as a long
+          h = murmurHash3Long(seed, data.getInt(row * 4L));
+          break;
+        default:
+          if (type.getSizeInBytes() == 4) {
+            h = murmurHash3Int(seed, data.getInt(row * 4L));
+          } else if (type.getSizeInBytes() == 8) {
+            h = murmurHash3Long(seed, data.getLong(row * 8L));
+          } else {
+            throw new IllegalArgumentException("HASH_SPARK_MURMUR3 hashing of " + type +
+                " columns is not supported");
+          }
+      }
+      hashes[row] = h;
+    }
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog sketch that estimates the number of distinct values it has seen. Values are
+ * hashed to 64 bits, the top precision bits pick a register and each register keeps the
+ * longest run of leading zeros seen in the rest of the hash. The relative error is about
+ * 1.04 / sqrt(2^precision), so the default precision of 12 uses 4 KiB and is within about 1.6%.
+ * <p/>
+ * Sketches with the same precision can be merged, so each batch can be sketched on its own and
+ * the sketches combined to get the distinct count of all of them.
+ */
+public final class HostHyperLogLog {
+  public static final int MIN_PRECISION = 4;
+  public static final int MAX_PRECISION = 18;
+  public static final int DEFAULT_PRECISION = 12;
+
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private final int precision;
+  private final byte[] registers;
+
+  public HostHyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+  /**
+   * @param precision the number of hash bits used to pick a register, between
+   *                  {@link #MIN_PRECISION} and {@link #MAX_PRECISION}.
+   */
+  public HostHyperLogLog(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION +
+          " and " + MAX_PRECISION + " but was " + precision);
+    }
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  private HostHyperLogLog(int precision, byte[] registers) {
+    this.precision = precision;
+    this.registers = registers;
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Add a value that has already been hashed to 64 well mixed bits.
+   */
+  public void addHash(long hash) {
+    int index = (int) (hash >>> (64 - precision));
+    long rest = hash << precision;
+    int rank = Math.min(Long.numberOfLeadingZeros(rest), 64 - precision) + 1;
+    if (rank > registers[index]) {
+      registers[index] = (byte) rank;
+    }
+  }
+
+  /**
+   * Add a fixed width value by its bits.
+   */
+  public void add(long value) {
+    addHash(hash64(value));
+  }
+
+  /**
+   * Add the bytes of a value, like a UTF-8 string, stored in a host buffer.
+   */
+  public void addBytes(HostMemoryBuffer buffer, long offset, int length) {
+    addHash(hash64(buffer, offset, length));
+  }
+
+  /**
+   * Add the bytes of a value, like a UTF-8 string.
+   */
+  public void addBytes(byte[] data, int offset, int length) {
+    addHash(hash64(data, offset, length));
+  }
+
+  /**
+   * Merge another sketch with the same precision into this one.
+   */
+  public void merge(HostHyperLogLog other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("Cannot merge a sketch with precision " +
+          other.precision + " into one with precision " + precision);
+    }
+    for (int i = 0; i < registers.length; i++) {
+      if (other.registers[i] > registers[i]) {
+        registers[i] = other.registers[i];
+      }
+    }
+  }
+
+  /**
+   * Get an estimate of the number of distinct values added so far.
+   */
+  public long estimate() {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte r : registers) {
+      sum += Double.longBitsToDouble((1023L - r) << 52);
+      if (r == 0) {
+        zeros++;
+      }
+    }
+    double alpha;
+    switch (m) {
+      case 16:
+        alpha = 0.673;
+        break;
+      case 32:
+        alpha = 0.697;
+        break;
+      case 64:
+        alpha = 0.709;
+        break;
+      default:
+        alpha = 0.7213 / (1 + 1.079 / m);
+        break;
+    }
+    double estimate = alpha * m * (double) m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) {
+      // Linear counting is much more accurate for small cardinalities
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  public HostHyperLogLog copy() {
+    return new HostHyperLogLog(precision, registers.clone());
+  }
+
+  /** Returns the number of bytes needed to serialize this sketch. */
+  public int getSerializedSizeInBytes() {
+    return 1 + registers.length;
+  }
+
+  /**
+   * Write the sketch to a stream.
+   */
+  public void writeTo(DataOutputStream dout) throws IOException {
+    dout.writeByte(precision);
+    dout.write(registers);
+  }
+
+  /**
+   * Read a sketch that was written with {@link #writeTo(DataOutputStream)}.
+   */
+  public static HostHyperLogLog readFrom(DataInputStream din) throws IOException {
+    int precision = din.readByte();
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalStateException("Found a sketch with unexpected precision " + precision);
+    }
+    byte[] registers = new byte[1 << precision];
+    din.readFully(registers);
+    return new HostHyperLogLog(precision, registers);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof HostHyperLogLog)) {
+      return false;
+    }
+    HostHyperLogLog other = (HostHyperLogLog) o;
+    return precision == other.precision && Arrays.equals(registers, other.registers);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * precision + Arrays.hashCode(registers);
+  }
+
+  /**
+   * Hash the bits of a fixed width value to 64 bits.
+   */
+  static long hash64(long value) {
+    return fmix64(value * C1);
+  }
+
+  /**
+   * Hash a range of bytes in a host buffer to 64 bits, 8 bytes at a time.
+   */
+  static long hash64(HostMemoryBuffer buffer, long offset, int length) {
+    long h = length;
+    int i = 0;
+    for (; i + 8 <= length; i += 8) {
+      h = mixWord(h, buffer.getLong(offset + i));
+    }
+    for (; i < length; i++) {
+      h = mixByte(h, buffer.getByte(offset + i));
+    }
+    return fmix64(h);
+  }
+
+  /**
+   * Hash a range of bytes to 64 bits. This matches hashing the same bytes in a host buffer.
+   */
+  static long hash64(byte[] data, int offset, int length) {
+    long h = length;
+    int i = 0;
+    for (; i + 8 <= length; i += 8) {
+      long k = 0;
+      for (int b = 7; b >= 0; b--) {
+        k = (k << 8) | (data[offset + i + b] & 0xFFL);
+      }
+      h = mixWord(h, k);
+    }
+    for (; i < length; i++) {
+      h = mixByte(h, data[offset + i]);
+    }
+    return fmix64(h);
+  }
+
+  private static long mixWord(long h, long k) {
+    k *= C1;
+    k = Long.rotateLeft(k, 31);
+    k *= C2;
+    h ^= k;
+    return Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+  }
+
+  private static long mixByte(long h, byte b) {
+    h ^= (b & 0xFFL) * C2;
+    return Long.rotateLeft(h, 11) * C1;
+  }
+
+  private static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+}
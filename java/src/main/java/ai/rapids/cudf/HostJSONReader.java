@@ -0,0 +1,929 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads JSON Lines data, one JSON object per line, into host columns on the CPU. The columns
+ * come from a {@link Schema}, which can describe STRUCT and LIST columns with
+ * {@link Schema.Builder#addColumn(DType, String)}, and the fields of each object are matched to
+ * them by name. Fields that are not in the schema, or not selected by the {@link JSONOptions},
+ * are skipped without being decoded.
+ * <p/>
+ * The bytes are tokenized in place, without building any objects for the values, and written
+ * straight into a {@link HostColumnVector.ColumnBuilder} per column. A buffer, usually a memory
+ * mapped file, can be split at line boundaries and the chunks read in parallel, then the columns
+ * of every chunk are concatenated.
+ * <p/>
+ * Missing fields and JSON nulls are null. Values that do not fit the type of their column, like
+ * a string in a numeric column that does not hold a number, are also null. Strings are read
+ * into STRING columns unescaped and any other value is read into them as its JSON text. Lines
+ * that are empty or only whitespace are skipped and anything else that is not a JSON object is
+ * an error.
+ */
+public final class HostJSONReader {
+  private static final int INITIAL_WINDOW = 1024 * 1024;
+  private static final int SCAN_BLOCK = 4096;
+
+  /**
+   * Receives throughput information each time data is read.
+   */
+  public interface MetricsListener {
+    /**
+     * Called after data is read and the columns are built.
+     * @param numBytes the number of bytes of JSON read.
+     * @param numRows the number of rows read.
+     * @param elapsedNanos the time it took to read the data.
+     * @param bytesPerSecond the rate that the data was read at.
+     */
+    void dataRead(long numBytes, long numRows, long elapsedNanos, double bytesPerSecond);
+  }
+
+  private HostJSONReader() {
+  }
+
+  /**
+   * A column or nested child in the schema, with the names of its children as UTF-8 so keys
+   * can be compared without decoding them.
+   */
+  private static final class Field {
+    final DType type;
+    final HostColumnVector.DataType dataType;
+    final byte[][] childNames;
+    final Field[] children;
+
+    Field(DType type, Field[] children, byte[][] childNames) {
+      this.type = type;
+      this.children = children;
+      this.childNames = childNames;
+      if (type.equals(DType.STRUCT)) {
+        List<HostColumnVector.DataType> childTypes = new ArrayList<>(children.length);
+        for (Field child : children) {
+          childTypes.add(child.dataType);
+        }
+        dataType = new HostColumnVector.StructType(true, childTypes);
+      } else if (type.equals(DType.LIST)) {
+        dataType = new HostColumnVector.ListType(true, children[0].dataType);
+      } else {
+        dataType = new HostColumnVector.BasicType(true, type);
+      }
+    }
+
+    /**
+     * Find the child with a name, trying the hint first because objects usually list their
+     * fields in the same order.
+     * @return the index of the child or -1 if there is none.
+     */
+    int find(byte[] data, int start, int end, int hint) {
+      if (hint < childNames.length && matches(childNames[hint], data, start, end)) {
+        return hint;
+      }
+      for (int i = 0; i < childNames.length; i++) {
+        if (i != hint && matches(childNames[i], data, start, end)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private static boolean matches(byte[] name, byte[] data, int start, int end) {
+      if (name.length != end - start) {
+        return false;
+      }
+      for (int i = 0; i < name.length; i++) {
+        if (name[i] != data[start + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    static Field of(DType type, String name, Schema children) {
+      int numChildren = children.getColumnNames().length;
+      if (type.equals(DType.LIST) && numChildren != 1) {
+        throw new IllegalArgumentException("LIST column " + name +
+            " must have exactly one child but has " + numChildren);
+      }
+      if (type.isNestedType()) {
+        return new Field(type, fields(children, null), names(children, null));
+      }
+      if (numChildren != 0) {
+        throw new IllegalArgumentException(type + " column " + name + " cannot have children");
+      }
+      switch (type.getTypeId()) {
+        case BOOL8:
+        case INT8:
+        case INT16:
+        case INT32:
+        case INT64:
+        case UINT8:
+        case UINT16:
+        case UINT32:
+        case UINT64:
+        case FLOAT32:
+        case FLOAT64:
+        case DECIMAL32:
+        case DECIMAL64:
+        case STRING:
+          return new Field(type, new Field[0], new byte[0][]);
+        default:
+          throw new UnsupportedOperationException("Reading " + type + " from JSON is not " +
+              "supported on the host");
+      }
+    }
+
+    private static boolean isIncluded(String name, Set<String> include) {
+      return include == null || include.isEmpty() || include.contains(name);
+    }
+
+    static Field[] fields(Schema schema, Set<String> include) {
+      String[] names = schema.getColumnNames();
+      int[] typeIds = schema.getTypeIds();
+      int[] scales = schema.getTypeScales();
+      List<Field> ret = new ArrayList<>(names.length);
+      for (int i = 0; i < names.length; i++) {
+        if (isIncluded(names[i], include)) {
+          ret.add(of(DType.fromNative(typeIds[i], scales[i]), names[i], schema.getChild(i)));
+        }
+      }
+      return ret.toArray(new Field[0]);
+    }
+
+    static byte[][] names(Schema schema, Set<String> include) {
+      List<byte[]> ret = new ArrayList<>();
+      for (String name : schema.getColumnNames()) {
+        if (isIncluded(name, include)) {
+          ret.add(name.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      return ret.toArray(new byte[0][]);
+    }
+  }
+
+  /**
+   * Parses the lines of one chunk into its own builders.
+   */
+  private static final class ChunkParser implements AutoCloseable {
+    private final Field root;
+    private final HostColumnVector.ColumnBuilder[] builders;
+    private byte[] window = new byte[INITIAL_WINDOW];
+    private int windowLength = 0;
+    /** Where the window is in the buffer, for error messages */
+    private long windowOffset;
+    private byte[] scratch = new byte[256];
+    private int pos;
+    private int end;
+    long numRows = 0;
+
+    ChunkParser(Field root, long chunkLength) {
+      this.root = root;
+      this.builders = new HostColumnVector.ColumnBuilder[root.children.length];
+      // A rough guess of 16 bytes per field is enough to size the first allocation
+      long estimatedRows = chunkLength / (16L * Math.max(1, builders.length)) + 1;
+      boolean success = false;
+      try {
+        for (int i = 0; i < builders.length; i++) {
+          builders[i] = new HostColumnVector.ColumnBuilder(root.children[i].dataType,
+              estimatedRows);
+        }
+        success = true;
+      } finally {
+        if (!success) {
+          close();
+        }
+      }
+    }
+
+    void parse(HostMemoryBuffer buffer, long offset, long length) {
+      long bufferPos = offset;
+      long bufferEnd = offset + length;
+      windowOffset = offset;
+      int lineStart = 0;
+      int scanned = 0;
+      while (true) {
+        int newline = -1;
+        for (int i = Math.max(lineStart, scanned); i < windowLength; i++) {
+          if (window[i] == '\n') {
+            newline = i;
+            break;
+          }
+        }
+        boolean atEnd = bufferPos == bufferEnd;
+        if (newline >= 0 || (atEnd && lineStart < windowLength)) {
+          int lineEnd = newline >= 0 ? newline : windowLength;
+          parseLine(lineStart, lineEnd);
+          lineStart = lineEnd + 1;
+          scanned = lineStart;
+          continue;
+        }
+        if (atEnd) {
+          return;
+        }
+        // Keep the partial line and read more data after it
+        int keep = windowLength - lineStart;
+        if (keep == window.length) {
+          window = Arrays.copyOf(window, window.length * 2);
+        } else if (lineStart > 0) {
+          System.arraycopy(window, lineStart, window, 0, keep);
+        }
+        windowOffset += lineStart;
+        windowLength = keep;
+        scanned = keep;
+        lineStart = 0;
+        int amount = (int) Math.min(window.length - windowLength, bufferEnd - bufferPos);
+        buffer.getBytes(window, windowLength, bufferPos, amount);
+        windowLength += amount;
+        bufferPos += amount;
+      }
+    }
+
+    private IllegalArgumentException malformed(String expected) {
+      return new IllegalArgumentException("Malformed JSON at byte " + (windowOffset + pos) +
+          ", expected " + expected);
+    }
+
+    private void skipWhitespace() {
+      while (pos < end) {
+        byte b = window[pos];
+        if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+          return;
+        }
+        pos++;
+      }
+    }
+
+    private byte peek(String expected) {
+      skipWhitespace();
+      if (pos >= end) {
+        throw malformed(expected);
+      }
+      return window[pos];
+    }
+
+    private void parseLine(int start, int lineEnd) {
+      pos = start;
+      end = lineEnd;
+      skipWhitespace();
+      if (pos == end) {
+        return;
+      }
+      if (window[pos] != '{') {
+        throw malformed("an object");
+      }
+      readObject(root, null);
+      skipWhitespace();
+      if (pos != end) {
+        throw malformed("the end of the line");
+      }
+      numRows++;
+    }
+
+    private HostColumnVector.ColumnBuilder childBuilder(HostColumnVector.ColumnBuilder parent,
+                                                        int index) {
+      return parent == null ? builders[index] : parent.getChild(index);
+    }
+
+    /**
+     * Read an object into the children of a struct, or into the top level columns when parent
+     * is null. This does not end the struct.
+     */
+    private void readObject(Field field, HostColumnVector.ColumnBuilder parent) {
+      pos++;
+      int numChildren = field.children.length;
+      // One bit per child, for the usual case of a small number of fields
+      long seenBits = 0;
+      boolean[] seen = numChildren > 64 ? new boolean[numChildren] : null;
+      int hint = 0;
+      if (peek("a key or '}'") == '}') {
+        pos++;
+      } else {
+        while (true) {
+          if (peek("a key") != '"') {
+            throw malformed("a key");
+          }
+          int keyStart = pos + 1;
+          int keyEnd = skipString();
+          byte[] keyData = window;
+          if (hasEscapes(keyStart, keyEnd)) {
+            pos = keyStart - 1;
+            keyEnd = readString();
+            keyStart = 0;
+            keyData = scratch;
+          }
+          if (peek("':'") != ':') {
+            throw malformed("':'");
+          }
+          pos++;
+          int index = field.find(keyData, keyStart, keyEnd, hint);
+          boolean isSeen = index >= 0 && (seen != null ? seen[index] :
+              (seenBits & (1L << index)) != 0);
+          if (index < 0 || isSeen) {
+            // Not a selected field, or a repeat of one, so only find where it ends
+            skipValue();
+          } else {
+            if (seen != null) {
+              seen[index] = true;
+            } else {
+              seenBits |= 1L << index;
+            }
+            readValue(field.children[index], childBuilder(parent, index));
+            hint = index + 1;
+          }
+          byte b = peek("',' or '}'");
+          pos++;
+          if (b == '}') {
+            break;
+          } else if (b != ',') {
+            pos--;
+            throw malformed("',' or '}'");
+          }
+        }
+      }
+      for (int i = 0; i < numChildren; i++) {
+        boolean isSeen = seen != null ? seen[i] : (seenBits & (1L << i)) != 0;
+        if (!isSeen) {
+          childBuilder(parent, i).appendNull();
+        }
+      }
+    }
+
+    private boolean hasEscapes(int start, int stringEnd) {
+      for (int i = start; i < stringEnd; i++) {
+        if (window[i] == '\\') {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void readValue(Field field, HostColumnVector.ColumnBuilder b) {
+      byte c = peek("a value");
+      if (c == 'n' && matchesLiteral("null")) {
+        b.appendNull();
+        return;
+      }
+      DType type = field.type;
+      if (type.equals(DType.STRUCT)) {
+        if (c == '{') {
+          readObject(field, b);
+          b.endStruct();
+        } else {
+          skipValue();
+          b.appendNull();
+        }
+      } else if (type.equals(DType.LIST)) {
+        if (c == '[') {
+          readArray(field.children[0], b.getChild(0));
+          b.endList();
+        } else {
+          skipValue();
+          b.appendNull();
+        }
+      } else if (type.equals(DType.STRING)) {
+        if (c == '"') {
+          int length = readString();
+          b.appendUTF8String(scratch, 0, length);
+        } else {
+          int start = pos;
+          skipValue();
+          b.appendUTF8String(window, start, pos - start);
+        }
+      } else if (type.equals(DType.BOOL8)) {
+        if (c == 't' && matchesLiteral("true")) {
+          b.append(true);
+        } else if (c == 'f' && matchesLiteral("false")) {
+          b.append(false);
+        } else {
+          skipValue();
+          b.appendNull();
+        }
+      } else {
+        byte[] data;
+        int start;
+        int stop;
+        if (c == '"') {
+          // Numbers in strings are still read as numbers
+          data = scratch;
+          start = 0;
+          stop = readString();
+        } else if (c == '{' || c == '[') {
+          skipValue();
+          b.appendNull();
+          return;
+        } else {
+          data = window;
+          start = pos;
+          skipValue();
+          stop = pos;
+        }
+        try {
+          appendNumber(b, type, data, start, stop);
+        } catch (NumberFormatException | ArithmeticException e) {
+          b.appendNull();
+        }
+      }
+    }
+
+    private void readArray(Field element, HostColumnVector.ColumnBuilder b) {
+      pos++;
+      if (peek("a value or ']'") == ']') {
+        pos++;
+        return;
+      }
+      while (true) {
+        readValue(element, b);
+        byte c = peek("',' or ']'");
+        pos++;
+        if (c == ']') {
+          return;
+        } else if (c != ',') {
+          pos--;
+          throw malformed("',' or ']'");
+        }
+      }
+    }
+
+    private boolean matchesLiteral(String literal) {
+      int len = literal.length();
+      if (pos + len > end) {
+        return false;
+      }
+      for (int i = 0; i < len; i++) {
+        if (window[pos + i] != literal.charAt(i)) {
+          return false;
+        }
+      }
+      if (pos + len < end && !isScalarEnd(window[pos + len])) {
+        return false;
+      }
+      pos += len;
+      return true;
+    }
+
+    private static boolean isScalarEnd(byte b) {
+      return b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\r' ||
+          b == '\n';
+    }
+
+    /**
+     * Skip a string that starts at pos without decoding it.
+     * @return the index of its closing quote.
+     */
+    private int skipString() {
+      for (int i = pos + 1; i < end; i++) {
+        byte b = window[i];
+        if (b == '\\') {
+          i++;
+        } else if (b == '"') {
+          pos = i + 1;
+          return i;
+        }
+      }
+      throw malformed("the end of a string");
+    }
+
+    /**
+     * Skip any value, including nested objects and arrays, without decoding it.
+     */
+    private void skipValue() {
+      byte c = peek("a value");
+      if (c == '"') {
+        skipString();
+      } else if (c == '{' || c == '[') {
+        int depth = 0;
+        while (pos < end) {
+          byte b = window[pos];
+          if (b == '"') {
+            skipString();
+            continue;
+          }
+          if (b == '{' || b == '[') {
+            depth++;
+          } else if (b == '}' || b == ']') {
+            depth--;
+            if (depth == 0) {
+              pos++;
+              return;
+            }
+          }
+          pos++;
+        }
+        throw malformed("the end of " + (c == '{' ? "an object" : "an array"));
+      } else {
+        int start = pos;
+        while (pos < end && !isScalarEnd(window[pos])) {
+          pos++;
+        }
+        if (pos == start) {
+          throw malformed("a value");
+        }
+      }
+    }
+
+    private void put(int index, int b) {
+      if (index >= scratch.length) {
+        scratch = Arrays.copyOf(scratch, scratch.length * 2);
+      }
+      scratch[index] = (byte) b;
+    }
+
+    private int hexDigit(int index) {
+      if (index >= end) {
+        throw malformed("a hex digit");
+      }
+      int d = Character.digit(window[index], 16);
+      if (d < 0) {
+        pos = index;
+        throw malformed("a hex digit");
+      }
+      return d;
+    }
+
+    private int readHex(int index) {
+      return (hexDigit(index) << 12) | (hexDigit(index + 1) << 8) | (hexDigit(index + 2) << 4) |
+          hexDigit(index + 3);
+    }
+
+    /**
+     * Unescape the string that starts at pos into scratch as UTF-8.
+     * @return the length of the string in scratch.
+     */
+    private int readString() {
+      int length = 0;
+      int i = pos + 1;
+      while (i < end) {
+        byte b = window[i];
+        if (b == '"') {
+          pos = i + 1;
+          return length;
+        }
+        if (b != '\\') {
+          put(length++, b);
+          i++;
+          continue;
+        }
+        if (i + 1 >= end) {
+          break;
+        }
+        byte e = window[i + 1];
+        i += 2;
+        switch (e) {
+          case 'b': put(length++, '\b'); break;
+          case 'f': put(length++, '\f'); break;
+          case 'n': put(length++, '\n'); break;
+          case 'r': put(length++, '\r'); break;
+          case 't': put(length++, '\t'); break;
+          case 'u': {
+            int cp = readHex(i);
+            i += 4;
+            if (Character.isHighSurrogate((char) cp) && i + 5 < end && window[i] == '\\' &&
+                window[i + 1] == 'u') {
+              int low = readHex(i + 2);
+              if (Character.isLowSurrogate((char) low)) {
+                cp = Character.toCodePoint((char) cp, (char) low);
+                i += 6;
+              }
+            }
+            length = putCodePoint(length, cp);
+            break;
+          }
+          default:
+            // \" \\ \/ and anything unknown are the character itself
+            put(length++, e);
+        }
+      }
+      pos = i;
+      throw malformed("the end of a string");
+    }
+
+    private int putCodePoint(int length, int cp) {
+      if (cp < 0x80) {
+        put(length++, cp);
+      } else if (cp < 0x800) {
+        put(length++, 0xC0 | (cp >> 6));
+        put(length++, 0x80 | (cp & 0x3F));
+      } else if (cp < 0x10000) {
+        put(length++, 0xE0 | (cp >> 12));
+        put(length++, 0x80 | ((cp >> 6) & 0x3F));
+        put(length++, 0x80 | (cp & 0x3F));
+      } else {
+        put(length++, 0xF0 | (cp >> 18));
+        put(length++, 0x80 | ((cp >> 12) & 0x3F));
+        put(length++, 0x80 | ((cp >> 6) & 0x3F));
+        put(length++, 0x80 | (cp & 0x3F));
+      }
+      return length;
+    }
+
+    private static long inRange(byte[] data, int start, int stop, long min, long max) {
+      long ret = HostNumberParser.parseLongUTF8(data, start, stop - start);
+      if (ret < min || ret > max) {
+        throw new ArithmeticException("Value " + ret + " out of range");
+      }
+      return ret;
+    }
+
+    private static void appendNumber(HostColumnVector.ColumnBuilder b, DType type, byte[] data,
+                                     int start, int stop) {
+      int length = stop - start;
+      switch (type.getTypeId()) {
+        case INT8:
+          b.append((byte) inRange(data, start, stop, Byte.MIN_VALUE, Byte.MAX_VALUE));
+          break;
+        case UINT8:
+          b.append((byte) inRange(data, start, stop, 0, 0xFFL));
+          break;
+        case INT16:
+          b.append((short) inRange(data, start, stop, Short.MIN_VALUE, Short.MAX_VALUE));
+          break;
+        case UINT16:
+          b.append((short) inRange(data, start, stop, 0, 0xFFFFL));
+          break;
+        case INT32:
+          b.append((int) inRange(data, start, stop, Integer.MIN_VALUE, Integer.MAX_VALUE));
+          break;
+        case UINT32:
+          b.append((int) inRange(data, start, stop, 0, 0xFFFFFFFFL));
+          break;
+        case INT64:
+          b.append(HostNumberParser.parseLongUTF8(data, start, length));
+          break;
+        case UINT64:
+          b.append(HostNumberParser.parseUnsignedLongUTF8(data, start, length));
+          break;
+        case FLOAT32:
+          b.append(HostNumberParser.parseFloatUTF8(data, start, length));
+          break;
+        case FLOAT64:
+          b.append(HostNumberParser.parseDoubleUTF8(data, start, length));
+          break;
+        case DECIMAL32:
+          b.append(Math.toIntExact(HostNumberParser.parseUnscaledDecimalUTF8(data, start,
+              length, type.getScale(), RoundingMode.HALF_UP)));
+          break;
+        case DECIMAL64:
+          b.append(HostNumberParser.parseUnscaledDecimalUTF8(data, start, length,
+              type.getScale(), RoundingMode.HALF_UP));
+          break;
+        default:
+          throw new IllegalStateException("Unexpected type " + type);
+      }
+    }
+
+    HostColumnVector[] build() {
+      HostColumnVector[] ret = new HostColumnVector[builders.length];
+      boolean success = false;
+      try {
+        for (int i = 0; i < builders.length; i++) {
+          ret[i] = builders[i].build();
+        }
+        success = true;
+        return ret;
+      } finally {
+        if (!success) {
+          closeAll(ret);
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      for (HostColumnVector.ColumnBuilder b : builders) {
+        if (b != null) {
+          b.close();
+        }
+      }
+    }
+  }
+
+  private static void closeAll(HostColumnVector[] columns) {
+    if (columns == null) {
+      return;
+    }
+    for (HostColumnVector c : columns) {
+      if (c != null) {
+        c.close();
+      }
+    }
+  }
+
+  /**
+   * Split the data into about numChunks ranges, each ending just after a newline. JSON strings
+   * cannot hold a raw newline, so every newline ends a line.
+   */
+  static List<long[]> splitLines(HostMemoryBuffer buffer, long offset, long len,
+                                 int numChunks) {
+    if (numChunks <= 0) {
+      throw new IllegalArgumentException("The number of chunks must be positive " + numChunks);
+    }
+    List<long[]> ret = new ArrayList<>(numChunks);
+    long end = offset + len;
+    long start = offset;
+    byte[] block = new byte[SCAN_BLOCK];
+    for (int i = 1; i < numChunks && start < end; i++) {
+      long target = Math.max(start, offset + len / numChunks * i);
+      long split = -1;
+      while (split < 0 && target < end) {
+        int amount = (int) Math.min(block.length, end - target);
+        buffer.getBytes(block, 0, target, amount);
+        for (int j = 0; j < amount; j++) {
+          if (block[j] == '\n') {
+            split = target + j + 1;
+            break;
+          }
+        }
+        target += amount;
+      }
+      if (split < 0 || split >= end) {
+        break;
+      }
+      ret.add(new long[]{start, split - start});
+      start = split;
+    }
+    if (start < end) {
+      ret.add(new long[]{start, end - start});
+    }
+    return ret;
+  }
+
+  private static ChunkParser parseChunk(Field root, HostMemoryBuffer buffer, long[] chunk) {
+    ChunkParser parser = new ChunkParser(root, chunk[1]);
+    boolean success = false;
+    try {
+      parser.parse(buffer, chunk[0], chunk[1]);
+      success = true;
+      return parser;
+    } finally {
+      if (!success) {
+        parser.close();
+      }
+    }
+  }
+
+  /**
+   * Parse JSON Lines data held in a host buffer.
+   * @param schema the columns to read, including the children of nested columns.
+   * @param opts which columns to read.
+   * @param buffer raw UTF8 formatted bytes.
+   * @param offset the starting offset into buffer.
+   * @param len the number of bytes to parse.
+   * @param numChunks how many chunks to split the data into to parse in parallel.
+   * @param pool the threads to parse with, or null to parse on the calling thread.
+   * @param metrics told how fast the data was read, or null.
+   * @return a column for each selected column in the schema, owned by the caller.
+   */
+  public static HostColumnVector[] readJSON(Schema schema, JSONOptions opts,
+                                            HostMemoryBuffer buffer, long offset, long len,
+                                            int numChunks, ExecutorService pool,
+                                            MetricsListener metrics) {
+    if (schema.getColumnNames() == null || schema.getTypeIds() == null) {
+      throw new UnsupportedOperationException("Inferring the schema is not supported on " +
+          "the host, pass a schema with the name and type of every column");
+    }
+    long startNanos = System.nanoTime();
+    Set<String> include = new HashSet<>(Arrays.asList(opts.getIncludeColumnNames()));
+    Field root = new Field(DType.STRUCT, Field.fields(schema, include),
+        Field.names(schema, include));
+    List<long[]> chunks = splitLines(buffer, offset, len, numChunks);
+    List<ChunkParser> parsed = new ArrayList<>(chunks.size());
+    try {
+      if (pool == null || chunks.size() <= 1) {
+        for (long[] chunk : chunks) {
+          parsed.add(parseChunk(root, buffer, chunk));
+        }
+      } else {
+        List<Future<ChunkParser>> futures = new ArrayList<>(chunks.size());
+        for (long[] chunk : chunks) {
+          futures.add(pool.submit(() -> parseChunk(root, buffer, chunk)));
+        }
+        RuntimeException error = null;
+        for (Future<ChunkParser> f : futures) {
+          try {
+            parsed.add(f.get());
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = error != null ? error : new RuntimeException("Interrupted reading JSON", e);
+          } catch (ExecutionException e) {
+            error = error != null ? error : e.getCause() instanceof RuntimeException ?
+                (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+          }
+        }
+        if (error != null) {
+          throw error;
+        }
+      }
+      long numRows = 0;
+      for (ChunkParser p : parsed) {
+        numRows += p.numRows;
+      }
+      HostColumnVector[] ret = merge(root, parsed);
+      if (metrics != null) {
+        long elapsed = System.nanoTime() - startNanos;
+        double bytesPerSecond = elapsed == 0 ? 0 : len * 1_000_000_000.0 / elapsed;
+        metrics.dataRead(len, numRows, elapsed, bytesPerSecond);
+      }
+      return ret;
+    } finally {
+      for (ChunkParser p : parsed) {
+        p.close();
+      }
+    }
+  }
+
+  private static HostColumnVector[] merge(Field root, List<ChunkParser> parsed) {
+    HostColumnVector[] ret = new HostColumnVector[root.children.length];
+    List<HostColumnVector[]> built = new ArrayList<>(parsed.size());
+    boolean success = false;
+    try {
+      for (ChunkParser p : parsed) {
+        built.add(p.build());
+      }
+      for (int c = 0; c < ret.length; c++) {
+        if (built.isEmpty()) {
+          try (HostColumnVector.ColumnBuilder b =
+                   new HostColumnVector.ColumnBuilder(root.children[c].dataType, 0)) {
+            ret[c] = b.build();
+          }
+        } else if (built.size() == 1) {
+          // Hand over the only column, so it is not closed with the rest
+          ret[c] = built.get(0)[c];
+          built.get(0)[c] = null;
+        } else {
+          HostColumnVector[] parts = new HostColumnVector[built.size()];
+          for (int i = 0; i < parts.length; i++) {
+            parts[i] = built.get(i)[c];
+          }
+          ret[c] = HostColumnVector.concatenate(parts);
+        }
+      }
+      success = true;
+      return ret;
+    } finally {
+      for (HostColumnVector[] columns : built) {
+        closeAll(columns);
+      }
+      if (!success) {
+        closeAll(ret);
+      }
+    }
+  }
+
+  /**
+   * Parse JSON Lines data on the calling thread.
+   */
+  public static HostColumnVector[] readJSON(Schema schema, JSONOptions opts, byte[] data) {
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(Math.max(1, data.length))) {
+      buffer.setBytes(0, data, 0, data.length);
+      return readJSON(schema, opts, buffer, 0, data.length, 1, null, null);
+    }
+  }
+
+  /**
+   * Memory map a JSON Lines file and parse it.
+   * @param numChunks how many chunks to split the file into to parse in parallel.
+   * @param pool the threads to parse with, or null to parse on the calling thread.
+   * @param metrics told how fast the data was read, or null.
+   * @return a column for each selected column in the schema, owned by the caller.
+   */
+  public static HostColumnVector[] readJSON(Schema schema, JSONOptions opts, File path,
+                                            int numChunks, ExecutorService pool,
+                                            MetricsListener metrics) throws IOException {
+    long len = path.length();
+    if (len == 0) {
+      return readJSON(schema, opts, new byte[0]);
+    }
+    try (HostMemoryBuffer mapped = HostMemoryBuffer.mapFile(path, FileChannel.MapMode.READ_ONLY,
+        0, len)) {
+      return readJSON(schema, opts, mapped, 0, len, numChunks, pool, metrics);
+    }
+  }
+}
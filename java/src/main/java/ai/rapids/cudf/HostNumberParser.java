@@ -0,0 +1,419 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses numbers straight from UTF-8 bytes or a CharSequence without creating any objects, so
+ * text can be turned into column values without going through String, Long or BigDecimal.
+ * <p/>
+ * Integers are an optional sign followed by digits. Decimals and floating point values may
+ * also have a fraction and an exponent, like "-12.5e3". Floating point values also accept
+ * "NaN" and "Infinity" with an optional sign. Whitespace is not skipped. Badly formed input
+ * throws a NumberFormatException and a value that does not fit throws an ArithmeticException,
+ * matching the exceptions the BigDecimal path throws.
+ * <p/>
+ * Floating point values with up to 15 significant digits and a small exponent are computed
+ * exactly with a single multiply or divide. Anything longer falls back to the JDK parser, which
+ * does allocate, so that the result is always correctly rounded.
+ */
+public final class HostNumberParser {
+  private static final double[] DOUBLE_POWERS_OF_10 = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+  private static final float[] FLOAT_POWERS_OF_10 = {
+      1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+  };
+  /** The largest exponent that is tracked, anything past this is clamped. */
+  private static final int MAX_EXPONENT = 1 << 28;
+
+  private HostNumberParser() {
+  }
+
+  /**
+   * Parse a signed integer.
+   */
+  public static long parseLong(CharSequence value) {
+    return parseLong(null, value, 0, value.length());
+  }
+
+  /**
+   * Parse a signed integer from the chars in [start, end).
+   */
+  public static long parseLong(CharSequence value, int start, int end) {
+    return parseLong(null, value, start, end);
+  }
+
+  /**
+   * Parse a signed integer from UTF-8 bytes.
+   */
+  public static long parseLongUTF8(byte[] value, int offset, int length) {
+    return parseLong(value, null, offset, offset + length);
+  }
+
+  /**
+   * Parse an unsigned 64-bit integer. Values above Long.MAX_VALUE come back as negative numbers,
+   * the same as Long.parseUnsignedLong.
+   */
+  public static long parseUnsignedLong(CharSequence value, int start, int end) {
+    return parseUnsignedLong(null, value, start, end);
+  }
+
+  /**
+   * Parse an unsigned 64-bit integer from UTF-8 bytes.
+   */
+  public static long parseUnsignedLongUTF8(byte[] value, int offset, int length) {
+    return parseUnsignedLong(value, null, offset, offset + length);
+  }
+
+  /**
+   * Parse a decimal number and get its unscaled value for a cudf decimal scale.
+   * @param value the text to parse.
+   * @param start the first char to parse.
+   * @param end one past the last char to parse.
+   * @param scale the cudf scale of the result, the value is unscaled * 10^scale. This is the
+   *              opposite sign of a BigDecimal scale.
+   * @param roundingMode how to round digits that do not fit the scale.
+   * @return the unscaled value.
+   */
+  public static long parseUnscaledDecimal(CharSequence value, int start, int end, int scale,
+                                          RoundingMode roundingMode) {
+    return parseUnscaledDecimal(null, value, start, end, scale, roundingMode);
+  }
+
+  /**
+   * Parse a decimal number from UTF-8 bytes and get its unscaled value for a cudf decimal scale.
+   * See {@link #parseUnscaledDecimal(CharSequence, int, int, int, RoundingMode)}.
+   */
+  public static long parseUnscaledDecimalUTF8(byte[] value, int offset, int length, int scale,
+                                              RoundingMode roundingMode) {
+    return parseUnscaledDecimal(value, null, offset, offset + length, scale, roundingMode);
+  }
+
+  public static double parseDouble(CharSequence value, int start, int end) {
+    return parseFloating(null, value, start, end, false);
+  }
+
+  public static double parseDoubleUTF8(byte[] value, int offset, int length) {
+    return parseFloating(value, null, offset, offset + length, false);
+  }
+
+  public static float parseFloat(CharSequence value, int start, int end) {
+    return (float) parseFloating(null, value, start, end, true);
+  }
+
+  public static float parseFloatUTF8(byte[] value, int offset, int length) {
+    return (float) parseFloating(value, null, offset, offset + length, true);
+  }
+
+  /**
+   * Exactly one of bytes or chars is set. Everything that is parsed is ASCII, so any byte of a
+   * multi-byte UTF-8 char is just an invalid char.
+   */
+  private static int charAt(byte[] bytes, CharSequence chars, int index) {
+    return bytes != null ? bytes[index] & 0xFF : chars.charAt(index);
+  }
+
+  private static NumberFormatException badNumber(byte[] bytes, CharSequence chars,
+                                                 int start, int end) {
+    String text = bytes != null ?
+        new String(bytes, start, end - start, StandardCharsets.UTF_8) :
+        chars.subSequence(start, end).toString();
+    return new NumberFormatException("For input string: \"" + text + "\"");
+  }
+
+  static long parseLong(byte[] bytes, CharSequence chars, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end) {
+      int c = charAt(bytes, chars, i);
+      if (c == '-' || c == '+') {
+        negative = c == '-';
+        i++;
+      }
+    }
+    if (i >= end) {
+      throw badNumber(bytes, chars, start, end);
+    }
+    // Accumulate negatively so Long.MIN_VALUE can be parsed
+    long acc = 0;
+    for (; i < end; i++) {
+      int d = charAt(bytes, chars, i) - '0';
+      if (d < 0 || d > 9) {
+        throw badNumber(bytes, chars, start, end);
+      }
+      if (acc < Long.MIN_VALUE / 10) {
+        throw new ArithmeticException("long overflow");
+      }
+      acc = Math.subtractExact(acc * 10, d);
+    }
+    return negative ? acc : Math.negateExact(acc);
+  }
+
+  static long parseUnsignedLong(byte[] bytes, CharSequence chars, int start, int end) {
+    int i = start;
+    if (i < end && charAt(bytes, chars, i) == '+') {
+      i++;
+    }
+    if (i >= end) {
+      throw badNumber(bytes, chars, start, end);
+    }
+    long acc = 0;
+    for (; i < end; i++) {
+      int d = charAt(bytes, chars, i) - '0';
+      if (d < 0 || d > 9) {
+        throw badNumber(bytes, chars, start, end);
+      }
+      if (Long.compareUnsigned(acc, Long.divideUnsigned(-1L, 10)) > 0) {
+        throw new ArithmeticException("unsigned long overflow");
+      }
+      long next = acc * 10 + d;
+      if (Long.compareUnsigned(next, acc * 10) < 0) {
+        throw new ArithmeticException("unsigned long overflow");
+      }
+      acc = next;
+    }
+    return acc;
+  }
+
+  static long parseUnscaledDecimal(byte[] bytes, CharSequence chars, int start, int end,
+                                   int scale, RoundingMode roundingMode) {
+    // First find where the digits and the exponent are
+    int i = start;
+    boolean negative = false;
+    if (i < end) {
+      int c = charAt(bytes, chars, i);
+      if (c == '-' || c == '+') {
+        negative = c == '-';
+        i++;
+      }
+    }
+    int digitsStart = i;
+    int point = -1;
+    int numDigits = 0;
+    for (; i < end; i++) {
+      int c = charAt(bytes, chars, i);
+      if (c >= '0' && c <= '9') {
+        numDigits++;
+      } else if (c == '.' && point < 0) {
+        point = i;
+      } else {
+        break;
+      }
+    }
+    int digitsEnd = i;
+    if (numDigits == 0) {
+      throw badNumber(bytes, chars, start, end);
+    }
+    long exponent = 0;
+    if (i < end) {
+      int c = charAt(bytes, chars, i);
+      if (c != 'e' && c != 'E') {
+        throw badNumber(bytes, chars, start, end);
+      }
+      exponent = parseExponent(bytes, chars, i + 1, end, start);
+    }
+    int fractionDigits = point < 0 ? 0 : digitsEnd - point - 1;
+
+    // The unscaled value is the digits * 10^shift
+    long shift = exponent - fractionDigits - scale;
+    long keep = shift < 0 ? numDigits + shift : numDigits;
+    long acc = 0;
+    int roundDigit = 0;
+    boolean sticky = false;
+    long seen = 0;
+    for (int at = digitsStart; at < digitsEnd; at++) {
+      int d = charAt(bytes, chars, at) - '0';
+      if (d < 0) {
+        // The decimal point
+        continue;
+      }
+      if (seen < keep) {
+        if (acc != 0 || d != 0) {
+          if (acc < Long.MIN_VALUE / 10) {
+            throw new ArithmeticException("Overflow");
+          }
+          acc = Math.subtractExact(acc * 10, d);
+        }
+      } else if (seen == keep) {
+        roundDigit = d;
+        // When keep is negative every digit is below the round digit and only counts as sticky
+      } else if (d != 0) {
+        sticky = true;
+      }
+      seen++;
+    }
+    for (long s = 0; s < shift && acc != 0; s++) {
+      acc = Math.multiplyExact(acc, 10);
+    }
+    if ((roundDigit != 0 || sticky) && roundUp(roundingMode, negative, roundDigit, sticky, acc)) {
+      acc = Math.subtractExact(acc, 1);
+    }
+    return negative ? acc : Math.negateExact(acc);
+  }
+
+  /**
+   * Decide if the magnitude should go up by one when digits were dropped.
+   * @param acc the negated magnitude that was kept.
+   */
+  private static boolean roundUp(RoundingMode roundingMode, boolean negative, int roundDigit,
+                                 boolean sticky, long acc) {
+    switch (roundingMode) {
+      case UP:
+        return true;
+      case DOWN:
+        return false;
+      case CEILING:
+        return !negative;
+      case FLOOR:
+        return negative;
+      case HALF_UP:
+        return roundDigit >= 5;
+      case HALF_DOWN:
+        return roundDigit > 5 || (roundDigit == 5 && sticky);
+      case HALF_EVEN:
+        return roundDigit > 5 || (roundDigit == 5 && (sticky || (acc & 1) != 0));
+      case UNNECESSARY:
+        throw new ArithmeticException("Rounding necessary");
+      default:
+        throw new IllegalArgumentException("Unsupported rounding mode " + roundingMode);
+    }
+  }
+
+  /**
+   * Parse the digits of an exponent, clamping anything too large to matter.
+   */
+  private static long parseExponent(byte[] bytes, CharSequence chars, int i, int end,
+                                    int numberStart) {
+    boolean negative = false;
+    if (i < end) {
+      int c = charAt(bytes, chars, i);
+      if (c == '-' || c == '+') {
+        negative = c == '-';
+        i++;
+      }
+    }
+    if (i >= end) {
+      throw badNumber(bytes, chars, numberStart, end);
+    }
+    long exponent = 0;
+    for (; i < end; i++) {
+      int d = charAt(bytes, chars, i) - '0';
+      if (d < 0 || d > 9) {
+        throw badNumber(bytes, chars, numberStart, end);
+      }
+      exponent = Math.min(MAX_EXPONENT, exponent * 10 + d);
+    }
+    return negative ? -exponent : exponent;
+  }
+
+  private static boolean matches(byte[] bytes, CharSequence chars, int i, int end, String word) {
+    if (end - i != word.length()) {
+      return false;
+    }
+    for (int j = 0; j < word.length(); j++) {
+      if (charAt(bytes, chars, i + j) != word.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static double parseFloating(byte[] bytes, CharSequence chars, int start, int end,
+                                      boolean isFloat) {
+    int i = start;
+    boolean negative = false;
+    if (i < end) {
+      int c = charAt(bytes, chars, i);
+      if (c == '-' || c == '+') {
+        negative = c == '-';
+        i++;
+      }
+    }
+    if (matches(bytes, chars, i, end, "NaN")) {
+      return Double.NaN;
+    }
+    if (matches(bytes, chars, i, end, "Infinity")) {
+      return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    }
+    long mantissa = 0;
+    int significantDigits = 0;
+    int numDigits = 0;
+    long exponent = 0;
+    boolean seenPoint = false;
+    for (; i < end; i++) {
+      int c = charAt(bytes, chars, i);
+      if (c >= '0' && c <= '9') {
+        numDigits++;
+        if (mantissa != 0 || c != '0') {
+          significantDigits++;
+        }
+        if (significantDigits <= 18) {
+          mantissa = mantissa * 10 + (c - '0');
+          if (seenPoint) {
+            exponent--;
+          }
+        } else if (!seenPoint) {
+          exponent++;
+        }
+      } else if (c == '.' && !seenPoint) {
+        seenPoint = true;
+      } else {
+        break;
+      }
+    }
+    if (numDigits == 0) {
+      throw badNumber(bytes, chars, start, end);
+    }
+    if (i < end) {
+      int c = charAt(bytes, chars, i);
+      if (c != 'e' && c != 'E') {
+        throw badNumber(bytes, chars, start, end);
+      }
+      exponent += parseExponent(bytes, chars, i + 1, end, start);
+    }
+    if (mantissa == 0) {
+      return negative ? -0.0 : 0.0;
+    }
+    // Fast path, both the mantissa and the power of 10 are exact so one operation rounds right
+    if (isFloat) {
+      if (significantDigits <= 7 && mantissa < (1L << 24) &&
+          exponent >= -10 && exponent <= 10) {
+        float f = (float) mantissa;
+        f = exponent < 0 ? f / FLOAT_POWERS_OF_10[(int) -exponent] :
+            f * FLOAT_POWERS_OF_10[(int) exponent];
+        return negative ? -f : f;
+      }
+    } else if (significantDigits <= 15 && mantissa < (1L << 53) &&
+        exponent >= -22 && exponent <= 22) {
+      double d = (double) mantissa;
+      d = exponent < 0 ? d / DOUBLE_POWERS_OF_10[(int) -exponent] :
+          d * DOUBLE_POWERS_OF_10[(int) exponent];
+      return negative ? -d : d;
+    }
+    // The input is known to be well formed here, the JDK only gets used for correct rounding
+    String text = bytes != null ?
+        new String(bytes, start, end - start, StandardCharsets.US_ASCII) :
+        chars.subSequence(start, end).toString();
+    return isFloat ? Float.parseFloat(text) : Double.parseDouble(text);
+  }
+}
@@ -0,0 +1,1213 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Builds host columns from row oriented Java objects, like POJOs or records read from a message
+ * queue. Each column is described by a {@link Field} that holds its type and an accessor to read
+ * the value out of a row. Values are first written into on heap primitive arrays and every
+ * {@link #STAGING_ROWS} rows those arrays are copied off heap in bulk, so there is no per row
+ * bounds checking or buffer growth and nothing is boxed for primitive fields. STRUCT and LIST
+ * fields read their children directly from the nested objects instead of going through
+ * {@link HostColumnVector.StructData} and {@link List} copies.
+ * <pre>
+ * HostObjectIngestor&lt;Trade&gt; ingestor = new HostObjectIngestor&lt;&gt;(
+ *     Field.longs(DType.INT64, HostObjectIngestor.longGetter(lookup, Trade.class, "getId")),
+ *     Field.doubles(DType.FLOAT64, Trade::getPrice),
+ *     Field.values(new HostColumnVector.BasicType(true, DType.STRING), Trade::getSymbol));
+ * ingestor.addAll(trades);
+ * HostColumnVector[] columns = ingestor.build();
+ * </pre>
+ * An ingestor can be reused, each call to {@link #build()} returns the rows added since the last
+ * one. Ingestors are not thread safe.
+ */
+public final class HostObjectIngestor<T> implements AutoCloseable {
+  /**
+   * The number of rows staged on heap for each column before they are copied off heap. This is
+   * a multiple of 64 so that staged validity words line up with the validity buffer.
+   */
+  static final int STAGING_ROWS = 4096;
+
+  /**
+   * Receives throughput information each time a batch is built.
+   */
+  public interface MetricsListener {
+    /**
+     * Called after a batch of columns is built.
+     * @param numRows the number of rows in the batch.
+     * @param elapsedNanos the time from the first row being added to the batch being built.
+     * @param rowsPerSecond the rate that the rows were ingested at.
+     */
+    void batchBuilt(long numRows, long elapsedNanos, double rowsPerSecond);
+  }
+
+  private enum Kind {
+    INT,
+    LONG,
+    DOUBLE,
+    BOOLEAN,
+    VALUE,
+    STRUCT,
+    LIST
+  }
+
+  /**
+   * The type of a column plus how to read its value from an object.
+   */
+  public static final class Field<T> {
+    private final Kind kind;
+    private final HostColumnVector.DataType type;
+    private final Object accessor;
+    private final Field<?>[] children;
+
+    private Field(Kind kind, HostColumnVector.DataType type, Object accessor,
+                  Field<?>... children) {
+      this.kind = kind;
+      this.type = type;
+      this.accessor = accessor;
+      this.children = children;
+    }
+
+    private static void checkIntegral(DType type) {
+      if (!type.isBackedByByte() && !type.isBackedByShort() && !type.isBackedByInt() &&
+          !type.isBackedByLong()) {
+        throw new IllegalArgumentException(type + " is not an integral type");
+      }
+    }
+
+    /**
+     * A non-nullable column of a type stored as 32 bits or less, like INT32, INT16 or
+     * TIMESTAMP_DAYS. For DECIMAL32 the value is the unscaled value.
+     */
+    public static <T> Field<T> ints(DType type, ToIntFunction<T> accessor) {
+      checkIntegral(type);
+      if (type.getSizeInBytes() > 4) {
+        throw new IllegalArgumentException(type + " is too large to be read as an int");
+      }
+      return new Field<>(Kind.INT, new HostColumnVector.BasicType(false, type), accessor);
+    }
+
+    /**
+     * A non-nullable column of an integral type, like INT64 or TIMESTAMP_MICROSECONDS. For
+     * DECIMAL64 the value is the unscaled value.
+     */
+    public static <T> Field<T> longs(DType type, ToLongFunction<T> accessor) {
+      checkIntegral(type);
+      return new Field<>(Kind.LONG, new HostColumnVector.BasicType(false, type), accessor);
+    }
+
+    /**
+     * A non-nullable FLOAT32 or FLOAT64 column.
+     */
+    public static <T> Field<T> doubles(DType type, ToDoubleFunction<T> accessor) {
+      if (!type.equals(DType.FLOAT32) && !type.equals(DType.FLOAT64)) {
+        throw new IllegalArgumentException(type + " is not a floating point type");
+      }
+      return new Field<>(Kind.DOUBLE, new HostColumnVector.BasicType(false, type), accessor);
+    }
+
+    /**
+     * A non-nullable BOOL8 column.
+     */
+    public static <T> Field<T> booleans(Predicate<T> accessor) {
+      return new Field<>(Kind.BOOLEAN, new HostColumnVector.BasicType(false, DType.BOOL8),
+          accessor);
+    }
+
+    /**
+     * A column of any non-nested type where the accessor returns a boxed value or null. Integral
+     * types take a {@link Number}, BOOL8 takes a {@link Boolean}, decimal types take a
+     * {@link BigDecimal} or a {@link Number} holding the unscaled value, and STRING takes a
+     * {@link CharSequence} or a byte[] of UTF-8 data.
+     */
+    public static <T> Field<T> values(HostColumnVector.DataType type,
+                                      Function<T, ?> accessor) {
+      DType dtype = type.getType();
+      if (dtype.isNestedType() || dtype.equals(DType.EMPTY)) {
+        throw new IllegalArgumentException(dtype + " is not supported as a value column");
+      }
+      return new Field<>(Kind.VALUE, type, accessor);
+    }
+
+    /**
+     * A STRUCT column. The accessor returns the object that the child fields read from, or null
+     * if the struct is null.
+     */
+    @SafeVarargs
+    public static <T, S> Field<T> struct(boolean nullable, Function<T, S> accessor,
+                                         Field<S>... fields) {
+      List<HostColumnVector.DataType> childTypes = new ArrayList<>(fields.length);
+      for (Field<S> f : fields) {
+        childTypes.add(f.type);
+      }
+      return new Field<>(Kind.STRUCT, new HostColumnVector.StructType(nullable, childTypes),
+          accessor, fields);
+    }
+
+    /**
+     * A LIST column. The accessor returns the elements, or null if the list is null. Each
+     * element is read with the element field, so a list of boxed values would use
+     * {@code Field.values(type, Function.identity())}.
+     */
+    public static <T, E> Field<T> list(boolean nullable,
+                                       Function<T, ? extends Iterable<E>> accessor,
+                                       Field<E> element) {
+      return new Field<>(Kind.LIST, new HostColumnVector.ListType(nullable, element.type),
+          accessor, element);
+    }
+
+    /**
+     * Get the type of the column this field produces.
+     */
+    public HostColumnVector.DataType getType() {
+      return type;
+    }
+  }
+
+  private final List<ColumnWriter<T>> writers;
+  private final HostColumnVector.StructType schema;
+  private MetricsListener metrics = null;
+  private long rows = 0;
+  private long startNanos = 0;
+
+  /**
+   * Create an ingestor that produces one column per field.
+   */
+  @SafeVarargs
+  public HostObjectIngestor(Field<T>... fields) {
+    // Copied element by element so the varargs array never escapes
+    List<Field<T>> fieldList = new ArrayList<>(fields.length);
+    for (Field<T> f : fields) {
+      fieldList.add(f);
+    }
+    this.writers = createWriters(fieldList);
+    this.schema = createSchema(fieldList);
+  }
+
+  /**
+   * Create an ingestor that produces one column per field.
+   */
+  public HostObjectIngestor(List<Field<T>> fields) {
+    this.writers = createWriters(fields);
+    this.schema = createSchema(fields);
+  }
+
+  private static <T> List<ColumnWriter<T>> createWriters(List<Field<T>> fields) {
+    if (fields.isEmpty()) {
+      throw new IllegalArgumentException("At least one field is needed");
+    }
+    List<ColumnWriter<T>> ret = new ArrayList<>(fields.size());
+    for (Field<T> f : fields) {
+      ret.add(createWriter(f, false));
+    }
+    return ret;
+  }
+
+  private static <T> HostColumnVector.StructType createSchema(List<Field<T>> fields) {
+    List<HostColumnVector.DataType> types = new ArrayList<>(fields.size());
+    for (Field<T> f : fields) {
+      types.add(f.type);
+    }
+    return new HostColumnVector.StructType(false, types);
+  }
+
+  /**
+   * Get the schema of the rows as a non-nullable struct with one child per column.
+   */
+  public HostColumnVector.StructType getSchema() {
+    return schema;
+  }
+
+  /**
+   * Set a listener to be told how fast each batch was ingested.
+   * @return this for chaining.
+   */
+  public HostObjectIngestor<T> setMetricsListener(MetricsListener metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * Get the number of rows added since the last batch was built.
+   */
+  public long getRowCount() {
+    return rows;
+  }
+
+  /**
+   * Add a row. If reading or converting any of its values throws, none of the row is added.
+   */
+  public void add(T row) {
+    if (row == null) {
+      throw new IllegalArgumentException("rows cannot be null");
+    }
+    if (rows == 0) {
+      startNanos = System.nanoTime();
+    }
+    for (ColumnWriter<T> w : writers) {
+      w.mark();
+    }
+    boolean success = false;
+    try {
+      for (ColumnWriter<T> w : writers) {
+        w.write(row);
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        for (ColumnWriter<T> w : writers) {
+          w.rollback();
+        }
+      }
+    }
+    rows++;
+  }
+
+  /**
+   * Add a collection of rows.
+   */
+  public void addAll(Iterable<? extends T> rows) {
+    for (T row : rows) {
+      add(row);
+    }
+  }
+
+  /**
+   * Build the columns for all of the rows added since the last batch was built. The caller
+   * owns the returned columns and is responsible for closing them.
+   */
+  public HostColumnVector[] build() {
+    HostColumnVector[] ret = new HostColumnVector[writers.size()];
+    boolean success = false;
+    try {
+      for (int i = 0; i < ret.length; i++) {
+        ret[i] = (HostColumnVector) writers.get(i).build();
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        for (HostColumnVector cv : ret) {
+          if (cv != null) {
+            cv.close();
+          }
+        }
+      }
+    }
+    long elapsed = rows == 0 ? 0 : System.nanoTime() - startNanos;
+    if (metrics != null) {
+      double rowsPerSecond = elapsed == 0 ? 0 : rows * 1_000_000_000.0 / elapsed;
+      metrics.batchBuilt(rows, elapsed, rowsPerSecond);
+    }
+    rows = 0;
+    return ret;
+  }
+
+  @Override
+  public void close() {
+    for (ColumnWriter<T> w : writers) {
+      w.close();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> ColumnWriter<T> createWriter(Field<T> field, boolean isChild) {
+    switch (field.kind) {
+      case STRUCT:
+        return new StructWriter<>(field, isChild);
+      case LIST:
+        return new ListWriter<>(field, isChild);
+      default:
+        if (field.type.getType().equals(DType.STRING)) {
+          return new StringWriter<>(field, isChild);
+        }
+        return new FixedWidthWriter<>(field, isChild);
+    }
+  }
+
+  /**
+   * Make sure a buffer can hold at least the needed number of bytes, growing it if needed.
+   * @return the buffer to use, the original one is closed if it was replaced.
+   */
+  private static HostMemoryBuffer ensureCapacity(HostMemoryBuffer buffer, long needed) {
+    if (buffer != null && buffer.getLength() >= needed) {
+      return buffer;
+    }
+    long newLength = buffer == null ? needed : Math.max(needed, buffer.getLength() * 2);
+    HostMemoryBuffer ret = HostMemoryBuffer.allocate(newLength);
+    if (buffer != null) {
+      try {
+        ret.copyFromHostBuffer(0, buffer, 0, buffer.getLength());
+      } finally {
+        buffer.close();
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Writes the values of a single column. Rows are staged on heap and copied off heap each
+   * time {@link #STAGING_ROWS} rows have been staged, and when the column is built.
+   */
+  private static abstract class ColumnWriter<T> implements AutoCloseable {
+    final Field<T> field;
+    final DType type;
+    final boolean isChild;
+    final long[] validStaging = new long[STAGING_ROWS / 64];
+    HostMemoryBuffer valid = null;
+    long rows = 0;
+    long flushedRows = 0;
+    int staged = 0;
+    long nullCount = 0;
+    // The state before the row being written, so a row that fails part way can be undone
+    private long markRows;
+    private long markFlushedRows;
+    private int markStaged;
+    private long markNullCount;
+
+    ColumnWriter(Field<T> field, boolean isChild) {
+      this.field = field;
+      this.type = field.type.getType();
+      this.isChild = isChild;
+    }
+
+    /**
+     * Read the value for this column out of an object and write it.
+     */
+    abstract void write(T obj);
+
+    /**
+     * Stage whatever data a null row needs, not including validity.
+     */
+    abstract void stageNull();
+
+    /**
+     * Copy the staged rows off heap. flushedRows is the index of the first staged row.
+     */
+    abstract void flushData();
+
+    /**
+     * Build the column from the flushed data. The writer no longer owns any of the buffers
+     * after this.
+     */
+    abstract HostColumnVectorCore buildColumn(Long nullCount, HostMemoryBuffer valid);
+
+    /**
+     * Remember any extra state needed to roll back to the start of a row.
+     */
+    void markData() {
+    }
+
+    /**
+     * Restore the extra state saved by {@link #markData()}.
+     * @param unflush if the staged rows at the mark were flushed since then and need to be read
+     *                back into the staging arrays. The rows start at the marked flushedRows.
+     */
+    abstract void rollbackData(boolean unflush, long firstRow, int numRows);
+
+    final void mark() {
+      markRows = rows;
+      markFlushedRows = flushedRows;
+      markStaged = staged;
+      markNullCount = nullCount;
+      markData();
+    }
+
+    /**
+     * Undo everything written since the last {@link #mark()}. This is only done when a row
+     * fails, so it favors being simple over being fast.
+     */
+    final void rollback() {
+      boolean unflush = flushedRows != markFlushedRows;
+      if (unflush) {
+        Arrays.fill(validStaging, 0);
+        if (valid != null) {
+          valid.getLongs(validStaging, 0, markFlushedRows / 8, (markStaged + 63) / 64);
+        } else {
+          for (int i = 0; i < markStaged; i++) {
+            validStaging[i >> 6] |= 1L << (i & 63);
+          }
+        }
+      }
+      // Clear the validity of anything staged after the mark
+      for (int i = markStaged; i < STAGING_ROWS && (i & 63) != 0; i++) {
+        validStaging[i >> 6] &= ~(1L << (i & 63));
+      }
+      Arrays.fill(validStaging, (markStaged + 63) / 64, validStaging.length, 0);
+      if (markNullCount == 0 && valid != null) {
+        // Validity was only needed for nulls after the mark
+        valid.close();
+        valid = null;
+      }
+      rollbackData(unflush, markFlushedRows, markStaged);
+      rows = markRows;
+      flushedRows = markFlushedRows;
+      staged = markStaged;
+      nullCount = markNullCount;
+    }
+
+    final void writeNull() {
+      stageNull();
+      nullCount++;
+      endRow(false);
+    }
+
+    final void endRow(boolean isValid) {
+      if (isValid) {
+        validStaging[staged >> 6] |= 1L << (staged & 63);
+      }
+      staged++;
+      rows++;
+      if (rows >= Integer.MAX_VALUE) {
+        throw new IllegalStateException("A column cannot have more than " +
+            (Integer.MAX_VALUE - 1) + " rows");
+      }
+      if (staged == STAGING_ROWS) {
+        flush();
+      }
+    }
+
+    void flush() {
+      if (staged == 0) {
+        return;
+      }
+      flushData();
+      if (nullCount > 0) {
+        long needed = BitVectorHelper.getValidityAllocationSizeInBytes(flushedRows + staged);
+        if (valid == null) {
+          valid = HostMemoryBuffer.allocate(
+              BitVectorHelper.getValidityAllocationSizeInBytes(flushedRows + STAGING_ROWS));
+          // Everything flushed before the first null was valid
+          valid.setMemory(0, valid.getLength(), (byte) 0xFF);
+        } else {
+          valid = ensureCapacity(valid, needed);
+        }
+        // flushedRows is a multiple of 64 so the staged words can be copied as is. This
+        // relies on the native byte order being little endian, like the rest of cudf.
+        valid.setLongs(flushedRows / 8, validStaging, 0, (staged + 63) / 64);
+      }
+      Arrays.fill(validStaging, 0);
+      flushedRows += staged;
+      staged = 0;
+    }
+
+    final HostColumnVectorCore build() {
+      flush();
+      HostMemoryBuffer v = nullCount > 0 ? valid : null;
+      long nc = nullCount;
+      valid = null;
+      HostColumnVectorCore ret;
+      try {
+        ret = buildColumn(nc, v);
+      } catch (RuntimeException e) {
+        if (v != null) {
+          v.close();
+        }
+        throw e;
+      }
+      rows = 0;
+      flushedRows = 0;
+      nullCount = 0;
+      return ret;
+    }
+
+    final HostColumnVectorCore makeColumn(Long nullCount, HostMemoryBuffer data,
+                                          HostMemoryBuffer valid, HostMemoryBuffer offsets,
+                                          List<HostColumnVectorCore> children) {
+      if (isChild) {
+        return new HostColumnVectorCore(type, rows, Optional.of(nullCount), data,
+            valid, offsets, children);
+      }
+      return new HostColumnVector(type, rows, Optional.of(nullCount), data, valid,
+          offsets, children);
+    }
+
+    @Override
+    public void close() {
+      if (valid != null) {
+        valid.close();
+        valid = null;
+      }
+    }
+  }
+
+  private static final class FixedWidthWriter<T> extends ColumnWriter<T> {
+    private static final int BYTES = 0;
+    private static final int SHORTS = 1;
+    private static final int INTS = 2;
+    private static final int LONGS = 3;
+    private static final int FLOATS = 4;
+    private static final int DOUBLES = 5;
+
+    private final int storage;
+    private final int size;
+    private byte[] bytes;
+    private short[] shorts;
+    private int[] ints;
+    private long[] longs;
+    private float[] floats;
+    private double[] doubles;
+    private HostMemoryBuffer data = null;
+
+    FixedWidthWriter(Field<T> field, boolean isChild) {
+      super(field, isChild);
+      size = type.getSizeInBytes();
+      if (type.equals(DType.FLOAT32)) {
+        storage = FLOATS;
+        floats = new float[STAGING_ROWS];
+      } else if (type.equals(DType.FLOAT64)) {
+        storage = DOUBLES;
+        doubles = new double[STAGING_ROWS];
+      } else if (size == 1) {
+        storage = BYTES;
+        bytes = new byte[STAGING_ROWS];
+      } else if (size == 2) {
+        storage = SHORTS;
+        shorts = new short[STAGING_ROWS];
+      } else if (size == 4) {
+        storage = INTS;
+        ints = new int[STAGING_ROWS];
+      } else if (size == 8) {
+        storage = LONGS;
+        longs = new long[STAGING_ROWS];
+      } else {
+        throw new IllegalArgumentException(type + " is not supported");
+      }
+    }
+
+    private void putLong(long value) {
+      switch (storage) {
+        case BYTES:
+          bytes[staged] = (byte) value;
+          break;
+        case SHORTS:
+          shorts[staged] = (short) value;
+          break;
+        case INTS:
+          ints[staged] = (int) value;
+          break;
+        case LONGS:
+          longs[staged] = value;
+          break;
+        default:
+          throw new IllegalStateException(type + " cannot store an integral value");
+      }
+    }
+
+    private void putDouble(double value) {
+      if (storage == FLOATS) {
+        floats[staged] = (float) value;
+      } else if (storage == DOUBLES) {
+        doubles[staged] = value;
+      } else {
+        throw new IllegalStateException(type + " cannot store a floating point value");
+      }
+    }
+
+    private void putValue(Object value) {
+      if (storage == FLOATS || storage == DOUBLES) {
+        putDouble(((Number) value).doubleValue());
+      } else if (value instanceof Boolean) {
+        putLong((Boolean) value ? 1 : 0);
+      } else if (value instanceof BigDecimal && type.isDecimalType()) {
+        // Rescale with UNNECESSARY, like ColumnBuilder, so no precision is lost
+        BigInteger unscaled = ((BigDecimal) value).setScale(-type.getScale(),
+            RoundingMode.UNNECESSARY).unscaledValue();
+        putLong(storage == INTS ? unscaled.intValueExact() : unscaled.longValueExact());
+      } else if (value instanceof Number) {
+        putLong(((Number) value).longValue());
+      } else {
+        throw new IllegalArgumentException("Cannot store a " + value.getClass().getName() +
+            " in a " + type + " column");
+      }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void write(T obj) {
+      switch (field.kind) {
+        case INT:
+          putLong(((ToIntFunction<T>) field.accessor).applyAsInt(obj));
+          break;
+        case LONG:
+          putLong(((ToLongFunction<T>) field.accessor).applyAsLong(obj));
+          break;
+        case DOUBLE:
+          putDouble(((ToDoubleFunction<T>) field.accessor).applyAsDouble(obj));
+          break;
+        case BOOLEAN:
+          putLong(((Predicate<T>) field.accessor).test(obj) ? 1 : 0);
+          break;
+        default:
+          Object value = ((Function<T, ?>) field.accessor).apply(obj);
+          if (value == null) {
+            writeNull();
+            return;
+          }
+          putValue(value);
+      }
+      endRow(true);
+    }
+
+    @Override
+    void stageNull() {
+      if (storage == FLOATS || storage == DOUBLES) {
+        putDouble(0);
+      } else {
+        putLong(0);
+      }
+    }
+
+    @Override
+    void flushData() {
+      data = ensureCapacity(data, (flushedRows + STAGING_ROWS) * size);
+      long offset = flushedRows * size;
+      switch (storage) {
+        case BYTES:
+          data.setBytes(offset, bytes, 0, staged);
+          break;
+        case SHORTS:
+          data.setShorts(offset, shorts, 0, staged);
+          break;
+        case INTS:
+          data.setInts(offset, ints, 0, staged);
+          break;
+        case LONGS:
+          data.setLongs(offset, longs, 0, staged);
+          break;
+        case FLOATS:
+          data.setFloats(offset, floats, 0, staged);
+          break;
+        default:
+          data.setDoubles(offset, doubles, 0, staged);
+      }
+    }
+
+    @Override
+    void rollbackData(boolean unflush, long firstRow, int numRows) {
+      for (int i = 0; unflush && i < numRows; i++) {
+        long offset = (firstRow + i) * size;
+        switch (storage) {
+          case BYTES:
+            bytes[i] = data.getByte(offset);
+            break;
+          case SHORTS:
+            shorts[i] = data.getShort(offset);
+            break;
+          case INTS:
+            ints[i] = data.getInt(offset);
+            break;
+          case LONGS:
+            longs[i] = data.getLong(offset);
+            break;
+          case FLOATS:
+            floats[i] = data.getFloat(offset);
+            break;
+          default:
+            doubles[i] = data.getDouble(offset);
+        }
+      }
+    }
+
+    @Override
+    HostColumnVectorCore buildColumn(Long nullCount, HostMemoryBuffer valid) {
+      data = ensureCapacity(data, Math.max(rows * size, size));
+      HostMemoryBuffer d = data;
+      data = null;
+      return makeColumn(nullCount, d, valid, null, new ArrayList<>());
+    }
+
+    @Override
+    public void close() {
+      super.close();
+      if (data != null) {
+        data.close();
+        data = null;
+      }
+    }
+  }
+
+  private static final class StringWriter<T> extends ColumnWriter<T> {
+    private final int[] offsetStaging = new int[STAGING_ROWS];
+    private byte[] charStaging = new byte[STAGING_ROWS * 16];
+    private int charsStaged = 0;
+    private long flushedChars = 0;
+    private int markCharsStaged;
+    private long markFlushedChars;
+    private HostMemoryBuffer data = null;
+    private HostMemoryBuffer offsets = null;
+
+    StringWriter(Field<T> field, boolean isChild) {
+      super(field, isChild);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void write(T obj) {
+      Object value = ((Function<T, ?>) field.accessor).apply(obj);
+      if (value == null) {
+        writeNull();
+        return;
+      }
+      byte[] utf8 = value instanceof byte[] ? (byte[]) value :
+          value.toString().getBytes(StandardCharsets.UTF_8);
+      long end = flushedChars + charsStaged + utf8.length;
+      if (end > Integer.MAX_VALUE) {
+        throw new IllegalStateException("A string column cannot have more than " +
+            Integer.MAX_VALUE + " bytes of data");
+      }
+      if (charsStaged + utf8.length > charStaging.length) {
+        charStaging = Arrays.copyOf(charStaging,
+            Math.max(charStaging.length * 2, charsStaged + utf8.length));
+      }
+      System.arraycopy(utf8, 0, charStaging, charsStaged, utf8.length);
+      charsStaged += utf8.length;
+      offsetStaging[staged] = (int) end;
+      endRow(true);
+    }
+
+    @Override
+    void stageNull() {
+      offsetStaging[staged] = (int) (flushedChars + charsStaged);
+    }
+
+    @Override
+    void flushData() {
+      if (offsets == null) {
+        offsets = ensureCapacity(null, (STAGING_ROWS + 1) * (long) HostColumnVector.OFFSET_SIZE);
+        offsets.setInt(0, 0);
+      }
+      offsets = ensureCapacity(offsets,
+          (flushedRows + staged + 1) * HostColumnVector.OFFSET_SIZE);
+      offsets.setInts((flushedRows + 1) * HostColumnVector.OFFSET_SIZE, offsetStaging, 0, staged);
+      if (charsStaged > 0) {
+        data = ensureCapacity(data, flushedChars + charsStaged);
+        data.setBytes(flushedChars, charStaging, 0, charsStaged);
+        flushedChars += charsStaged;
+        charsStaged = 0;
+      }
+    }
+
+    @Override
+    void markData() {
+      markCharsStaged = charsStaged;
+      markFlushedChars = flushedChars;
+    }
+
+    @Override
+    void rollbackData(boolean unflush, long firstRow, int numRows) {
+      if (unflush) {
+        for (int i = 0; i < numRows; i++) {
+          offsetStaging[i] = offsets.getInt((firstRow + 1 + i) * HostColumnVector.OFFSET_SIZE);
+        }
+        if (markCharsStaged > 0) {
+          data.getBytes(charStaging, 0, markFlushedChars, markCharsStaged);
+        }
+      }
+      charsStaged = markCharsStaged;
+      flushedChars = markFlushedChars;
+    }
+
+    @Override
+    HostColumnVectorCore buildColumn(Long nullCount, HostMemoryBuffer valid) {
+      if (offsets == null) {
+        offsets = HostMemoryBuffer.allocate(HostColumnVector.OFFSET_SIZE);
+        offsets.setInt(0, 0);
+      }
+      data = ensureCapacity(data, Math.max(flushedChars, 1));
+      HostMemoryBuffer d = data;
+      HostMemoryBuffer o = offsets;
+      data = null;
+      offsets = null;
+      flushedChars = 0;
+      return makeColumn(nullCount, d, valid, o, new ArrayList<>());
+    }
+
+    @Override
+    public void close() {
+      super.close();
+      if (data != null) {
+        data.close();
+        data = null;
+      }
+      if (offsets != null) {
+        offsets.close();
+        offsets = null;
+      }
+    }
+  }
+
+  private static final class StructWriter<T, S> extends ColumnWriter<T> {
+    private final List<ColumnWriter<S>> children;
+
+    @SuppressWarnings("unchecked")
+    StructWriter(Field<T> field, boolean isChild) {
+      super(field, isChild);
+      children = new ArrayList<>(field.children.length);
+      for (Field<?> child : field.children) {
+        children.add(createWriter((Field<S>) child, true));
+      }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void write(T obj) {
+      S value = ((Function<T, S>) field.accessor).apply(obj);
+      if (value == null) {
+        writeNull();
+        return;
+      }
+      for (ColumnWriter<S> child : children) {
+        child.write(value);
+      }
+      endRow(true);
+    }
+
+    @Override
+    void stageNull() {
+      // Like ColumnBuilder, a null struct has null children
+      for (ColumnWriter<S> child : children) {
+        child.writeNull();
+      }
+    }
+
+    @Override
+    void flushData() {
+    }
+
+    @Override
+    void markData() {
+      for (ColumnWriter<S> child : children) {
+        child.mark();
+      }
+    }
+
+    @Override
+    void rollbackData(boolean unflush, long firstRow, int numRows) {
+      for (ColumnWriter<S> child : children) {
+        child.rollback();
+      }
+    }
+
+    @Override
+    HostColumnVectorCore buildColumn(Long nullCount, HostMemoryBuffer valid) {
+      List<HostColumnVectorCore> built = new ArrayList<>(children.size());
+      try {
+        for (ColumnWriter<S> child : children) {
+          built.add(child.build());
+        }
+      } catch (RuntimeException e) {
+        for (HostColumnVectorCore c : built) {
+          c.close();
+        }
+        throw e;
+      }
+      return makeColumn(nullCount, null, valid, null, built);
+    }
+
+    @Override
+    public void close() {
+      super.close();
+      for (ColumnWriter<S> child : children) {
+        child.close();
+      }
+    }
+  }
+
+  private static final class ListWriter<T, E> extends ColumnWriter<T> {
+    private final ColumnWriter<E> child;
+    private final int[] offsetStaging = new int[STAGING_ROWS];
+    private HostMemoryBuffer offsets = null;
+
+    @SuppressWarnings("unchecked")
+    ListWriter(Field<T> field, boolean isChild) {
+      super(field, isChild);
+      child = createWriter((Field<E>) field.children[0], true);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void write(T obj) {
+      Iterable<E> value = ((Function<T, ? extends Iterable<E>>) field.accessor).apply(obj);
+      if (value == null) {
+        writeNull();
+        return;
+      }
+      for (E element : value) {
+        child.write(element);
+      }
+      offsetStaging[staged] = (int) child.rows;
+      endRow(true);
+    }
+
+    @Override
+    void stageNull() {
+      offsetStaging[staged] = (int) child.rows;
+    }
+
+    @Override
+    void flushData() {
+      if (offsets == null) {
+        offsets = ensureCapacity(null, (STAGING_ROWS + 1) * (long) HostColumnVector.OFFSET_SIZE);
+        offsets.setInt(0, 0);
+      }
+      offsets = ensureCapacity(offsets,
+          (flushedRows + staged + 1) * HostColumnVector.OFFSET_SIZE);
+      offsets.setInts((flushedRows + 1) * HostColumnVector.OFFSET_SIZE, offsetStaging, 0, staged);
+    }
+
+    @Override
+    void markData() {
+      child.mark();
+    }
+
+    @Override
+    void rollbackData(boolean unflush, long firstRow, int numRows) {
+      for (int i = 0; unflush && i < numRows; i++) {
+        offsetStaging[i] = offsets.getInt((firstRow + 1 + i) * HostColumnVector.OFFSET_SIZE);
+      }
+      child.rollback();
+    }
+
+    @Override
+    HostColumnVectorCore buildColumn(Long nullCount, HostMemoryBuffer valid) {
+      if (offsets == null) {
+        offsets = HostMemoryBuffer.allocate(HostColumnVector.OFFSET_SIZE);
+        offsets.setInt(0, 0);
+      }
+      HostColumnVectorCore builtChild = child.build();
+      HostMemoryBuffer o = offsets;
+      offsets = null;
+      List<HostColumnVectorCore> built = new ArrayList<>(1);
+      built.add(builtChild);
+      return makeColumn(nullCount, null, valid, o, built);
+    }
+
+    @Override
+    public void close() {
+      super.close();
+      child.close();
+      if (offsets != null) {
+        offsets.close();
+        offsets = null;
+      }
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+  // ACCESSOR GENERATION
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Generate an accessor that reads an int from a no argument method or a field.
+   * @param lookup a lookup with access to the class, usually {@code MethodHandles.lookup()}
+   *               from the caller.
+   * @param cls the class of the rows.
+   * @param name the name of the method, like {@code getId}, or of the field.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> ToIntFunction<T> intGetter(MethodHandles.Lookup lookup, Class<T> cls,
+                                               String name) {
+    return (ToIntFunction<T>) generate(lookup, cls, name, ToIntFunction.class, "applyAsInt",
+        int.class);
+  }
+
+  /**
+   * Generate an accessor that reads a long from a no argument method or a field.
+   * @see #intGetter(MethodHandles.Lookup, Class, String)
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> ToLongFunction<T> longGetter(MethodHandles.Lookup lookup, Class<T> cls,
+                                                 String name) {
+    return (ToLongFunction<T>) generate(lookup, cls, name, ToLongFunction.class, "applyAsLong",
+        long.class);
+  }
+
+  /**
+   * Generate an accessor that reads a double from a no argument method or a field.
+   * @see #intGetter(MethodHandles.Lookup, Class, String)
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> ToDoubleFunction<T> doubleGetter(MethodHandles.Lookup lookup, Class<T> cls,
+                                                     String name) {
+    return (ToDoubleFunction<T>) generate(lookup, cls, name, ToDoubleFunction.class,
+        "applyAsDouble", double.class);
+  }
+
+  /**
+   * Generate an accessor that reads a boolean from a no argument method or a field.
+   * @see #intGetter(MethodHandles.Lookup, Class, String)
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> Predicate<T> booleanGetter(MethodHandles.Lookup lookup, Class<T> cls,
+                                               String name) {
+    return (Predicate<T>) generate(lookup, cls, name, Predicate.class, "test", boolean.class);
+  }
+
+  /**
+   * Generate an accessor that reads any value, boxing primitives, from a no argument method or
+   * a field.
+   * @see #intGetter(MethodHandles.Lookup, Class, String)
+   */
+  @SuppressWarnings("unchecked")
+  public static <T, R> Function<T, R> getter(MethodHandles.Lookup lookup, Class<T> cls,
+                                             String name) {
+    return (Function<T, R>) generate(lookup, cls, name, Function.class, "apply", Object.class);
+  }
+
+  private static Method findGetterMethod(Class<?> cls, String name) {
+    for (Class<?> c = cls; c != null; c = c.getSuperclass()) {
+      try {
+        Method m = c.getDeclaredMethod(name);
+        if (!Modifier.isStatic(m.getModifiers()) && m.getReturnType() != void.class) {
+          return m;
+        }
+      } catch (NoSuchMethodException e) {
+        // Try the super class
+      }
+    }
+    try {
+      // Interface default methods
+      return cls.getMethod(name);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static java.lang.reflect.Field findField(Class<?> cls, String name) {
+    for (Class<?> c = cls; c != null; c = c.getSuperclass()) {
+      try {
+        java.lang.reflect.Field f = c.getDeclaredField(name);
+        if (!Modifier.isStatic(f.getModifiers())) {
+          return f;
+        }
+      } catch (NoSuchFieldException e) {
+        // Try the super class
+      }
+    }
+    return null;
+  }
+
+  private static Object generate(MethodHandles.Lookup lookup, Class<?> cls, String name,
+                                 Class<?> iface, String ifaceMethod, Class<?> valueType) {
+    Method m = findGetterMethod(cls, name);
+    try {
+      if (m != null) {
+        // Spin a real lambda so the JIT can inline the getter into the ingest loop
+        MethodHandle impl = lookup.unreflect(m);
+        CallSite site = LambdaMetafactory.metafactory(lookup, ifaceMethod,
+            MethodType.methodType(iface),
+            MethodType.methodType(valueType, Object.class),
+            impl,
+            MethodType.methodType(valueType == Object.class ?
+                wrap(m.getReturnType()) : valueType, cls));
+        return site.getTarget().invoke();
+      }
+      java.lang.reflect.Field f = findField(cls, name);
+      if (f == null) {
+        throw new IllegalArgumentException(cls.getName() + " has no method or field " + name);
+      }
+      // Field access cannot go through LambdaMetafactory so wrap the method handle instead
+      return fieldAccessor(lookup.unreflectGetter(f)
+          .asType(MethodType.methodType(valueType, Object.class)), valueType);
+    } catch (IllegalArgumentException e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalArgumentException("Could not create an accessor for " + name + " in " +
+          cls.getName(), t);
+    }
+  }
+
+  private static Class<?> wrap(Class<?> c) {
+    return MethodType.methodType(c).wrap().returnType();
+  }
+
+  private static RuntimeException rethrow(Throwable t) {
+    if (t instanceof RuntimeException) {
+      return (RuntimeException) t;
+    }
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    return new IllegalStateException(t);
+  }
+
+  private static Object fieldAccessor(MethodHandle mh, Class<?> valueType) {
+    if (valueType == int.class) {
+      return (ToIntFunction<Object>) o -> {
+        try {
+          return (int) mh.invokeExact(o);
+        } catch (Throwable t) {
+          throw rethrow(t);
+        }
+      };
+    } else if (valueType == long.class) {
+      return (ToLongFunction<Object>) o -> {
+        try {
+          return (long) mh.invokeExact(o);
+        } catch (Throwable t) {
+          throw rethrow(t);
+        }
+      };
+    } else if (valueType == double.class) {
+      return (ToDoubleFunction<Object>) o -> {
+        try {
+          return (double) mh.invokeExact(o);
+        } catch (Throwable t) {
+          throw rethrow(t);
+        }
+      };
+    } else if (valueType == boolean.class) {
+      return (Predicate<Object>) o -> {
+        try {
+          return (boolean) mh.invokeExact(o);
+        } catch (Throwable t) {
+          throw rethrow(t);
+        }
+      };
+    }
+    return (Function<Object, Object>) o -> {
+      try {
+        return (Object) mh.invokeExact(o);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+    };
+  }
+}
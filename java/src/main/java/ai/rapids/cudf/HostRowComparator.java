@@ -0,0 +1,212 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+/**
+ * Compares rows of host tables using the same ordering as the device sort. Floating point
+ * values are ordered as {@code [-Inf, -ve, -0 == 0, +ve, +Inf, NaN == NaN]}, strings are
+ * compared byte wise on their UTF-8 data and nulls are placed according to
+ * {@link OrderByArg} before the direction of the sort is applied.
+ */
+final class HostRowComparator {
+  private final OrderByArg[] args;
+
+  HostRowComparator(OrderByArg... args) {
+    if (args.length == 0) {
+      throw new IllegalArgumentException("At least one sort key is needed");
+    }
+    this.args = args.clone();
+  }
+
+  /**
+   * Check that all of the key columns in a table can be compared.
+   */
+  void checkTable(HostColumnVectorCore[] table) {
+    for (OrderByArg arg : args) {
+      if (arg.index < 0 || arg.index >= table.length) {
+        throw new IllegalArgumentException("Sort key " + arg + " is out of range for a table " +
+            "with " + table.length + " columns");
+      }
+      DType type = table[arg.index].getType();
+      if (type.isNestedType() || type.equals(DType.EMPTY)) {
+        throw new UnsupportedOperationException("Sorting on " + type + " is not supported");
+      }
+    }
+  }
+
+  /**
+   * Compare a row in one table to a row in another table with the same schema.
+   * @return a negative value if the left row sorts first, a positive value if the right row
+   * sorts first, or 0 if they are equivalent.
+   */
+  int compare(HostColumnVectorCore[] lhs, long lhsRow, HostColumnVectorCore[] rhs, long rhsRow) {
+    for (OrderByArg arg : args) {
+      HostColumnVectorCore l = lhs[arg.index];
+      HostColumnVectorCore r = rhs[arg.index];
+      boolean lNull = l.hasValidityVector() && l.isNull(lhsRow);
+      boolean rNull = r.hasValidityVector() && r.isNull(rhsRow);
+      int ret;
+      if (lNull || rNull) {
+        if (lNull && rNull) {
+          continue;
+        }
+        ret = lNull == arg.isNullSmallest ? -1 : 1;
+      } else {
+        ret = compareValues(l, lhsRow, r, rhsRow);
+      }
+      if (ret != 0) {
+        return arg.isDescending ? -ret : ret;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Compute a stable sort order for the rows of a table.
+   * @return the row indices in sorted order.
+   */
+  int[] sortedOrder(HostColumnVectorCore[] table, int numRows) {
+    int[] order = new int[numRows];
+    for (int i = 0; i < numRows; i++) {
+      order[i] = i;
+    }
+    if (numRows > 1) {
+      mergeSort(table, order.clone(), order, 0, numRows);
+    }
+    return order;
+  }
+
+  /**
+   * Sort src[from, to) into dst[from, to). On entry both arrays hold the same values.
+   */
+  private void mergeSort(HostColumnVectorCore[] table, int[] src, int[] dst, int from, int to) {
+    int len = to - from;
+    if (len < 16) {
+      // Insertion sort small ranges directly in dst
+      for (int i = from + 1; i < to; i++) {
+        int row = dst[i];
+        int j = i - 1;
+        while (j >= from && compare(table, dst[j], table, row) > 0) {
+          dst[j + 1] = dst[j];
+          j--;
+        }
+        dst[j + 1] = row;
+      }
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    // Swap the roles of the arrays so each level merges out of the other one
+    mergeSort(table, dst, src, from, mid);
+    mergeSort(table, dst, src, mid, to);
+    if (compare(table, src[mid - 1], table, src[mid]) <= 0) {
+      System.arraycopy(src, from, dst, from, len);
+      return;
+    }
+    for (int i = from, p = from, q = mid; i < to; i++) {
+      if (q >= to || (p < mid && compare(table, src[p], table, src[q]) <= 0)) {
+        dst[i] = src[p++];
+      } else {
+        dst[i] = src[q++];
+      }
+    }
+  }
+
+  /**
+   * Compare two non-null values of the same type in ascending order.
+   */
+  static int compareValues(HostColumnVectorCore l, long lhsRow, HostColumnVectorCore r,
+                           long rhsRow) {
+    HostMemoryBuffer ld = l.getData();
+    HostMemoryBuffer rd = r.getData();
+    switch (l.getType().getTypeId()) {
+      case BOOL8:
+        return Boolean.compare(ld.getByte(lhsRow) != 0, rd.getByte(rhsRow) != 0);
+      case INT8:
+        return Byte.compare(ld.getByte(lhsRow), rd.getByte(rhsRow));
+      case UINT8:
+        return Integer.compare(ld.getByte(lhsRow) & 0xFF, rd.getByte(rhsRow) & 0xFF);
+      case INT16:
+        return Short.compare(ld.getShort(lhsRow * 2), rd.getShort(rhsRow * 2));
+      case UINT16:
+        return Integer.compare(ld.getShort(lhsRow * 2) & 0xFFFF, rd.getShort(rhsRow * 2) & 0xFFFF);
+      case INT32:
+      case DECIMAL32:
+      case TIMESTAMP_DAYS:
+      case DURATION_DAYS:
+        return Integer.compare(ld.getInt(lhsRow * 4), rd.getInt(rhsRow * 4));
+      case UINT32:
+        return Integer.compareUnsigned(ld.getInt(lhsRow * 4), rd.getInt(rhsRow * 4));
+      case INT64:
+      case DECIMAL64:
+      case TIMESTAMP_SECONDS:
+      case TIMESTAMP_MILLISECONDS:
+      case TIMESTAMP_MICROSECONDS:
+      case TIMESTAMP_NANOSECONDS:
+      case DURATION_SECONDS:
+      case DURATION_MILLISECONDS:
+      case DURATION_MICROSECONDS:
+      case DURATION_NANOSECONDS:
+        return Long.compare(ld.getLong(lhsRow * 8), rd.getLong(rhsRow * 8));
+      case UINT64:
+        return Long.compareUnsigned(ld.getLong(lhsRow * 8), rd.getLong(rhsRow * 8));
+      case FLOAT32:
+        return compareDoubles(ld.getFloat(lhsRow * 4), rd.getFloat(rhsRow * 4));
+      case FLOAT64:
+        return compareDoubles(ld.getDouble(lhsRow * 8), rd.getDouble(rhsRow * 8));
+      case STRING:
+        return compareStrings(l, lhsRow, r, rhsRow);
+      default:
+        throw new UnsupportedOperationException("Sorting on " + l.getType() +
+            " is not supported");
+    }
+  }
+
+  private static int compareDoubles(double l, double r) {
+    boolean lNaN = Double.isNaN(l);
+    boolean rNaN = Double.isNaN(r);
+    if (lNaN || rNaN) {
+      return Boolean.compare(lNaN, rNaN);
+    }
+    // Unlike Double.compare -0.0 and 0.0 are equivalent
+    return l < r ? -1 : (l > r ? 1 : 0);
+  }
+
+  private static int compareStrings(HostColumnVectorCore l, long lhsRow, HostColumnVectorCore r,
+                                    long rhsRow) {
+    HostMemoryBuffer lo = l.getOffsets();
+    HostMemoryBuffer ro = r.getOffsets();
+    int lStart = lo.getInt(lhsRow * HostColumnVector.OFFSET_SIZE);
+    int lLen = lo.getInt((lhsRow + 1) * HostColumnVector.OFFSET_SIZE) - lStart;
+    int rStart = ro.getInt(rhsRow * HostColumnVector.OFFSET_SIZE);
+    int rLen = ro.getInt((rhsRow + 1) * HostColumnVector.OFFSET_SIZE) - rStart;
+    int len = Math.min(lLen, rLen);
+    if (len > 0) {
+      long lAddr = l.getData().getAddress() + lStart;
+      long rAddr = r.getData().getAddress() + rStart;
+      for (int i = 0; i < len; i++) {
+        int lb = UnsafeMemoryAccessor.getByte(lAddr + i) & 0xFF;
+        int rb = UnsafeMemoryAccessor.getByte(rAddr + i) & 0xFF;
+        if (lb != rb) {
+          return lb - rb;
+        }
+      }
+    }
+    return Integer.compare(lLen, rLen);
+  }
+}
@@ -0,0 +1,493 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * Host implementation of the row major format produced by {@link Table#convertToRows()} and
+ * consumed by {@link Table#convertFromRows(ColumnView, DType...)}. The output of
+ * {@link #convertToRows(HostColumnVector...)} is byte for byte compatible with the device
+ * version, except that padding bytes are always zero, so data can be converted on either side
+ * and read back on the other. Like the device version only fixed width types are supported.
+ */
+public final class HostRowConversion {
+  /**
+   * The number of rows that a single task will process. This is a multiple of 64 so that tasks
+   * never share a word of validity in the columnar data.
+   */
+  private static final int ROWS_PER_TASK = 64 * 1024;
+
+  private HostRowConversion() {}
+
+  /**
+   * The layout of a single row for a given schema. Computing this is cheap, but it can be
+   * cached and reused when converting many batches with the same schema.
+   */
+  public static final class Layout {
+    private final DType[] schema;
+    private final int[] columnStarts;
+    private final int[] columnSizes;
+    private final int validityOffset;
+    private final int rowSize;
+
+    private Layout(DType[] schema) {
+      this.schema = schema;
+      this.columnStarts = new int[schema.length];
+      this.columnSizes = new int[schema.length];
+      int at = 0;
+      for (int i = 0; i < schema.length; i++) {
+        int size = schema[i].getSizeInBytes();
+        if (size <= 0) {
+          throw new UnsupportedOperationException("Only fixed width types are currently " +
+              "supported, found " + schema[i]);
+        }
+        // The alignment needed is the same as the size for fixed width types
+        at = alignOffset(at, size);
+        columnStarts[i] = at;
+        columnSizes[i] = size;
+        at += size;
+      }
+      // validity comes at the end and is byte aligned so we can pack more in.
+      validityOffset = at;
+      at += (schema.length + 7) / 8;
+      // Now we need to pad the end so all rows are 64 bit aligned
+      rowSize = alignOffset(at, 8);
+    }
+
+    /**
+     * Compute the layout for a schema.
+     * @param schema the types of each column.
+     * @return the layout.
+     */
+    public static Layout of(DType... schema) {
+      if (schema.length == 0) {
+        throw new IllegalArgumentException("At least one column is needed to build a row");
+      }
+      return new Layout(schema.clone());
+    }
+
+    /**
+     * Get the number of columns in a row.
+     */
+    public int getNumColumns() {
+      return schema.length;
+    }
+
+    /**
+     * Get the type of a column.
+     */
+    public DType getType(int column) {
+      return schema[column];
+    }
+
+    /**
+     * Get the offset in bytes from the start of the row to the data for a column.
+     */
+    public int getColumnStart(int column) {
+      return columnStarts[column];
+    }
+
+    /**
+     * Get the offset in bytes from the start of the row to the first validity byte. The validity
+     * for column N is bit N % 8 of the byte at this offset + N / 8.
+     */
+    public int getValidityOffset() {
+      return validityOffset;
+    }
+
+    /**
+     * Get the size in bytes of a single row including validity and padding.
+     */
+    public int getRowSize() {
+      return rowSize;
+    }
+
+    /**
+     * Get the maximum number of rows that fit in a single list of bytes column. Like the device
+     * version this is a multiple of 32.
+     */
+    int getMaxRowsPerBatch() {
+      return ((Integer.MAX_VALUE / rowSize) / 32) * 32;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      return Arrays.equals(schema, ((Layout) o).schema);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(schema);
+    }
+
+    @Override
+    public String toString() {
+      return "Layout{schema=" + Arrays.toString(schema) +
+          ", columnStarts=" + Arrays.toString(columnStarts) +
+          ", validityOffset=" + validityOffset +
+          ", rowSize=" + rowSize + "}";
+    }
+  }
+
+  private static int alignOffset(int offset, int alignment) {
+    return (offset + alignment - 1) & ~(alignment - 1);
+  }
+
+  /**
+   * Convert host columns into the row major format described in {@link Table#convertToRows()}.
+   * Multiple columns are returned if not all of the rows fit in a single list of bytes column.
+   * @param columns the columns to convert. They must all have the same number of rows.
+   * @return LIST of INT8 columns, one entry per row.
+   */
+  public static HostColumnVector[] convertToRows(HostColumnVector... columns) {
+    if (columns.length == 0) {
+      throw new IllegalArgumentException("At least one column is needed to build a row");
+    }
+    DType[] schema = new DType[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      schema[i] = columns[i].getType();
+    }
+    return convertToRows(new Layout(schema), columns);
+  }
+
+  /**
+   * Convert host columns into the row major format described in {@link Table#convertToRows()}
+   * using a precomputed layout.
+   * @param layout the layout for the schema of the columns.
+   * @param columns the columns to convert. They must all have the same number of rows.
+   * @return LIST of INT8 columns, one entry per row.
+   */
+  public static HostColumnVector[] convertToRows(Layout layout, HostColumnVector... columns) {
+    if (columns.length != layout.getNumColumns()) {
+      throw new IllegalArgumentException("Expected " + layout.getNumColumns() +
+          " columns but found " + columns.length);
+    }
+    long numRows = columns[0].getRowCount();
+    for (int i = 0; i < columns.length; i++) {
+      if (!layout.getType(i).equals(columns[i].getType())) {
+        throw new IllegalArgumentException("Column " + i + " is " + columns[i].getType() +
+            " but the layout expects " + layout.getType(i));
+      }
+      if (columns[i].getRowCount() != numRows) {
+        throw new IllegalArgumentException("All columns must have the same number of rows");
+      }
+    }
+    int maxRowsPerBatch = layout.getMaxRowsPerBatch();
+    int numBatches = (int) ((numRows + maxRowsPerBatch - 1) / maxRowsPerBatch);
+    HostColumnVector[] ret = new HostColumnVector[numBatches];
+    try (NvtxRange range = new NvtxRange("host convertToRows", NvtxColor.GREEN)) {
+      for (int b = 0; b < numBatches; b++) {
+        long batchStart = (long) b * maxRowsPerBatch;
+        int batchRows = (int) Math.min(maxRowsPerBatch, numRows - batchStart);
+        ret[b] = convertBatchToRows(layout, columns, batchStart, batchRows);
+      }
+      HostColumnVector[] tmp = ret;
+      ret = null;
+      return tmp;
+    } finally {
+      if (ret != null) {
+        HostGather.closeAll(ret);
+      }
+    }
+  }
+
+  private static HostColumnVector convertBatchToRows(Layout layout, HostColumnVector[] columns,
+                                                     long batchStart, int batchRows) {
+    int rowSize = layout.getRowSize();
+    HostMemoryBuffer data = null;
+    HostMemoryBuffer offsets = null;
+    HostColumnVectorCore child = null;
+    try {
+      data = HostMemoryBuffer.allocate((long) batchRows * rowSize);
+      offsets = HostMemoryBuffer.allocate((batchRows + 1L) * HostColumnVector.OFFSET_SIZE);
+      long offsetsAddr = offsets.getAddress();
+      for (int i = 0; i <= batchRows; i++) {
+        UnsafeMemoryAccessor.setInt(offsetsAddr + (long) i * HostColumnVector.OFFSET_SIZE,
+            i * rowSize);
+      }
+      final long dataAddr = data.getAddress();
+      int numTasks = (batchRows + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+      if (numTasks <= 1) {
+        toRows(layout, columns, batchStart, 0, batchRows, dataAddr);
+      } else {
+        IntStream.range(0, numTasks).parallel().forEach(t -> {
+          int start = t * ROWS_PER_TASK;
+          int end = Math.min(batchRows, start + ROWS_PER_TASK);
+          toRows(layout, columns, batchStart, start, end, dataAddr);
+        });
+      }
+      child = new HostColumnVectorCore(DType.INT8, (long) batchRows * rowSize, Optional.of(0L),
+          data, null, null, new ArrayList<>());
+      data = null;
+      List<HostColumnVectorCore> children = new ArrayList<>();
+      children.add(child);
+      HostColumnVector ret = new HostColumnVector(DType.LIST, batchRows, Optional.of(0L),
+          null, null, offsets, children);
+      child = null;
+      offsets = null;
+      return ret;
+    } finally {
+      if (data != null) {
+        data.close();
+      }
+      if (offsets != null) {
+        offsets.close();
+      }
+      if (child != null) {
+        child.close();
+      }
+    }
+  }
+
+  /**
+   * Write the rows [start, end) of a batch. The columns are walked one at a time so the reads
+   * from each column are sequential.
+   */
+  private static void toRows(Layout layout, HostColumnVector[] columns, long batchStart,
+                             int start, int end, long dataAddr) {
+    final long rowSize = layout.getRowSize();
+    final long rowsAddr = dataAddr + start * rowSize;
+    final int numRows = end - start;
+    // Zero everything first so the padding is deterministic and the validity bits can be OR'd in
+    UnsafeMemoryAccessor.setMemory(rowsAddr, numRows * rowSize, (byte) 0);
+    for (int c = 0; c < columns.length; c++) {
+      HostColumnVector column = columns[c];
+      int size = layout.columnSizes[c];
+      long srcAddr = column.getData().getAddress() + (batchStart + start) * size;
+      long dstAddr = rowsAddr + layout.getColumnStart(c);
+      switch (size) {
+        case 1:
+          for (int r = 0; r < numRows; r++, dstAddr += rowSize) {
+            UnsafeMemoryAccessor.setByte(dstAddr, UnsafeMemoryAccessor.getByte(srcAddr + r));
+          }
+          break;
+        case 2:
+          for (int r = 0; r < numRows; r++, dstAddr += rowSize) {
+            UnsafeMemoryAccessor.setShort(dstAddr,
+                UnsafeMemoryAccessor.getShort(srcAddr + r * 2L));
+          }
+          break;
+        case 4:
+          for (int r = 0; r < numRows; r++, dstAddr += rowSize) {
+            UnsafeMemoryAccessor.setInt(dstAddr, UnsafeMemoryAccessor.getInt(srcAddr + r * 4L));
+          }
+          break;
+        case 8:
+          for (int r = 0; r < numRows; r++, dstAddr += rowSize) {
+            UnsafeMemoryAccessor.setLong(dstAddr, UnsafeMemoryAccessor.getLong(srcAddr + r * 8L));
+          }
+          break;
+        default:
+          for (int r = 0; r < numRows; r++, dstAddr += rowSize) {
+            UnsafeMemoryAccessor.copyMemory(null, srcAddr + (long) r * size, null, dstAddr, size);
+          }
+          break;
+      }
+
+      long validAddr = rowsAddr + layout.getValidityOffset() + c / 8;
+      byte bit = (byte) (1 << (c % 8));
+      HostMemoryBuffer srcValid = column.getValidity();
+      if (srcValid == null) {
+        for (int r = 0; r < numRows; r++, validAddr += rowSize) {
+          UnsafeMemoryAccessor.setByte(validAddr,
+              (byte) (UnsafeMemoryAccessor.getByte(validAddr) | bit));
+        }
+      } else {
+        long srcRow = batchStart + start;
+        for (int r = 0; r < numRows; r++, srcRow++, validAddr += rowSize) {
+          if (!BitVectorHelper.isNull(srcValid, srcRow)) {
+            UnsafeMemoryAccessor.setByte(validAddr,
+                (byte) (UnsafeMemoryAccessor.getByte(validAddr) | bit));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Convert a LIST of INT8 or UINT8 column formatted like the output of
+   * {@link #convertToRows(HostColumnVector...)} back into columns.
+   * @param rows the row data to process.
+   * @param schema the types of each column.
+   * @return the parsed columns.
+   */
+  public static HostColumnVector[] convertFromRows(HostColumnVectorCore rows, DType... schema) {
+    return convertFromRows(rows, Layout.of(schema));
+  }
+
+  /**
+   * Convert a LIST of INT8 or UINT8 column formatted like the output of
+   * {@link #convertToRows(HostColumnVector...)} back into columns using a precomputed layout.
+   * @param rows the row data to process.
+   * @param layout the layout for the schema of the columns.
+   * @return the parsed columns.
+   */
+  public static HostColumnVector[] convertFromRows(HostColumnVectorCore rows, Layout layout) {
+    if (!DType.LIST.equals(rows.getType())) {
+      throw new IllegalArgumentException("Only a list of bytes is supported as input");
+    }
+    HostColumnVectorCore child = rows.getChildColumnView(0);
+    DType childType = child.getType();
+    if (!DType.INT8.equals(childType) && !DType.UINT8.equals(childType)) {
+      throw new IllegalArgumentException("Only a list of bytes is supported as input");
+    }
+    final int numRows = (int) rows.getRowCount();
+    final int rowSize = layout.getRowSize();
+    final int numColumns = layout.getNumColumns();
+    long startByte = 0;
+    if (numRows > 0) {
+      // Like the device version we only check the total size and not every offset
+      HostMemoryBuffer offsets = rows.getOffsets();
+      startByte = offsets.getInt(0);
+      long endByte = offsets.getInt((long) numRows * HostColumnVector.OFFSET_SIZE);
+      if (endByte - startByte != (long) rowSize * numRows) {
+        throw new IllegalArgumentException("The layout of the data appears to be off");
+      }
+    }
+    HostColumnVector[] ret = new HostColumnVector[numColumns];
+    HostMemoryBuffer[] data = new HostMemoryBuffer[numColumns];
+    HostMemoryBuffer[] valid = new HostMemoryBuffer[numColumns];
+    try (NvtxRange range = new NvtxRange("host convertFromRows", NvtxColor.GREEN)) {
+      long validSize = BitVectorHelper.getValidityAllocationSizeInBytes(numRows);
+      for (int c = 0; c < numColumns; c++) {
+        data[c] = HostMemoryBuffer.allocate((long) numRows * layout.columnSizes[c]);
+        valid[c] = HostMemoryBuffer.allocate(validSize);
+      }
+      final long rowsAddr = numRows > 0 ? child.getData().getAddress() + startByte : 0;
+      long[] nullCounts;
+      int numTasks = (numRows + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+      if (numTasks <= 1) {
+        nullCounts = fromRows(layout, rowsAddr, 0, numRows, data, valid);
+      } else {
+        nullCounts = IntStream.range(0, numTasks).parallel().mapToObj(t -> {
+          int start = t * ROWS_PER_TASK;
+          int end = Math.min(numRows, start + ROWS_PER_TASK);
+          return fromRows(layout, rowsAddr, start, end, data, valid);
+        }).reduce(new long[numColumns], (a, b) -> {
+          long[] sum = new long[numColumns];
+          for (int c = 0; c < numColumns; c++) {
+            sum[c] = a[c] + b[c];
+          }
+          return sum;
+        });
+      }
+      for (int c = 0; c < numColumns; c++) {
+        if (nullCounts[c] == 0) {
+          valid[c].close();
+          valid[c] = null;
+        }
+        ret[c] = new HostColumnVector(layout.getType(c), numRows, Optional.of(nullCounts[c]),
+            data[c], valid[c], null, new ArrayList<>());
+        data[c] = null;
+        valid[c] = null;
+      }
+      HostColumnVector[] tmp = ret;
+      ret = null;
+      return tmp;
+    } finally {
+      if (ret != null) {
+        HostGather.closeAll(ret);
+        for (int c = 0; c < numColumns; c++) {
+          if (data[c] != null) {
+            data[c].close();
+          }
+          if (valid[c] != null) {
+            valid[c].close();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the rows [start, end) into the output columns. start must be a multiple of 64 so that
+   * each validity word is written by a single task.
+   * @return the number of nulls found in each column.
+   */
+  private static long[] fromRows(Layout layout, long rowsAddr, int start, int end,
+                                 HostMemoryBuffer[] data, HostMemoryBuffer[] valid) {
+    final long rowSize = layout.getRowSize();
+    final int numRows = end - start;
+    long[] nullCounts = new long[data.length];
+    for (int c = 0; c < data.length; c++) {
+      int size = layout.columnSizes[c];
+      long srcAddr = rowsAddr + start * rowSize + layout.getColumnStart(c);
+      long dstAddr = data[c].getAddress() + (long) start * size;
+      switch (size) {
+        case 1:
+          for (int r = 0; r < numRows; r++, srcAddr += rowSize) {
+            UnsafeMemoryAccessor.setByte(dstAddr + r, UnsafeMemoryAccessor.getByte(srcAddr));
+          }
+          break;
+        case 2:
+          for (int r = 0; r < numRows; r++, srcAddr += rowSize) {
+            UnsafeMemoryAccessor.setShort(dstAddr + r * 2L, UnsafeMemoryAccessor.getShort(srcAddr));
+          }
+          break;
+        case 4:
+          for (int r = 0; r < numRows; r++, srcAddr += rowSize) {
+            UnsafeMemoryAccessor.setInt(dstAddr + r * 4L, UnsafeMemoryAccessor.getInt(srcAddr));
+          }
+          break;
+        case 8:
+          for (int r = 0; r < numRows; r++, srcAddr += rowSize) {
+            UnsafeMemoryAccessor.setLong(dstAddr + r * 8L, UnsafeMemoryAccessor.getLong(srcAddr));
+          }
+          break;
+        default:
+          for (int r = 0; r < numRows; r++, srcAddr += rowSize) {
+            UnsafeMemoryAccessor.copyMemory(null, srcAddr, null, dstAddr + (long) r * size, size);
+          }
+          break;
+      }
+
+      long validAddr = rowsAddr + start * rowSize + layout.getValidityOffset() + c / 8;
+      int bit = c % 8;
+      long outWordAddr = valid[c].getAddress() + (start / 64) * 8L;
+      long word = 0;
+      long nulls = 0;
+      for (int r = 0; r < numRows; r++, validAddr += rowSize) {
+        long isValid = (UnsafeMemoryAccessor.getByte(validAddr) >>> bit) & 1;
+        nulls += isValid ^ 1;
+        word |= isValid << (r % 64);
+        if (r % 64 == 63) {
+          UnsafeMemoryAccessor.setLong(outWordAddr, word);
+          outWordAddr += 8;
+          word = 0;
+        }
+      }
+      if (numRows % 64 != 0) {
+        UnsafeMemoryAccessor.setLong(outWordAddr, word);
+      }
+      nullCounts[c] = nulls;
+    }
+    return nullCounts;
+  }
+}
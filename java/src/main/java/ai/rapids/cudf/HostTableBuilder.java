@@ -0,0 +1,356 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Streams rows into right sized batches of host columns. Each column is built with a
+ * {@link ChunkedColumnBuilder}. After each row the builder checks the row and byte targets and
+ * when either is reached the current batch is built and a new one is started. Later batches
+ * plan their capacity from the average row size seen so far, so after the first batch the
+ * buffers rarely need to grow.
+ * <pre>
+ * try (HostTableBuilder tb = new HostTableBuilder(options, batch -&gt; send(batch),
+ *     DType.INT64, DType.STRING)) {
+ *   for (Record r : records) {
+ *     tb.getColumn(0).append(r.id);
+ *     tb.getColumn(1).append(r.name);
+ *     tb.endRow();
+ *   }
+ *   tb.rollover();
+ * }
+ * </pre>
+ * Finished batches are passed to the consumer, which takes ownership of the columns, or are
+ * queued to be taken with {@link #pollBatch()} if there is no consumer.
+ */
+public final class HostTableBuilder implements AutoCloseable {
+
+  /**
+   * Capacity hints and batch targets for a {@link HostTableBuilder}.
+   */
+  public static final class Options {
+    public static final Options DEFAULT = new Options(new Builder());
+
+    private final long targetRows;
+    private final long targetBytes;
+    private final long estimatedRows;
+    private final long chunkBytes;
+    private final int defaultBytesPerRow;
+    private final Map<Integer, Integer> bytesPerRow;
+
+    private Options(Builder builder) {
+      targetRows = builder.targetRows;
+      targetBytes = builder.targetBytes;
+      estimatedRows = builder.estimatedRows;
+      chunkBytes = builder.chunkBytes;
+      defaultBytesPerRow = builder.defaultBytesPerRow;
+      bytesPerRow = new HashMap<>(builder.bytesPerRow);
+    }
+
+    long getTargetRows() {
+      return targetRows;
+    }
+
+    long getTargetBytes() {
+      return targetBytes;
+    }
+
+    long getEstimatedRows() {
+      return estimatedRows;
+    }
+
+    long getChunkBytes() {
+      return chunkBytes;
+    }
+
+    int getBytesPerRow(int column) {
+      return bytesPerRow.getOrDefault(column, defaultBytesPerRow);
+    }
+
+    public static Builder builder() {
+      return new Builder();
+    }
+
+    public static final class Builder {
+      private long targetRows = Integer.MAX_VALUE - 1;
+      private long targetBytes = 1L << 30;
+      private long estimatedRows = 1024;
+      private long chunkBytes = ChunkedColumnBuilder.DEFAULT_CHUNK_BYTES;
+      private int defaultBytesPerRow = ChunkedColumnBuilder.DEFAULT_STRING_BYTES_PER_ROW;
+      private final Map<Integer, Integer> bytesPerRow = new HashMap<>();
+
+      /**
+       * Roll over to a new batch once a batch has this many rows.
+       */
+      public Builder withTargetRows(long rows) {
+        if (rows <= 0 || rows >= Integer.MAX_VALUE) {
+          throw new IllegalArgumentException("The target row count must be between 1 and " +
+              (Integer.MAX_VALUE - 1));
+        }
+        this.targetRows = rows;
+        return this;
+      }
+
+      /**
+       * Roll over to a new batch once the columns in a batch take up this many bytes. This is
+       * checked after each row, so a batch can go over by up to one row. The default of 1 GiB
+       * keeps STRING columns well under their 2 GiB limit.
+       */
+      public Builder withTargetBytes(long bytes) {
+        if (bytes <= 0) {
+          throw new IllegalArgumentException("The target size must be positive");
+        }
+        this.targetBytes = bytes;
+        return this;
+      }
+
+      /**
+       * The number of rows to plan capacity for in the first batch.
+       */
+      public Builder withEstimatedRows(long rows) {
+        if (rows < 0) {
+          throw new IllegalArgumentException("The estimated row count cannot be negative");
+        }
+        this.estimatedRows = rows;
+        return this;
+      }
+
+      /**
+       * The size of the chunks a column grows by once the planned capacity is used up.
+       */
+      public Builder withChunkBytes(long bytes) {
+        if (bytes < 64) {
+          throw new IllegalArgumentException("Chunks must be at least 64 bytes");
+        }
+        this.chunkBytes = bytes;
+        return this;
+      }
+
+      /**
+       * The estimated average size in bytes of the strings in a column.
+       */
+      public Builder withBytesPerRow(int column, int bytes) {
+        if (bytes < 0) {
+          throw new IllegalArgumentException("Bytes per row cannot be negative");
+        }
+        bytesPerRow.put(column, bytes);
+        return this;
+      }
+
+      /**
+       * The estimated average size in bytes of the strings in columns that do not have their
+       * own estimate.
+       */
+      public Builder withDefaultBytesPerRow(int bytes) {
+        if (bytes < 0) {
+          throw new IllegalArgumentException("Bytes per row cannot be negative");
+        }
+        this.defaultBytesPerRow = bytes;
+        return this;
+      }
+
+      public Options build() {
+        return new Options(this);
+      }
+    }
+  }
+
+  private final Options options;
+  private final ChunkedColumnBuilder[] columns;
+  private final Consumer<HostColumnVector[]> consumer;
+  private final ArrayDeque<HostColumnVector[]> completed = new ArrayDeque<>();
+  private long rows = 0;
+  private long totalRows = 0;
+  private long batchCount = 0;
+
+  /**
+   * Create a builder that passes each finished batch to a consumer.
+   * @param options capacity hints and batch targets.
+   * @param consumer takes ownership of each finished batch, or null to queue batches for
+   *                 {@link #pollBatch()}.
+   * @param types the type of each column.
+   */
+  public HostTableBuilder(Options options, Consumer<HostColumnVector[]> consumer,
+                          DType... types) {
+    if (types.length == 0) {
+      throw new IllegalArgumentException("At least one column is needed");
+    }
+    this.options = options;
+    this.consumer = consumer;
+    this.columns = new ChunkedColumnBuilder[types.length];
+    long estimatedRows = Math.min(options.getEstimatedRows(), options.getTargetRows());
+    boolean success = false;
+    try {
+      for (int i = 0; i < types.length; i++) {
+        columns[i] = new ChunkedColumnBuilder(types[i], estimatedRows,
+            options.getBytesPerRow(i), options.getChunkBytes());
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        close();
+      }
+    }
+  }
+
+  /**
+   * Create a builder that queues finished batches for {@link #pollBatch()}.
+   */
+  public HostTableBuilder(Options options, DType... types) {
+    this(options, null, types);
+  }
+
+  public int getNumColumns() {
+    return columns.length;
+  }
+
+  /**
+   * Get the builder for a column. Append exactly one value or null to every column and then
+   * call {@link #endRow()}.
+   */
+  public ChunkedColumnBuilder getColumn(int index) {
+    return columns[index];
+  }
+
+  /**
+   * Get the number of rows in the batch that is being built.
+   */
+  public long getRowCount() {
+    return rows;
+  }
+
+  /**
+   * Get the number of bytes the batch that is being built takes up.
+   */
+  public long getSizeInBytes() {
+    long ret = 0;
+    for (ChunkedColumnBuilder c : columns) {
+      ret += c.getSizeInBytes();
+    }
+    return ret;
+  }
+
+  /**
+   * Finish a row, rolling over to a new batch if a target was reached.
+   */
+  public void endRow() {
+    rows++;
+    for (ChunkedColumnBuilder c : columns) {
+      if (c.getRowCount() != rows) {
+        throw new IllegalStateException("Column of type " + c.getType() + " has " +
+            c.getRowCount() + " rows but " + rows + " rows were ended");
+      }
+    }
+    if (rows >= options.getTargetRows() || getSizeInBytes() >= options.getTargetBytes()) {
+      rollover();
+    }
+  }
+
+  /**
+   * Build the current batch now, even if no target was reached. Nothing happens if the batch
+   * is empty.
+   */
+  public void rollover() {
+    if (rows == 0) {
+      return;
+    }
+    HostColumnVector[] batch = new HostColumnVector[columns.length];
+    boolean success = false;
+    try {
+      for (int i = 0; i < columns.length; i++) {
+        ChunkedColumnBuilder c = columns[i];
+        long bytesPerRow = (c.getDataLength() + rows - 1) / rows;
+        batch[i] = c.build();
+        // Plan the next batch from what this one looked like, with a little head room
+        long nextRows = Math.min(options.getTargetRows(), rows + rows / 16);
+        c.setCapacityHint(nextRows, (int) Math.min(Integer.MAX_VALUE, bytesPerRow));
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        for (HostColumnVector cv : batch) {
+          if (cv != null) {
+            cv.close();
+          }
+        }
+      }
+    }
+    totalRows += rows;
+    batchCount++;
+    rows = 0;
+    if (consumer != null) {
+      consumer.accept(batch);
+    } else {
+      completed.add(batch);
+    }
+  }
+
+  /**
+   * Take the oldest finished batch that was queued because there is no consumer.
+   * @return the batch, owned by the caller, or null if there are none.
+   */
+  public HostColumnVector[] pollBatch() {
+    return completed.poll();
+  }
+
+  /**
+   * Roll over the current batch and take all of the queued batches.
+   */
+  public List<HostColumnVector[]> finish() {
+    rollover();
+    List<HostColumnVector[]> ret = new ArrayList<>(completed);
+    completed.clear();
+    return ret;
+  }
+
+  /**
+   * Get the number of batches built so far.
+   */
+  public long getBatchCount() {
+    return batchCount;
+  }
+
+  /**
+   * Get the number of rows in all of the batches built so far.
+   */
+  public long getTotalRowCount() {
+    return totalRows;
+  }
+
+  @Override
+  public void close() {
+    for (ChunkedColumnBuilder c : columns) {
+      if (c != null) {
+        c.close();
+      }
+    }
+    HostColumnVector[] batch;
+    while ((batch = completed.poll()) != null) {
+      for (HostColumnVector cv : batch) {
+        cv.close();
+      }
+    }
+  }
+}
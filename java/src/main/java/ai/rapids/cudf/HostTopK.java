@@ -0,0 +1,242 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+/**
+ * Computes the equivalent of an {@code ORDER BY ... LIMIT k} on host tables without sorting
+ * all of the data. Batches are streamed through a bounded heap of row references, and only
+ * the rows that survive are gathered into the result. Rows that compare as equal are kept in
+ * the order they were added, so the result is the same as a stable sort followed by a limit.
+ * <p/>
+ * An instance is not thread safe. To use several threads give each its own instance and
+ * combine them with {@link #merge(HostTopK)} at the end.
+ */
+public final class HostTopK implements AutoCloseable {
+  private static final int CURRENT = 0;
+  private static final int INCOMING = 1;
+
+  private final int k;
+  private final HostRowComparator comparator;
+  /**
+   * A max heap, by sort order, of the rows currently winning. Each entry is a source id in the
+   * upper 32 bits and a row in the lower 32 bits.
+   */
+  private final long[] heap;
+  private int heapSize = 0;
+  /** The current winners in sorted order, or null if no rows have been added yet. */
+  private HostColumnVector[] winners = null;
+  private final HostColumnVector[][] sources = new HostColumnVector[2][];
+
+  /**
+   * Create a new top-K operator.
+   * @param k the maximum number of rows to keep.
+   * @param args the columns to sort by and how to sort them.
+   */
+  public HostTopK(int k, OrderByArg... args) {
+    if (k <= 0) {
+      throw new IllegalArgumentException("k must be positive, found " + k);
+    }
+    this.k = k;
+    this.comparator = new HostRowComparator(args);
+    this.heap = new long[k];
+  }
+
+  /**
+   * Compute the top k rows of a single table.
+   * @param table the columns of the table.
+   * @param args the columns to sort by and how to sort them.
+   * @param k the maximum number of rows to keep.
+   * @return the top rows in sorted order. The caller must close them.
+   */
+  public static HostColumnVector[] topK(HostColumnVector[] table, OrderByArg[] args, int k) {
+    try (HostTopK topK = new HostTopK(k, args)) {
+      topK.add(table);
+      return topK.getResult();
+    }
+  }
+
+  /**
+   * Add a batch of rows. The batch is not retained and can be closed as soon as this returns.
+   * All batches must have the same schema.
+   */
+  public void add(HostColumnVector[] batch) {
+    if (winners != null && batch.length != winners.length) {
+      throw new IllegalArgumentException("Expected a table with " + winners.length +
+          " columns but found " + batch.length);
+    }
+    comparator.checkTable(batch);
+    long numRows = checkRowCount(batch);
+    if (numRows == 0 && winners != null) {
+      return;
+    }
+    try (NvtxRange range = new NvtxRange("host topK", NvtxColor.ORANGE)) {
+      sources[CURRENT] = winners;
+      sources[INCOMING] = batch;
+      // The winners are sorted, so rebuild the heap from them in reverse to avoid sifting
+      heapSize = 0;
+      if (winners != null) {
+        int numWinners = (int) winners[0].getRowCount();
+        for (int i = numWinners - 1; i >= 0; i--) {
+          heap[heapSize++] = ref(CURRENT, i);
+        }
+      }
+      for (int row = 0; row < numRows; row++) {
+        long ref = ref(INCOMING, row);
+        if (heapSize < k) {
+          heap[heapSize] = ref;
+          siftUp(heapSize++);
+        } else if (compareRefs(ref, heap[0]) < 0) {
+          heap[0] = ref;
+          siftDown(0);
+        }
+      }
+      HostColumnVector[] newWinners = materialize();
+      if (winners != null) {
+        HostGather.closeAll(winners);
+      }
+      winners = newWinners;
+    } finally {
+      sources[CURRENT] = null;
+      sources[INCOMING] = null;
+    }
+  }
+
+  /**
+   * Merge in the result of another instance, like one that ran on a different thread. The other
+   * instance is not modified. Rows from this instance sort before equal rows from the other.
+   */
+  public void merge(HostTopK other) {
+    if (other.winners != null) {
+      add(other.winners);
+    }
+  }
+
+  /**
+   * Get the current top rows in sorted order. The caller must close the returned columns.
+   * @throws IllegalStateException if no batches have been added.
+   */
+  public HostColumnVector[] getResult() {
+    if (winners == null) {
+      throw new IllegalStateException("No data has been added");
+    }
+    HostColumnVector[] ret = new HostColumnVector[winners.length];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = winners[i].incRefCount();
+    }
+    return ret;
+  }
+
+  @Override
+  public void close() {
+    if (winners != null) {
+      HostGather.closeAll(winners);
+      winners = null;
+    }
+  }
+
+  private static long checkRowCount(HostColumnVector[] batch) {
+    if (batch.length == 0) {
+      throw new IllegalArgumentException("A table must have at least one column");
+    }
+    long numRows = batch[0].getRowCount();
+    for (HostColumnVector column : batch) {
+      if (column.getRowCount() != numRows) {
+        throw new IllegalArgumentException("All columns must have the same number of rows");
+      }
+    }
+    if (numRows > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Batches with more than " + Integer.MAX_VALUE +
+          " rows are not supported");
+    }
+    return numRows;
+  }
+
+  private static long ref(int source, int row) {
+    return ((long) source << 32) | (row & 0xFFFFFFFFL);
+  }
+
+  private static int sourceOf(long ref) {
+    return (int) (ref >>> 32);
+  }
+
+  private static int rowOf(long ref) {
+    return (int) ref;
+  }
+
+  /**
+   * Compare two rows by sort order. Ties are broken by source and then by row so that earlier
+   * rows win, which is what makes the result stable.
+   */
+  private int compareRefs(long a, long b) {
+    int ret = comparator.compare(sources[sourceOf(a)], rowOf(a), sources[sourceOf(b)], rowOf(b));
+    return ret != 0 ? ret : Long.compare(a, b);
+  }
+
+  private void siftUp(int index) {
+    long ref = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (compareRefs(heap[parent], ref) >= 0) {
+        break;
+      }
+      heap[index] = heap[parent];
+      index = parent;
+    }
+    heap[index] = ref;
+  }
+
+  private void siftDown(int index) {
+    long ref = heap[index];
+    int half = heapSize >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      int right = child + 1;
+      if (right < heapSize && compareRefs(heap[right], heap[child]) > 0) {
+        child = right;
+      }
+      if (compareRefs(ref, heap[child]) >= 0) {
+        break;
+      }
+      heap[index] = heap[child];
+      index = child;
+    }
+    heap[index] = ref;
+  }
+
+  /**
+   * Drain the heap into sorted order and gather the winning rows.
+   */
+  private HostColumnVector[] materialize() {
+    int count = heapSize;
+    int[] sourceIds = new int[count];
+    int[] rows = new int[count];
+    // Popping the max each time fills the output from the back
+    for (int i = count - 1; i >= 0; i--) {
+      long top = heap[0];
+      heap[0] = heap[--heapSize];
+      siftDown(0);
+      sourceIds[i] = sourceOf(top);
+      rows[i] = rowOf(top);
+    }
+    if (sources[CURRENT] == null) {
+      return HostGather.gather(sources[INCOMING], rows, 0, count);
+    }
+    return HostGather.gather(sources, sourceIds, rows, 0, count);
+  }
+}
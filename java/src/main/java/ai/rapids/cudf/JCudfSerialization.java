@@ -29,6 +29,8 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Serialize and deserialize CUDF tables and columns using a custom format.  The goal of this is
@@ -1842,6 +1844,136 @@ public class JCudfSerialization {
     }
   }
 
+  private static HostColumnVectorCore buildHostColumn(SerializedColumnHeader column,
+                                                      ArrayDeque<ColumnOffsets> columnOffsets,
+                                                      HostMemoryBuffer buffer,
+                                                      boolean isTopLevel) {
+    ColumnOffsets offsetsInfo = columnOffsets.remove();
+    HostMemoryBuffer data = null;
+    HostMemoryBuffer validity = null;
+    HostMemoryBuffer offsets = null;
+    List<HostColumnVectorCore> children = new ArrayList<>();
+    try {
+      DType dtype = column.getType();
+      long rowCount = column.getRowCount();
+      if (column.getNullCount() > 0) {
+        validity = buffer.slice(offsetsInfo.validity,
+            padFor64byteAlignment(BitVectorHelper.getValidityLengthInBytes(rowCount)));
+      }
+      if (dtype.hasOffsets()) {
+        if (rowCount > 0) {
+          offsets = buffer.slice(offsetsInfo.offsets, (rowCount + 1) * Integer.BYTES);
+        } else {
+          // Nothing was written, but host code expects at least a single offset
+          offsets = HostMemoryBuffer.allocate(Integer.BYTES);
+          offsets.setInt(0, 0);
+        }
+      }
+      if (dtype.getSizeInBytes() > 0 || (dtype.equals(DType.STRING) && rowCount > 0)) {
+        data = buffer.slice(offsetsInfo.data, offsetsInfo.dataLen);
+      }
+      SerializedColumnHeader[] childHeaders = column.getChildren();
+      if (childHeaders != null) {
+        for (SerializedColumnHeader child : childHeaders) {
+          children.add(buildHostColumn(child, columnOffsets, buffer, false));
+        }
+      }
+      HostColumnVectorCore ret;
+      if (isTopLevel) {
+        ret = new HostColumnVector(dtype, rowCount, Optional.of(column.getNullCount()), data,
+            validity, offsets, children);
+      } else {
+        ret = new HostColumnVectorCore(dtype, rowCount, Optional.of(column.getNullCount()), data,
+            validity, offsets, children);
+      }
+      data = null;
+      validity = null;
+      offsets = null;
+      children = null;
+      return ret;
+    } finally {
+      if (data != null) {
+        data.close();
+      }
+      if (validity != null) {
+        validity.close();
+      }
+      if (offsets != null) {
+        offsets.close();
+      }
+      if (children != null) {
+        for (HostColumnVectorCore child : children) {
+          child.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Build host columns from a serialized table that has already been read into host memory.
+   * The returned columns are slices of hostBuffer, so no data is copied. The columns hold a
+   * reference to hostBuffer, so it can be closed as soon as this returns.
+   * @param header the header of the serialized table.
+   * @param hostBuffer the data that was read for the table.
+   * @return the columns of the table.
+   */
+  public static HostColumnVector[] unpackHostColumnVectors(SerializedTableHeader header,
+                                                           HostMemoryBuffer hostBuffer) {
+    try (NvtxRange range = new NvtxRange("bufferToHostColumns", NvtxColor.PURPLE)) {
+      ArrayDeque<ColumnOffsets> columnOffsets = buildIndex(header, hostBuffer);
+      int numColumns = header.getNumColumns();
+      HostColumnVector[] vectors = new HostColumnVector[numColumns];
+      try {
+        for (int i = 0; i < numColumns; i++) {
+          vectors[i] = (HostColumnVector) buildHostColumn(header.getColumnHeader(i),
+              columnOffsets, hostBuffer, true);
+        }
+        assert columnOffsets.isEmpty();
+        HostColumnVector[] ret = vectors;
+        vectors = null;
+        return ret;
+      } finally {
+        if (vectors != null) {
+          for (HostColumnVector cv : vectors) {
+            if (cv != null) {
+              cv.close();
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Read a serialized table from the given InputStream into host memory.
+   * @param in the stream to read the table data from.
+   * @return the deserialized columns, or null if the stream has no table to read from, an end
+   * of the stream at the very beginning. A table that only has a row count is returned as an
+   * empty array.
+   * @throws IOException on any error.
+   * @throws EOFException if the data stream ended unexpectedly in the middle of processing.
+   */
+  public static HostColumnVector[] readHostColumnsFrom(InputStream in) throws IOException {
+    DataInputStream din;
+    if (in instanceof DataInputStream) {
+      din = (DataInputStream) in;
+    } else {
+      din = new DataInputStream(in);
+    }
+
+    SerializedTableHeader header = new SerializedTableHeader(din);
+    if (!header.initialized) {
+      return null;
+    }
+
+    try (HostMemoryBuffer hostBuffer = HostMemoryBuffer.allocate(header.dataLen)) {
+      if (header.dataLen > 0) {
+        readTableIntoBuffer(din, header, hostBuffer);
+      }
+      return unpackHostColumnVectors(header, hostBuffer);
+    }
+  }
+
   /** Holds the result of deserializing a table. */
   public static final class TableAndRowCountPair implements Closeable {
     private final int numRows;
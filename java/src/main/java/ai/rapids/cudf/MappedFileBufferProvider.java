@@ -0,0 +1,203 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link HostBufferProvider} over a memory mapped file. Each read is a single copy out of the
+ * mapping, and a background thread touches the pages ahead of the reader so they are already
+ * faulted in when they are copied.
+ * <p/>
+ * Callers that can use the data in place can get a slice of the mapping with
+ * {@link #readSlice(long)} instead, which does not copy at all.
+ */
+public final class MappedFileBufferProvider implements HostBufferProvider {
+  public static final long DEFAULT_READ_AHEAD_BYTES = 32L * 1024 * 1024;
+
+  private final HostMemoryBuffer mapped;
+  private final long readAheadBytes;
+  private final long pageSize;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition moved = lock.newCondition();
+  private final Thread prefetcher;
+
+  // All guarded by lock
+  private long position = 0;
+  private boolean stopped = false;
+
+  /**
+   * Map a whole file with the default read ahead.
+   */
+  public MappedFileBufferProvider(File file) throws IOException {
+    this(file, 0, file.length(), DEFAULT_READ_AHEAD_BYTES);
+  }
+
+  /**
+   * Map part of a file.
+   * @param file the file to map.
+   * @param offset where in the file to start.
+   * @param length how many bytes to map.
+   * @param readAheadBytes how far ahead of the reader to touch pages, or 0 to not read ahead.
+   */
+  public MappedFileBufferProvider(File file, long offset, long length, long readAheadBytes)
+      throws IOException {
+    if (readAheadBytes < 0) {
+      throw new IllegalArgumentException("The read ahead cannot be negative " + readAheadBytes);
+    }
+    this.readAheadBytes = readAheadBytes;
+    this.pageSize = UnsafeMemoryAccessor.pageSize();
+    this.mapped = length == 0 ? HostMemoryBuffer.allocate(0) :
+        HostMemoryBuffer.mapFile(file, FileChannel.MapMode.READ_ONLY, offset, length);
+    if (readAheadBytes > 0 && length > 0) {
+      prefetcher = new Thread(this::prefetchLoop, "cudf mmap read-ahead");
+      prefetcher.setDaemon(true);
+      prefetcher.start();
+    } else {
+      prefetcher = null;
+    }
+  }
+
+  private void prefetchLoop() {
+    long length = mapped.getLength();
+    long touched = 0;
+    while (true) {
+      long limit;
+      lock.lock();
+      try {
+        while (!stopped && touched >= Math.min(length, position + readAheadBytes)) {
+          if (touched >= length) {
+            return;
+          }
+          moved.awaitUninterruptibly();
+        }
+        if (stopped) {
+          return;
+        }
+        touched = Math.max(touched, position);
+        limit = Math.min(length, position + readAheadBytes);
+      } finally {
+        lock.unlock();
+      }
+      // Reading a byte of each page faults it in, one page group at a time so that the reader
+      // moving ahead or a close are seen quickly
+      long stop = Math.min(limit, touched + 64 * pageSize);
+      for (long i = touched; i < stop; i += pageSize) {
+        mapped.getByte(i);
+      }
+      touched = stop;
+    }
+  }
+
+  private long advance(long len) {
+    lock.lock();
+    try {
+      if (stopped) {
+        throw new IllegalStateException("Read from a closed provider");
+      }
+      long start = position;
+      position += Math.max(0, Math.min(len, mapped.getLength() - position));
+      moved.signal();
+      return start;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public long readInto(HostMemoryBuffer buffer, long len) {
+    long start;
+    long amount;
+    lock.lock();
+    try {
+      start = advance(len);
+      amount = position - start;
+    } finally {
+      lock.unlock();
+    }
+    if (amount > 0) {
+      buffer.copyFromHostBuffer(0, mapped, start, amount);
+    }
+    return amount;
+  }
+
+  private long position() {
+    lock.lock();
+    try {
+      return position;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the next bytes of the file without copying them. The slice must be closed, and stays
+   * valid after this provider is closed until it is.
+   * @param len the most bytes to get, less are returned at the end of the file.
+   * @return a slice of the mapping.
+   */
+  public HostMemoryBuffer readSlice(long len) {
+    lock.lock();
+    try {
+      long start = advance(len);
+      return mapped.slice(start, position - start);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of bytes left to read.
+   */
+  public long getRemaining() {
+    return mapped.getLength() - position();
+  }
+
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (stopped) {
+        return;
+      }
+      stopped = true;
+      moved.signal();
+    } finally {
+      lock.unlock();
+    }
+    if (prefetcher != null) {
+      boolean interrupted = false;
+      while (prefetcher.isAlive()) {
+        try {
+          prefetcher.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    mapped.close();
+  }
+}
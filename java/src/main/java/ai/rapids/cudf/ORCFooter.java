@@ -0,0 +1,775 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the tail of an ORC file on the host, without any native code, so stripes can be pruned
+ * before the file is handed to {@link Table#readORC(ORCOptions, HostMemoryBuffer, long, long)}.
+ * The PostScript, Footer and Metadata sections are decoded from protocol buffers and a
+ * {@link Filter} is checked against the column statistics of each stripe. Only the stripes that
+ * might have matching rows are kept, either as byte ranges to fetch or as a smaller, self
+ * contained ORC file.
+ * <pre>
+ * ORCFooter footer = ORCFooter.readFrom(file);
+ * int[] keep = footer.selectStripes(ORCFooter.Filter.compare("id",
+ *     ORCFooter.Comparison.GREATER_EQUAL, 1000L));
+ * try (HostMemoryBuffer pruned = footer.buildPrunedFile(file, keep)) {
+ *   return Table.readORC(opts, pruned, 0, pruned.getLength());
+ * }
+ * </pre>
+ * Pruning is always conservative. If the statistics are missing, cannot be trusted for the
+ * type of the column, or the filter does not match the type of the column, the stripe is kept.
+ * The tail may be uncompressed or compressed with ZLIB or SNAPPY.
+ */
+public final class ORCFooter {
+  private static final byte[] MAGIC = "ORC".getBytes(StandardCharsets.US_ASCII);
+
+  // ORC compression kinds
+  private static final int NONE = 0;
+  private static final int ZLIB = 1;
+  private static final int SNAPPY = 2;
+
+  // ORC type kinds
+  private static final int BYTE = 1;
+  private static final int SHORT = 2;
+  private static final int INT = 3;
+  private static final int LONG = 4;
+  private static final int FLOAT = 5;
+  private static final int DOUBLE = 6;
+  private static final int STRING = 7;
+  private static final int STRUCT = 12;
+  private static final int DECIMAL = 14;
+  private static final int DATE = 15;
+  private static final int VARCHAR = 16;
+
+  /** Writers older than HIVE-8732 did not order string statistics correctly. */
+  private static final int WRITER_VERSION_HIVE_8732 = 1;
+
+  /** Every compressed chunk has a 3 byte header that can hold up to a 23 bit length. */
+  private static final int MAX_CHUNK_LENGTH = (1 << 23) - 1;
+
+  /**
+   * A range of bytes in a file.
+   */
+  public static final class ByteRange extends FooterFilter.Range {
+    ByteRange(long offset, long length) {
+      super(offset, length);
+    }
+  }
+
+  /**
+   * How a column is compared to a literal in a {@link Filter}.
+   */
+  public enum Comparison {
+    EQUAL(FooterFilter.Op.EQUAL),
+    LESS(FooterFilter.Op.LESS),
+    LESS_EQUAL(FooterFilter.Op.LESS_EQUAL),
+    GREATER(FooterFilter.Op.GREATER),
+    GREATER_EQUAL(FooterFilter.Op.GREATER_EQUAL);
+
+    final FooterFilter.Op op;
+
+    Comparison(FooterFilter.Op op) {
+      this.op = op;
+    }
+  }
+
+  /**
+   * A predicate on the rows of a file that can be checked against stripe statistics. Columns are
+   * named by their dotted path in the schema, like "a.b" for field b of struct a.
+   */
+  public static final class Filter {
+    final FooterFilter filter;
+
+    private Filter(FooterFilter filter) {
+      this.filter = filter;
+    }
+
+    /**
+     * Compare an integer, date, decimal or floating point column to a literal. Dates are
+     * compared as days since the epoch.
+     */
+    public static Filter compare(String column, Comparison op, long value) {
+      return new Filter(FooterFilter.compare(column, op.op, value));
+    }
+
+    /**
+     * Compare a floating point, decimal or integer column to a literal.
+     */
+    public static Filter compare(String column, Comparison op, double value) {
+      return new Filter(FooterFilter.compare(column, op.op, value));
+    }
+
+    /**
+     * Compare a string column to a literal, using unsigned byte order of the UTF-8 encoded
+     * value.
+     */
+    public static Filter compare(String column, Comparison op, String value) {
+      return new Filter(FooterFilter.compare(column, op.op, value));
+    }
+
+    public static Filter isNull(String column) {
+      return new Filter(FooterFilter.isNull(column, true));
+    }
+
+    public static Filter isNotNull(String column) {
+      return new Filter(FooterFilter.isNull(column, false));
+    }
+
+    public static Filter and(Filter... filters) {
+      return new Filter(FooterFilter.and(unwrap(filters)));
+    }
+
+    public static Filter or(Filter... filters) {
+      return new Filter(FooterFilter.or(unwrap(filters)));
+    }
+
+    private static FooterFilter[] unwrap(Filter[] filters) {
+      FooterFilter[] ret = new FooterFilter[filters.length];
+      for (int i = 0; i < filters.length; i++) {
+        ret[i] = filters[i].filter;
+      }
+      return ret;
+    }
+  }
+
+  /**
+   * The statistics of one stripe.
+   */
+  private final class StripeStatistics implements FooterFilter.Statistics {
+    private final int stripe;
+
+    StripeStatistics(int stripe) {
+      this.stripe = stripe;
+    }
+
+    @Override
+    public boolean mightHaveNulls(String column) {
+      ProtobufLite.Message stats = getStripeStatistics(stripe, column);
+      // Old writers do not record if there are nulls at all
+      return stats == null || !stats.has(10) || stats.getLong(10, 1) != 0;
+    }
+
+    @Override
+    public boolean mightHaveValues(String column) {
+      ProtobufLite.Message stats = getStripeStatistics(stripe, column);
+      return stats == null || stats.getLong(1, 1) > 0;
+    }
+
+    @Override
+    public int[] compareToBounds(String column, FooterFilter.Literal literal) {
+      ProtobufLite.Message stats = getStripeStatistics(stripe, column);
+      if (stats == null) {
+        return null;
+      }
+      switch (getKind(column)) {
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+        case DATE: {
+          ProtobufLite.Message s = stats.getMessage(getKind(column) == DATE ? 7 : 2);
+          if (s == null || !s.has(1) || !s.has(2)) {
+            return null;
+          }
+          return FooterFilter.compareToBounds(literal, s.getSignedLong(1, 0),
+              s.getSignedLong(2, 0));
+        }
+        case FLOAT:
+        case DOUBLE: {
+          ProtobufLite.Message s = stats.getMessage(3);
+          if (s == null || !s.has(1) || !s.has(2)) {
+            return null;
+          }
+          return FooterFilter.compareToBounds(literal, s.getDouble(1, Double.NaN),
+              s.getDouble(2, Double.NaN));
+        }
+        case DECIMAL: {
+          ProtobufLite.Message s = stats.getMessage(6);
+          if (literal.bytesValue != null || s == null || !s.has(1) || !s.has(2)) {
+            return null;
+          }
+          BigDecimal lit;
+          if (literal.longValue != null) {
+            lit = BigDecimal.valueOf(literal.longValue);
+          } else if (Double.isNaN(literal.doubleValue) ||
+              Double.isInfinite(literal.doubleValue)) {
+            return null;
+          } else {
+            lit = new BigDecimal(literal.doubleValue);
+          }
+          try {
+            return new int[]{lit.compareTo(new BigDecimal(s.getString(1))),
+                lit.compareTo(new BigDecimal(s.getString(2)))};
+          } catch (NumberFormatException e) {
+            return null;
+          }
+        }
+        case STRING:
+        case VARCHAR: {
+          ProtobufLite.Message s = stats.getMessage(4);
+          if (s == null || writerVersion < WRITER_VERSION_HIVE_8732) {
+            return null;
+          }
+          // Long values may only have truncated bounds
+          byte[] min = s.has(1) ? s.getBytes(1) : s.getBytes(4);
+          byte[] max = s.has(2) ? s.getBytes(2) : s.getBytes(5);
+          if (min == null || max == null) {
+            return null;
+          }
+          return FooterFilter.compareToBounds(literal, min, max);
+        }
+        default:
+          return null;
+      }
+    }
+  }
+
+  private final ProtobufLite.Message postScript;
+  private final ProtobufLite.Message footer;
+  private final ProtobufLite.Message metadata;
+  private final int compression;
+  private final int compressionBlockSize;
+  private final int writerVersion;
+  private final List<ProtobufLite.Message> stripes;
+  private final List<ProtobufLite.Message> stripeStats;
+  private final List<Integer> kinds = new ArrayList<>();
+  private final List<String> columnNames = new ArrayList<>();
+  private final Map<String, Integer> columnIds = new HashMap<>();
+
+  private ORCFooter(ProtobufLite.Message postScript, ProtobufLite.Message footer,
+                    ProtobufLite.Message metadata) {
+    this.postScript = postScript;
+    this.footer = footer;
+    this.metadata = metadata;
+    this.compression = (int) postScript.getLong(2, NONE);
+    this.compressionBlockSize = (int) postScript.getLong(3, 256 * 1024);
+    this.writerVersion = (int) postScript.getLong(6, 0);
+    this.stripes = footer.getMessages(3);
+    List<ProtobufLite.Message> types = footer.getMessages(4);
+    if (types.isEmpty()) {
+      throw new IllegalStateException("ORC footer has no schema");
+    }
+    for (ProtobufLite.Message type : types) {
+      kinds.add((int) type.getLong(1, -1));
+      columnNames.add(null);
+    }
+    nameColumns(types, 0, "");
+    List<ProtobufLite.Message> stats = metadata == null ? Collections.emptyList() :
+        metadata.getMessages(1);
+    // Without statistics for every stripe there is nothing to prune with
+    this.stripeStats = stats.size() == stripes.size() ? stats : null;
+  }
+
+  private void nameColumns(List<ProtobufLite.Message> types, int id, String path) {
+    ProtobufLite.Message type = types.get(id);
+    long[] children = type.getRepeatedLongs(2);
+    if (kinds.get(id) != STRUCT) {
+      // The children of lists, maps and unions are not named
+      return;
+    }
+    List<String> names = type.getStrings(3);
+    if (names.size() != children.length) {
+      throw new IllegalStateException("Struct column " + id + " has " + children.length +
+          " children but " + names.size() + " names");
+    }
+    for (int i = 0; i < children.length; i++) {
+      int child = (int) children[i];
+      if (child <= id || child >= types.size()) {
+        throw new IllegalStateException("Invalid child column " + child + " of " + id);
+      }
+      String childPath = path.isEmpty() ? names.get(i) : path + "." + names.get(i);
+      columnNames.set(child, childPath);
+      columnIds.put(childPath, child);
+      nameColumns(types, child, childPath);
+    }
+  }
+
+  /**
+   * Read the tail of an ORC file that is held in a host buffer.
+   */
+  public static ORCFooter readFrom(HostMemoryBuffer buffer, long offset, long len) {
+    if (len < MAGIC.length + 1) {
+      throw new IllegalArgumentException("Buffer is too small to be an ORC file");
+    }
+    int psLength = buffer.getByte(offset + len - 1) & 0xFF;
+    if (psLength == 0 || psLength > len - 1 - MAGIC.length) {
+      throw new IllegalStateException("Invalid ORC postscript length " + psLength);
+    }
+    byte[] ps = new byte[psLength];
+    buffer.getBytes(ps, 0, offset + len - 1 - psLength, psLength);
+    ProtobufLite.Message postScript = parsePostScript(ps);
+    long tailLength = checkTailLength(postScript, psLength, len);
+    byte[] tail = new byte[(int) tailLength];
+    buffer.getBytes(tail, 0, offset + len - 1 - psLength - tailLength, tailLength);
+    return parse(postScript, tail);
+  }
+
+  /**
+   * Read only the tail of an ORC file.
+   */
+  public static ORCFooter readFrom(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      long len = raf.length();
+      if (len < MAGIC.length + 1) {
+        throw new IllegalArgumentException(file + " is too small to be an ORC file");
+      }
+      raf.seek(len - 1);
+      int psLength = raf.read();
+      if (psLength <= 0 || psLength > len - 1 - MAGIC.length) {
+        throw new IllegalStateException("Invalid ORC postscript length " + psLength);
+      }
+      byte[] ps = new byte[psLength];
+      raf.seek(len - 1 - psLength);
+      raf.readFully(ps);
+      ProtobufLite.Message postScript = parsePostScript(ps);
+      long tailLength = checkTailLength(postScript, psLength, len);
+      byte[] tail = new byte[(int) tailLength];
+      raf.seek(len - 1 - psLength - tailLength);
+      raf.readFully(tail);
+      return parse(postScript, tail);
+    }
+  }
+
+  private static ProtobufLite.Message parsePostScript(byte[] ps) {
+    ProtobufLite.Message ret = ProtobufLite.Message.parse(ps);
+    byte[] magic = ret.getBytes(8000);
+    if (magic != null && !Arrays.equals(magic, MAGIC)) {
+      throw new IllegalStateException("THIS DOES NOT LOOK LIKE AN ORC FILE, the postscript " +
+          "has the wrong magic number");
+    }
+    return ret;
+  }
+
+  private static long checkTailLength(ProtobufLite.Message postScript, int psLength,
+                                      long fileLength) {
+    long footerLength = postScript.getLong(1, -1);
+    long metadataLength = postScript.getLong(5, 0);
+    long tailLength = footerLength + metadataLength;
+    if (footerLength <= 0 || metadataLength < 0 ||
+        tailLength > fileLength - 1 - psLength - MAGIC.length) {
+      throw new IllegalStateException("ORC footer of " + footerLength + " bytes and metadata" +
+          " of " + metadataLength + " bytes do not fit in a file of " + fileLength + " bytes");
+    }
+    return tailLength;
+  }
+
+  private static ORCFooter parse(ProtobufLite.Message postScript, byte[] tail) {
+    int footerLength = (int) postScript.getLong(1, -1);
+    int metadataLength = tail.length - footerLength;
+    int compression = (int) postScript.getLong(2, NONE);
+    ProtobufLite.Message metadata = null;
+    if (metadataLength > 0) {
+      metadata = ProtobufLite.Message.parse(decompress(compression, tail, 0, metadataLength));
+    }
+    ProtobufLite.Message footer = ProtobufLite.Message.parse(
+        decompress(compression, tail, metadataLength, footerLength));
+    return new ORCFooter(postScript, footer, metadata);
+  }
+
+  /**
+   * Undo ORC compression, where the data is split into chunks that each start with a 3 byte
+   * little endian header holding the compressed length and a flag for chunks that are stored
+   * as is.
+   */
+  static byte[] decompress(int compression, byte[] data, int offset, int length) {
+    if (compression == NONE) {
+      return Arrays.copyOfRange(data, offset, offset + length);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream(length * 2);
+    int pos = offset;
+    int end = offset + length;
+    while (pos < end) {
+      if (end - pos < 3) {
+        throw new IllegalStateException("Truncated ORC compression chunk header");
+      }
+      int header = (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8 | (data[pos + 2] & 0xFF) << 16;
+      pos += 3;
+      int chunkLength = header >>> 1;
+      if (chunkLength > end - pos) {
+        throw new IllegalStateException("ORC compression chunk of " + chunkLength +
+            " bytes runs past the end of the data");
+      }
+      if ((header & 1) == 1) {
+        out.write(data, pos, chunkLength);
+      } else if (compression == ZLIB) {
+        inflate(data, pos, chunkLength, out);
+      } else if (compression == SNAPPY) {
+        unsnappy(data, pos, chunkLength, out);
+      } else {
+        throw new UnsupportedOperationException("ORC compression kind " + compression +
+            " is not supported for the file tail");
+      }
+      pos += chunkLength;
+    }
+    return out.toByteArray();
+  }
+
+  private static void inflate(byte[] data, int offset, int length, ByteArrayOutputStream out) {
+    // ORC uses raw deflate without the zlib header
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(data, offset, length);
+      byte[] buf = new byte[64 * 1024];
+      while (!inflater.finished()) {
+        int n = inflater.inflate(buf);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        out.write(buf, 0, n);
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Corrupt ZLIB data in ORC file", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Decompress one raw snappy block.
+   */
+  private static void unsnappy(byte[] data, int offset, int length, ByteArrayOutputStream out) {
+    int[] pos = {offset};
+    int end = offset + length;
+    long expected = ProtobufLite.readVarint(data, pos, end);
+    if (expected < 0 || expected > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Invalid snappy length " + expected);
+    }
+    byte[] ret = new byte[(int) expected];
+    int at = 0;
+    int p = pos[0];
+    try {
+      while (p < end) {
+        int tag = data[p++] & 0xFF;
+        int type = tag & 3;
+        if (type == 0) {
+          int len = tag >>> 2;
+          if (len >= 60) {
+            int bytes = len - 59;
+            len = 0;
+            for (int i = 0; i < bytes; i++) {
+              len |= (data[p++] & 0xFF) << (i * 8);
+            }
+          }
+          len += 1;
+          if (len > end - p) {
+            throw new IllegalStateException("Snappy literal runs past the end of the data");
+          }
+          System.arraycopy(data, p, ret, at, len);
+          p += len;
+          at += len;
+        } else {
+          int len;
+          int copyOffset;
+          if (type == 1) {
+            len = ((tag >>> 2) & 7) + 4;
+            copyOffset = ((tag >>> 5) << 8) | (data[p++] & 0xFF);
+          } else if (type == 2) {
+            len = (tag >>> 2) + 1;
+            copyOffset = (data[p] & 0xFF) | (data[p + 1] & 0xFF) << 8;
+            p += 2;
+          } else {
+            len = (tag >>> 2) + 1;
+            copyOffset = (data[p] & 0xFF) | (data[p + 1] & 0xFF) << 8 |
+                (data[p + 2] & 0xFF) << 16 | (data[p + 3] & 0xFF) << 24;
+            p += 4;
+          }
+          if (copyOffset <= 0 || copyOffset > at) {
+            throw new IllegalStateException("Invalid snappy copy offset " + copyOffset);
+          }
+          // The ranges can overlap to repeat a pattern, so copy a byte at a time
+          for (int i = 0; i < len; i++) {
+            ret[at + i] = ret[at - copyOffset + i];
+          }
+          at += len;
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalStateException("Corrupt snappy data in ORC file", e);
+    }
+    if (at != ret.length) {
+      throw new IllegalStateException("Snappy data decoded to " + at + " bytes, but " +
+          ret.length + " were expected");
+    }
+    out.write(ret, 0, ret.length);
+  }
+
+  /**
+   * Store data with the framing of a compression kind, but without compressing it. Readers
+   * allocate buffers of the compression block size so chunks may not be larger than that.
+   */
+  private byte[] frame(byte[] data) {
+    if (compression == NONE) {
+      return data;
+    }
+    int chunk = Math.min(compressionBlockSize, MAX_CHUNK_LENGTH);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + 3 * (data.length /
+        chunk + 1));
+    for (int pos = 0; pos < data.length; pos += chunk) {
+      int len = Math.min(chunk, data.length - pos);
+      int header = (len << 1) | 1;
+      out.write(header);
+      out.write(header >>> 8);
+      out.write(header >>> 16);
+      out.write(data, pos, len);
+    }
+    return out.toByteArray();
+  }
+
+  public long getNumRows() {
+    return footer.getLong(6, 0);
+  }
+
+  public int getNumStripes() {
+    return stripes.size();
+  }
+
+  public long getStripeNumRows(int stripe) {
+    return stripes.get(stripe).getLong(5, 0);
+  }
+
+  /**
+   * Get the dotted paths of the named columns, in the order of their column ids.
+   */
+  public List<String> getColumnNames() {
+    List<String> ret = new ArrayList<>(columnIds.size());
+    for (String name : columnNames) {
+      if (name != null) {
+        ret.add(name);
+      }
+    }
+    return Collections.unmodifiableList(ret);
+  }
+
+  /**
+   * Returns true if there are statistics for each stripe that filters can be checked against.
+   */
+  public boolean hasStripeStatistics() {
+    return stripeStats != null;
+  }
+
+  private int getColumnId(String column) {
+    Integer id = columnIds.get(column);
+    if (id == null) {
+      throw new IllegalArgumentException("No column named " + column + " in " +
+          getColumnNames());
+    }
+    return id;
+  }
+
+  private int getKind(String column) {
+    return kinds.get(getColumnId(column));
+  }
+
+  private ProtobufLite.Message getStripeStatistics(int stripe, String column) {
+    int id = getColumnId(column);
+    if (stripeStats == null) {
+      return null;
+    }
+    List<ProtobufLite.Message> columns = stripeStats.get(stripe).getMessages(1);
+    return id < columns.size() ? columns.get(id) : null;
+  }
+
+  /**
+   * Find the stripes that might have rows matching a filter.
+   * @return the indices of those stripes in order.
+   */
+  public int[] selectStripes(Filter filter) {
+    int[] ret = new int[stripes.size()];
+    int count = 0;
+    for (int i = 0; i < stripes.size(); i++) {
+      if (filter.filter.mightMatch(new StripeStatistics(i))) {
+        ret[count++] = i;
+      }
+    }
+    return Arrays.copyOf(ret, count);
+  }
+
+  /**
+   * Get the range of the file a stripe, including its indexes and footer, is stored in.
+   */
+  public ByteRange getStripeRange(int stripe) {
+    ProtobufLite.Message s = stripes.get(stripe);
+    return new ByteRange(s.getLong(1, 0),
+        s.getLong(2, 0) + s.getLong(3, 0) + s.getLong(4, 0));
+  }
+
+  /**
+   * Get the ranges of the file that hold some stripes. Ranges that touch are combined.
+   * @param stripes the stripes, in increasing order.
+   */
+  public List<ByteRange> getByteRanges(int[] stripes) {
+    List<ByteRange> ret = new ArrayList<>();
+    for (int index : stripes) {
+      ByteRange r = getStripeRange(index);
+      if (!ret.isEmpty()) {
+        ByteRange last = ret.get(ret.size() - 1);
+        if (last.offset + last.length == r.offset) {
+          ret.set(ret.size() - 1, new ByteRange(last.offset, last.length + r.length));
+          continue;
+        }
+      }
+      ret.add(r);
+    }
+    return ret;
+  }
+
+  /**
+   * Build the tail for a file holding only some stripes, packed one after the other right
+   * after the leading magic number. The file level column statistics are dropped because they
+   * no longer describe the data.
+   * @return the metadata, footer, postscript and postscript length, ready to be written.
+   */
+  byte[] buildPrunedTail(int[] keep) {
+    List<ProtobufLite.Message> newStripes = new ArrayList<>(keep.length);
+    List<ProtobufLite.Message> newStats = new ArrayList<>(keep.length);
+    long at = MAGIC.length;
+    long numRows = 0;
+    int last = -1;
+    for (int index : keep) {
+      if (index <= last || index >= stripes.size()) {
+        throw new IllegalArgumentException("Stripes must be valid and in increasing order");
+      }
+      last = index;
+      ProtobufLite.Message s = ProtobufLite.Message.parse(stripes.get(index).toByteArray());
+      s.setLong(1, at);
+      newStripes.add(s);
+      if (stripeStats != null) {
+        newStats.add(stripeStats.get(index));
+      }
+      at += getStripeRange(index).length;
+      numRows += s.getLong(5, 0);
+    }
+    ProtobufLite.Message newFooter = ProtobufLite.Message.parse(footer.toByteArray());
+    newFooter.setLong(1, MAGIC.length);
+    newFooter.setLong(2, at - MAGIC.length);
+    newFooter.setMessages(3, newStripes);
+    newFooter.setLong(6, numRows);
+    newFooter.remove(7);
+    byte[] footerBytes = frame(newFooter.toByteArray());
+    byte[] metadataBytes = new byte[0];
+    if (metadata != null) {
+      ProtobufLite.Message newMetadata = ProtobufLite.Message.parse(metadata.toByteArray());
+      newMetadata.setMessages(1, newStats);
+      metadataBytes = frame(newMetadata.toByteArray());
+    }
+    ProtobufLite.Message newPostScript = ProtobufLite.Message.parse(postScript.toByteArray());
+    newPostScript.setLong(1, footerBytes.length);
+    newPostScript.setLong(5, metadataBytes.length);
+    byte[] psBytes = newPostScript.toByteArray();
+    if (psBytes.length > 255) {
+      throw new IllegalStateException("ORC postscript is too large to write");
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(metadataBytes, 0, metadataBytes.length);
+    out.write(footerBytes, 0, footerBytes.length);
+    out.write(psBytes, 0, psBytes.length);
+    out.write(psBytes.length);
+    return out.toByteArray();
+  }
+
+  private long prunedSize(int[] keep, byte[] tail) {
+    long size = MAGIC.length + tail.length;
+    for (int stripe : keep) {
+      size += getStripeRange(stripe).length;
+    }
+    return size;
+  }
+
+  /**
+   * Build an ORC file holding only some of the stripes of a file in a host buffer.
+   * @param buffer the buffer holding the whole file.
+   * @param offset where the file starts in the buffer.
+   * @param stripes the stripes to keep, in increasing order.
+   * @return a new buffer owned by the caller.
+   */
+  public HostMemoryBuffer buildPrunedFile(HostMemoryBuffer buffer, long offset, int[] stripes) {
+    byte[] tail = buildPrunedTail(stripes);
+    HostMemoryBuffer ret = HostMemoryBuffer.allocate(prunedSize(stripes, tail));
+    boolean success = false;
+    try {
+      ret.setBytes(0, MAGIC, 0, MAGIC.length);
+      long at = MAGIC.length;
+      for (int stripe : stripes) {
+        ByteRange r = getStripeRange(stripe);
+        ret.copyFromHostBuffer(at, buffer, offset + r.offset, r.length);
+        at += r.length;
+      }
+      ret.setBytes(at, tail, 0, tail.length);
+      success = true;
+    } finally {
+      if (!success) {
+        ret.close();
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Build an ORC file holding only some of the stripes of a file, reading only the parts of
+   * the file that are needed.
+   * @param file the file the tail was read from.
+   * @param stripes the stripes to keep, in increasing order.
+   * @return a new buffer owned by the caller.
+   */
+  public HostMemoryBuffer buildPrunedFile(File file, int[] stripes) throws IOException {
+    byte[] tail = buildPrunedTail(stripes);
+    HostMemoryBuffer ret = HostMemoryBuffer.allocate(prunedSize(stripes, tail));
+    boolean success = false;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      ret.setBytes(0, MAGIC, 0, MAGIC.length);
+      long at = MAGIC.length;
+      byte[] staging = new byte[1024 * 1024];
+      for (int stripe : stripes) {
+        ByteRange r = getStripeRange(stripe);
+        raf.seek(r.offset);
+        long left = r.length;
+        while (left > 0) {
+          int amount = (int) Math.min(staging.length, left);
+          raf.readFully(staging, 0, amount);
+          ret.setBytes(at, staging, 0, amount);
+          at += amount;
+          left -= amount;
+        }
+      }
+      ret.setBytes(at, tail, 0, tail.length);
+      success = true;
+    } finally {
+      if (!success) {
+        ret.close();
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,379 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a single non-nested host column from several threads at once. The rows are split into
+ * segments and each segment is filled by one thread through its own {@link Segment}.
+ * <p/>
+ * Segment boundaries are always a multiple of 64 rows so every segment owns whole words of
+ * the validity buffer and no two threads ever touch the same byte. Fixed width values are
+ * written directly into their place in one preallocated data buffer. STRING data is written
+ * into per segment chunks, and when the column is built a prefix sum over the segment sizes
+ * gives each segment its place in the final data buffer. The segments are then copied and
+ * their offsets are rebased in parallel.
+ * <pre>
+ * try (ParallelColumnBuilder pb = new ParallelColumnBuilder(DType.INT64, numRows, threads)) {
+ *   IntStream.range(0, pb.getNumSegments()).parallel().forEach(s -&gt; {
+ *     ParallelColumnBuilder.Segment seg = pb.getSegment(s);
+ *     for (long row = seg.getStartRow(); row &lt; seg.getEndRow(); row++) {
+ *       seg.append(compute(row));
+ *     }
+ *   });
+ *   return pb.build();
+ * }
+ * </pre>
+ */
+public final class ParallelColumnBuilder implements AutoCloseable {
+  private final DType type;
+  private final long numRows;
+  private final Segment[] segments;
+  private HostMemoryBuffer data;
+  private HostMemoryBuffer offsets;
+  private volatile HostMemoryBuffer valid = null;
+  private boolean built = false;
+
+  /**
+   * Create a builder.
+   * @param type the type of the column, nested types are not supported.
+   * @param numRows the number of rows in the column.
+   * @param numSegments the number of segments to split the rows into. There may be fewer
+   *                    segments than this so that each one has at least 64 rows.
+   */
+  public ParallelColumnBuilder(DType type, long numRows, int numSegments) {
+    if (type.isNestedType() || type.equals(DType.EMPTY)) {
+      throw new UnsupportedOperationException(type + " is not supported");
+    }
+    if (numRows < 0 || numRows >= Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Row count " + numRows + " is out of range");
+    }
+    if (numSegments <= 0) {
+      throw new IllegalArgumentException("At least one segment is needed");
+    }
+    this.type = type;
+    this.numRows = numRows;
+    long words = (numRows + 63) / 64;
+    int actualSegments = (int) Math.max(1, Math.min(numSegments, words));
+    long wordsPerSegment = (words + actualSegments - 1) / Math.max(1, actualSegments);
+    segments = new Segment[actualSegments];
+    boolean success = false;
+    try {
+      if (type.equals(DType.STRING)) {
+        offsets = HostMemoryBuffer.allocate((numRows + 1) * HostColumnVector.OFFSET_SIZE);
+        offsets.setInt(0, 0);
+      } else if (numRows > 0) {
+        data = HostMemoryBuffer.allocate(numRows * type.getSizeInBytes());
+      }
+      for (int i = 0; i < actualSegments; i++) {
+        long start = Math.min(numRows, i * wordsPerSegment * 64);
+        long end = Math.min(numRows, (i + 1) * wordsPerSegment * 64);
+        segments[i] = new Segment(start, end);
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        close();
+      }
+    }
+  }
+
+  public DType getType() {
+    return type;
+  }
+
+  public long getRowCount() {
+    return numRows;
+  }
+
+  public int getNumSegments() {
+    return segments.length;
+  }
+
+  /**
+   * Get a segment. Each segment should only be used by one thread at a time.
+   */
+  public Segment getSegment(int index) {
+    return segments[index];
+  }
+
+  private HostMemoryBuffer getOrCreateValid() {
+    HostMemoryBuffer ret = valid;
+    if (ret == null) {
+      synchronized (this) {
+        ret = valid;
+        if (ret == null) {
+          long length = BitVectorHelper.getValidityAllocationSizeInBytes(numRows);
+          ret = HostMemoryBuffer.allocate(length);
+          ret.setMemory(0, length, (byte) 0xFF);
+          valid = ret;
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Build the column once every segment has been filled. Segments are stitched together in
+   * parallel and the caller owns the returned column.
+   */
+  public HostColumnVector build() {
+    if (built) {
+      throw new IllegalStateException("The column was already built");
+    }
+    for (Segment s : segments) {
+      if (s.getRowCount() != s.getEndRow() - s.getStartRow()) {
+        throw new IllegalStateException("Segment for rows " + s.getStartRow() + " to " +
+            s.getEndRow() + " only has " + s.getRowCount() + " rows");
+      }
+    }
+    long nullCount = 0;
+    for (Segment s : segments) {
+      nullCount += s.nullCount;
+    }
+    if (type.equals(DType.STRING)) {
+      long[] bases = new long[segments.length];
+      long total = 0;
+      for (int i = 0; i < segments.length; i++) {
+        bases[i] = total;
+        total += segments[i].dataLength;
+      }
+      if (total > Integer.MAX_VALUE) {
+        throw new IllegalStateException("A string column cannot have more than " +
+            Integer.MAX_VALUE + " bytes of data");
+      }
+      if (total > 0) {
+        data = HostMemoryBuffer.allocate(total);
+      }
+      HostMemoryBuffer d = data;
+      IntStream.range(0, segments.length).parallel().forEach(i -> {
+        Segment s = segments[i];
+        if (s.dataLength > 0) {
+          s.chunks.copyTo(d, bases[i], s.dataLength);
+        }
+        s.chunks.close();
+        int base = (int) bases[i];
+        if (base != 0) {
+          for (long row = s.getStartRow() + 1; row <= s.getEndRow(); row++) {
+            long at = row * HostColumnVector.OFFSET_SIZE;
+            offsets.setInt(at, offsets.getInt(at) + base);
+          }
+        }
+      });
+    }
+    HostColumnVector ret = new HostColumnVector(type, numRows, Optional.of(nullCount), data,
+        valid, offsets, new ArrayList<>());
+    data = null;
+    offsets = null;
+    valid = null;
+    built = true;
+    return ret;
+  }
+
+  @Override
+  public void close() {
+    if (data != null) {
+      data.close();
+      data = null;
+    }
+    if (offsets != null) {
+      offsets.close();
+      offsets = null;
+    }
+    if (valid != null) {
+      valid.close();
+      valid = null;
+    }
+    for (Segment s : segments) {
+      if (s != null && s.chunks != null) {
+        s.chunks.close();
+      }
+    }
+  }
+
+  /**
+   * A range of rows that one thread fills in order.
+   */
+  public final class Segment {
+    private final long startRow;
+    private final long endRow;
+    private final ChunkedColumnBuilder.Chunks chunks;
+    private long row;
+    private long nullCount = 0;
+    private long dataLength = 0;
+
+    private Segment(long startRow, long endRow) {
+      this.startRow = startRow;
+      this.endRow = endRow;
+      this.row = startRow;
+      this.chunks = type.equals(DType.STRING) ?
+          new ChunkedColumnBuilder.Chunks(ChunkedColumnBuilder.DEFAULT_CHUNK_BYTES, false) : null;
+    }
+
+    /**
+     * The first row of the column that this segment holds.
+     */
+    public long getStartRow() {
+      return startRow;
+    }
+
+    /**
+     * One past the last row of the column that this segment holds.
+     */
+    public long getEndRow() {
+      return endRow;
+    }
+
+    /**
+     * The number of rows appended to this segment so far.
+     */
+    public long getRowCount() {
+      return row - startRow;
+    }
+
+    /**
+     * Always checked, because a write past the end of this segment would land in the rows of
+     * the next one.
+     */
+    private void checkNotFull() {
+      if (row >= endRow) {
+        throw new IllegalStateException("Segment for rows " + startRow + " to " + endRow +
+            " is full");
+      }
+    }
+
+    private long nextRow() {
+      checkNotFull();
+      return row++;
+    }
+
+    public Segment append(byte value) {
+      assert type.isBackedByByte() : type + " is not stored as a byte.";
+      data.setByte(nextRow(), value);
+      return this;
+    }
+
+    public Segment append(boolean value) {
+      assert type.equals(DType.BOOL8) : type + " is not a supported boolean type.";
+      data.setByte(nextRow(), value ? (byte) 1 : 0);
+      return this;
+    }
+
+    public Segment append(short value) {
+      assert type.isBackedByShort() : type + " is not stored as a short.";
+      data.setShort(nextRow() * 2, value);
+      return this;
+    }
+
+    public Segment append(int value) {
+      assert type.isBackedByInt() : type + " is not stored as a int.";
+      data.setInt(nextRow() * 4, value);
+      return this;
+    }
+
+    public Segment append(long value) {
+      assert type.isBackedByLong() : type + " is not stored as a long.";
+      data.setLong(nextRow() * 8, value);
+      return this;
+    }
+
+    public Segment append(float value) {
+      assert type.equals(DType.FLOAT32) : type + " is not a supported float type.";
+      data.setFloat(nextRow() * 4, value);
+      return this;
+    }
+
+    public Segment append(double value) {
+      assert type.equals(DType.FLOAT64) : type + " is not a supported double type.";
+      data.setDouble(nextRow() * 8, value);
+      return this;
+    }
+
+    public Segment append(BigDecimal value) {
+      // Rescale input decimal with UNNECESSARY policy, which accepts no precision loss.
+      BigInteger unscaledVal = value.setScale(-type.getScale(), RoundingMode.UNNECESSARY)
+          .unscaledValue();
+      if (type.typeId == DType.DTypeEnum.DECIMAL32) {
+        data.setInt(nextRow() * 4, unscaledVal.intValueExact());
+      } else if (type.typeId == DType.DTypeEnum.DECIMAL64) {
+        data.setLong(nextRow() * 8, unscaledVal.longValueExact());
+      } else {
+        throw new IllegalStateException(type + " is not a supported decimal type.");
+      }
+      return this;
+    }
+
+    public Segment append(String value) {
+      assert value != null : "appendNull must be used to append null strings";
+      return appendUTF8String(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Segment appendUTF8String(byte[] value) {
+      return appendUTF8String(value, 0, value.length);
+    }
+
+    public Segment appendUTF8String(byte[] value, int srcOffset, int length) {
+      assert value != null : "appendNull must be used to append null strings";
+      assert srcOffset >= 0 && length >= 0 && srcOffset + length <= value.length;
+      assert type.equals(DType.STRING) : " type " + type + " is not String";
+      checkNotFull();
+      if (dataLength + length > Integer.MAX_VALUE) {
+        throw new IllegalStateException("A string column cannot have more than " +
+            Integer.MAX_VALUE + " bytes of data");
+      }
+      if (length > 0) {
+        chunks.reserve(dataLength + length, Math.min(ChunkedColumnBuilder.DEFAULT_CHUNK_BYTES,
+            ChunkedColumnBuilder.DEFAULT_STRING_BYTES_PER_ROW * (endRow - startRow)));
+        chunks.setBytes(dataLength, value, srcOffset, length);
+        dataLength += length;
+      }
+      endString();
+      return this;
+    }
+
+    private void endString() {
+      // Offsets are relative to the segment until the column is built
+      long r = nextRow();
+      offsets.setInt((r + 1) * HostColumnVector.OFFSET_SIZE, (int) dataLength);
+    }
+
+    public Segment appendNull() {
+      long r;
+      if (type.equals(DType.STRING)) {
+        r = row;
+        endString();
+      } else {
+        r = nextRow();
+      }
+      HostMemoryBuffer v = getOrCreateValid();
+      // The segment owns every byte of validity for its rows, so this is not a race
+      long bucket = r / 8;
+      v.setByte(bucket, (byte) (v.getByte(bucket) & ~(1 << (r % 8))));
+      nullCount++;
+      return this;
+    }
+  }
+}
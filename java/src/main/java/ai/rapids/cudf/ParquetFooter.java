@@ -0,0 +1,652 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the footer of a Parquet file on the host, without any native code, so row groups can
+ * be pruned before the file is handed to {@link Table#readParquet(ParquetOptions,
+ * HostMemoryBuffer, long, long)}. The footer is decoded from the Thrift compact protocol and
+ * a {@link Filter} is checked against the min, max and null count statistics of each row
+ * group. Only the row groups that might have matching rows are kept, either as byte ranges to
+ * fetch or as a smaller, self contained Parquet file.
+ * <pre>
+ * ParquetFooter footer = ParquetFooter.readFrom(file);
+ * int[] keep = footer.selectRowGroups(ParquetFooter.Filter.compare("id",
+ *     ParquetFooter.Comparison.GREATER_EQUAL, 1000L));
+ * try (HostMemoryBuffer pruned = footer.buildPrunedFile(file, keep)) {
+ *   return Table.readParquet(opts, pruned, 0, pruned.getLength());
+ * }
+ * </pre>
+ * Pruning is always conservative. If the statistics are missing, cannot be trusted for the
+ * type of the column, or the filter does not match the type of the column, the row group is
+ * kept.
+ */
+public final class ParquetFooter {
+  private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+  // Parquet physical types
+  private static final int BOOLEAN = 0;
+  private static final int INT32 = 1;
+  private static final int INT64 = 2;
+  private static final int FLOAT = 4;
+  private static final int DOUBLE = 5;
+  private static final int BYTE_ARRAY = 6;
+  private static final int FIXED_LEN_BYTE_ARRAY = 7;
+
+  // Parquet converted types that change how statistics are ordered
+  private static final int CONVERTED_DECIMAL = 5;
+  private static final int CONVERTED_UINT_8 = 11;
+  private static final int CONVERTED_UINT_64 = 14;
+  private static final int CONVERTED_INTERVAL = 21;
+
+  // The field of the LogicalType union for decimals
+  private static final int LOGICAL_DECIMAL = 5;
+
+  /**
+   * A range of bytes in a file.
+   */
+  public static final class ByteRange extends FooterFilter.Range {
+    ByteRange(long offset, long length) {
+      super(offset, length);
+    }
+  }
+
+  /**
+   * How a column is compared to a literal in a {@link Filter}.
+   */
+  public enum Comparison {
+    EQUAL(FooterFilter.Op.EQUAL),
+    LESS(FooterFilter.Op.LESS),
+    LESS_EQUAL(FooterFilter.Op.LESS_EQUAL),
+    GREATER(FooterFilter.Op.GREATER),
+    GREATER_EQUAL(FooterFilter.Op.GREATER_EQUAL);
+
+    final FooterFilter.Op op;
+
+    Comparison(FooterFilter.Op op) {
+      this.op = op;
+    }
+  }
+
+  /**
+   * A predicate on the rows of a file that can be checked against row group statistics.
+   * Columns are named by their dotted path in the schema, like "a.b" for field b of struct a.
+   */
+  public static final class Filter {
+    final FooterFilter filter;
+
+    private Filter(FooterFilter filter) {
+      this.filter = filter;
+    }
+
+    /**
+     * Compare an integer column, or a floating point column, to a literal.
+     */
+    public static Filter compare(String column, Comparison op, long value) {
+      return new Filter(FooterFilter.compare(column, op.op, value));
+    }
+
+    /**
+     * Compare a floating point column, or an integer column, to a literal.
+     */
+    public static Filter compare(String column, Comparison op, double value) {
+      return new Filter(FooterFilter.compare(column, op.op, value));
+    }
+
+    /**
+     * Compare a string or binary column to a literal, using unsigned byte order of the UTF-8
+     * encoded value.
+     */
+    public static Filter compare(String column, Comparison op, String value) {
+      return new Filter(FooterFilter.compare(column, op.op, value));
+    }
+
+    public static Filter isNull(String column) {
+      return new Filter(FooterFilter.isNull(column, true));
+    }
+
+    public static Filter isNotNull(String column) {
+      return new Filter(FooterFilter.isNull(column, false));
+    }
+
+    public static Filter and(Filter... filters) {
+      return new Filter(FooterFilter.and(unwrap(filters)));
+    }
+
+    public static Filter or(Filter... filters) {
+      return new Filter(FooterFilter.or(unwrap(filters)));
+    }
+
+    private static FooterFilter[] unwrap(Filter[] filters) {
+      FooterFilter[] ret = new FooterFilter[filters.length];
+      for (int i = 0; i < filters.length; i++) {
+        ret[i] = filters[i].filter;
+      }
+      return ret;
+    }
+  }
+
+  /**
+   * The statistics of one row group.
+   */
+  private final class RowGroupStatistics implements FooterFilter.Statistics {
+    private final int rowGroup;
+
+    RowGroupStatistics(int rowGroup) {
+      this.rowGroup = rowGroup;
+    }
+
+    @Override
+    public boolean mightHaveNulls(String column) {
+      ThriftCompact.Struct stats = getColumnMetaData(rowGroup, column).getStruct(12);
+      return stats == null || !stats.has(3) || stats.getLong(3, -1) > 0;
+    }
+
+    @Override
+    public boolean mightHaveValues(String column) {
+      ThriftCompact.Struct meta = getColumnMetaData(rowGroup, column);
+      ThriftCompact.Struct stats = meta.getStruct(12);
+      return stats == null || !stats.has(3) ||
+          stats.getLong(3, -1) < meta.getLong(5, Long.MAX_VALUE);
+    }
+
+    @Override
+    public int[] compareToBounds(String column, FooterFilter.Literal literal) {
+      ThriftCompact.Struct stats = getColumnMetaData(rowGroup, column).getStruct(12);
+      if (stats == null) {
+        return null;
+      }
+      LeafColumn leaf = getLeaf(column);
+      // Only the newer min_value and max_value fields say how they are ordered, the older ones
+      // are signed and can only be trusted for signed numbers
+      byte[] min = stats.getBinary(6);
+      byte[] max = stats.getBinary(5);
+      if (min == null || max == null) {
+        if (leaf.isUnsigned || leaf.physicalType == BYTE_ARRAY ||
+            leaf.physicalType == FIXED_LEN_BYTE_ARRAY) {
+          return null;
+        }
+        min = stats.getBinary(2);
+        max = stats.getBinary(1);
+        if (min == null || max == null) {
+          return null;
+        }
+      }
+      // Decimal statistics are unscaled so they cannot be compared to the literal
+      if (leaf.isDecimal) {
+        return null;
+      }
+      switch (leaf.physicalType) {
+        case BOOLEAN:
+        case INT32:
+        case INT64:
+        case FLOAT:
+        case DOUBLE: {
+          if (leaf.isUnsigned) {
+            return null;
+          }
+          Number minValue = decodeNumber(leaf.physicalType, min);
+          Number maxValue = decodeNumber(leaf.physicalType, max);
+          if (minValue == null || maxValue == null) {
+            return null;
+          }
+          if (minValue instanceof Double) {
+            return FooterFilter.compareToBounds(literal, minValue.doubleValue(),
+                maxValue.doubleValue());
+          }
+          return FooterFilter.compareToBounds(literal, minValue.longValue(),
+              maxValue.longValue());
+        }
+        case BYTE_ARRAY:
+        case FIXED_LEN_BYTE_ARRAY:
+          if (leaf.convertedType == CONVERTED_INTERVAL) {
+            return null;
+          }
+          return FooterFilter.compareToBounds(literal, min, max);
+        default:
+          return null;
+      }
+    }
+  }
+
+  /**
+   * Decode a plain encoded statistics value, or null if it is not the expected size.
+   */
+  private static Number decodeNumber(int physicalType, byte[] value) {
+    switch (physicalType) {
+      case BOOLEAN:
+        return value.length == 1 ? (long) (value[0] & 1) : null;
+      case INT32:
+        return value.length == 4 ? (long) (int) littleEndian(value, 4) : null;
+      case INT64:
+        return value.length == 8 ? littleEndian(value, 8) : null;
+      case FLOAT:
+        return value.length == 4 ?
+            (double) Float.intBitsToFloat((int) littleEndian(value, 4)) : null;
+      case DOUBLE:
+        return value.length == 8 ? Double.longBitsToDouble(littleEndian(value, 8)) : null;
+      default:
+        return null;
+    }
+  }
+
+  private static long littleEndian(byte[] value, int len) {
+    long ret = 0;
+    for (int i = len - 1; i >= 0; i--) {
+      ret = (ret << 8) | (value[i] & 0xFF);
+    }
+    return ret;
+  }
+
+  private static final class LeafColumn {
+    final String path;
+    final int physicalType;
+    final int convertedType;
+    final boolean isUnsigned;
+    final boolean isDecimal;
+
+    LeafColumn(String path, int physicalType, int convertedType, boolean isUnsigned,
+               boolean isDecimal) {
+      this.path = path;
+      this.physicalType = physicalType;
+      this.convertedType = convertedType;
+      this.isUnsigned = isUnsigned;
+      this.isDecimal = isDecimal;
+    }
+  }
+
+  private final ThriftCompact.Struct metadata;
+  private final List<LeafColumn> leaves = new ArrayList<>();
+  private final Map<String, Integer> leafIndex = new HashMap<>();
+  private final List<ThriftCompact.Struct> rowGroups = new ArrayList<>();
+
+  private ParquetFooter(ThriftCompact.Struct metadata) {
+    this.metadata = metadata;
+    ThriftCompact.ThriftList schema = metadata.getList(2);
+    if (schema == null || schema.size() == 0) {
+      throw new IllegalStateException("Parquet footer has no schema");
+    }
+    int[] at = {1};
+    int numChildren = schema.getStruct(0).getInt(5, 0);
+    for (int i = 0; i < numChildren; i++) {
+      addLeaves(schema, at, "");
+    }
+    ThriftCompact.ThriftList groups = metadata.getList(4);
+    if (groups != null) {
+      for (int i = 0; i < groups.size(); i++) {
+        ThriftCompact.Struct rg = groups.getStruct(i);
+        ThriftCompact.ThriftList chunks = rg.getList(1);
+        if (chunks == null || chunks.size() != leaves.size()) {
+          throw new IllegalStateException("Row group " + i + " does not have a column chunk " +
+              "for each of the " + leaves.size() + " leaf columns");
+        }
+        for (int c = 0; c < chunks.size(); c++) {
+          if (chunks.getStruct(c).getStruct(3) == null) {
+            throw new IllegalStateException("Column chunk " + c + " of row group " + i +
+                " has no metadata");
+          }
+        }
+        rowGroups.add(rg);
+      }
+    }
+  }
+
+  private void addLeaves(ThriftCompact.ThriftList schema, int[] at, String prefix) {
+    if (at[0] >= schema.size()) {
+      throw new IllegalStateException("Parquet schema is missing elements");
+    }
+    ThriftCompact.Struct element = schema.getStruct(at[0]++);
+    String name = element.getString(4);
+    String path = prefix.isEmpty() ? name : prefix + "." + name;
+    int numChildren = element.getInt(5, 0);
+    if (numChildren > 0) {
+      for (int i = 0; i < numChildren; i++) {
+        addLeaves(schema, at, path);
+      }
+    } else {
+      int convertedType = element.getInt(6, -1);
+      boolean unsigned = convertedType >= CONVERTED_UINT_8 && convertedType <= CONVERTED_UINT_64;
+      boolean decimal = convertedType == CONVERTED_DECIMAL;
+      ThriftCompact.Struct logical = element.getStruct(10);
+      if (logical != null && logical.getStruct(10) != null) {
+        Object signed = logical.getStruct(10).get(2);
+        unsigned = Boolean.FALSE.equals(signed);
+      }
+      if (logical != null && logical.getStruct(LOGICAL_DECIMAL) != null) {
+        decimal = true;
+      }
+      leafIndex.put(path, leaves.size());
+      leaves.add(new LeafColumn(path, element.getInt(1, -1), convertedType, unsigned,
+          decimal));
+    }
+  }
+
+  /**
+   * Parse a footer that has already been read.
+   * @param footer the Thrift encoded FileMetaData, without the length and magic that follow it.
+   */
+  public static ParquetFooter parse(byte[] footer, int offset, int length) {
+    ThriftCompact.Reader reader = new ThriftCompact.Reader(footer, offset, length);
+    return new ParquetFooter(reader.readStruct());
+  }
+
+  /**
+   * Read the footer of a whole Parquet file in a host buffer.
+   */
+  public static ParquetFooter readFrom(HostMemoryBuffer buffer, long offset, long len) {
+    if (len < 12) {
+      throw new IllegalArgumentException("A Parquet file is at least 12 bytes");
+    }
+    byte[] tail = new byte[8];
+    buffer.getBytes(tail, 0, offset + len - 8, 8);
+    int footerLength = checkTail(tail, len);
+    byte[] footer = new byte[footerLength];
+    buffer.getBytes(footer, 0, offset + len - 8 - footerLength, footerLength);
+    return parse(footer, 0, footerLength);
+  }
+
+  /**
+   * Read only the footer of a Parquet file.
+   */
+  public static ParquetFooter readFrom(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      long len = raf.length();
+      if (len < 12) {
+        throw new IllegalArgumentException(file + " is too small to be a Parquet file");
+      }
+      byte[] tail = new byte[8];
+      raf.seek(len - 8);
+      raf.readFully(tail);
+      int footerLength = checkTail(tail, len);
+      byte[] footer = new byte[footerLength];
+      raf.seek(len - 8 - footerLength);
+      raf.readFully(footer);
+      return parse(footer, 0, footerLength);
+    }
+  }
+
+  private static int checkTail(byte[] tail, long fileLength) {
+    if (!Arrays.equals(Arrays.copyOfRange(tail, 4, 8), MAGIC)) {
+      throw new IllegalStateException("THIS DOES NOT LOOK LIKE A PARQUET FILE, the magic " +
+          "number is missing from the end");
+    }
+    long footerLength = littleEndian(tail, 4);
+    if (footerLength <= 0 || footerLength > fileLength - 12) {
+      throw new IllegalStateException("Parquet footer length " + footerLength +
+          " does not fit in a file of " + fileLength + " bytes");
+    }
+    return (int) footerLength;
+  }
+
+  public long getNumRows() {
+    return metadata.getLong(3, 0);
+  }
+
+  public int getNumRowGroups() {
+    return rowGroups.size();
+  }
+
+  public long getRowGroupNumRows(int rowGroup) {
+    return rowGroups.get(rowGroup).getLong(3, 0);
+  }
+
+  /**
+   * Get the dotted paths of the leaf columns, in the order they appear in each row group.
+   */
+  public List<String> getColumnPaths() {
+    List<String> ret = new ArrayList<>(leaves.size());
+    for (LeafColumn leaf : leaves) {
+      ret.add(leaf.path);
+    }
+    return Collections.unmodifiableList(ret);
+  }
+
+  /**
+   * Get the null count of a column in a row group, or -1 if it is not known.
+   */
+  public long getNullCount(int rowGroup, String column) {
+    ThriftCompact.Struct stats = getColumnMetaData(rowGroup, column).getStruct(12);
+    return stats == null ? -1 : stats.getLong(3, -1);
+  }
+
+  private LeafColumn getLeaf(String column) {
+    Integer index = leafIndex.get(column);
+    if (index == null) {
+      throw new IllegalArgumentException("No leaf column named " + column + " in " +
+          getColumnPaths());
+    }
+    return leaves.get(index);
+  }
+
+  private ThriftCompact.Struct getColumnMetaData(int rowGroup, String column) {
+    getLeaf(column);
+    return rowGroups.get(rowGroup).getList(1).getStruct(leafIndex.get(column)).getStruct(3);
+  }
+
+  /**
+   * Find the row groups that might have rows matching a filter.
+   * @return the indices of those row groups in order.
+   */
+  public int[] selectRowGroups(Filter filter) {
+    int[] ret = new int[rowGroups.size()];
+    int count = 0;
+    for (int i = 0; i < rowGroups.size(); i++) {
+      if (filter.filter.mightMatch(new RowGroupStatistics(i))) {
+        ret[count++] = i;
+      }
+    }
+    return Arrays.copyOf(ret, count);
+  }
+
+  /**
+   * Get the range of the file a row group's column chunks are stored in.
+   */
+  public ByteRange getRowGroupRange(int rowGroup) {
+    ThriftCompact.ThriftList chunks = rowGroups.get(rowGroup).getList(1);
+    long start = Long.MAX_VALUE;
+    long end = 0;
+    for (int c = 0; c < chunks.size(); c++) {
+      ThriftCompact.Struct meta = chunks.getStruct(c).getStruct(3);
+      long chunkStart = meta.getLong(9, 0);
+      long dictionary = meta.getLong(11, 0);
+      if (dictionary > 0 && dictionary < chunkStart) {
+        chunkStart = dictionary;
+      }
+      start = Math.min(start, chunkStart);
+      end = Math.max(end, chunkStart + meta.getLong(7, 0));
+    }
+    if (chunks.size() == 0) {
+      start = end = 0;
+    }
+    return new ByteRange(start, end - start);
+  }
+
+  /**
+   * Get the ranges of the file that hold some row groups. Ranges that touch are combined.
+   * @param rowGroups the row groups, in increasing order.
+   */
+  public List<ByteRange> getByteRanges(int[] rowGroups) {
+    List<ByteRange> ret = new ArrayList<>();
+    for (int rg : rowGroups) {
+      ByteRange r = getRowGroupRange(rg);
+      if (r.length == 0) {
+        continue;
+      }
+      if (!ret.isEmpty()) {
+        ByteRange last = ret.get(ret.size() - 1);
+        if (last.offset + last.length == r.offset) {
+          ret.set(ret.size() - 1, new ByteRange(last.offset, last.length + r.length));
+          continue;
+        }
+      }
+      ret.add(r);
+    }
+    return ret;
+  }
+
+  /**
+   * Build the footer for a file holding only some row groups, packed one after the other
+   * right after the leading magic number.
+   * @return the Thrift encoded footer.
+   */
+  byte[] buildPrunedFooter(int[] keep) {
+    ThriftCompact.Struct ret = metadata.copy();
+    List<Object> groups = new ArrayList<>(keep.length);
+    long numRows = 0;
+    long at = MAGIC.length;
+    int last = -1;
+    for (int index : keep) {
+      if (index <= last || index >= rowGroups.size()) {
+        throw new IllegalArgumentException("Row groups must be valid and in increasing order");
+      }
+      last = index;
+      ByteRange range = getRowGroupRange(index);
+      long delta = at - range.offset;
+      ThriftCompact.Struct rg = rowGroups.get(index).copy();
+      if (rg.has(5)) {
+        rg.setLong(5, rg.getLong(5, 0) + delta);
+      }
+      ThriftCompact.ThriftList chunks = rg.getList(1);
+      for (int c = 0; c < chunks.size(); c++) {
+        ThriftCompact.Struct chunk = chunks.getStruct(c);
+        long fileOffset = chunk.getLong(2, 0);
+        if (fileOffset > 0) {
+          chunk.setLong(2, fileOffset + delta);
+        }
+        // The page indexes live outside of the row group and are not copied
+        for (int id = 4; id <= 7; id++) {
+          chunk.remove(id);
+        }
+        ThriftCompact.Struct meta = chunk.getStruct(3);
+        meta.setLong(9, meta.getLong(9, 0) + delta);
+        if (meta.has(10)) {
+          meta.setLong(10, meta.getLong(10, 0) + delta);
+        }
+        if (meta.getLong(11, 0) > 0) {
+          meta.setLong(11, meta.getLong(11, 0) + delta);
+        }
+        // So do bloom filters
+        meta.remove(14);
+        meta.remove(15);
+      }
+      groups.add(rg);
+      numRows += rg.getLong(3, 0);
+      at += range.length;
+    }
+    ret.set(4, ThriftCompact.LIST, new ThriftCompact.ThriftList(ThriftCompact.STRUCT, groups));
+    ret.setLong(3, numRows);
+    return ThriftCompact.write(ret);
+  }
+
+  private static void writeTail(HostMemoryBuffer dst, long at, byte[] footer) {
+    dst.setBytes(at, footer, 0, footer.length);
+    byte[] len = new byte[4];
+    for (int i = 0; i < 4; i++) {
+      len[i] = (byte) (footer.length >>> (i * 8));
+    }
+    dst.setBytes(at + footer.length, len, 0, 4);
+    dst.setBytes(at + footer.length + 4, MAGIC, 0, MAGIC.length);
+  }
+
+  private long prunedSize(int[] keep, byte[] footer) {
+    long size = MAGIC.length + footer.length + 4 + MAGIC.length;
+    for (int rg : keep) {
+      size += getRowGroupRange(rg).length;
+    }
+    return size;
+  }
+
+  /**
+   * Build a Parquet file holding only some of the row groups of a file in a host buffer.
+   * @param buffer the buffer holding the whole file.
+   * @param offset where the file starts in the buffer.
+   * @param rowGroups the row groups to keep, in increasing order.
+   * @return a new buffer owned by the caller.
+   */
+  public HostMemoryBuffer buildPrunedFile(HostMemoryBuffer buffer, long offset,
+                                          int[] rowGroups) {
+    byte[] footer = buildPrunedFooter(rowGroups);
+    HostMemoryBuffer ret = HostMemoryBuffer.allocate(prunedSize(rowGroups, footer));
+    boolean success = false;
+    try {
+      ret.setBytes(0, MAGIC, 0, MAGIC.length);
+      long at = MAGIC.length;
+      for (int rg : rowGroups) {
+        ByteRange r = getRowGroupRange(rg);
+        ret.copyFromHostBuffer(at, buffer, offset + r.offset, r.length);
+        at += r.length;
+      }
+      writeTail(ret, at, footer);
+      success = true;
+    } finally {
+      if (!success) {
+        ret.close();
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Build a Parquet file holding only some of the row groups of a file, reading only the
+   * parts of the file that are needed.
+   * @param file the file the footer was read from.
+   * @param rowGroups the row groups to keep, in increasing order.
+   * @return a new buffer owned by the caller.
+   */
+  public HostMemoryBuffer buildPrunedFile(File file, int[] rowGroups) throws IOException {
+    byte[] footer = buildPrunedFooter(rowGroups);
+    HostMemoryBuffer ret = HostMemoryBuffer.allocate(prunedSize(rowGroups, footer));
+    boolean success = false;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      ret.setBytes(0, MAGIC, 0, MAGIC.length);
+      long at = MAGIC.length;
+      byte[] staging = new byte[1024 * 1024];
+      for (int rg : rowGroups) {
+        ByteRange r = getRowGroupRange(rg);
+        raf.seek(r.offset);
+        long left = r.length;
+        while (left > 0) {
+          int amount = (int) Math.min(staging.length, left);
+          raf.readFully(staging, 0, amount);
+          ret.setBytes(at, staging, 0, amount);
+          at += amount;
+          left -= amount;
+        }
+      }
+      writeTail(ret, at, footer);
+      success = true;
+    } finally {
+      if (!success) {
+        ret.close();
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A minimal reader and writer for the protocol buffers wire format, which is what ORC metadata
+ * is encoded with. There is no schema, fields are looked up by number and decoded by the caller,
+ * and every field is kept, including the ones we do not understand, so a message can be edited
+ * and written back out without losing anything.
+ */
+final class ProtobufLite {
+  static final int VARINT = 0;
+  static final int FIXED64 = 1;
+  static final int LENGTH_DELIMITED = 2;
+  static final int FIXED32 = 5;
+
+  private ProtobufLite() {
+  }
+
+  private static final class Field {
+    final int number;
+    final int wireType;
+    /** A Long for numeric wire types, or a byte[] */
+    final Object value;
+
+    Field(int number, int wireType, Object value) {
+      this.number = number;
+      this.wireType = wireType;
+      this.value = value;
+    }
+  }
+
+  /**
+   * A decoded message. Nested messages are kept as bytes and decoded each time they are asked
+   * for, so changing one means setting it back on its parent.
+   */
+  static final class Message {
+    private final List<Field> fields = new ArrayList<>();
+
+    static Message parse(byte[] data) {
+      return parse(data, 0, data.length);
+    }
+
+    static Message parse(byte[] data, int offset, int length) {
+      Message ret = new Message();
+      int[] pos = {offset};
+      int end = offset + length;
+      while (pos[0] < end) {
+        long key = readVarint(data, pos, end);
+        int number = (int) (key >>> 3);
+        int wireType = (int) (key & 7);
+        if (number <= 0) {
+          throw new IllegalStateException("Invalid protobuf field number " + number);
+        }
+        switch (wireType) {
+          case VARINT:
+            ret.fields.add(new Field(number, wireType, readVarint(data, pos, end)));
+            break;
+          case FIXED64:
+            ret.fields.add(new Field(number, wireType, readFixed(data, pos, end, 8)));
+            break;
+          case FIXED32:
+            ret.fields.add(new Field(number, wireType, readFixed(data, pos, end, 4)));
+            break;
+          case LENGTH_DELIMITED: {
+            long len = readVarint(data, pos, end);
+            if (len < 0 || len > end - pos[0]) {
+              throw new IllegalStateException("Field " + number + " of length " + len +
+                  " runs past the end of the protobuf data");
+            }
+            byte[] value = new byte[(int) len];
+            System.arraycopy(data, pos[0], value, 0, value.length);
+            pos[0] += value.length;
+            ret.fields.add(new Field(number, wireType, value));
+            break;
+          }
+          default:
+            throw new IllegalStateException("Unsupported protobuf wire type " + wireType +
+                " for field " + number);
+        }
+      }
+      return ret;
+    }
+
+    private Field last(int number) {
+      for (int i = fields.size() - 1; i >= 0; i--) {
+        if (fields.get(i).number == number) {
+          return fields.get(i);
+        }
+      }
+      return null;
+    }
+
+    boolean has(int number) {
+      return last(number) != null;
+    }
+
+    /**
+     * Get an unsigned or two's complement integer field.
+     */
+    long getLong(int number, long defaultValue) {
+      Field f = last(number);
+      return f == null || f.wireType == LENGTH_DELIMITED ? defaultValue : (Long) f.value;
+    }
+
+    /**
+     * Get a zigzag encoded sint32 or sint64 field.
+     */
+    long getSignedLong(int number, long defaultValue) {
+      Field f = last(number);
+      if (f == null || f.wireType != VARINT) {
+        return defaultValue;
+      }
+      long n = (Long) f.value;
+      return (n >>> 1) ^ -(n & 1);
+    }
+
+    double getDouble(int number, double defaultValue) {
+      Field f = last(number);
+      return f == null || f.wireType != FIXED64 ? defaultValue :
+          Double.longBitsToDouble((Long) f.value);
+    }
+
+    byte[] getBytes(int number) {
+      Field f = last(number);
+      return f == null || f.wireType != LENGTH_DELIMITED ? null : (byte[]) f.value;
+    }
+
+    String getString(int number) {
+      byte[] b = getBytes(number);
+      return b == null ? null : new String(b, StandardCharsets.UTF_8);
+    }
+
+    Message getMessage(int number) {
+      byte[] b = getBytes(number);
+      return b == null ? null : parse(b);
+    }
+
+    List<Message> getMessages(int number) {
+      List<Message> ret = new ArrayList<>();
+      for (Field f : fields) {
+        if (f.number == number && f.wireType == LENGTH_DELIMITED) {
+          ret.add(parse((byte[]) f.value));
+        }
+      }
+      return ret;
+    }
+
+    List<String> getStrings(int number) {
+      List<String> ret = new ArrayList<>();
+      for (Field f : fields) {
+        if (f.number == number && f.wireType == LENGTH_DELIMITED) {
+          ret.add(new String((byte[]) f.value, StandardCharsets.UTF_8));
+        }
+      }
+      return ret;
+    }
+
+    /**
+     * Get a repeated varint field, which may or may not be packed.
+     */
+    long[] getRepeatedLongs(int number) {
+      List<Long> values = new ArrayList<>();
+      for (Field f : fields) {
+        if (f.number != number) {
+          continue;
+        }
+        if (f.wireType == LENGTH_DELIMITED) {
+          byte[] packed = (byte[]) f.value;
+          int[] pos = {0};
+          while (pos[0] < packed.length) {
+            values.add(readVarint(packed, pos, packed.length));
+          }
+        } else {
+          values.add((Long) f.value);
+        }
+      }
+      long[] ret = new long[values.size()];
+      for (int i = 0; i < ret.length; i++) {
+        ret[i] = values.get(i);
+      }
+      return ret;
+    }
+
+    /**
+     * Replace every value of a field with a single one, where the first one was.
+     */
+    private void replace(int number, Field... with) {
+      int at = -1;
+      for (int i = fields.size() - 1; i >= 0; i--) {
+        if (fields.get(i).number == number) {
+          fields.remove(i);
+          at = i;
+        }
+      }
+      if (at < 0) {
+        at = fields.size();
+      }
+      for (Field f : with) {
+        fields.add(at++, f);
+      }
+    }
+
+    void setLong(int number, long value) {
+      replace(number, new Field(number, VARINT, value));
+    }
+
+    void setMessage(int number, Message value) {
+      replace(number, new Field(number, LENGTH_DELIMITED, value.toByteArray()));
+    }
+
+    void setMessages(int number, List<Message> values) {
+      Field[] with = new Field[values.size()];
+      for (int i = 0; i < with.length; i++) {
+        with[i] = new Field(number, LENGTH_DELIMITED, values.get(i).toByteArray());
+      }
+      replace(number, with);
+    }
+
+    void remove(int number) {
+      replace(number);
+    }
+
+    byte[] toByteArray() {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (Field f : fields) {
+        writeVarint(out, ((long) f.number << 3) | f.wireType);
+        switch (f.wireType) {
+          case VARINT:
+            writeVarint(out, (Long) f.value);
+            break;
+          case FIXED64:
+          case FIXED32: {
+            long bits = (Long) f.value;
+            int len = f.wireType == FIXED64 ? 8 : 4;
+            for (int i = 0; i < len; i++) {
+              out.write((int) (bits >>> (i * 8)));
+            }
+            break;
+          }
+          default: {
+            byte[] b = (byte[]) f.value;
+            writeVarint(out, b.length);
+            out.write(b, 0, b.length);
+            break;
+          }
+        }
+      }
+      return out.toByteArray();
+    }
+  }
+
+  static long readVarint(byte[] data, int[] pos, int end) {
+    long ret = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (pos[0] >= end) {
+        throw new IllegalStateException("Unexpected end of protobuf data at " + pos[0]);
+      }
+      byte b = data[pos[0]++];
+      ret |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return ret;
+      }
+    }
+    throw new IllegalStateException("Varint is too long at " + pos[0]);
+  }
+
+  private static long readFixed(byte[] data, int[] pos, int end, int len) {
+    if (end - pos[0] < len) {
+      throw new IllegalStateException("Unexpected end of protobuf data at " + pos[0]);
+    }
+    long ret = 0;
+    for (int i = 0; i < len; i++) {
+      ret |= (data[pos[0] + i] & 0xFFL) << (i * 8);
+    }
+    pos[0] += len;
+    return ret;
+  }
+
+  static void writeVarint(ByteArrayOutputStream out, long n) {
+    while ((n & ~0x7FL) != 0) {
+      out.write((int) ((n & 0x7F) | 0x80));
+      n >>>= 7;
+    }
+    out.write((int) n);
+  }
+}
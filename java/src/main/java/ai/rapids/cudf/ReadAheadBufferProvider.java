@@ -0,0 +1,421 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link HostBufferProvider} that reads ahead of its caller on a background thread. Data is
+ * read into a ring of host buffers that are allocated once and reused, so a reader like
+ * {@link Table#readArrowIPCChunked(ArrowIPCOptions, HostBufferProvider)} only waits when it
+ * catches up with the data that was read ahead.
+ * <p/>
+ * Data can come from another provider, like one reading from a socket, or from a file through
+ * a {@link FileChannel}. See {@link MappedFileBufferProvider} for files that are memory mapped.
+ * An error reading is thrown from the next call to readInto.
+ */
+public final class ReadAheadBufferProvider implements HostBufferProvider {
+  public static final int DEFAULT_NUM_BUFFERS = 4;
+  public static final long DEFAULT_BUFFER_SIZE = 8L * 1024 * 1024;
+  /** The largest buffer that can be read into through a ByteBuffer */
+  private static final long MAX_BUFFER_SIZE = 1L << 30;
+
+  /**
+   * Where the data is read from.
+   */
+  private interface Source extends AutoCloseable {
+    /**
+     * Read up to len bytes into the start of buffer.
+     * @return the number of bytes read, which is less than len only at the end of the data.
+     */
+    long read(HostMemoryBuffer buffer, long len) throws IOException;
+
+    /**
+     * Can a read be stopped by interrupting the thread doing it. Interrupting a read from a
+     * FileChannel closes the channel, so this is only true for channels that are ours to close.
+     */
+    boolean canInterrupt();
+
+    @Override
+    void close() throws IOException;
+  }
+
+  private static final class ProviderSource implements Source {
+    private final HostBufferProvider provider;
+
+    ProviderSource(HostBufferProvider provider) {
+      this.provider = provider;
+    }
+
+    @Override
+    public long read(HostMemoryBuffer buffer, long len) {
+      return provider.readInto(buffer, len);
+    }
+
+    @Override
+    public boolean canInterrupt() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+      provider.close();
+    }
+  }
+
+  private static final class ChannelSource implements Source {
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+
+    ChannelSource(FileChannel channel, boolean ownsChannel) {
+      this.channel = channel;
+      this.ownsChannel = ownsChannel;
+    }
+
+    @Override
+    public long read(HostMemoryBuffer buffer, long len) throws IOException {
+      ByteBuffer view = buffer.asByteBuffer(0, (int) len);
+      while (view.hasRemaining()) {
+        if (channel.read(view) < 0) {
+          break;
+        }
+      }
+      return view.position();
+    }
+
+    @Override
+    public boolean canInterrupt() {
+      return ownsChannel;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (ownsChannel) {
+        channel.close();
+      }
+    }
+  }
+
+  private static final class Filled {
+    final HostMemoryBuffer buffer;
+    final long length;
+    long position = 0;
+
+    Filled(HostMemoryBuffer buffer, long length) {
+      this.buffer = buffer;
+      this.length = length;
+    }
+  }
+
+  private final Source source;
+  private final long bufferSize;
+  private final HostMemoryBuffer[] pool;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition hasFree = lock.newCondition();
+  private final Condition hasFilled = lock.newCondition();
+  private final ArrayDeque<HostMemoryBuffer> free = new ArrayDeque<>();
+  private final ArrayDeque<Filled> filled = new ArrayDeque<>();
+  private final Thread reader;
+
+  // All guarded by lock
+  private boolean atEnd = false;
+  private boolean stopped = false;
+  private Throwable error = null;
+  private long bytesReadAhead = 0;
+  private long bytesProvided = 0;
+  private long waitNanos = 0;
+
+  private ReadAheadBufferProvider(Source source, int numBuffers, long bufferSize) {
+    if (numBuffers <= 0) {
+      throw new IllegalArgumentException("At least one buffer is needed " + numBuffers);
+    }
+    if (bufferSize <= 0 || bufferSize > MAX_BUFFER_SIZE) {
+      throw new IllegalArgumentException("Buffer size " + bufferSize + " must be positive " +
+          "and at most " + MAX_BUFFER_SIZE);
+    }
+    this.source = source;
+    this.bufferSize = bufferSize;
+    this.pool = new HostMemoryBuffer[numBuffers];
+    boolean success = false;
+    try {
+      for (int i = 0; i < numBuffers; i++) {
+        pool[i] = HostMemoryBuffer.allocate(bufferSize);
+        free.add(pool[i]);
+      }
+      reader = new Thread(this::readLoop, "cudf read-ahead");
+      reader.setDaemon(true);
+      reader.start();
+      success = true;
+    } finally {
+      if (!success) {
+        for (HostMemoryBuffer b : pool) {
+          if (b != null) {
+            b.close();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Read ahead of the caller from another provider, which is closed when this is.
+   * @param source where to read the data from.
+   * @param numBuffers how many buffers to read ahead into.
+   * @param bufferSize how large each buffer is, and so how much is asked of source at once.
+   */
+  public static ReadAheadBufferProvider wrap(HostBufferProvider source, int numBuffers,
+                                             long bufferSize) {
+    return new ReadAheadBufferProvider(new ProviderSource(source), numBuffers, bufferSize);
+  }
+
+  /**
+   * Read ahead of the caller from another provider with the default buffers.
+   */
+  public static ReadAheadBufferProvider wrap(HostBufferProvider source) {
+    return wrap(source, DEFAULT_NUM_BUFFERS, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Read ahead of the caller from a file, which is closed when this is.
+   * @param file the file to read.
+   * @param numBuffers how many buffers to read ahead into.
+   * @param bufferSize how large each buffer is.
+   */
+  public static ReadAheadBufferProvider open(File file, int numBuffers, long bufferSize)
+      throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    boolean success = false;
+    try {
+      ReadAheadBufferProvider ret =
+          new ReadAheadBufferProvider(new ChannelSource(channel, true), numBuffers, bufferSize);
+      success = true;
+      return ret;
+    } finally {
+      if (!success) {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Read ahead of the caller from a file with the default buffers.
+   */
+  public static ReadAheadBufferProvider open(File file) throws IOException {
+    return open(file, DEFAULT_NUM_BUFFERS, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Read ahead of the caller from the current position of an open channel. The channel is not
+   * closed by this.
+   */
+  public static ReadAheadBufferProvider open(FileChannel channel, int numBuffers,
+                                             long bufferSize) {
+    return new ReadAheadBufferProvider(new ChannelSource(channel, false), numBuffers,
+        bufferSize);
+  }
+
+  private void readLoop() {
+    while (true) {
+      HostMemoryBuffer buffer;
+      lock.lock();
+      try {
+        while (free.isEmpty() && !stopped) {
+          hasFree.awaitUninterruptibly();
+        }
+        if (stopped) {
+          return;
+        }
+        buffer = free.poll();
+      } finally {
+        lock.unlock();
+      }
+      long amount = 0;
+      Throwable failure = null;
+      try {
+        amount = source.read(buffer, bufferSize);
+      } catch (Throwable t) {
+        failure = t;
+      }
+      lock.lock();
+      try {
+        if (failure != null) {
+          error = failure;
+        }
+        if (amount > 0) {
+          filled.add(new Filled(buffer, amount));
+          bytesReadAhead += amount;
+        } else {
+          free.add(buffer);
+        }
+        boolean done = failure != null || amount < bufferSize;
+        if (done) {
+          atEnd = true;
+        }
+        hasFilled.signalAll();
+        if (done) {
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public long readInto(HostMemoryBuffer buffer, long len) {
+    long copied = 0;
+    while (copied < len) {
+      Filled head;
+      lock.lock();
+      try {
+        if (stopped) {
+          throw new IllegalStateException("Read from a closed provider");
+        }
+        if (filled.isEmpty() && !atEnd) {
+          long start = System.nanoTime();
+          while (filled.isEmpty() && !atEnd) {
+            hasFilled.awaitUninterruptibly();
+          }
+          waitNanos += System.nanoTime() - start;
+        }
+        if (filled.isEmpty()) {
+          // Data read before an error is still handed out first
+          if (error != null) {
+            throw new IllegalStateException("Reading ahead failed", error);
+          }
+          break;
+        }
+        head = filled.peek();
+      } finally {
+        lock.unlock();
+      }
+      // Only this thread touches a buffer once it is filled, so copy without the lock
+      long amount = Math.min(head.length - head.position, len - copied);
+      buffer.copyFromHostBuffer(copied, head.buffer, head.position, amount);
+      head.position += amount;
+      copied += amount;
+      lock.lock();
+      try {
+        bytesProvided += amount;
+        if (head.position == head.length) {
+          filled.poll();
+          free.add(head.buffer);
+          hasFree.signal();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    return copied;
+  }
+
+  /**
+   * Get the number of bytes that were read ahead but not handed out yet.
+   */
+  public long getBufferedBytes() {
+    lock.lock();
+    try {
+      return bytesReadAhead - bytesProvided;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of bytes handed out by readInto.
+   */
+  public long getBytesProvided() {
+    lock.lock();
+    try {
+      return bytesProvided;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the time readInto spent waiting for data to be read ahead.
+   */
+  public long getWaitNanos() {
+    lock.lock();
+    try {
+      return waitNanos;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stop reading ahead and free the buffers. A read that is blocked, like one waiting on a
+   * socket, is stopped by interrupting the read-ahead thread and closing the source before
+   * waiting for the thread to exit, so the source may be closed while a read is in progress.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (stopped) {
+        return;
+      }
+      stopped = true;
+      hasFree.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    IOException closeError = null;
+    try {
+      if (source.canInterrupt()) {
+        reader.interrupt();
+      }
+      try {
+        source.close();
+      } catch (IOException e) {
+        closeError = e;
+      }
+    } finally {
+      // The buffers cannot be freed until the reader is done writing to them
+      boolean interrupted = false;
+      while (reader.isAlive()) {
+        try {
+          reader.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      filled.clear();
+      free.clear();
+      for (HostMemoryBuffer b : pool) {
+        b.close();
+      }
+    }
+    if (closeError != null) {
+      throw new IllegalStateException("Error closing the source", closeError);
+    }
+  }
+}
@@ -1,6 +1,6 @@
 /*
  *
- *  Copyright (c) 2019-2020, NVIDIA CORPORATION.
+ *  Copyright (c) 2019-2021, NVIDIA CORPORATION.
  *
  *  Licensed under the Apache License, Version 2.0 (the "License");
  *  you may not use this file except in compliance with the License.
@@ -28,10 +28,12 @@ public class Schema {
   public static final Schema INFERRED = new Schema();
   private final List<String> names;
   private final List<DType> types;
+  private final List<Schema> children;
 
-  private Schema(List<String> names, List<DType> types) {
+  private Schema(List<String> names, List<DType> types, List<Schema> children) {
     this.names = new ArrayList<>(names);
     this.types = new ArrayList<>(types);
+    this.children = new ArrayList<>(children);
   }
 
   /**
@@ -40,6 +42,7 @@ public class Schema {
   private Schema() {
     names = null;
     types = null;
+    children = null;
   }
 
   public static Builder builder() {
@@ -75,18 +78,51 @@ public class Schema {
     return ret;
   }
 
+  /**
+   * Get the schema of the children of a STRUCT or LIST column. The GPU readers only look at the
+   * top level columns, but host readers can use this to read nested data.
+   * @param index the index of the column.
+   * @return the children, which are empty if none were added, or null if the schema is inferred.
+   */
+  Schema getChild(int index) {
+    if (children == null) {
+      return null;
+    }
+    return children.get(index);
+  }
+
   public static class Builder {
     private final List<String> names = new ArrayList<>();
     private final List<DType> types = new ArrayList<>();
+    private final List<Builder> children = new ArrayList<>();
 
     public Builder column(DType type, String name) {
+      addColumn(type, name);
+      return this;
+    }
+
+    /**
+     * Add a column and get a builder for its children. A STRUCT column has a child for each of
+     * its fields and a LIST column has one child for its elements, the name of which is ignored.
+     * Only host readers look at the children, and they check that they fit the type.
+     * @param type the type of the column.
+     * @param name the name of the column.
+     * @return the builder for the children of the column.
+     */
+    public Builder addColumn(DType type, String name) {
+      Builder child = new Builder();
       types.add(type);
       names.add(name);
-      return this;
+      children.add(child);
+      return child;
     }
 
     public Schema build() {
-      return new Schema(names, types);
+      List<Schema> childSchemas = new ArrayList<>(children.size());
+      for (Builder child : children) {
+        childSchemas.add(child.build());
+      }
+      return new Schema(names, types, childSchemas);
     }
   }
 }
@@ -746,6 +746,15 @@ public final class Table implements AutoCloseable {
    */
   public static Table readCSV(Schema schema, CSVOptions opts, HostMemoryBuffer buffer,
                               long offset, long len) {
+    return readCSV(schema, opts, buffer, offset, len, opts.getHeaderRow());
+  }
+
+  /**
+   * Read CSV formatted data, overriding the header row of the options. This is used to read
+   * pieces of a larger buffer that may or may not start with the header.
+   */
+  static Table readCSV(Schema schema, CSVOptions opts, HostMemoryBuffer buffer,
+                       long offset, long len, int headerRow) {
     if (len <= 0) {
       len = buffer.length - offset;
     }
@@ -755,7 +764,7 @@ public final class Table implements AutoCloseable {
     return new Table(readCSV(schema.getColumnNames(), schema.getTypeIds(), schema.getTypeScales(),
         opts.getIncludeColumnNames(), null,
         buffer.getAddress() + offset, len,
-        opts.getHeaderRow(),
+        headerRow,
         opts.getDelim(),
         opts.getQuote(),
         opts.getComment(),
@@ -1244,29 +1253,19 @@ public final class Table implements AutoCloseable {
 
   private static class ArrowReaderWrapper implements AutoCloseable {
     private HostBufferProvider provider;
-    private HostMemoryBuffer buffer;
 
     private ArrowReaderWrapper(HostBufferProvider provider) {
       this.provider = provider;
-      buffer = HostMemoryBuffer.allocate(10 * 1024 * 1024, false);
     }
 
     // Called From JNI
     public long readInto(long dstAddress, long amount) {
-      long totalRead = 0;
-      long amountLeft = amount;
-      while (amountLeft > 0) {
-        long amountToCopy = Math.min(amountLeft, buffer.length);
-        long amountRead = provider.readInto(buffer, amountToCopy);
-        buffer.copyToMemory(totalRead + dstAddress, amountRead);
-        amountLeft -= amountRead;
-        totalRead += amountRead;
-        if (amountRead < amountToCopy) {
-          // EOF
-          amountLeft = 0;
-        }
+      // The provider fills the native memory directly instead of going through a staging buffer.
+      // The view does not own that memory, so closing it does not free anything.
+      try (HostMemoryBuffer dst = new HostMemoryBuffer(dstAddress, amount,
+          (MemoryBuffer.MemoryBufferCleaner) null)) {
+        return provider.readInto(dst, amount);
       }
-      return totalRead;
     }
 
     @Override
@@ -1275,11 +1274,6 @@ public final class Table implements AutoCloseable {
         provider.close();
         provider = null;
       }
-
-      if (buffer != null) {
-        buffer.close();
-        buffer = null;
-      }
     }
   }
 
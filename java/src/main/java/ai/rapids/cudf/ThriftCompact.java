@@ -0,0 +1,461 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A minimal reader and writer for the Thrift compact protocol, which is what Parquet metadata
+ * is encoded with. Structs are decoded into a generic tree that keeps every field, including the
+ * ones we do not understand, so metadata can be edited and written back out without losing
+ * anything.
+ */
+final class ThriftCompact {
+  static final byte BOOLEAN_TRUE = 1;
+  static final byte BOOLEAN_FALSE = 2;
+  static final byte BYTE = 3;
+  static final byte I16 = 4;
+  static final byte I32 = 5;
+  static final byte I64 = 6;
+  static final byte DOUBLE = 7;
+  static final byte BINARY = 8;
+  static final byte LIST = 9;
+  static final byte SET = 10;
+  static final byte MAP = 11;
+  static final byte STRUCT = 12;
+
+  /** Guard against corrupt input trying to nest forever. */
+  private static final int MAX_DEPTH = 64;
+
+  private ThriftCompact() {
+  }
+
+  /**
+   * A decoded struct. Field values are Boolean, Byte, Short, Integer, Long, Double, byte[],
+   * {@link Struct}, {@link ThriftList} or {@link ThriftMap}.
+   */
+  static final class Struct {
+    private final TreeMap<Short, Object> values = new TreeMap<>();
+    private final TreeMap<Short, Byte> types = new TreeMap<>();
+
+    boolean has(int id) {
+      return values.containsKey((short) id);
+    }
+
+    Object get(int id) {
+      return values.get((short) id);
+    }
+
+    /**
+     * Get a field that holds any integer type as a long.
+     */
+    long getLong(int id, long defaultValue) {
+      Object o = values.get((short) id);
+      return o == null ? defaultValue : ((Number) o).longValue();
+    }
+
+    int getInt(int id, int defaultValue) {
+      Object o = values.get((short) id);
+      return o == null ? defaultValue : ((Number) o).intValue();
+    }
+
+    byte[] getBinary(int id) {
+      return (byte[]) values.get((short) id);
+    }
+
+    String getString(int id) {
+      byte[] b = getBinary(id);
+      return b == null ? null : new String(b, StandardCharsets.UTF_8);
+    }
+
+    Struct getStruct(int id) {
+      return (Struct) values.get((short) id);
+    }
+
+    ThriftList getList(int id) {
+      return (ThriftList) values.get((short) id);
+    }
+
+    void set(int id, byte type, Object value) {
+      values.put((short) id, value);
+      types.put((short) id, type);
+    }
+
+    /**
+     * Set an integer field, keeping its existing type if it has one.
+     */
+    void setLong(int id, long value) {
+      Byte type = types.get((short) id);
+      if (type == null || type == I64) {
+        set(id, I64, value);
+      } else if (type == I32) {
+        set(id, I32, (int) value);
+      } else if (type == I16) {
+        set(id, I16, (short) value);
+      } else {
+        throw new IllegalStateException("Field " + id + " is not an integer");
+      }
+    }
+
+    void remove(int id) {
+      values.remove((short) id);
+      types.remove((short) id);
+    }
+
+    Struct copy() {
+      Struct ret = new Struct();
+      for (Map.Entry<Short, Object> e : values.entrySet()) {
+        ret.set(e.getKey(), types.get(e.getKey()), copyValue(e.getValue()));
+      }
+      return ret;
+    }
+  }
+
+  /**
+   * A decoded list or set.
+   */
+  static final class ThriftList {
+    final byte elementType;
+    final List<Object> values;
+
+    ThriftList(byte elementType, List<Object> values) {
+      this.elementType = elementType;
+      this.values = values;
+    }
+
+    int size() {
+      return values.size();
+    }
+
+    Struct getStruct(int index) {
+      return (Struct) values.get(index);
+    }
+  }
+
+  /**
+   * A decoded map, kept as parallel lists of keys and values.
+   */
+  static final class ThriftMap {
+    final byte keyType;
+    final byte valueType;
+    final List<Object> keys;
+    final List<Object> values;
+
+    ThriftMap(byte keyType, byte valueType, List<Object> keys, List<Object> values) {
+      this.keyType = keyType;
+      this.valueType = valueType;
+      this.keys = keys;
+      this.values = values;
+    }
+  }
+
+  private static Object copyValue(Object value) {
+    if (value instanceof Struct) {
+      return ((Struct) value).copy();
+    } else if (value instanceof ThriftList) {
+      ThriftList l = (ThriftList) value;
+      List<Object> values = new ArrayList<>(l.values.size());
+      for (Object o : l.values) {
+        values.add(copyValue(o));
+      }
+      return new ThriftList(l.elementType, values);
+    } else if (value instanceof ThriftMap) {
+      ThriftMap m = (ThriftMap) value;
+      List<Object> keys = new ArrayList<>(m.keys.size());
+      List<Object> values = new ArrayList<>(m.values.size());
+      for (int i = 0; i < m.keys.size(); i++) {
+        keys.add(copyValue(m.keys.get(i)));
+        values.add(copyValue(m.values.get(i)));
+      }
+      return new ThriftMap(m.keyType, m.valueType, keys, values);
+    }
+    // Everything else is immutable or never modified in place
+    return value;
+  }
+
+  /**
+   * Decodes the compact protocol from an array.
+   */
+  static final class Reader {
+    private final byte[] data;
+    private int pos;
+    private final int end;
+
+    Reader(byte[] data, int offset, int length) {
+      this.data = data;
+      this.pos = offset;
+      this.end = offset + length;
+    }
+
+    int getPosition() {
+      return pos;
+    }
+
+    private byte readByte() {
+      if (pos >= end) {
+        throw new IllegalStateException("Unexpected end of thrift data at " + pos);
+      }
+      return data[pos++];
+    }
+
+    long readVarint() {
+      long ret = 0;
+      int shift = 0;
+      while (true) {
+        byte b = readByte();
+        ret |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return ret;
+        }
+        shift += 7;
+        if (shift > 63) {
+          throw new IllegalStateException("Varint is too long at " + pos);
+        }
+      }
+    }
+
+    long readZigZag() {
+      long n = readVarint();
+      return (n >>> 1) ^ -(n & 1);
+    }
+
+    byte[] readBinary() {
+      long len = readVarint();
+      if (len < 0 || len > end - pos) {
+        throw new IllegalStateException("Binary of length " + len + " runs past the end of " +
+            "the thrift data at " + pos);
+      }
+      byte[] ret = new byte[(int) len];
+      System.arraycopy(data, pos, ret, 0, ret.length);
+      pos += ret.length;
+      return ret;
+    }
+
+    double readDouble() {
+      long bits = 0;
+      for (int i = 0; i < 8; i++) {
+        bits |= (readByte() & 0xFFL) << (i * 8);
+      }
+      return Double.longBitsToDouble(bits);
+    }
+
+    Struct readStruct() {
+      return readStruct(0);
+    }
+
+    private Struct readStruct(int depth) {
+      if (depth > MAX_DEPTH) {
+        throw new IllegalStateException("Thrift data is nested too deeply");
+      }
+      Struct ret = new Struct();
+      short lastId = 0;
+      while (true) {
+        int header = readByte() & 0xFF;
+        if (header == 0) {
+          return ret;
+        }
+        byte type = (byte) (header & 0x0F);
+        int delta = header >>> 4;
+        short id = delta != 0 ? (short) (lastId + delta) : (short) readZigZag();
+        lastId = id;
+        if (type == BOOLEAN_TRUE || type == BOOLEAN_FALSE) {
+          ret.set(id, type, type == BOOLEAN_TRUE);
+        } else {
+          ret.set(id, type, readValue(type, depth));
+        }
+      }
+    }
+
+    private Object readValue(byte type, int depth) {
+      switch (type) {
+        case BOOLEAN_TRUE:
+        case BOOLEAN_FALSE:
+          // Only inside of a list, where each element is a byte
+          return readByte() == BOOLEAN_TRUE;
+        case BYTE:
+          return readByte();
+        case I16:
+          return (short) readZigZag();
+        case I32:
+          return (int) readZigZag();
+        case I64:
+          return readZigZag();
+        case DOUBLE:
+          return readDouble();
+        case BINARY:
+          return readBinary();
+        case LIST:
+        case SET: {
+          int header = readByte() & 0xFF;
+          long size = header >>> 4;
+          if (size == 15) {
+            size = readVarint();
+          }
+          byte elementType = (byte) (header & 0x0F);
+          checkSize(size);
+          List<Object> values = new ArrayList<>((int) size);
+          for (long i = 0; i < size; i++) {
+            values.add(readValue(elementType, depth + 1));
+          }
+          return new ThriftList(elementType, values);
+        }
+        case MAP: {
+          long size = readVarint();
+          checkSize(size);
+          byte keyType = 0;
+          byte valueType = 0;
+          if (size > 0) {
+            int kv = readByte() & 0xFF;
+            keyType = (byte) (kv >>> 4);
+            valueType = (byte) (kv & 0x0F);
+          }
+          List<Object> keys = new ArrayList<>((int) size);
+          List<Object> values = new ArrayList<>((int) size);
+          for (long i = 0; i < size; i++) {
+            keys.add(readValue(keyType, depth + 1));
+            values.add(readValue(valueType, depth + 1));
+          }
+          return new ThriftMap(keyType, valueType, keys, values);
+        }
+        case STRUCT:
+          return readStruct(depth + 1);
+        default:
+          throw new IllegalStateException("Unknown thrift compact type " + type + " at " + pos);
+      }
+    }
+
+    private void checkSize(long size) {
+      // Every element takes at least one byte
+      if (size < 0 || size > end - pos) {
+        throw new IllegalStateException("Collection of size " + size + " runs past the end " +
+            "of the thrift data at " + pos);
+      }
+    }
+  }
+
+  /**
+   * Encodes a struct with the compact protocol.
+   */
+  static byte[] write(Struct struct) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeStruct(out, struct);
+    return out.toByteArray();
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long n) {
+    while ((n & ~0x7FL) != 0) {
+      out.write((int) ((n & 0x7F) | 0x80));
+      n >>>= 7;
+    }
+    out.write((int) n);
+  }
+
+  private static void writeZigZag(ByteArrayOutputStream out, long n) {
+    writeVarint(out, (n << 1) ^ (n >> 63));
+  }
+
+  private static void writeStruct(ByteArrayOutputStream out, Struct struct) {
+    short lastId = 0;
+    for (Map.Entry<Short, Object> e : struct.values.entrySet()) {
+      short id = e.getKey();
+      byte type = struct.types.get(id);
+      if (type == BOOLEAN_TRUE || type == BOOLEAN_FALSE) {
+        type = (Boolean) e.getValue() ? BOOLEAN_TRUE : BOOLEAN_FALSE;
+      }
+      int delta = id - lastId;
+      if (delta > 0 && delta <= 15) {
+        out.write((delta << 4) | type);
+      } else {
+        out.write(type);
+        writeZigZag(out, id);
+      }
+      lastId = id;
+      if (type != BOOLEAN_TRUE && type != BOOLEAN_FALSE) {
+        writeValue(out, type, e.getValue());
+      }
+    }
+    out.write(0);
+  }
+
+  private static void writeValue(ByteArrayOutputStream out, byte type, Object value) {
+    switch (type) {
+      case BOOLEAN_TRUE:
+      case BOOLEAN_FALSE:
+        out.write((Boolean) value ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+        break;
+      case BYTE:
+        out.write((Byte) value);
+        break;
+      case I16:
+      case I32:
+      case I64:
+        writeZigZag(out, ((Number) value).longValue());
+        break;
+      case DOUBLE: {
+        long bits = Double.doubleToRawLongBits((Double) value);
+        for (int i = 0; i < 8; i++) {
+          out.write((int) (bits >>> (i * 8)));
+        }
+        break;
+      }
+      case BINARY: {
+        byte[] b = (byte[]) value;
+        writeVarint(out, b.length);
+        out.write(b, 0, b.length);
+        break;
+      }
+      case LIST:
+      case SET: {
+        ThriftList l = (ThriftList) value;
+        if (l.size() < 15) {
+          out.write((l.size() << 4) | l.elementType);
+        } else {
+          out.write(0xF0 | l.elementType);
+          writeVarint(out, l.size());
+        }
+        for (Object o : l.values) {
+          writeValue(out, l.elementType, o);
+        }
+        break;
+      }
+      case MAP: {
+        ThriftMap m = (ThriftMap) value;
+        writeVarint(out, m.keys.size());
+        if (!m.keys.isEmpty()) {
+          out.write((m.keyType << 4) | m.valueType);
+        }
+        for (int i = 0; i < m.keys.size(); i++) {
+          writeValue(out, m.keyType, m.keys.get(i));
+          writeValue(out, m.valueType, m.values.get(i));
+        }
+        break;
+      }
+      case STRUCT:
+        writeStruct(out, (Struct) value);
+        break;
+      default:
+        throw new IllegalStateException("Unknown thrift compact type " + type);
+    }
+  }
+}
@@ -0,0 +1,372 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reusable view of UTF-8 data in a {@link HostMemoryBuffer}. A view does not copy the data
+ * and does not hold a reference to the buffer, so it is only valid while the buffer it points
+ * to is open. The same instance can be pointed at different strings to process a column
+ * without allocating, for example
+ * <pre>
+ * Utf8View view = new Utf8View();
+ * for (long i = 0; i < column.getRowCount(); i++) {
+ *   if (!column.isNull(i) && column.getUTF8View(i, view).startsWith(prefix)) {
+ *     ...
+ *   }
+ * }
+ * </pre>
+ * Comparisons, hashing and searching all work on the raw bytes. Ordering is unsigned byte wise,
+ * which for valid UTF-8 is the same as ordering by code point and is how the device sorts
+ * strings. The {@link CharSequence} methods decode the data on demand. When the data is
+ * ASCII, which is checked once per string, they read it directly.
+ */
+public final class Utf8View implements CharSequence, Comparable<Utf8View> {
+  private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+  private HostMemoryBuffer buffer = null;
+  private long offset = 0;
+  private long address = 0;
+  private int length = 0;
+  /** 1 if the data is all ASCII, 0 if it is not and -1 if it has not been checked yet. */
+  private int ascii = 1;
+  /** Lazily decoded form of the data for non-ASCII CharSequence access. */
+  private String decoded = null;
+
+  /**
+   * Create an empty view.
+   */
+  public Utf8View() {}
+
+  /**
+   * Point this view at a range of bytes.
+   * @param buffer the buffer holding the data.
+   * @param offset the offset in bytes into the buffer.
+   * @param length the number of bytes.
+   * @return this view.
+   */
+  public Utf8View wrap(HostMemoryBuffer buffer, long offset, int length) {
+    if (length < 0 || offset < 0 || (length > 0 && offset + length > buffer.getLength())) {
+      throw new IndexOutOfBoundsException("Range " + offset + " to " + (offset + length) +
+          " is outside of a buffer with length " + buffer.getLength());
+    }
+    this.buffer = buffer;
+    this.offset = offset;
+    this.address = length > 0 ? buffer.getAddress() + offset : 0;
+    this.length = length;
+    this.ascii = length == 0 ? 1 : -1;
+    this.decoded = null;
+    return this;
+  }
+
+  /**
+   * Get the buffer this view points to, or null if it was never pointed at anything.
+   */
+  public HostMemoryBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Get the offset in bytes into the buffer where the data starts.
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Get the length of the data in bytes.
+   */
+  public int getByteLength() {
+    return length;
+  }
+
+  /**
+   * Get a single byte of the data.
+   */
+  public byte getByte(int index) {
+    checkByteIndex(index);
+    return UnsafeMemoryAccessor.getByte(address + index);
+  }
+
+  /**
+   * Copy the data into an array.
+   */
+  public void getBytes(byte[] dst, int dstOffset) {
+    if (dstOffset < 0 || dstOffset + length > dst.length) {
+      throw new IndexOutOfBoundsException("Not enough room to copy " + length + " bytes");
+    }
+    if (length > 0) {
+      UnsafeMemoryAccessor.getBytes(dst, dstOffset, address, length);
+    }
+  }
+
+  /**
+   * Copy the data into a new array.
+   */
+  public byte[] getBytes() {
+    byte[] ret = new byte[length];
+    getBytes(ret, 0);
+    return ret;
+  }
+
+  private void checkByteIndex(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("Byte " + index + " is out of range 0 <= " + index +
+          " < " + length);
+    }
+  }
+
+  /**
+   * Read 8 bytes as a big endian value, so that comparing two of them as unsigned longs orders
+   * them the same as comparing the bytes one at a time.
+   */
+  private static long getBigEndianLong(long address) {
+    long value = UnsafeMemoryAccessor.getLong(address);
+    return LITTLE_ENDIAN ? Long.reverseBytes(value) : value;
+  }
+
+  private static boolean rangeEquals(long a, long b, int len) {
+    int i = 0;
+    for (; i + 8 <= len; i += 8) {
+      if (UnsafeMemoryAccessor.getLong(a + i) != UnsafeMemoryAccessor.getLong(b + i)) {
+        return false;
+      }
+    }
+    for (; i < len; i++) {
+      if (UnsafeMemoryAccessor.getByte(a + i) != UnsafeMemoryAccessor.getByte(b + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean rangeEquals(long at, byte[] other, int otherOffset, int len) {
+    for (int i = 0; i < len; i++) {
+      if (UnsafeMemoryAccessor.getByte(at + i) != other[otherOffset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Check if the data is the same as the data in another view.
+   */
+  public boolean contentEquals(Utf8View other) {
+    return length == other.length && rangeEquals(address, other.address, length);
+  }
+
+  /**
+   * Check if the data is the same as some UTF-8 encoded bytes.
+   */
+  public boolean contentEquals(byte[] utf8) {
+    return length == utf8.length && rangeEquals(address, utf8, 0, length);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    return o instanceof Utf8View && contentEquals((Utf8View) o);
+  }
+
+  /**
+   * The Murmur3 hash of the UTF-8 bytes using a seed of 0.
+   */
+  @Override
+  public int hashCode() {
+    return HostHashing.murmurHash3Bytes(0, buffer, offset, length, false);
+  }
+
+  /**
+   * Compare the data as unsigned bytes.
+   */
+  @Override
+  public int compareTo(Utf8View other) {
+    int len = Math.min(length, other.length);
+    int i = 0;
+    for (; i + 8 <= len; i += 8) {
+      long a = getBigEndianLong(address + i);
+      long b = getBigEndianLong(other.address + i);
+      if (a != b) {
+        return Long.compareUnsigned(a, b);
+      }
+    }
+    for (; i < len; i++) {
+      int a = UnsafeMemoryAccessor.getByte(address + i) & 0xFF;
+      int b = UnsafeMemoryAccessor.getByte(other.address + i) & 0xFF;
+      if (a != b) {
+        return a - b;
+      }
+    }
+    return Integer.compare(length, other.length);
+  }
+
+  /**
+   * Check if the data starts with the data in another view.
+   */
+  public boolean startsWith(Utf8View prefix) {
+    return prefix.length <= length && rangeEquals(address, prefix.address, prefix.length);
+  }
+
+  /**
+   * Check if the data starts with some UTF-8 encoded bytes.
+   */
+  public boolean startsWith(byte[] prefix) {
+    return prefix.length <= length && rangeEquals(address, prefix, 0, prefix.length);
+  }
+
+  /**
+   * Check if the data ends with the data in another view.
+   */
+  public boolean endsWith(Utf8View suffix) {
+    return suffix.length <= length &&
+        rangeEquals(address + length - suffix.length, suffix.address, suffix.length);
+  }
+
+  /**
+   * Check if the data ends with some UTF-8 encoded bytes.
+   */
+  public boolean endsWith(byte[] suffix) {
+    return suffix.length <= length &&
+        rangeEquals(address + length - suffix.length, suffix, 0, suffix.length);
+  }
+
+  /**
+   * Find the first byte offset where some UTF-8 encoded bytes appear in the data.
+   * @return the byte offset or -1 if it was not found.
+   */
+  public int indexOf(byte[] target) {
+    if (target.length == 0) {
+      return 0;
+    }
+    byte first = target[0];
+    int last = length - target.length;
+    for (int i = 0; i <= last; i++) {
+      if (UnsafeMemoryAccessor.getByte(address + i) == first &&
+          rangeEquals(address + i + 1, target, 1, target.length - 1)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Find the first byte offset where the data in another view appears in this data.
+   * @return the byte offset or -1 if it was not found.
+   */
+  public int indexOf(Utf8View target) {
+    if (target.length == 0) {
+      return 0;
+    }
+    byte first = UnsafeMemoryAccessor.getByte(target.address);
+    int last = length - target.length;
+    for (int i = 0; i <= last; i++) {
+      if (UnsafeMemoryAccessor.getByte(address + i) == first &&
+          rangeEquals(address + i + 1, target.address + 1, target.length - 1)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Check if some UTF-8 encoded bytes appear in the data. Because UTF-8 is self synchronizing
+   * a byte wise match of valid UTF-8 is always a match of whole characters.
+   */
+  public boolean contains(byte[] target) {
+    return indexOf(target) >= 0;
+  }
+
+  /**
+   * Check if the data in another view appears in this data.
+   */
+  public boolean contains(Utf8View target) {
+    return indexOf(target) >= 0;
+  }
+
+  /**
+   * Check if all of the data is ASCII, caching the result until the view is moved.
+   */
+  public boolean isAscii() {
+    if (ascii < 0) {
+      int i = 0;
+      boolean ret = true;
+      for (; i + 8 <= length && ret; i += 8) {
+        ret = (UnsafeMemoryAccessor.getLong(address + i) & 0x8080808080808080L) == 0;
+      }
+      for (; i < length && ret; i++) {
+        ret = UnsafeMemoryAccessor.getByte(address + i) >= 0;
+      }
+      ascii = ret ? 1 : 0;
+    }
+    return ascii == 1;
+  }
+
+  private String decoded() {
+    if (decoded == null) {
+      decoded = toString();
+    }
+    return decoded;
+  }
+
+  /**
+   * The number of UTF-16 chars in the data, like {@link String#length()}. For non-ASCII data
+   * this decodes the data the first time it is called.
+   */
+  @Override
+  public int length() {
+    return isAscii() ? length : decoded().length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (isAscii()) {
+      checkByteIndex(index);
+      return (char) UnsafeMemoryAccessor.getByte(address + index);
+    }
+    return decoded().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (isAscii()) {
+      if (start < 0 || end > length || start > end) {
+        throw new IndexOutOfBoundsException("Range " + start + " to " + end +
+            " is out of range for a length of " + length);
+      }
+      return new Utf8View().wrap(buffer, offset + start, end - start);
+    }
+    return decoded().subSequence(start, end);
+  }
+
+  /**
+   * Decode the data into a new String.
+   */
+  @Override
+  public String toString() {
+    if (length == 0) {
+      return "";
+    }
+    return new String(getBytes(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,513 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link HostBufferConsumer} that hands buffers to a background thread to write, so a chunked
+ * writer like {@link Table#writeParquetChunked(ParquetWriterOptions, HostBufferConsumer)} can
+ * encode the next buffer while the last one is still being written.
+ * <p/>
+ * The writer thread takes every buffer that is waiting and writes them to a {@link FileChannel}
+ * with one gathering write, straight from host memory. The bytes that are queued but not yet
+ * written are bounded, and {@link #handleBuffer(HostMemoryBuffer, long)} blocks when the bound
+ * would be passed. The channel can be forced to storage after a set number of bytes, so the
+ * cost of syncing is paid once for many buffers, and is always forced when {@link #done()} is
+ * called if syncing is on.
+ * <p/>
+ * An error writing is thrown from the next call to handleBuffer or done. This must be closed
+ * to stop the writer thread if done is never called.
+ */
+public final class WriteBehindBufferConsumer implements HostBufferConsumer, AutoCloseable {
+  public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 64L * 1024 * 1024;
+  /** The most buffers written with a single gathering write */
+  private static final int MAX_GATHER = 64;
+  /** The most bytes handed to a ByteBuffer at once */
+  private static final int MAX_BYTE_BUFFER = 1 << 30;
+
+  public static final class Builder {
+    private final File file;
+    private final FileChannel channel;
+    private long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+    private long syncEveryBytes = -1;
+
+    private Builder(File file, FileChannel channel) {
+      this.file = file;
+      this.channel = channel;
+    }
+
+    /**
+     * Set how many bytes can be queued but not written before handleBuffer blocks. A single
+     * buffer larger than this is still accepted when nothing else is queued.
+     */
+    public Builder withMaxInFlightBytes(long maxInFlightBytes) {
+      if (maxInFlightBytes <= 0) {
+        throw new IllegalArgumentException("The maximum in flight bytes must be positive " +
+            maxInFlightBytes);
+      }
+      this.maxInFlightBytes = maxInFlightBytes;
+      return this;
+    }
+
+    /**
+     * Force the written data to storage each time at least this many more bytes are written,
+     * and when done is called. 0 only forces it when done is called. By default it is never
+     * forced.
+     */
+    public Builder withSyncEveryBytes(long syncEveryBytes) {
+      if (syncEveryBytes < 0) {
+        throw new IllegalArgumentException("The sync interval cannot be negative " +
+            syncEveryBytes);
+      }
+      this.syncEveryBytes = syncEveryBytes;
+      return this;
+    }
+
+    public WriteBehindBufferConsumer build() throws IOException {
+      if (channel != null) {
+        return new WriteBehindBufferConsumer(channel, false, maxInFlightBytes, syncEveryBytes);
+      }
+      FileChannel opened = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      boolean success = false;
+      try {
+        WriteBehindBufferConsumer ret =
+            new WriteBehindBufferConsumer(opened, true, maxInFlightBytes, syncEveryBytes);
+        success = true;
+        return ret;
+      } finally {
+        if (!success) {
+          opened.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Write to a file, replacing anything that is already in it. The file is closed when this is
+   * done or closed.
+   */
+  public static Builder builder(File file) {
+    return new Builder(file, null);
+  }
+
+  /**
+   * Write to an open channel at its current position. The channel is not closed by this.
+   */
+  public static Builder builder(FileChannel channel) {
+    return new Builder(null, channel);
+  }
+
+  private static final class Pending {
+    final HostMemoryBuffer buffer;
+    final long length;
+
+    Pending(HostMemoryBuffer buffer, long length) {
+      this.buffer = buffer;
+      this.length = length;
+    }
+  }
+
+  private final FileChannel channel;
+  private final boolean ownsChannel;
+  private final long maxInFlightBytes;
+  private final long syncEveryBytes;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition hasWork = lock.newCondition();
+  private final Condition hasSpace = lock.newCondition();
+  private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+  private final Thread writer;
+
+  // All guarded by lock
+  private long inFlightBytes = 0;
+  private long peakInFlightBytes = 0;
+  private int peakQueueDepth = 0;
+  private boolean finishing = false;
+  private boolean stopped = false;
+  private Throwable error = null;
+  private long bytesWritten = 0;
+  private long writeNanos = 0;
+  private long blockedNanos = 0;
+  private long numSyncs = 0;
+
+  private WriteBehindBufferConsumer(FileChannel channel, boolean ownsChannel,
+                                    long maxInFlightBytes, long syncEveryBytes) {
+    this.channel = channel;
+    this.ownsChannel = ownsChannel;
+    this.maxInFlightBytes = maxInFlightBytes;
+    this.syncEveryBytes = syncEveryBytes;
+    this.writer = new Thread(this::writeLoop, "cudf write-behind");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  private IllegalStateException failed() {
+    return new IllegalStateException("Writing in the background failed", error);
+  }
+
+  @Override
+  public void handleBuffer(HostMemoryBuffer buffer, long len) {
+    boolean queued = false;
+    try {
+      lock.lock();
+      try {
+        if (error != null) {
+          throw failed();
+        }
+        if (finishing || stopped) {
+          throw new IllegalStateException("Buffers cannot be added after done or close");
+        }
+        if (len <= 0) {
+          return;
+        }
+        long start = System.nanoTime();
+        boolean blocked = false;
+        while (inFlightBytes > 0 && inFlightBytes + len > maxInFlightBytes && error == null &&
+            !stopped) {
+          blocked = true;
+          hasSpace.awaitUninterruptibly();
+        }
+        if (blocked) {
+          blockedNanos += System.nanoTime() - start;
+        }
+        if (error != null) {
+          throw failed();
+        }
+        if (stopped) {
+          throw new IllegalStateException("Closed while waiting to add a buffer");
+        }
+        queue.add(new Pending(buffer, len));
+        queued = true;
+        inFlightBytes += len;
+        peakInFlightBytes = Math.max(peakInFlightBytes, inFlightBytes);
+        peakQueueDepth = Math.max(peakQueueDepth, queue.size());
+        hasWork.signal();
+      } finally {
+        lock.unlock();
+      }
+    } finally {
+      if (!queued) {
+        buffer.close();
+      }
+    }
+  }
+
+  private void writeLoop() {
+    List<Pending> batch = new ArrayList<>(MAX_GATHER);
+    long sinceSync = 0;
+    while (true) {
+      lock.lock();
+      try {
+        while (queue.isEmpty() && !finishing && !stopped) {
+          hasWork.awaitUninterruptibly();
+        }
+        if (stopped || queue.isEmpty()) {
+          return;
+        }
+        while (!queue.isEmpty() && batch.size() < MAX_GATHER) {
+          batch.add(queue.poll());
+        }
+      } finally {
+        lock.unlock();
+      }
+      long batchBytes = 0;
+      Throwable failure = null;
+      long start = System.nanoTime();
+      try {
+        batchBytes = write(batch);
+        sinceSync += batchBytes;
+        if (syncEveryBytes > 0 && sinceSync >= syncEveryBytes) {
+          channel.force(false);
+          sinceSync = 0;
+          lock.lock();
+          try {
+            numSyncs++;
+          } finally {
+            lock.unlock();
+          }
+        }
+      } catch (Throwable t) {
+        failure = t;
+      } finally {
+        for (Pending p : batch) {
+          p.buffer.close();
+        }
+      }
+      long elapsed = System.nanoTime() - start;
+      lock.lock();
+      try {
+        for (Pending p : batch) {
+          inFlightBytes -= p.length;
+        }
+        bytesWritten += batchBytes;
+        writeNanos += elapsed;
+        if (failure != null) {
+          error = failure;
+          // Nothing more can be written, so drop what is left
+          for (Pending p : queue) {
+            p.buffer.close();
+            inFlightBytes -= p.length;
+          }
+          queue.clear();
+        }
+        hasSpace.signalAll();
+        if (failure != null) {
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+      batch.clear();
+    }
+  }
+
+  private long write(List<Pending> batch) throws IOException {
+    List<ByteBuffer> views = new ArrayList<>(batch.size());
+    long total = 0;
+    for (Pending p : batch) {
+      for (long offset = 0; offset < p.length; offset += MAX_BYTE_BUFFER) {
+        int amount = (int) Math.min(MAX_BYTE_BUFFER, p.length - offset);
+        views.add(p.buffer.asByteBuffer(offset, amount));
+      }
+      total += p.length;
+    }
+    ByteBuffer[] buffers = views.toArray(new ByteBuffer[0]);
+    int first = 0;
+    long left = total;
+    while (left > 0) {
+      left -= channel.write(buffers, first, buffers.length - first);
+      while (first < buffers.length && !buffers[first].hasRemaining()) {
+        first++;
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Wait for every buffer to be written, force the data to storage if syncing is on, and
+   * close the file if this opened it.
+   */
+  @Override
+  public void done() {
+    lock.lock();
+    try {
+      if (finishing || stopped) {
+        return;
+      }
+      finishing = true;
+      hasWork.signal();
+    } finally {
+      lock.unlock();
+    }
+    joinWriter();
+    try {
+      if (error == null && syncEveryBytes >= 0) {
+        channel.force(false);
+        lock.lock();
+        try {
+          numSyncs++;
+        } finally {
+          lock.unlock();
+        }
+      }
+    } catch (IOException e) {
+      error = e;
+    } finally {
+      closeChannel();
+    }
+    if (error != null) {
+      throw failed();
+    }
+  }
+
+  private void joinWriter() {
+    boolean interrupted = false;
+    while (writer.isAlive()) {
+      try {
+        writer.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void closeChannel() {
+    if (ownsChannel) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        if (error == null) {
+          error = e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Stop the writer thread. Buffers that were not written yet are dropped, so call
+   * {@link #done()} first to be sure everything is written.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (stopped) {
+        return;
+      }
+      stopped = true;
+      hasWork.signal();
+      hasSpace.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    joinWriter();
+    lock.lock();
+    try {
+      for (Pending p : queue) {
+        p.buffer.close();
+      }
+      queue.clear();
+      inFlightBytes = 0;
+    } finally {
+      lock.unlock();
+    }
+    if (!finishing) {
+      closeChannel();
+    }
+  }
+
+  /**
+   * Get the number of buffers waiting to be written.
+   */
+  public int getQueueDepth() {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of bytes handed to this that are not written yet.
+   */
+  public long getInFlightBytes() {
+    lock.lock();
+    try {
+      return inFlightBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the most buffers that were ever waiting to be written at once.
+   */
+  public int getPeakQueueDepth() {
+    lock.lock();
+    try {
+      return peakQueueDepth;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the most bytes that were ever in flight at once.
+   */
+  public long getPeakInFlightBytes() {
+    lock.lock();
+    try {
+      return peakInFlightBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getBytesWritten() {
+    lock.lock();
+    try {
+      return bytesWritten;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the time the writer thread spent writing and syncing.
+   */
+  public long getWriteNanos() {
+    lock.lock();
+    try {
+      return writeNanos;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the time handleBuffer spent blocked waiting for bytes to be written.
+   */
+  public long getBlockedNanos() {
+    lock.lock();
+    try {
+      return blockedNanos;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get how many times the data was forced to storage.
+   */
+  public long getNumSyncs() {
+    lock.lock();
+    try {
+      return numSyncs;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the rate the writer thread wrote at while it was writing.
+   */
+  public double getWriteBytesPerSecond() {
+    lock.lock();
+    try {
+      return writeNanos == 0 ? 0 : bytesWritten * 1_000_000_000.0 / writeNanos;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
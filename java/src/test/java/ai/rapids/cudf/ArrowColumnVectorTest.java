@@ -20,6 +20,8 @@ package ai.rapids.cudf;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import ai.rapids.cudf.HostColumnVector.BasicType;
 import ai.rapids.cudf.HostColumnVector.ListType;
@@ -36,6 +38,8 @@ import org.apache.arrow.vector.IntVector;
 import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.complex.ListVector;
 import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.types.Types;
+import org.apache.arrow.vector.types.pojo.FieldType;
 import org.apache.arrow.vector.util.Text;
 
 import org.junit.jupiter.api.Test;
@@ -272,38 +276,60 @@ public class ArrowColumnVectorTest extends CudfTestBase {
   }
 
   @Test
-  void testArrowDecimalThrows() {
+  void testArrowDecimal() {
     BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
-    try (DecimalVector vector = new DecimalVector("vec", allocator, 7, 3)) {
-      ArrowColumnBuilder builder = new ArrowColumnBuilder(new HostColumnVector.BasicType(true, DType.create(DType.DTypeEnum.DECIMAL32, 3)));
+    ArrowColumnBuilder builder = new ArrowColumnBuilder(new HostColumnVector.BasicType(true, DType.create(DType.DTypeEnum.DECIMAL32, -3)));
+    try (DecimalVector vector = new DecimalVector("vec", allocator, 7, 3);
+         DecimalVector vector2 = new DecimalVector("vec2", allocator, 7, 3)) {
       ((DecimalVector) vector).setSafe(0, -3);
       ((DecimalVector) vector).setSafe(1, 1);
-      ((DecimalVector) vector).setSafe(2, 2);
-      ((DecimalVector) vector).setSafe(3, 3);
-      ((DecimalVector) vector).setSafe(4, 4);
-      ((DecimalVector) vector).setSafe(5, 5);
-      vector.setValueCount(6);
-      ByteBuffer data = vector.getDataBuffer().nioBuffer();
-      ByteBuffer valid = vector.getValidityBuffer().nioBuffer();
-      builder.addBatch(vector.getValueCount(), vector.getNullCount(), data, valid, null);
-      assertThrows(IllegalArgumentException.class, () -> {
-        builder.buildAndPutOnDevice();
-      });
+      ((DecimalVector) vector).setNull(2);
+      vector.setValueCount(3);
+      ((DecimalVector) vector2).setSafe(0, 4);
+      ((DecimalVector) vector2).setSafe(1, 5);
+      vector2.setValueCount(2);
+      for (DecimalVector v : new DecimalVector[]{vector, vector2}) {
+        ByteBuffer data = v.getDataBuffer().nioBuffer();
+        ByteBuffer valid = v.getValidityBuffer().nioBuffer();
+        builder.addBatch(v.getValueCount(), v.getNullCount(), data, valid, null);
+      }
+      try (ColumnVector cv = builder.buildAndPutOnDevice();
+           ColumnVector expected = ColumnVector.decimalFromBoxedInts(-3, -3, 1, null, 4, 5)) {
+        assertEquals(cv.getType(), DType.create(DType.DTypeEnum.DECIMAL32, -3));
+        assertColumnsAreEqual(expected, cv, "decimals");
+      }
     }
   }
 
   @Test
-  void testArrowDecimal64Throws() {
+  void testArrowDecimal64() {
     BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
-    try (DecimalVector vector = new DecimalVector("vec", allocator, 18, 0)) {
+    try (DecimalVector vector = new DecimalVector("vec", allocator, 18, 11)) {
       ArrowColumnBuilder builder = new ArrowColumnBuilder(new HostColumnVector.BasicType(true, DType.create(DType.DTypeEnum.DECIMAL64, -11)));
       ((DecimalVector) vector).setSafe(0, -3);
-      ((DecimalVector) vector).setSafe(1, 1);
+      ((DecimalVector) vector).setSafe(1, 1L << 40);
       ((DecimalVector) vector).setSafe(2, 2);
       vector.setValueCount(3);
       ByteBuffer data = vector.getDataBuffer().nioBuffer();
       ByteBuffer valid = vector.getValidityBuffer().nioBuffer();
       builder.addBatch(vector.getValueCount(), vector.getNullCount(), data, valid, null);
+      try (ColumnVector cv = builder.buildAndPutOnDevice();
+           ColumnVector expected = ColumnVector.decimalFromLongs(-11, -3, 1L << 40, 2)) {
+        assertColumnsAreEqual(expected, cv, "decimals");
+      }
+    }
+  }
+
+  @Test
+  void testArrowDecimalOverflowThrows() {
+    BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+    try (DecimalVector vector = new DecimalVector("vec", allocator, 18, 3)) {
+      ArrowColumnBuilder builder = new ArrowColumnBuilder(new HostColumnVector.BasicType(true, DType.create(DType.DTypeEnum.DECIMAL32, -3)));
+      ((DecimalVector) vector).setSafe(0, 1L << 40);
+      vector.setValueCount(1);
+      ByteBuffer data = vector.getDataBuffer().nioBuffer();
+      ByteBuffer valid = vector.getValidityBuffer().nioBuffer();
+      builder.addBatch(vector.getValueCount(), vector.getNullCount(), data, valid, null);
       assertThrows(IllegalArgumentException.class, () -> {
         builder.buildAndPutOnDevice();
       });
@@ -311,28 +337,162 @@ public class ArrowColumnVectorTest extends CudfTestBase {
   }
 
   @Test
-  void testArrowListThrows() {
+  void testArrowList() {
     BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+    ArrowColumnBuilder builder = new ArrowColumnBuilder(new ListType(true, new HostColumnVector.BasicType(true, DType.INT32)));
+    List<List<Integer>> batches = Arrays.asList(
+        Arrays.asList(1, 2), Arrays.asList(3, null), Arrays.asList(),
+        Arrays.asList(4, 5, 6));
+    ListVector[] vectors = new ListVector[2];
+    try {
+      for (int j = 0; j < vectors.length; j++) {
+        ListVector vector = ListVector.empty("list", allocator);
+        vectors[j] = vector;
+        vector.addOrGetVector(FieldType.nullable(Types.MinorType.INT.getType()));
+        vector.allocateNew();
+        IntVector child = (IntVector) vector.getDataVector();
+        int childRows = 0;
+        for (int i = 0; i < 2; i++) {
+          List<Integer> list = batches.get(j * 2 + i);
+          vector.startNewValue(i);
+          for (Integer value : list) {
+            if (value == null) {
+              child.setNull(childRows);
+            } else {
+              child.setSafe(childRows, value);
+            }
+            childRows++;
+          }
+          vector.endValue(i, list.size());
+        }
+        child.setValueCount(childRows);
+        vector.setValueCount(2);
+        builder.addBatch(vector.getValueCount(), vector.getNullCount(), null,
+            vector.getValidityBuffer().nioBuffer(0, 1), vector.getOffsetBuffer().nioBuffer(0, 3 * 4));
+        builder.getChild(0).addBatch(child.getValueCount(), child.getNullCount(),
+            child.getDataBuffer().nioBuffer(), child.getValidityBuffer().nioBuffer(), null);
+      }
+      HostColumnVector.DataType type = new ListType(true, new HostColumnVector.BasicType(true, DType.INT32));
+      try (ColumnVector cv = builder.buildAndPutOnDevice();
+           ColumnVector expected = ColumnVector.fromLists(type,
+               batches.get(0), batches.get(1), batches.get(2), batches.get(3))) {
+        assertColumnsAreEqual(expected, cv, "lists");
+      }
+    } finally {
+      for (ListVector vector : vectors) {
+        if (vector != null) {
+          vector.close();
+        }
+      }
+    }
+  }
+
+  @Test
+  void testArrowSlicedLists() {
+    BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+    ListType type = new ListType(true, new HostColumnVector.BasicType(true, DType.INT32));
     try (ListVector vector = ListVector.empty("list", allocator)) {
-      ArrowColumnBuilder builder = new ArrowColumnBuilder(new ListType(true, new HostColumnVector.BasicType(true, DType.STRING)));
-      // buffer don't matter as we expect it to throw anyway
-      builder.addBatch(vector.getValueCount(), vector.getNullCount(), null, null, null);
-      assertThrows(IllegalArgumentException.class, () -> {
-        builder.buildAndPutOnDevice();
-      });
+      vector.addOrGetVector(FieldType.nullable(Types.MinorType.INT.getType()));
+      vector.allocateNew();
+      IntVector child = (IntVector) vector.getDataVector();
+      List<List<Integer>> lists = Arrays.asList(
+          Arrays.asList(1, 2), Arrays.asList(3, null, 5), Arrays.asList(6));
+      int childRows = 0;
+      for (int i = 0; i < lists.size(); i++) {
+        vector.startNewValue(i);
+        for (Integer value : lists.get(i)) {
+          if (value == null) {
+            child.setNull(childRows);
+          } else {
+            child.setSafe(childRows, value);
+          }
+          childRows++;
+        }
+        vector.endValue(i, lists.get(i).size());
+      }
+      vector.setValueCount(lists.size());
+      // A trailing value in the child that no list references
+      child.setSafe(childRows, 9);
+      child.setValueCount(childRows + 1);
+      ByteBuffer childData = child.getDataBuffer().nioBuffer(0, child.getValueCount() * 4);
+      ByteBuffer childValid = child.getValidityBuffer().nioBuffer(0, 1);
+
+      ArrowColumnBuilder builder = new ArrowColumnBuilder(type);
+      // The last two lists alone, so their offsets start at 2
+      builder.addBatch(2, 0, null, null, vector.getOffsetBuffer().nioBuffer(4, 3 * 4));
+      builder.getChild(0).addBatch(child.getValueCount(), 1, childData, childValid, null);
+      builder.addBatch(3, 0, null, null, vector.getOffsetBuffer().nioBuffer(0, 4 * 4));
+      builder.getChild(0).addBatch(child.getValueCount(), 1, childData, childValid, null);
+      builder.addBatch(0, 0, null, null, null);
+      builder.getChild(0).addBatch(child.getValueCount(), 1, childData, childValid, null);
+      try (HostColumnVector cv = builder.buildOnHost()) {
+        assertEquals(5, cv.getRowCount());
+        assertEquals(0, cv.getOffsets().getInt(0));
+        assertEquals(10, cv.getOffsets().getInt(5 * 4));
+        assertEquals(2, cv.getChildColumnView(0).getNullCount());
+        List<List<Integer>> expected = Arrays.asList(lists.get(1), lists.get(2),
+            lists.get(0), lists.get(1), lists.get(2));
+        for (int i = 0; i < expected.size(); i++) {
+          assertEquals(expected.get(i), cv.getList(i), "row " + i);
+        }
+      }
+
+      // Offsets that go past the end of the child
+      ArrowColumnBuilder tooShort = new ArrowColumnBuilder(type);
+      tooShort.addBatch(3, 0, null, null, vector.getOffsetBuffer().nioBuffer(0, 4 * 4));
+      tooShort.getChild(0).addBatch(5, 1, childData, childValid, null);
+      assertThrows(IllegalArgumentException.class, tooShort::buildOnHost);
     }
   }
 
   @Test
-  void testArrowStructThrows() {
+  void testArrowStruct() {
     BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
-    try (StructVector vector = StructVector.empty("struct", allocator)) {
-      ArrowColumnBuilder builder = new ArrowColumnBuilder(new StructType(true, new HostColumnVector.BasicType(true, DType.STRING)));
-      // buffer don't matter as we expect it to throw anyway
-      builder.addBatch(vector.getValueCount(), vector.getNullCount(), null, null, null);
-      assertThrows(IllegalArgumentException.class, () -> {
-        builder.buildAndPutOnDevice();
-      });
+    StructType type = new StructType(true, new HostColumnVector.BasicType(true, DType.INT32));
+    ArrowColumnBuilder builder = new ArrowColumnBuilder(type);
+    StructVector[] vectors = new StructVector[2];
+    try {
+      for (int j = 0; j < vectors.length; j++) {
+        StructVector vector = StructVector.empty("struct", allocator);
+        vectors[j] = vector;
+        IntVector child = vector.addOrGet("a", FieldType.nullable(Types.MinorType.INT.getType()),
+            IntVector.class);
+        vector.allocateNew();
+        vector.setIndexDefined(0);
+        child.setSafe(0, j);
+        vector.setNull(1);
+        child.setNull(1);
+        vector.setIndexDefined(2);
+        child.setNull(2);
+        child.setValueCount(3);
+        vector.setValueCount(3);
+        builder.addBatch(vector.getValueCount(), vector.getNullCount(), null,
+            vector.getValidityBuffer().nioBuffer(0, 1), null);
+        builder.getChild(0).addBatch(child.getValueCount(), child.getNullCount(),
+            child.getDataBuffer().nioBuffer(), child.getValidityBuffer().nioBuffer(), null);
+      }
+      try (ColumnVector cv = builder.buildAndPutOnDevice();
+           ColumnVector expected = ColumnVector.fromStructs(type,
+               new HostColumnVector.StructData(0), null, new HostColumnVector.StructData((Integer) null),
+               new HostColumnVector.StructData(1), null, new HostColumnVector.StructData((Integer) null))) {
+        assertColumnsAreEqual(expected, cv, "structs");
+      }
+    } finally {
+      for (StructVector vector : vectors) {
+        if (vector != null) {
+          vector.close();
+        }
+      }
     }
   }
+
+  @Test
+  void testArrowStructMissingChildThrows() {
+    ArrowColumnBuilder builder = new ArrowColumnBuilder(new StructType(true, new HostColumnVector.BasicType(true, DType.STRING)));
+    // the child batch was never added
+    builder.addBatch(0, 0, null, null, null);
+    assertThrows(IllegalArgumentException.class, () -> {
+      builder.buildAndPutOnDevice();
+    });
+  }
 }
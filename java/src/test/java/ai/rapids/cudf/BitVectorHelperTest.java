@@ -0,0 +1,137 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitVectorHelperTest extends CudfTestBase {
+  private static final int BITS = 1000;
+
+  private static HostMemoryBuffer randomBits(Random r, long seed) {
+    r.setSeed(seed);
+    HostMemoryBuffer ret = HostMemoryBuffer.allocate(
+        BitVectorHelper.getValidityAllocationSizeInBytes(BITS));
+    for (long i = 0; i < ret.getLength(); i++) {
+      ret.setByte(i, (byte) r.nextInt());
+    }
+    return ret;
+  }
+
+  private static boolean bit(HostMemoryBuffer buffer, long index) {
+    return !BitVectorHelper.isNull(buffer, index);
+  }
+
+  @Test
+  void testCopyAndMergeAtOffsets() {
+    Random r = new Random();
+    int[][] ranges = {{0, 0, 1000}, {3, 61, 500}, {64, 7, 300}, {13, 128, 1}, {70, 70, 0}};
+    for (int[] range : ranges) {
+      long srcOff = range[0];
+      long dstOff = range[1];
+      long len = range[2];
+      try (HostMemoryBuffer src = randomBits(r, 1);
+           HostMemoryBuffer copy = randomBits(r, 2);
+           HostMemoryBuffer and = randomBits(r, 2);
+           HostMemoryBuffer or = randomBits(r, 2);
+           HostMemoryBuffer orig = randomBits(r, 2)) {
+        BitVectorHelper.copyBits(src, srcOff, copy, dstOff, len);
+        BitVectorHelper.andBits(src, srcOff, and, dstOff, len);
+        BitVectorHelper.orBits(src, srcOff, or, dstOff, len);
+        for (long i = 0; i < BITS; i++) {
+          boolean before = bit(orig, i);
+          if (i >= dstOff && i < dstOff + len) {
+            boolean s = bit(src, srcOff + i - dstOff);
+            assertEquals(s, bit(copy, i), "copy " + i);
+            assertEquals(before && s, bit(and, i), "and " + i);
+            assertEquals(before || s, bit(or, i), "or " + i);
+          } else {
+            assertEquals(before, bit(copy, i));
+            assertEquals(before, bit(and, i));
+            assertEquals(before, bit(or, i));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testRangesAndCounts() {
+    Random r = new Random();
+    try (HostMemoryBuffer valid = randomBits(r, 3)) {
+      for (long off : new long[]{0, 1, 63, 64, 65, 200}) {
+        for (long len : new long[]{0, 1, 63, 64, 65, 500}) {
+          long expected = 0;
+          for (long i = off; i < off + len; i++) {
+            expected += bit(valid, i) ? 0 : 1;
+          }
+          assertEquals(expected, BitVectorHelper.countNulls(valid, off, len), off + " " + len);
+        }
+      }
+      BitVectorHelper.setNullRange(valid, 5, 300);
+      BitVectorHelper.setValidRange(valid, 400, 129);
+      assertTrue(BitVectorHelper.isAllNull(valid, 5, 300));
+      assertFalse(BitVectorHelper.isAllValid(valid, 5, 300));
+      assertTrue(BitVectorHelper.isAllValid(valid, 400, 129));
+      assertFalse(BitVectorHelper.isAllNull(valid, 400, 129));
+      assertEquals(300, BitVectorHelper.countNulls(valid, 5, 300));
+      assertEquals(0, BitVectorHelper.countNulls(valid, 400, 129));
+      assertTrue(BitVectorHelper.isAllValid(valid, 10, 0));
+    }
+  }
+
+  @Test
+  void testShift() {
+    Random r = new Random();
+    try (HostMemoryBuffer valid = randomBits(r, 4);
+         HostMemoryBuffer shifted = BitVectorHelper.shiftBits(valid, 77, 100)) {
+      assertEquals(64, shifted.getLength());
+      for (long i = 0; i < 100; i++) {
+        assertEquals(bit(valid, 77 + i), bit(shifted, i));
+      }
+      assertTrue(BitVectorHelper.isAllValid(shifted, 100, 412));
+    }
+  }
+
+  @Test
+  void testMergeColumns() {
+    try (HostColumnVector a = HostColumnVector.fromBoxedInts(1, null, 3, null, 5);
+         HostColumnVector b = HostColumnVector.fromBoxedInts(null, 2, 3, null, 5);
+         HostColumnVector c = HostColumnVector.fromInts(1, 2, 3, 4, 5);
+         HostMemoryBuffer and = BitVectorHelper.mergeAnd(5, a, b, c);
+         HostMemoryBuffer or = BitVectorHelper.mergeOr(5, a, b)) {
+      assertEquals(3, BitVectorHelper.countNulls(and, 5));
+      assertFalse(bit(and, 0));
+      assertFalse(bit(and, 1));
+      assertTrue(bit(and, 2));
+      assertFalse(bit(and, 3));
+      assertTrue(bit(and, 4));
+      assertEquals(1, BitVectorHelper.countNulls(or, 5));
+      assertFalse(bit(or, 3));
+      assertNull(BitVectorHelper.mergeOr(5, a, c));
+      assertNull(BitVectorHelper.mergeAnd(5, c));
+    }
+  }
+}
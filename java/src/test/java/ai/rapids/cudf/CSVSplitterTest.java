@@ -0,0 +1,242 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static ai.rapids.cudf.TableTest.assertTablesAreEqual;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CSVSplitterTest extends CudfTestBase {
+
+  private static HostMemoryBuffer toBuffer(String data) {
+    byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+    HostMemoryBuffer ret = HostMemoryBuffer.allocate(Math.max(1, bytes.length));
+    ret.setBytes(0, bytes, 0, bytes.length);
+    return ret;
+  }
+
+  /**
+   * Find where every record starts with a simple serial scan. A quote only opens a quoted value
+   * at the start of a field, and a quote right after the closing one is an escaped quote.
+   */
+  private static Set<Long> recordStarts(byte[] data, int start, byte delim, byte quote,
+                                        byte comment) {
+    Set<Long> ret = new HashSet<>();
+    ret.add((long) start);
+    boolean inQuote = false;
+    boolean inComment = false;
+    boolean atStart = true;
+    boolean fieldStart = true;
+    boolean afterQuote = false;
+    for (int i = start; i < data.length; i++) {
+      byte b = data[i];
+      if (inComment) {
+        if (b == '\n') {
+          inComment = false;
+          atStart = true;
+          fieldStart = true;
+          ret.add(i + 1L);
+        }
+        continue;
+      }
+      if (inQuote) {
+        if (b == quote) {
+          inQuote = false;
+          afterQuote = true;
+        }
+        continue;
+      }
+      boolean reopen = afterQuote && b == quote;
+      afterQuote = false;
+      if (atStart && comment != 0 && b == comment) {
+        inComment = true;
+      } else if (b == quote && (fieldStart || reopen)) {
+        inQuote = true;
+      } else if (b == '\n') {
+        ret.add(i + 1L);
+        atStart = true;
+        fieldStart = true;
+        continue;
+      }
+      atStart = false;
+      fieldStart = b == delim;
+    }
+    return ret;
+  }
+
+  private static void checkChunks(CSVSplitter splitter, long dataStart, long end,
+                                  Set<Long> starts) {
+    List<CSVSplitter.Chunk> chunks = splitter.getChunks();
+    long expected = dataStart;
+    for (CSVSplitter.Chunk chunk : chunks) {
+      assertEquals(expected, chunk.getOffset());
+      assertTrue(starts.contains(chunk.getOffset()), "chunk starts mid record " + chunk);
+      assertTrue(chunk.getLength() > 0);
+      expected += chunk.getLength();
+    }
+    assertEquals(end, expected);
+  }
+
+  @Test
+  void testSimpleLines() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append(i).append(',').append(i * 2).append('\n');
+    }
+    String data = sb.toString();
+    byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+    try (HostMemoryBuffer buffer = toBuffer(data)) {
+      CSVSplitter splitter = CSVSplitter.split(CSVOptions.DEFAULT, buffer, 0, bytes.length, 8,
+          null);
+      assertEquals(8, splitter.getChunks().size());
+      assertEquals(-1, splitter.getHeaderOffset());
+      checkChunks(splitter, 0, bytes.length, recordStarts(bytes, 0, (byte) ',', (byte) '"', (byte) 0));
+    }
+  }
+
+  @Test
+  void testHeaderAndQuotedNewlines() {
+    String data = "skipped line\n" +
+        "a,b\n" +
+        "1,\"x\n2,y\n3,z\"\n" +
+        "4,\"\"\"q\"\"\n\"\n" +
+        "5,w";
+    byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+    CSVOptions opts = CSVOptions.builder().withHeaderAtRow(1).build();
+    try (HostMemoryBuffer buffer = toBuffer(data)) {
+      for (int n = 1; n < bytes.length + 2; n++) {
+        CSVSplitter splitter = CSVSplitter.split(opts, buffer, 0, bytes.length, n, null);
+        assertEquals(13, splitter.getHeaderOffset());
+        assertEquals(4, splitter.getHeaderLength());
+        checkChunks(splitter, 17, bytes.length, recordStarts(bytes, 17, (byte) ',', (byte) '"', (byte) 0));
+        // Only three records follow the header
+        assertTrue(splitter.getChunks().size() <= 3);
+      }
+    }
+  }
+
+  @Test
+  void testQuoteInsideOfAField() {
+    // The quote in 12" pipe is part of the value, so it does not hide the newlines after it
+    String data = "1,12\" pipe\n" +
+        "2,plain\n" +
+        "3,\"quoted\nnewline\"\n" +
+        "4,x\"y\"\n" +
+        "5,\"a\"\"b\nc\"\n" +
+        "6,last\n";
+    byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+    Set<Long> starts = recordStarts(bytes, 0, (byte) ',', (byte) '"', (byte) 0);
+    assertEquals(7, starts.size());
+    try (HostMemoryBuffer buffer = toBuffer(data)) {
+      Set<Long> found = new HashSet<>();
+      for (int n = 1; n < bytes.length + 2; n++) {
+        CSVSplitter splitter = CSVSplitter.split(CSVOptions.DEFAULT, buffer, 0, bytes.length, n,
+            null);
+        checkChunks(splitter, 0, bytes.length, starts);
+        for (CSVSplitter.Chunk chunk : splitter.getChunks()) {
+          found.add(chunk.getOffset());
+        }
+      }
+      // Every record after the stray quote can still start a chunk
+      starts.remove((long) bytes.length);
+      assertEquals(starts, found);
+    }
+  }
+
+  @Test
+  void testRandomQuotesAndComments() {
+    Random rand = new Random(42);
+    byte quote = '\'';
+    byte comment = '#';
+    CSVOptions opts = CSVOptions.builder().withQuote('\'').withComment('#').build();
+    String alphabet = "ab,'\n#";
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      for (int iter = 0; iter < 200; iter++) {
+        StringBuilder sb = new StringBuilder();
+        int len = rand.nextInt(2000);
+        for (int i = 0; i < len; i++) {
+          sb.append(alphabet.charAt(rand.nextInt(alphabet.length())));
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        Set<Long> starts = recordStarts(bytes, 0, (byte) ',', quote, comment);
+        try (HostMemoryBuffer buffer = toBuffer(sb.toString())) {
+          int n = 1 + rand.nextInt(32);
+          CSVSplitter splitter = CSVSplitter.split(opts, buffer, 0, bytes.length, n,
+              iter % 2 == 0 ? pool : null);
+          checkChunks(splitter, 0, bytes.length, starts);
+          // Every chunk that could be cut at a record boundary was
+          assertTrue(splitter.getChunks().size() <= n);
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void testReadChunks() throws IOException {
+    StringBuilder sb = new StringBuilder("id,name\n");
+    Long[] ids = new Long[500];
+    String[] names = new String[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = (long) i;
+      names[i] = i % 7 == 0 ? "multi\nline " + i : "name " + i;
+      sb.append(i).append(",\"").append(names[i]).append("\"\n");
+    }
+    File file = File.createTempFile("split", ".csv");
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      try (FileOutputStream out = new FileOutputStream(file)) {
+        out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+      }
+      Schema schema = Schema.builder()
+          .column(DType.INT64, "id")
+          .column(DType.STRING, "name")
+          .build();
+      CSVOptions opts = CSVOptions.builder().hasHeader().build();
+      Table[] tables = CSVSplitter.readCSV(schema, opts, file, 6, pool);
+      try (Table expected = new Table.TestBuilder().column(ids).column(names).build();
+           Table result = Table.concatenate(tables)) {
+        assertTrue(tables.length > 1);
+        assertTablesAreEqual(expected, result);
+      } finally {
+        for (Table t : tables) {
+          t.close();
+        }
+      }
+    } finally {
+      pool.shutdown();
+      file.delete();
+    }
+  }
+}
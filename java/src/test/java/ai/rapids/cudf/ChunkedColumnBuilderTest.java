@@ -0,0 +1,162 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static ai.rapids.cudf.TableTest.assertColumnsAreEqual;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ChunkedColumnBuilderTest extends CudfTestBase {
+
+  @Test
+  void testGrowsInChunks() {
+    String[] expected = new String[1000];
+    for (int i = 0; i < expected.length; i++) {
+      expected[i] = i % 7 == 0 ? null : "value" + i;
+    }
+    // Tiny chunks and a bad capacity plan force lots of chunks
+    try (ChunkedColumnBuilder strings = new ChunkedColumnBuilder(DType.STRING, 3, 1, 64);
+         ChunkedColumnBuilder longs = new ChunkedColumnBuilder(DType.INT64, 3, 0, 64)) {
+      for (int i = 0; i < expected.length; i++) {
+        if (expected[i] == null) {
+          strings.appendNull();
+          longs.appendNull();
+        } else {
+          strings.append(expected[i]);
+          longs.append((long) i);
+        }
+      }
+      Long[] expectedLongs = new Long[expected.length];
+      for (int i = 0; i < expected.length; i++) {
+        expectedLongs[i] = expected[i] == null ? null : (long) i;
+      }
+      try (HostColumnVector s = strings.build();
+           HostColumnVector l = longs.build();
+           HostColumnVector expectedS = HostColumnVector.fromStrings(expected);
+           HostColumnVector expectedL = HostColumnVector.fromBoxedLongs(expectedLongs)) {
+        assertColumnsAreEqual(expectedS, s, "strings");
+        assertColumnsAreEqual(expectedL, l, "longs");
+        // Compacted down to exactly what is needed
+        assertEquals(expected.length * 8, l.getData().getLength());
+      }
+    }
+  }
+
+  @Test
+  void testReuseAfterBuild() {
+    try (ChunkedColumnBuilder builder = new ChunkedColumnBuilder(DType.INT32, 10)) {
+      builder.append(1).appendNull().append(3);
+      try (HostColumnVector cv = builder.build();
+           HostColumnVector expected = HostColumnVector.fromBoxedInts(1, null, 3)) {
+        assertColumnsAreEqual(expected, cv, "first");
+      }
+      assertEquals(0, builder.getRowCount());
+      builder.append(4);
+      try (HostColumnVector cv = builder.build();
+           HostColumnVector expected = HostColumnVector.fromInts(4)) {
+        assertColumnsAreEqual(expected, cv, "second");
+        assertFalse(cv.hasValidityVector());
+      }
+    }
+  }
+
+  @Test
+  void testNestedNotSupported() {
+    assertThrows(UnsupportedOperationException.class,
+        () -> new ChunkedColumnBuilder(DType.LIST, 10));
+  }
+
+  @Test
+  void testRolloverOnRows() {
+    HostTableBuilder.Options options = HostTableBuilder.Options.builder()
+        .withTargetRows(300)
+        .withEstimatedRows(10)
+        .withChunkBytes(128)
+        .build();
+    try (HostTableBuilder tb = new HostTableBuilder(options, DType.INT32, DType.STRING)) {
+      for (int i = 0; i < 1000; i++) {
+        tb.getColumn(0).append(i);
+        if (i % 3 == 0) {
+          tb.getColumn(1).appendNull();
+        } else {
+          tb.getColumn(1).append("s" + i);
+        }
+        tb.endRow();
+      }
+      assertEquals(3, tb.getBatchCount());
+      List<HostColumnVector[]> batches = tb.finish();
+      assertEquals(4, batches.size());
+      assertEquals(1000, tb.getTotalRowCount());
+      assertNull(tb.pollBatch());
+      int row = 0;
+      for (HostColumnVector[] batch : batches) {
+        try {
+          assertEquals(row == 900 ? 100 : 300, batch[0].getRowCount());
+          for (int i = 0; i < batch[0].getRowCount(); i++, row++) {
+            assertEquals(row, batch[0].getInt(i));
+            assertEquals(row % 3 == 0, batch[1].isNull(i));
+            if (row % 3 != 0) {
+              assertEquals("s" + row, batch[1].getJavaString(i));
+            }
+          }
+        } finally {
+          for (HostColumnVector cv : batch) {
+            cv.close();
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testRolloverOnBytes() {
+    HostTableBuilder.Options options = HostTableBuilder.Options.builder()
+        .withTargetBytes(1000)
+        .build();
+    List<Long> rowCounts = new ArrayList<>();
+    try (HostTableBuilder tb = new HostTableBuilder(options, batch -> {
+      rowCounts.add(batch[0].getRowCount());
+      batch[0].close();
+    }, DType.INT64)) {
+      for (int i = 0; i < 500; i++) {
+        tb.getColumn(0).append((long) i);
+        tb.endRow();
+      }
+      tb.rollover();
+    }
+    assertEquals(Arrays.asList(125L, 125L, 125L, 125L), rowCounts);
+  }
+
+  @Test
+  void testMissingValue() {
+    try (HostTableBuilder tb = new HostTableBuilder(HostTableBuilder.Options.DEFAULT,
+        DType.INT32, DType.INT32)) {
+      tb.getColumn(0).append(1);
+      assertThrows(IllegalStateException.class, tb::endRow);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static ai.rapids.cudf.TableTest.assertColumnsAreEqual;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkedHostColumnTest extends CudfTestBase {
+
+  @Test
+  void testRowLookup() {
+    try (HostColumnVector a = HostColumnVector.fromLongs(0, 1, 2);
+         HostColumnVector empty = HostColumnVector.fromLongs();
+         HostColumnVector b = HostColumnVector.fromLongs(3);
+         HostColumnVector c = HostColumnVector.fromLongs(4, 5, 6, 7);
+         ChunkedHostColumn chunked = ChunkedHostColumn.fromVectors(a, empty, b, empty, c)) {
+      assertEquals(8, chunked.getRowCount());
+      assertEquals(5, chunked.getNumChunks());
+      assertEquals(0, chunked.findChunk(2));
+      assertEquals(2, chunked.findChunk(3));
+      assertEquals(4, chunked.findChunk(4));
+      assertEquals(4, chunked.findChunk(7));
+      assertEquals(0, chunked.findChunk(0));
+      // In order and in reverse
+      for (int i = 0; i < 8; i++) {
+        assertEquals(i, chunked.getLong(i));
+      }
+      for (int i = 7; i >= 0; i--) {
+        assertEquals(i, chunked.getLong(i));
+      }
+      assertThrows(IndexOutOfBoundsException.class, () -> chunked.getLong(8));
+    }
+  }
+
+  @Test
+  void testBulkAccess() {
+    try (HostColumnVector a = HostColumnVector.fromLongs(0, 1, 2);
+         HostColumnVector b = HostColumnVector.fromLongs(3, 4);
+         HostColumnVector c = HostColumnVector.fromLongs(5, 6, 7);
+         ChunkedHostColumn chunked = ChunkedHostColumn.fromVectors(a, b, c)) {
+      long[] values = new long[6];
+      chunked.getLongs(1, values, 1, 5);
+      assertArrayEquals(new long[]{0, 1, 2, 3, 4, 5}, values);
+
+      List<Long> starts = new ArrayList<>();
+      chunked.forEachChunk((chunk, start) -> starts.add(start));
+      assertEquals(Arrays.asList(0L, 3L, 5L), starts);
+      starts.clear();
+      chunked.forEachChunk(4, 6, (chunk, start) -> starts.add(start));
+      assertEquals(Arrays.asList(3L, 5L), starts);
+    }
+  }
+
+  @Test
+  void testStrings() {
+    try (HostColumnVector a = HostColumnVector.fromStrings("a", null);
+         HostColumnVector b = HostColumnVector.fromStrings("ccc");
+         ChunkedHostColumn chunked = ChunkedHostColumn.fromVectors(a, b)) {
+      assertEquals(1, chunked.getNullCount());
+      assertTrue(chunked.isNull(1));
+      assertEquals("ccc", chunked.getJavaString(2));
+      Utf8View view = new Utf8View();
+      assertEquals(3, chunked.getUTF8View(2, view).getByteLength());
+    }
+  }
+
+  @Test
+  void testCompaction() {
+    try (HostColumnVector a = HostColumnVector.fromBoxedInts(1, null);
+         HostColumnVector b = HostColumnVector.fromBoxedInts(3, 4, null);
+         HostColumnVector expected = HostColumnVector.fromBoxedInts(1, null, 3, 4, null);
+         ChunkedHostColumn chunked = ChunkedHostColumn.fromVectors(a, b)) {
+      assertFalse(chunked.isCompacted());
+      HostColumnVector compacted = chunked.getCompacted();
+      assertTrue(chunked.isCompacted());
+      assertSame(compacted, chunked.getCompacted());
+      assertColumnsAreEqual(expected, compacted, "compacted");
+    }
+  }
+
+  @Test
+  void testSingleVectorIsNotCopied() {
+    try (HostColumnVector a = HostColumnVector.fromInts(1, 2, 3);
+         ChunkedHostColumn chunked = ChunkedHostColumn.fromVectors(a)) {
+      assertSame(a, chunked.getCompacted());
+    }
+  }
+
+  @Test
+  void testMixedTypes() {
+    try (HostColumnVector a = HostColumnVector.fromInts(1);
+         HostColumnVector b = HostColumnVector.fromLongs(1)) {
+      assertThrows(IllegalArgumentException.class, () -> ChunkedHostColumn.fromVectors(a, b));
+    }
+  }
+}
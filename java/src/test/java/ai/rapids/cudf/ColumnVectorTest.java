@@ -34,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -353,6 +354,120 @@ public class ColumnVectorTest extends CudfTestBase {
     }
   }
 
+  @Test
+  void testHostConcatTypeError() {
+    try (HostColumnVector v0 = HostColumnVector.fromInts(1, 2, 3, 4);
+         HostColumnVector v1 = HostColumnVector.fromFloats(5.0f, 6.0f)) {
+      assertThrows(IllegalArgumentException.class, () -> HostColumnVector.concatenate(v0, v1));
+    }
+  }
+
+  @Test
+  void testHostConcatWithNulls() {
+    try (HostColumnVector v0 = HostColumnVector.fromDoubles(1, 2, 3, 4);
+         HostColumnVector v1 = HostColumnVector.fromBoxedDoubles(5., null, 7.);
+         HostColumnVector v2 = HostColumnVector.fromBoxedDoubles(null, 9.0);
+         HostColumnVector v = HostColumnVector.concatenate(v0, v1, v2, v0);
+         HostColumnVector expected = HostColumnVector.fromBoxedDoubles(
+             1., 2., 3., 4., 5., null, 7., null, 9., 1., 2., 3., 4.)) {
+      assertEquals(2, v.getNullCount());
+      assertColumnsAreEqual(expected, v, "host concat");
+    }
+  }
+
+  @Test
+  void testHostConcatDecimals() {
+    try (HostColumnVector v0 = HostColumnVector.decimalFromBoxedLongs(-2, 100L, null);
+         HostColumnVector v1 = HostColumnVector.decimalFromLongs(-2, 300L, 400L);
+         HostColumnVector v = HostColumnVector.concatenate(v0, v1);
+         HostColumnVector expected = HostColumnVector.decimalFromBoxedLongs(-2,
+             100L, null, 300L, 400L)) {
+      assertColumnsAreEqual(expected, v, "host concat");
+    }
+  }
+
+  @Test
+  void testHostConcatStrings() {
+    try (HostColumnVector v0 = HostColumnVector.fromStrings("0", "1", "2", null);
+         HostColumnVector v1 = HostColumnVector.fromStrings(null, "", "6", "\u20ac7");
+         HostColumnVector expected = HostColumnVector.fromStrings(
+           "0", "1", "2", null,
+           null, "", "6", "\u20ac7");
+         HostColumnVector v = HostColumnVector.concatenate(v0, v1)) {
+      assertColumnsAreEqual(expected, v, "host concat");
+    }
+  }
+
+  private static HostColumnVector stringsWithoutData(int... offsets) {
+    HostMemoryBuffer off = HostMemoryBuffer.allocate(offsets.length * 4L);
+    for (int i = 0; i < offsets.length; i++) {
+      off.setInt(i * 4L, offsets[i]);
+    }
+    return new HostColumnVector(DType.STRING, offsets.length - 1, Optional.of(0L), null, null,
+        off);
+  }
+
+  @Test
+  void testHostConcatStringsWithoutData() {
+    // Builders leave the data null when every string is null or empty
+    try (HostColumnVector empty = stringsWithoutData(0, 0, 0);
+         HostColumnVector v1 = HostColumnVector.fromStrings("a", "bc");
+         HostColumnVector expected = HostColumnVector.fromStrings("", "", "a", "bc", "", "");
+         HostColumnVector v = HostColumnVector.concatenate(empty, v1, empty)) {
+      assertColumnsAreEqual(expected, v, "host concat");
+    }
+    try (HostColumnVector broken = stringsWithoutData(0, 2);
+         HostColumnVector v1 = HostColumnVector.fromStrings("a", "bc")) {
+      assertThrows(IllegalStateException.class, () -> HostColumnVector.concatenate(v1, broken));
+    }
+  }
+
+  @Test
+  void testHostConcatLists() {
+    HostColumnVector.DataType type = new ListType(true, new BasicType(true, DType.STRING));
+    List<String> list1 = Arrays.asList("0", "1", "2", "3");
+    List<String> list2 = Arrays.asList("4", null, "6", null);
+    List<String> list3 = null;
+    List<String> list4 = Collections.emptyList();
+    try (HostColumnVector v0 = HostColumnVector.fromLists(type, list1, list3);
+         HostColumnVector v1 = HostColumnVector.fromLists(type, list2, list4);
+         HostColumnVector v = HostColumnVector.concatenate(v0, v1);
+         HostColumnVector expected = HostColumnVector.fromLists(type,
+             list1, list3, list2, list4)) {
+      assertEquals(1, v.getNullCount());
+      assertEquals(8, v.getChildColumnView(0).getRowCount());
+      assertColumnsAreEqual(expected, v, "host concat");
+    }
+  }
+
+  @Test
+  void testHostConcatStructs() {
+    HostColumnVector.DataType type = new StructType(true,
+        new BasicType(true, DType.INT32), new BasicType(true, DType.STRING));
+    try (HostColumnVector v0 = HostColumnVector.fromStructs(type,
+             new StructData(1, "a"), null);
+         HostColumnVector v1 = HostColumnVector.fromStructs(type,
+             new StructData(null, "c"), new StructData(4, null));
+         HostColumnVector v = HostColumnVector.concatenate(v0, v1);
+         HostColumnVector expected = HostColumnVector.fromStructs(type,
+             new StructData(1, "a"), null, new StructData(null, "c"), new StructData(4, null))) {
+      assertColumnsAreEqual(expected, v, "host concat");
+    }
+  }
+
+  @Test
+  void testBuilderAppendStringColumn() {
+    try (HostColumnVector v0 = HostColumnVector.fromStrings("a", null, "ccc");
+         HostColumnVector expected = HostColumnVector.fromStrings("x", "a", null, "ccc");
+         HostColumnVector.Builder builder = HostColumnVector.builder(4, 1)) {
+      builder.append("x");
+      builder.append(v0);
+      try (HostColumnVector v = builder.build()) {
+        assertColumnsAreEqual(expected, v, "builder append");
+      }
+    }
+  }
+
   @Test
   void testNormalizeNANsAndZeros() {
     // Must check boundaries of NaN representation, as described in javadoc for Double#longBitsToDouble.
@@ -0,0 +1,106 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import static ai.rapids.cudf.TableTest.assertColumnsAreEqual;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DictionaryHostColumnTest extends CudfTestBase {
+
+  @Test
+  void testEncodeDecode() {
+    try (HostColumnVector strings = HostColumnVector.fromStrings("b", null, "a", "", "b",
+        "é", "a", null, "");
+         DictionaryHostColumn dict = DictionaryHostColumn.encode(strings);
+         HostColumnVector expectedDict = HostColumnVector.fromStrings("", "a", "b", "é");
+         HostColumnVector decoded = dict.decode()) {
+      assertEquals(9, dict.getRowCount());
+      assertEquals(2, dict.getNullCount());
+      assertEquals(4, dict.getDictionarySize());
+      assertColumnsAreEqual(expectedDict, dict.getDictionary(), "dictionary");
+      assertColumnsAreEqual(strings, decoded, "decoded");
+      assertEquals(2, dict.getCode(0));
+      assertEquals(1, dict.getCode(2));
+      assertEquals("é", dict.getJavaString(5));
+      assertTrue(dict.isNull(7));
+    }
+  }
+
+  @Test
+  void testCompareAndHashOnCodes() {
+    try (HostColumnVector strings = HostColumnVector.fromStrings("pear", "apple", null, "fig",
+        "apple", "pear");
+         DictionaryHostColumn dict = DictionaryHostColumn.encode(strings)) {
+      assertTrue(dict.compareRows(1, 0) < 0);
+      assertTrue(dict.compareRows(0, 3) > 0);
+      assertEquals(0, dict.compareRows(1, 4));
+      assertArrayEquals(HostHashing.murmurHash3(42, strings), dict.murmurHash3(42));
+    }
+  }
+
+  @Test
+  void testBuilderGrowsDictionary() {
+    int numRows = 20000;
+    try (DictionaryHostColumn.Builder builder = DictionaryHostColumn.builder(10)) {
+      for (int i = 0; i < numRows; i++) {
+        if (i % 101 == 0) {
+          builder.appendNull();
+        } else {
+          builder.append("value-" + (i % 3000));
+        }
+      }
+      assertEquals(3000, builder.getDictionarySize());
+      try (DictionaryHostColumn dict = builder.build()) {
+        assertEquals(numRows, dict.getRowCount());
+        assertEquals(3000, dict.getDictionarySize());
+        Utf8View prev = new Utf8View();
+        Utf8View cur = new Utf8View();
+        HostColumnVector d = dict.getDictionary();
+        for (int i = 1; i < d.getRowCount(); i++) {
+          assertTrue(d.getUTF8View(i - 1, prev).compareTo(d.getUTF8View(i, cur)) < 0);
+        }
+        for (int i = 0; i < numRows; i++) {
+          assertEquals(i % 101 == 0, dict.isNull(i));
+          if (i % 101 != 0) {
+            assertEquals("value-" + (i % 3000), dict.getJavaString(i));
+          }
+        }
+      }
+      // The builder starts a new dictionary after it is built
+      builder.append("x");
+      try (DictionaryHostColumn dict = builder.build()) {
+        assertEquals(1, dict.getDictionarySize());
+        assertFalse(dict.getCodes().hasValidityVector());
+      }
+    }
+  }
+
+  @Test
+  void testNotStrings() {
+    try (HostColumnVector ints = HostColumnVector.fromInts(1, 2)) {
+      assertThrows(IllegalArgumentException.class, () -> DictionaryHostColumn.encode(ints));
+    }
+  }
+}
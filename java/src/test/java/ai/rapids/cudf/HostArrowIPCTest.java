@@ -0,0 +1,428 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import ai.rapids.cudf.HostColumnVector.BasicType;
+import ai.rapids.cudf.HostColumnVector.ListType;
+import ai.rapids.cudf.HostColumnVector.StructData;
+import ai.rapids.cudf.HostColumnVector.StructType;
+
+import com.google.flatbuffers.FlatBufferBuilder;
+import org.apache.arrow.flatbuf.Buffer;
+import org.apache.arrow.flatbuf.FieldNode;
+import org.apache.arrow.flatbuf.RecordBatch;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.WriteChannel;
+import org.apache.arrow.vector.ipc.message.ArrowBuffer;
+import org.apache.arrow.vector.ipc.message.ArrowFieldNode;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.Text;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static ai.rapids.cudf.TableTest.assertColumnsAreEqual;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HostArrowIPCTest extends CudfTestBase {
+  private static final ListType LIST_TYPE = new ListType(true, new BasicType(true, DType.INT32));
+  private static final StructType STRUCT_TYPE = new StructType(true,
+      new BasicType(true, DType.INT32), new BasicType(true, DType.STRING));
+
+  private static HostColumnVector[] buildColumns() {
+    HostColumnVector[] ret = new HostColumnVector[6];
+    ret[0] = HostColumnVector.fromBoxedInts(1, null, 3, 4);
+    ret[1] = HostColumnVector.fromStrings("a", "bc", null, "");
+    ret[2] = HostColumnVector.fromBoxedBooleans(true, false, null, true);
+    ret[3] = HostColumnVector.decimalFromBoxedInts(-2, 123, null, -45, 0);
+    ret[4] = HostColumnVector.fromLists(LIST_TYPE, Arrays.asList(1, 2), null,
+        Arrays.asList(), Arrays.asList(3, null));
+    ret[5] = HostColumnVector.fromStructs(STRUCT_TYPE, new StructData(1, "x"), null,
+        new StructData(null, "z"), new StructData(4, null));
+    return ret;
+  }
+
+  private static void close(HostColumnVector[] columns) {
+    for (HostColumnVector c : columns) {
+      c.close();
+    }
+  }
+
+  @Test
+  void testRoundTrip() throws IOException {
+    File file = File.createTempFile("hostipc", ".arrow");
+    HostColumnVector[] columns = buildColumns();
+    try {
+      ArrowIPCWriterOptions options = ArrowIPCWriterOptions.builder()
+          .withColumnNames("i", "s", "b", "d", "l", "st", "st_i", "st_s")
+          .build();
+      try (HostArrowIPCWriter writer = HostArrowIPCWriter.open(options, file)) {
+        writer.write(columns);
+        writer.write(columns);
+        assertEquals(file.length(), writer.getBytesWritten());
+      }
+      try (HostArrowIPCReader reader = HostArrowIPCReader.open(file)) {
+        assertArrayEquals(new String[]{"i", "s", "b", "d", "l", "st"}, reader.getColumnNames());
+        int batches = 0;
+        HostColumnVector[] read;
+        while ((read = reader.next()) != null) {
+          try {
+            for (int i = 0; i < columns.length; i++) {
+              assertColumnsAreEqual(columns[i], read[i], "column " + i);
+            }
+          } finally {
+            close(read);
+          }
+          batches++;
+        }
+        assertEquals(2, batches);
+        assertNull(reader.next());
+      }
+    } finally {
+      close(columns);
+      file.delete();
+    }
+  }
+
+  @Test
+  void testColumnsOutliveReader() throws IOException {
+    File file = File.createTempFile("hostipc", ".arrow");
+    try (HostColumnVector strings = HostColumnVector.fromStrings("first", null, "third")) {
+      try (HostArrowIPCWriter writer = HostArrowIPCWriter.open(ArrowIPCWriterOptions.DEFAULT,
+          file)) {
+        writer.write(strings);
+      }
+      HostColumnVector[] read;
+      try (HostArrowIPCReader reader = HostArrowIPCReader.open(file)) {
+        read = reader.next();
+      }
+      // The columns are slices of the mapped file, which stays mapped until they are closed
+      try (HostColumnVector r = read[0]) {
+        assertColumnsAreEqual(strings, r, "strings");
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void testMismatchedBatchThrows() throws IOException {
+    File file = File.createTempFile("hostipc", ".arrow");
+    try (HostColumnVector ints = HostColumnVector.fromInts(1, 2);
+         HostColumnVector longs = HostColumnVector.fromLongs(1, 2);
+         HostArrowIPCWriter writer = HostArrowIPCWriter.open(ArrowIPCWriterOptions.DEFAULT,
+             file)) {
+      writer.write(ints);
+      assertThrows(IllegalArgumentException.class, () -> writer.write(longs));
+      assertThrows(IllegalArgumentException.class, () -> writer.write(ints, ints));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void testReadByArrow() throws IOException {
+    File file = File.createTempFile("hostipc", ".arrow");
+    HostColumnVector[] columns = buildColumns();
+    BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+    try {
+      ArrowIPCWriterOptions options = ArrowIPCWriterOptions.builder()
+          .withColumnNames("i", "s", "b", "d", "l", "st", "st_i", "st_s")
+          .build();
+      try (HostArrowIPCWriter writer = HostArrowIPCWriter.open(options, file)) {
+        writer.write(columns);
+      }
+      try (FileInputStream in = new FileInputStream(file);
+           ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+        VectorSchemaRoot root = reader.getVectorSchemaRoot();
+        assertTrue(reader.loadNextBatch());
+        assertEquals(4, root.getRowCount());
+        IntVector i = (IntVector) root.getVector("i");
+        assertEquals(1, i.get(0));
+        assertTrue(i.isNull(1));
+        VarCharVector s = (VarCharVector) root.getVector("s");
+        assertEquals("bc", s.getObject(1).toString());
+        assertTrue(s.isNull(2));
+        assertEquals("", s.getObject(3).toString());
+        BitVector b = (BitVector) root.getVector("b");
+        assertEquals(1, b.get(0));
+        assertEquals(0, b.get(1));
+        assertTrue(b.isNull(2));
+        DecimalVector d = (DecimalVector) root.getVector("d");
+        assertEquals(BigDecimal.valueOf(-45, 2), d.getObject(2));
+        assertTrue(d.isNull(1));
+        ListVector l = (ListVector) root.getVector("l");
+        assertEquals(Arrays.asList(1, 2), l.getObject(0));
+        assertTrue(l.isNull(1));
+        assertEquals(Arrays.asList(3, null), l.getObject(3));
+        StructVector st = (StructVector) root.getVector("st");
+        assertTrue(st.isNull(1));
+        assertEquals("x", ((Map<?, ?>) st.getObject(0)).get("st_s").toString());
+        assertEquals(4, ((Map<?, ?>) st.getObject(3)).get("st_i"));
+        assertTrue(!reader.loadNextBatch());
+      }
+    } finally {
+      close(columns);
+      file.delete();
+    }
+  }
+
+  @Test
+  void testWrittenByArrow() throws IOException {
+    File file = File.createTempFile("hostipc", ".arrow");
+    BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+    try (IntVector ints = new IntVector("ints", allocator);
+         VarCharVector strings = new VarCharVector("strings", allocator);
+         DecimalVector decimals = new DecimalVector("decimals", allocator, 18, 3)) {
+      int count = 1000;
+      for (int i = 0; i < count; i++) {
+        if (i % 7 == 0) {
+          ints.setNull(i);
+          strings.setNull(i);
+          decimals.setNull(i);
+        } else {
+          ints.setSafe(i, i);
+          strings.setSafe(i, new Text("str" + i));
+          decimals.setSafe(i, i * 1000L);
+        }
+      }
+      ints.setValueCount(count);
+      strings.setValueCount(count);
+      decimals.setValueCount(count);
+      VectorSchemaRoot root = new VectorSchemaRoot(
+          Arrays.asList(ints.getField(), strings.getField(), decimals.getField()),
+          Arrays.asList(ints, strings, decimals), count);
+      try (FileOutputStream out = new FileOutputStream(file);
+           ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+        writer.start();
+        writer.writeBatch();
+        writer.writeBatch();
+        writer.end();
+      }
+      Integer[] expectedInts = new Integer[count];
+      String[] expectedStrings = new String[count];
+      Long[] expectedDecimals = new Long[count];
+      for (int i = 0; i < count; i++) {
+        if (i % 7 != 0) {
+          expectedInts[i] = i;
+          expectedStrings[i] = "str" + i;
+          expectedDecimals[i] = i * 1000L;
+        }
+      }
+      try (HostArrowIPCReader reader = HostArrowIPCReader.open(file);
+           HostColumnVector expectedI = HostColumnVector.fromBoxedInts(expectedInts);
+           HostColumnVector expectedS = HostColumnVector.fromStrings(expectedStrings);
+           HostColumnVector expectedD = HostColumnVector.decimalFromBoxedLongs(-3,
+               expectedDecimals)) {
+        assertArrayEquals(new DType[]{DType.INT32, DType.STRING,
+            DType.create(DType.DTypeEnum.DECIMAL64, -3)}, reader.getColumnTypes());
+        for (int batch = 0; batch < 2; batch++) {
+          HostColumnVector[] read = reader.next();
+          try {
+            assertColumnsAreEqual(expectedI, read[0], "ints");
+            assertColumnsAreEqual(expectedS, read[1], "strings");
+            assertColumnsAreEqual(expectedD, read[2], "decimals");
+            // The columns can go to the device like any other host column
+            try (ColumnVector onDevice = read[1].copyToDevice();
+                 ColumnVector expected = expectedS.copyToDevice()) {
+              assertColumnsAreEqual(expected, onDevice, "strings on device");
+            }
+          } finally {
+            close(read);
+          }
+        }
+        assertNull(reader.next());
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * A decimal that writes its bit width, which this version of Arrow leaves out.
+   */
+  private static final class WideDecimal extends ArrowType.Decimal {
+    private final int bitWidth;
+
+    WideDecimal(int precision, int scale, int bitWidth) {
+      super(precision, scale);
+      this.bitWidth = bitWidth;
+    }
+
+    @Override
+    public int getType(FlatBufferBuilder builder) {
+      builder.startObject(3);
+      builder.addInt(2, bitWidth, 128);
+      builder.addInt(1, getScale(), 0);
+      builder.addInt(0, getPrecision(), 0);
+      return builder.endObject();
+    }
+  }
+
+  /**
+   * A record batch that says its body is compressed, which this version of Arrow cannot write.
+   */
+  private static final class CompressedRecordBatch extends ArrowRecordBatch {
+    CompressedRecordBatch(ArrowRecordBatch batch) {
+      super(batch.getLength(), batch.getNodes(), batch.getBuffers());
+    }
+
+    @Override
+    public int writeTo(FlatBufferBuilder builder) {
+      List<ArrowFieldNode> nodes = getNodes();
+      RecordBatch.startNodesVector(builder, nodes.size());
+      for (int i = nodes.size() - 1; i >= 0; i--) {
+        FieldNode.createFieldNode(builder, nodes.get(i).getLength(),
+            nodes.get(i).getNullCount());
+      }
+      int nodesOffset = builder.endVector();
+      List<ArrowBuffer> layout = getBuffersLayout();
+      RecordBatch.startBuffersVector(builder, layout.size());
+      for (int i = layout.size() - 1; i >= 0; i--) {
+        Buffer.createBuffer(builder, layout.get(i).getOffset(), layout.get(i).getSize());
+      }
+      int buffersOffset = builder.endVector();
+      // BodyCompression with the ZSTD codec
+      builder.startObject(2);
+      builder.addByte(0, (byte) 1, 0);
+      int compression = builder.endObject();
+      builder.startObject(4);
+      builder.addLong(0, getLength(), 0);
+      builder.addOffset(1, nodesOffset, 0);
+      builder.addOffset(2, buffersOffset, 0);
+      builder.addOffset(3, compression, 0);
+      return builder.endObject();
+    }
+  }
+
+  private static HostArrowIPCReader readerOf(ByteArrayOutputStream stream) {
+    byte[] bytes = stream.toByteArray();
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(bytes.length)) {
+      buffer.setBytes(0, bytes, 0, bytes.length);
+      return new HostArrowIPCReader(buffer);
+    }
+  }
+
+  @Test
+  void testWideDecimalThrows() throws IOException {
+    for (int bitWidth : new int[]{128, 256}) {
+      Field field = new Field("dec", FieldType.nullable(new WideDecimal(18, 2, bitWidth)),
+          null);
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      WriteChannel channel = new WriteChannel(Channels.newChannel(stream));
+      MessageSerializer.serialize(channel, new Schema(Collections.singletonList(field)));
+      channel.writeIntLittleEndian(0);
+      if (bitWidth == 128) {
+        try (HostArrowIPCReader reader = readerOf(stream)) {
+          assertArrayEquals(new DType[]{DType.create(DType.DTypeEnum.DECIMAL64, -2)},
+              reader.getColumnTypes());
+        }
+      } else {
+        assertThrows(UnsupportedOperationException.class, () -> readerOf(stream));
+      }
+    }
+  }
+
+  @Test
+  void testCompressedBatchThrows() throws IOException {
+    BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+    try (IntVector ints = new IntVector("ints", allocator)) {
+      for (int i = 0; i < 10; i++) {
+        ints.setSafe(i, i);
+      }
+      ints.setValueCount(10);
+      VectorSchemaRoot root = new VectorSchemaRoot(Collections.singletonList(ints.getField()),
+          Collections.singletonList(ints), 10);
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      WriteChannel channel = new WriteChannel(Channels.newChannel(stream));
+      MessageSerializer.serialize(channel, root.getSchema());
+      try (ArrowRecordBatch batch = new VectorUnloader(root).getRecordBatch();
+           ArrowRecordBatch compressed = new CompressedRecordBatch(batch)) {
+        MessageSerializer.serialize(channel, compressed);
+      }
+      channel.writeIntLittleEndian(0);
+      try (HostArrowIPCReader reader = readerOf(stream)) {
+        assertThrows(UnsupportedOperationException.class, reader::next);
+      }
+    }
+  }
+
+  @Test
+  void testNotAStreamThrows() {
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(16)) {
+      buffer.setMemory(0, 16, (byte) 7);
+      assertThrows(IllegalArgumentException.class, () -> new HostArrowIPCReader(buffer));
+    }
+  }
+
+  @Test
+  void testListOfStructNames() throws IOException {
+    File file = File.createTempFile("hostipc", ".arrow");
+    ListType type = new ListType(true, STRUCT_TYPE);
+    List<StructData> row = Arrays.asList(new StructData(1, "a"), new StructData(2, "b"));
+    try (HostColumnVector lists = HostColumnVector.fromLists(type, row, null)) {
+      ArrowIPCWriterOptions options = ArrowIPCWriterOptions.builder()
+          .withColumnNames("list", "f1", "f2")
+          .build();
+      try (HostArrowIPCWriter writer = HostArrowIPCWriter.open(options, file)) {
+        writer.write(lists);
+      }
+      try (HostArrowIPCReader reader = HostArrowIPCReader.open(file)) {
+        HostColumnVector[] read = reader.next();
+        try {
+          assertColumnsAreEqual(lists, read[0], "lists");
+        } finally {
+          close(read);
+        }
+      }
+    } finally {
+      file.delete();
+    }
+  }
+}
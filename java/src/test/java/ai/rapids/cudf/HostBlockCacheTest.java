@@ -0,0 +1,227 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import ai.rapids.cudf.HostBlockCache.EvictionPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HostBlockCacheTest extends CudfTestBase {
+  private static final File TEST_PARQUET_FILE = new File("src/test/resources/acq.parquet");
+
+  private static byte[] writeFile(File file, int length, long seed) throws IOException {
+    byte[] data = new byte[length];
+    new Random(seed).nextBytes(data);
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(data);
+    }
+    return data;
+  }
+
+  private static void assertRange(byte[] expected, int offset, HostMemoryBuffer buffer) {
+    byte[] actual = new byte[(int) buffer.getLength()];
+    buffer.getBytes(actual, 0, 0, actual.length);
+    for (int i = 0; i < actual.length; i++) {
+      assertEquals(expected[offset + i], actual[i], "byte " + (offset + i));
+    }
+  }
+
+  @Test
+  void testHitsAndMisses() throws IOException {
+    File file = File.createTempFile("blockcache", ".bin");
+    try (HostBlockCache cache = HostBlockCache.builder(1024 * 1024).build()) {
+      byte[] data = writeFile(file, 4096, 1);
+      try (HostMemoryBuffer first = cache.get(file, 100, 1000)) {
+        assertRange(data, 100, first);
+      }
+      try (HostMemoryBuffer second = cache.get(file, 100, 1000);
+           HostMemoryBuffer other = cache.get(file, 2000, 96)) {
+        assertRange(data, 100, second);
+        assertRange(data, 2000, other);
+      }
+      assertEquals(1, cache.getHitCount());
+      assertEquals(2, cache.getMissCount());
+      assertEquals(1096, cache.getCachedBytes());
+      assertEquals(1096, cache.getBytesRead());
+      assertEquals(2, cache.getNumCached());
+
+      cache.invalidate(file);
+      assertEquals(0, cache.getCachedBytes());
+      try (HostMemoryBuffer again = cache.get(file, 100, 1000)) {
+        assertRange(data, 100, again);
+      }
+      assertEquals(3, cache.getMissCount());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void testModifiedFileIsReread() throws IOException {
+    File file = File.createTempFile("blockcache", ".bin");
+    try (HostBlockCache cache = HostBlockCache.builder(1024 * 1024).build()) {
+      writeFile(file, 512, 1);
+      cache.get(file, 0, 512).close();
+      byte[] changed = writeFile(file, 512, 2);
+      assertTrue(file.setLastModified(file.lastModified() + 10_000));
+      try (HostMemoryBuffer buffer = cache.get(file, 0, 512)) {
+        assertRange(changed, 0, buffer);
+      }
+      assertEquals(0, cache.getHitCount());
+      assertEquals(2, cache.getMissCount());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void testLruEviction() throws IOException {
+    File file = File.createTempFile("blockcache", ".bin");
+    HostMemoryBuffer held = null;
+    try {
+      byte[] data;
+      try (HostBlockCache cache = HostBlockCache.builder(300)
+          .withEvictionPolicy(EvictionPolicy.LRU)
+          .build()) {
+        data = writeFile(file, 1024, 1);
+        held = cache.get(file, 0, 100);
+        cache.get(file, 100, 100).close();
+        cache.get(file, 200, 100).close();
+        cache.get(file, 0, 100).close();
+        // The least recently used range is [100, 200)
+        cache.get(file, 300, 100).close();
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(300, cache.getCachedBytes());
+        cache.get(file, 0, 100).close();
+        assertEquals(2, cache.getHitCount());
+        // Larger than the whole cache
+        try (HostMemoryBuffer big = cache.get(file, 0, 301)) {
+          assertRange(data, 0, big);
+        }
+        assertEquals(1, cache.getRejectedCount());
+      }
+      // Slices outlive eviction and the cache
+      assertRange(data, 0, held);
+    } finally {
+      if (held != null) {
+        held.close();
+      }
+      file.delete();
+    }
+  }
+
+  @Test
+  void testTinyLfuKeepsPopularRanges() throws IOException {
+    File file = File.createTempFile("blockcache", ".bin");
+    try (HostBlockCache cache = HostBlockCache.builder(200).build()) {
+      writeFile(file, 4096, 1);
+      for (int i = 0; i < 5; i++) {
+        cache.get(file, 0, 100).close();
+        cache.get(file, 100, 100).close();
+      }
+      // A scan that touches each range once does not push out the popular ones
+      for (int offset = 200; offset < 4096 - 100; offset += 100) {
+        cache.get(file, offset, 100).close();
+      }
+      assertEquals(0, cache.getEvictionCount());
+      long hits = cache.getHitCount();
+      cache.get(file, 0, 100).close();
+      cache.get(file, 100, 100).close();
+      assertEquals(hits + 2, cache.getHitCount());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void testConcurrentLoadsReadOnce() throws Exception {
+    File file = File.createTempFile("blockcache", ".bin");
+    int numThreads = 8;
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    try (HostBlockCache cache = HostBlockCache.builder(1024 * 1024).build()) {
+      byte[] data = writeFile(file, 64 * 1024, 1);
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<HostMemoryBuffer>> results = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        results.add(pool.submit(() -> {
+          start.await();
+          return cache.get(file, 10, 60 * 1024);
+        }));
+      }
+      start.countDown();
+      for (Future<HostMemoryBuffer> result : results) {
+        try (HostMemoryBuffer buffer = result.get()) {
+          assertRange(data, 10, buffer);
+        }
+      }
+      assertEquals(1, cache.getMissCount());
+      assertEquals(numThreads - 1, cache.getHitCount() + cache.getCoalescedCount());
+      assertEquals(60 * 1024, cache.getBytesRead());
+    } finally {
+      pool.shutdown();
+      file.delete();
+    }
+  }
+
+  @Test
+  void testInvalidRangesThrow() throws IOException {
+    File file = File.createTempFile("blockcache", ".bin");
+    try (HostBlockCache cache = HostBlockCache.builder(1024).build()) {
+      writeFile(file, 100, 1);
+      assertThrows(EOFException.class, () -> cache.get(file, 50, 51));
+      assertThrows(IllegalArgumentException.class, () -> cache.get(file, -1, 10));
+      assertThrows(IllegalArgumentException.class, () -> cache.get(file, 0, 0));
+      assertEquals(0, cache.getCachedBytes());
+      cache.get(file, 50, 50).close();
+      assertEquals(1, cache.getNumCached());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void testReadParquetFromCache() throws IOException {
+    try (HostBlockCache cache = HostBlockCache.builder(16 * 1024 * 1024).build();
+         Table expected = Table.readParquet(TEST_PARQUET_FILE)) {
+      long length = TEST_PARQUET_FILE.length();
+      for (int i = 0; i < 2; i++) {
+        try (HostMemoryBuffer buffer = cache.get(TEST_PARQUET_FILE, 0, length);
+             Table table = Table.readParquet(ParquetOptions.DEFAULT, buffer, 0, length)) {
+          TableTest.assertTablesAreEqual(expected, table);
+        }
+      }
+      assertEquals(1, cache.getHitCount());
+    }
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static ai.rapids.cudf.TableTest.assertTablesAreEqual;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HostCSVReaderTest extends CudfTestBase {
+
+  private static void closeAll(HostColumnVector[] columns) {
+    for (HostColumnVector c : columns) {
+      c.close();
+    }
+  }
+
+  @Test
+  void testTypesAndNulls() {
+    String data = "b,i8,i,l,f,d,dec,s\n" +
+        "# a comment\n" +
+        "true,1,100,1000,1.5,2.25,3.14,\"hello, \"\"world\"\"\"\r\n" +
+        "\n" +
+        "False, -2 ,NA,-9223372036854775808,nan,1e3,-0.5,plain\n" +
+        "yes,300,abc,,,,,\n" +
+        "0,3,4\n";
+    Schema schema = Schema.builder()
+        .column(DType.BOOL8, "b")
+        .column(DType.INT8, "i8")
+        .column(DType.INT32, "i")
+        .column(DType.INT64, "l")
+        .column(DType.FLOAT32, "f")
+        .column(DType.FLOAT64, "d")
+        .column(DType.create(DType.DTypeEnum.DECIMAL64, -2), "dec")
+        .column(DType.STRING, "s")
+        .build();
+    CSVOptions opts = CSVOptions.builder()
+        .withComment('#')
+        .hasHeader()
+        .withTrueValue("yes")
+        .build();
+    HostColumnVector[] cols = HostCSVReader.readCSV(schema, opts,
+        data.getBytes(StandardCharsets.UTF_8));
+    try {
+      assertEquals(8, cols.length);
+      for (HostColumnVector c : cols) {
+        assertEquals(4, c.getRowCount());
+      }
+      assertTrue(cols[0].getBoolean(0));
+      assertFalse(cols[0].getBoolean(1));
+      assertTrue(cols[0].getBoolean(2));
+      assertFalse(cols[0].getBoolean(3));
+      assertEquals(1, cols[1].getByte(0));
+      assertEquals(-2, cols[1].getByte(1));
+      // Out of range for the type
+      assertTrue(cols[1].isNull(2));
+      assertEquals(3, cols[1].getByte(3));
+      assertEquals(100, cols[2].getInt(0));
+      assertTrue(cols[2].isNull(1));
+      assertTrue(cols[2].isNull(2));
+      assertEquals(4, cols[2].getInt(3));
+      assertEquals(1000L, cols[3].getLong(0));
+      assertEquals(Long.MIN_VALUE, cols[3].getLong(1));
+      assertTrue(cols[3].isNull(2));
+      assertTrue(cols[3].isNull(3));
+      assertEquals(1.5f, cols[4].getFloat(0));
+      assertTrue(cols[4].isNull(1));
+      assertEquals(1000.0, cols[5].getDouble(1));
+      assertEquals(new BigDecimal("3.14"), cols[6].getBigDecimal(0));
+      assertEquals(new BigDecimal("-0.50"), cols[6].getBigDecimal(1));
+      assertEquals("hello, \"world\"", cols[7].getJavaString(0));
+      assertEquals("plain", cols[7].getJavaString(1));
+      assertTrue(cols[7].isNull(2));
+      assertTrue(cols[7].isNull(3));
+    } finally {
+      closeAll(cols);
+    }
+  }
+
+  @Test
+  void testIncludeColumns() {
+    String data = "1|a|x\n2|b|y\n";
+    Schema schema = Schema.builder()
+        .column(DType.INT32, "n")
+        .column(DType.STRING, "s")
+        .column(DType.STRING, "t")
+        .build();
+    CSVOptions opts = CSVOptions.builder()
+        .withDelim('|')
+        .includeColumn("t", "n")
+        .build();
+    HostColumnVector[] cols = HostCSVReader.readCSV(schema, opts,
+        data.getBytes(StandardCharsets.UTF_8));
+    try {
+      assertEquals(2, cols.length);
+      assertEquals(2, cols[0].getInt(1));
+      assertEquals("y", cols[1].getJavaString(1));
+    } finally {
+      closeAll(cols);
+    }
+    assertThrows(UnsupportedOperationException.class, () -> HostCSVReader.readCSV(
+        Schema.INFERRED, CSVOptions.DEFAULT, data.getBytes(StandardCharsets.UTF_8)));
+    Schema timestamps = Schema.builder().column(DType.TIMESTAMP_DAYS, "t").build();
+    assertThrows(UnsupportedOperationException.class, () -> HostCSVReader.readCSV(
+        timestamps, CSVOptions.DEFAULT, data.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  void testQuoteInsideOfAField() {
+    // The quote in 12" pipe is part of the value and does not pull the next lines into it
+    String data = "1,12\" pipe\n" +
+        "2,plain\n" +
+        "3,\"quoted\nnewline\"\n" +
+        "4,x\"y\"\n" +
+        "5,\"a\"\"b\"\n" +
+        "6,last\n";
+    Schema schema = Schema.builder()
+        .column(DType.INT64, "id")
+        .column(DType.STRING, "name")
+        .build();
+    String[] names = {"12\" pipe", "plain", "quoted\nnewline", "x\"y\"", "a\"b", "last"};
+    byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(bytes.length)) {
+      buffer.setBytes(0, bytes, 0, bytes.length);
+      for (int n = 1; n <= 8; n++) {
+        HostColumnVector[] cols = HostCSVReader.readCSV(schema, CSVOptions.DEFAULT, buffer, 0,
+            bytes.length, n, pool);
+        try {
+          assertEquals(names.length, cols[0].getRowCount());
+          for (int i = 0; i < names.length; i++) {
+            assertEquals(i + 1, cols[0].getLong(i));
+            assertEquals(names[i], cols[1].getJavaString(i));
+          }
+        } finally {
+          closeAll(cols);
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void testParallelChunks() {
+    StringBuilder sb = new StringBuilder("id,name\n");
+    int rows = 20000;
+    for (int i = 0; i < rows; i++) {
+      sb.append(i).append(',');
+      if (i % 7 == 0) {
+        sb.append("\"multi\nline ").append(i).append('"');
+      } else if (i % 11 != 0) {
+        sb.append("name ").append(i);
+      }
+      sb.append('\n');
+    }
+    byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+    Schema schema = Schema.builder()
+        .column(DType.INT64, "id")
+        .column(DType.STRING, "name")
+        .build();
+    CSVOptions opts = CSVOptions.builder().hasHeader().build();
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(bytes.length)) {
+      buffer.setBytes(0, bytes, 0, bytes.length);
+      HostColumnVector[] cols = HostCSVReader.readCSV(schema, opts, buffer, 0, bytes.length, 8,
+          pool);
+      try {
+        assertEquals(rows, cols[0].getRowCount());
+        for (int i = 0; i < rows; i++) {
+          assertEquals(i, cols[0].getLong(i));
+          if (i % 7 == 0) {
+            assertEquals("multi\nline " + i, cols[1].getJavaString(i));
+          } else if (i % 11 == 0) {
+            assertTrue(cols[1].isNull(i));
+          } else {
+            assertEquals("name " + i, cols[1].getJavaString(i));
+          }
+        }
+      } finally {
+        closeAll(cols);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void testMatchesGpuReader() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append(i).append(',').append(i * 0.5).append(',');
+      if (i % 5 != 0) {
+        sb.append("s").append(i);
+      }
+      sb.append('\n');
+    }
+    File file = File.createTempFile("host", ".csv");
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      try (FileOutputStream out = new FileOutputStream(file)) {
+        out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+      }
+      Schema schema = Schema.builder()
+          .column(DType.INT32, "a")
+          .column(DType.FLOAT64, "b")
+          .column(DType.STRING, "c")
+          .build();
+      HostColumnVector[] cols = HostCSVReader.readCSV(schema, CSVOptions.DEFAULT, file, 4, pool);
+      try (ColumnVector a = cols[0].copyToDevice();
+           ColumnVector b = cols[1].copyToDevice();
+           ColumnVector c = cols[2].copyToDevice();
+           Table result = new Table(a, b, c);
+           Table expected = Table.readCSV(schema, file)) {
+        assertTablesAreEqual(expected, result);
+      } finally {
+        closeAll(cols);
+      }
+    } finally {
+      pool.shutdown();
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import ai.rapids.cudf.HostColumnVector.BasicType;
+import ai.rapids.cudf.HostColumnVector.ListType;
+import ai.rapids.cudf.HostColumnVector.StructData;
+import ai.rapids.cudf.HostColumnVector.StructType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HostColumnCursorTest extends CudfTestBase {
+
+  @Test
+  void testFlatColumns() {
+    try (HostColumnVector ints = HostColumnVector.fromBoxedInts(1, null, 3);
+         HostColumnVector doubles = HostColumnVector.fromDoubles(1.5, 2.5)) {
+      HostColumnCursor c = new HostColumnCursor(ints);
+      assertTrue(c.next());
+      assertEquals(1, c.getInt());
+      assertTrue(c.next());
+      assertTrue(c.isNull());
+      assertTrue(c.next());
+      assertEquals(3, c.getInt());
+      assertFalse(c.next());
+      assertFalse(c.next());
+
+      HostColumnCursor d = new HostColumnCursor(doubles);
+      assertEquals(2.5, d.at(1).getDouble());
+      assertEquals(1.5, d.at(0).getDouble());
+    }
+  }
+
+  @Test
+  void testListOfStructs() {
+    HostColumnVector.DataType type = new ListType(true,
+        new StructType(true, new BasicType(true, DType.INT32), new BasicType(true, DType.STRING)));
+    try (HostColumnVector cv = HostColumnVector.fromLists(type,
+        Arrays.asList(new StructData(1, "a"), new StructData(null, "bb")),
+        null,
+        Arrays.asList(),
+        Arrays.asList(new StructData(3, null), null, new StructData(5, "é")))) {
+      HostColumnCursor lists = new HostColumnCursor(cv);
+      Utf8View view = new Utf8View();
+      StringBuilder sb = new StringBuilder();
+      while (lists.next()) {
+        if (lists.isNull()) {
+          sb.append("null;");
+          continue;
+        }
+        sb.append('[');
+        HostColumnCursor structs = lists.elements();
+        assertEquals(lists.getListSize(), structs.getRangeSize());
+        while (structs.next()) {
+          if (structs.isNull()) {
+            sb.append("null");
+            continue;
+          }
+          HostColumnCursor a = structs.field(0);
+          HostColumnCursor b = structs.field(1);
+          sb.append('{').append(a.isNull() ? "null" : String.valueOf(a.getInt()))
+              .append(',').append(b.isNull() ? "null" : b.getUTF8(view).toString()).append('}');
+        }
+        sb.append("];");
+      }
+      assertEquals("[{1,a}{null,bb}];null;[];[{3,null}null{5,é}];", sb.toString());
+
+      lists.at(3);
+      assertEquals(3, lists.getListSize());
+      assertEquals("é", lists.element(2).field(1).getUTF8(view).toString());
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HostColumnStatisticsTest extends CudfTestBase {
+
+  @Test
+  void testInts() {
+    try (HostColumnVector cv = HostColumnVector.fromBoxedInts(5, null, -3, 5, 12, null, 0)) {
+      HostColumnStatistics stats = HostColumnStatistics.compute(cv);
+      assertEquals(7, stats.getRowCount());
+      assertEquals(2, stats.getNullCount());
+      assertEquals(2.0 / 7, stats.getNullFraction(), 1e-9);
+      assertEquals(4, stats.getDistinctCount());
+      assertEquals(-3, stats.getMinLong());
+      assertEquals(12, stats.getMaxLong());
+    }
+  }
+
+  @Test
+  void testUnsignedAndDecimal() {
+    try (HostColumnVector bytes = HostColumnVector.build(DType.UINT8, 3,
+             b -> b.append((byte) -1).append((byte) 1).append((byte) 100));
+         HostColumnVector decimals = HostColumnVector.fromDecimals(
+             new BigDecimal("1.25"), new BigDecimal("-3.50"), new BigDecimal("2.00"))) {
+      HostColumnStatistics stats = HostColumnStatistics.compute(bytes);
+      assertEquals(1, stats.getMinLong());
+      assertEquals(255, stats.getMaxLong());
+      HostColumnStatistics decStats = HostColumnStatistics.compute(decimals);
+      assertEquals(new BigDecimal("-3.50"), decStats.getMinDecimal());
+      assertEquals(new BigDecimal("2.00"), decStats.getMaxDecimal());
+    }
+  }
+
+  @Test
+  void testDoubles() {
+    try (HostColumnVector cv = HostColumnVector.fromDoubles(1.5, Double.NaN, -0.0, 0.0,
+        -7.25, Double.NaN)) {
+      HostColumnStatistics stats = HostColumnStatistics.compute(cv);
+      assertEquals(-7.25, stats.getMinDouble());
+      assertEquals(1.5, stats.getMaxDouble());
+      // 1.5, NaN, 0 and -7.25
+      assertEquals(4, stats.getDistinctCount());
+    }
+    try (HostColumnVector cv = HostColumnVector.fromDoubles(Double.NaN)) {
+      assertFalse(HostColumnStatistics.compute(cv).hasMinMax());
+    }
+  }
+
+  @Test
+  void testStrings() {
+    try (HostColumnVector cv = HostColumnVector.fromStrings("banana", null, "apple", "",
+        "cherry", "apple", null, "éclair")) {
+      HostColumnStatistics stats = HostColumnStatistics.compute(cv);
+      assertEquals(2, stats.getNullCount());
+      assertEquals(5, stats.getDistinctCount());
+      assertEquals("", stats.getMinString());
+      assertEquals("éclair", stats.getMaxString());
+      assertEquals(6 + 5 + 6 + 5 + 7, stats.getTotalStringBytes());
+      assertEquals(29.0 / 6, stats.getAverageStringLength(), 1e-9);
+    }
+  }
+
+  @Test
+  void testAllNull() {
+    try (HostColumnVector cv = HostColumnVector.fromBoxedLongs(null, null)) {
+      HostColumnStatistics stats = HostColumnStatistics.compute(cv);
+      assertEquals(1.0, stats.getNullFraction());
+      assertFalse(stats.hasMinMax());
+      assertEquals(0, stats.getDistinctCount());
+      assertThrows(IllegalStateException.class, stats::getMinLong);
+    }
+  }
+
+  @Test
+  void testLargeCardinalityAndMerge() {
+    int rows = 100000;
+    long[] first = new long[rows];
+    long[] second = new long[rows];
+    for (int i = 0; i < rows; i++) {
+      first[i] = i;
+      // Half of the second batch overlaps the first one
+      second[i] = i + rows / 2;
+    }
+    try (HostColumnVector a = HostColumnVector.fromLongs(first);
+         HostColumnVector b = HostColumnVector.fromLongs(second)) {
+      HostColumnStatistics sa = HostColumnStatistics.compute(a, 14);
+      HostColumnStatistics sb = HostColumnStatistics.compute(b, 14);
+      assertEquals(rows, sa.getDistinctCount(), rows * 0.03);
+      HostColumnStatistics merged = sa.merge(sb);
+      assertEquals(rows * 1.5, merged.getDistinctCount(), rows * 1.5 * 0.03);
+      assertEquals(2L * rows, merged.getRowCount());
+      assertEquals(0, merged.getMinLong());
+      assertEquals(rows + rows / 2 - 1, merged.getMaxLong());
+    }
+  }
+
+  @Test
+  void testSerialization() throws IOException {
+    try (HostColumnVector ints = HostColumnVector.fromBoxedInts(3, null, 1);
+         HostColumnVector strings = HostColumnVector.fromStrings("x", "yy", null);
+         HostColumnVector doubles = HostColumnVector.fromDoubles(2.5, -1)) {
+      HostColumnStatistics[] stats = HostColumnStatistics.computeAll(ints, strings, doubles);
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      try (DataOutputStream dout = new DataOutputStream(bout)) {
+        HostColumnStatistics.writeTable(dout, stats);
+      }
+      HostColumnStatistics[] read;
+      try (DataInputStream din = new DataInputStream(
+          new ByteArrayInputStream(bout.toByteArray()))) {
+        read = HostColumnStatistics.readTable(din);
+      }
+      assertEquals(3, read.length);
+      assertEquals(DType.INT32, read[0].getType());
+      assertEquals(1, read[0].getNullCount());
+      assertEquals(1, read[0].getMinLong());
+      assertEquals(3, read[0].getMaxLong());
+      assertEquals("x", read[1].getMinString());
+      assertEquals("yy", read[1].getMaxString());
+      assertEquals(1.5, read[1].getAverageStringLength());
+      assertEquals(-1.0, read[2].getMinDouble());
+      for (int i = 0; i < stats.length; i++) {
+        assertEquals(stats[i].getSketch(), read[i].getSketch());
+        assertEquals(stats[i].getDistinctCount(), read[i].getDistinctCount());
+      }
+    }
+    try (DataInputStream din = new DataInputStream(new ByteArrayInputStream(new byte[16]))) {
+      assertThrows(IllegalStateException.class, () -> HostColumnStatistics.readTable(din));
+    }
+  }
+
+  @Test
+  void testSketchMatchesForBytesAndBuffers() {
+    byte[] data = "a somewhat longer string value".getBytes();
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(data.length + 3)) {
+      buffer.setBytes(3, data, 0, data.length);
+      for (int len = 0; len <= data.length; len++) {
+        assertEquals(HostHyperLogLog.hash64(data, 0, len), HostHyperLogLog.hash64(buffer, 3, len));
+      }
+    }
+    HostHyperLogLog small = new HostHyperLogLog(4);
+    assertThrows(IllegalArgumentException.class, () -> small.merge(new HostHyperLogLog()));
+    assertEquals(0, small.estimate());
+  }
+}
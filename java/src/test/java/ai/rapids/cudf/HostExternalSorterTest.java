@@ -0,0 +1,148 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ai.rapids.cudf.TableTest.assertColumnsAreEqual;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HostExternalSorterTest extends CudfTestBase {
+  private static final int NUM_ROWS = 1000;
+
+  private static Table buildTable() {
+    try (ColumnVector keys = ColumnVector.build(DType.INT32, NUM_ROWS, (b) -> {
+           for (int i = 0; i < NUM_ROWS; i++) {
+             if (i % 11 == 0) {
+               b.appendNull();
+             } else {
+               b.append((i * 7919) % 37);
+             }
+           }
+         });
+         ColumnVector strings = ColumnVector.build(DType.STRING, NUM_ROWS, (b) -> {
+           for (int i = 0; i < NUM_ROWS; i++) {
+             if (i % 13 == 0) {
+               b.appendNull();
+             } else {
+               b.appendUTF8String(("s" + (i * 31) % 17).getBytes());
+             }
+           }
+         });
+         ColumnVector ids = ColumnVector.build(DType.INT64, NUM_ROWS, (b) -> {
+           for (long i = 0; i < NUM_ROWS; i++) {
+             b.append(i);
+           }
+         })) {
+      return new Table(keys, strings, ids);
+    }
+  }
+
+  private static void runSort(long budget, int outputRows, File spillDir,
+                              boolean expectSpill) throws IOException {
+    // The ids are unique and increase with the input order, so sorting by them last gives the
+    // same order as a stable sort on the other keys.
+    OrderByArg[] hostArgs = {OrderByArg.asc(0, true), OrderByArg.desc(1)};
+    OrderByArg[] deviceArgs = {OrderByArg.asc(0, true), OrderByArg.desc(1), OrderByArg.asc(2)};
+    try (Table table = buildTable();
+         Table expected = table.orderBy(deviceArgs)) {
+      HostColumnVector[] host = new HostColumnVector[table.getNumberOfColumns()];
+      List<HostColumnVector[]> output = new ArrayList<>();
+      try (HostExternalSorter sorter =
+               new HostExternalSorter(hostArgs, budget, spillDir, outputRows)) {
+        for (int i = 0; i < host.length; i++) {
+          host[i] = table.getColumn(i).copyToHost();
+        }
+        for (int start = 0; start < NUM_ROWS; start += 97) {
+          int count = Math.min(97, NUM_ROWS - start);
+          int[] rows = new int[count];
+          for (int i = 0; i < count; i++) {
+            rows[i] = start + i;
+          }
+          HostColumnVector[] batch = HostGather.gather(host, rows, 0, count);
+          try {
+            sorter.add(batch);
+          } finally {
+            HostGather.closeAll(batch);
+          }
+        }
+        assertEquals(expectSpill, sorter.getNumSpilledRuns() > 0);
+        HostColumnVector[] sorted;
+        while ((sorted = sorter.next()) != null) {
+          output.add(sorted);
+          assertTrue(sorted[0].getRowCount() <= outputRows);
+        }
+        for (int c = 0; c < host.length; c++) {
+          HostColumnVector[] parts = new HostColumnVector[output.size()];
+          for (int i = 0; i < parts.length; i++) {
+            parts[i] = output.get(i)[c];
+          }
+          try (HostColumnVector result = HostColumnVector.concatenate(parts);
+               HostColumnVector e = expected.getColumn(c).copyToHost()) {
+            assertColumnsAreEqual(e, result, "column " + c);
+          }
+        }
+      } finally {
+        HostGather.closeAll(host);
+        for (HostColumnVector[] batch : output) {
+          HostGather.closeAll(batch);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testSortInMemory() throws IOException {
+    runSort(Long.MAX_VALUE, 128, null, false);
+  }
+
+  @Test
+  void testSortWithSpill(@TempDir File tempDir) throws IOException {
+    runSort(4096, 128, tempDir, true);
+    runSort(4096, 1, tempDir, true);
+    runSort(1, 1000, tempDir, true);
+    String[] left = tempDir.list();
+    assertEquals(0, left == null ? 0 : left.length);
+  }
+
+  @Test
+  void testAddAfterOutput() throws IOException {
+    try (HostExternalSorter sorter =
+             new HostExternalSorter(new OrderByArg[]{OrderByArg.asc(0)}, 1024, null, 10);
+         HostColumnVector ints = HostColumnVector.fromInts(3, 1, 2)) {
+      HostColumnVector[] batch = {ints};
+      sorter.add(batch);
+      HostColumnVector[] sorted = sorter.next();
+      try {
+        assertEquals(3, sorted[0].getRowCount());
+      } finally {
+        HostGather.closeAll(sorted);
+      }
+      assertThrows(IllegalStateException.class, () -> sorter.add(batch));
+    }
+  }
+}
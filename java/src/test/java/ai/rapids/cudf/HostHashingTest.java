@@ -0,0 +1,236 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static ai.rapids.cudf.TableTest.assertColumnsAreEqual;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HostHashingTest extends CudfTestBase {
+
+  private static int[] toIntArray(ColumnVector cv) {
+    try (HostColumnVector hcv = cv.copyToHost()) {
+      int[] ret = new int[(int) hcv.getRowCount()];
+      for (int i = 0; i < ret.length; i++) {
+        ret[i] = hcv.getInt(i);
+      }
+      return ret;
+    }
+  }
+
+  @Test
+  void testSparkMurmur3MatchesDevice() {
+    try (HostColumnVector ints = HostColumnVector.fromBoxedInts(
+            0, 100, null, null, Integer.MIN_VALUE, null);
+         HostColumnVector strings = HostColumnVector.fromStrings(
+            "a", "B\nc", "dE\"Ā\tā 휠휡\\Fg2\'",
+            "A very long (greater than 128 bytes/char string) to test a multi hash-step data point " +
+            "in the MD5 hash function. This string needed to be longer.", null, null);
+         HostColumnVector doubles = HostColumnVector.fromBoxedDoubles(
+            0.0, null, 100.0, -100.0, Double.NaN, -0.0);
+         HostColumnVector bytes = HostColumnVector.fromBoxedBytes(
+            (byte) 0, (byte) 100, null, (byte) -1, Byte.MIN_VALUE, null);
+         HostColumnVector bools = HostColumnVector.fromBoxedBooleans(
+            null, true, false, true, null, false);
+         HostColumnVector longs = HostColumnVector.decimalFromLongs(-3, 0L, 100L, -100L,
+            Long.MAX_VALUE, Long.MIN_VALUE, 7L)) {
+      HostColumnVector[] host = {ints, strings, doubles, bytes, bools, longs};
+      ColumnVector[] device = new ColumnVector[host.length];
+      try {
+        for (int i = 0; i < host.length; i++) {
+          device[i] = host[i].copyToDevice();
+        }
+        try (ColumnVector expected = ColumnVector.spark32BitMurmurHash3(42, device)) {
+          assertArrayEquals(toIntArray(expected), HostHashing.spark32BitMurmurHash3(42, host));
+        }
+      } finally {
+        for (ColumnVector cv : device) {
+          if (cv != null) {
+            cv.close();
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testSparkMurmur3Decimal32MatchesDevice() {
+    try (HostColumnVector decimals = HostColumnVector.decimalFromInts(-2, 0, 100, -100,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, 7);
+         ColumnVector device = decimals.copyToDevice();
+         ColumnVector expected = ColumnVector.spark32BitMurmurHash3(42,
+             new ColumnVector[]{device})) {
+      assertArrayEquals(toIntArray(expected),
+          HostHashing.spark32BitMurmurHash3(42, decimals));
+    }
+  }
+
+  @Test
+  void testMurmur3PartitionMatchesDevice() {
+    final int count = 1000;
+    final int parts = 7;
+    try (ColumnVector longs = ColumnVector.build(DType.INT64, count, (b) -> {
+           for (long i = 0; i < count; i++) {
+             if (i % 13 == 0) {
+               b.appendNull();
+             } else {
+               b.append(i * 31);
+             }
+           }
+         });
+         ColumnVector strings = ColumnVector.build(DType.STRING, count, (b) -> {
+           for (int i = 0; i < count; i++) {
+             b.appendUTF8String(String.valueOf(i % 17).getBytes());
+           }
+         });
+         ColumnVector floats = ColumnVector.build(DType.FLOAT32, count, (b) -> {
+           for (int i = 0; i < count; i++) {
+             b.append(i % 5 == 0 ? -0.0f : i / 3.0f);
+           }
+         });
+         Table input = new Table(longs, strings, floats);
+         PartitionedTable output = input.onColumns(0, 1, 2).hashPartition(HashType.MURMUR3, parts);
+         HostColumnVector outLongs = output.getColumn(0).copyToHost();
+         HostColumnVector outStrings = output.getColumn(1).copyToHost();
+         HostColumnVector outFloats = output.getColumn(2).copyToHost()) {
+      int[] partitionStarts = output.getPartitions();
+      int[] map = HostHashing.partitionMap(HashType.MURMUR3, parts,
+          outLongs, outStrings, outFloats);
+      for (int p = 0; p < parts; p++) {
+        int end = p + 1 < parts ? partitionStarts[p + 1] : count;
+        for (int row = partitionStarts[p]; row < end; row++) {
+          assertEquals(p, map[row], "Row " + row);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testIdentityPartitionMatchesDevice() {
+    try (ColumnVector ints = ColumnVector.fromBoxedInts(-1, 0, 1, 2, 3, 4, 5, 6, 7, 8);
+         Table input = new Table(ints);
+         PartitionedTable output = input.onColumns(0).hashPartition(HashType.IDENTITY, 4);
+         HostColumnVector outInts = output.getColumn(0).copyToHost()) {
+      int[] partitionStarts = output.getPartitions();
+      int[] map = HostHashing.partitionMap(HashType.IDENTITY, 4, outInts);
+      for (int p = 0; p < 4; p++) {
+        int end = p + 1 < 4 ? partitionStarts[p + 1] : 10;
+        for (int row = partitionStarts[p]; row < end; row++) {
+          assertEquals(p, map[row], "Row " + row);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testIdentityHashFloats() {
+    try (HostColumnVector floats = HostColumnVector.fromFloats(0.5f, 1.9f, -3.5f, 7f, Float.NaN,
+             1e20f);
+         HostColumnVector doubles = HostColumnVector.fromDoubles(2.99, -0.0, 100.25, 6e9,
+             Double.NaN, Double.NEGATIVE_INFINITY);
+         HostColumnVector ints = HostColumnVector.fromInts(0, 1, 0, 7, 0, -1);
+         HostColumnVector moreInts = HostColumnVector.fromInts(2, 0, 100, -1, 0, 0)) {
+      // Values are truncated and clamped to an unsigned 32-bit integer, not hashed by their bits
+      assertArrayEquals(HostHashing.identityHash(ints, moreInts),
+          HostHashing.identityHash(floats, doubles));
+    }
+  }
+
+  @Test
+  void testIdentityPartitionFloatsMatchesDevice() {
+    try (ColumnVector floats = ColumnVector.fromFloats(0.5f, 1.5f, 2.9f, 3f, 7.99f, 100.25f,
+             -3.5f, 11f);
+         ColumnVector doubles = ColumnVector.fromDoubles(4.5, 0.25, 9.75, 13.0, -2.0, 1e3,
+             5.5, 6.0);
+         Table input = new Table(floats, doubles);
+         PartitionedTable output = input.onColumns(0, 1).hashPartition(HashType.IDENTITY, 4);
+         HostColumnVector outFloats = output.getColumn(0).copyToHost();
+         HostColumnVector outDoubles = output.getColumn(1).copyToHost()) {
+      int[] partitionStarts = output.getPartitions();
+      int[] map = HostHashing.partitionMap(HashType.IDENTITY, 4, outFloats, outDoubles);
+      for (int p = 0; p < 4; p++) {
+        int end = p + 1 < 4 ? partitionStarts[p + 1] : 8;
+        for (int row = partitionStarts[p]; row < end; row++) {
+          assertEquals(p, map[row], "Row " + row);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testListsNotSupported() {
+    HostColumnVector.DataType type = new HostColumnVector.ListType(true,
+        new HostColumnVector.BasicType(true, DType.INT32));
+    try (HostColumnVector lists = HostColumnVector.fromLists(type,
+        java.util.Arrays.asList(1, 2))) {
+      assertThrows(IllegalArgumentException.class, () -> HostHashing.murmurHash3(lists));
+      assertThrows(IllegalArgumentException.class,
+          () -> HostHashing.spark32BitMurmurHash3(42, lists));
+    }
+  }
+
+  @Test
+  void testHostHashPartition() throws IOException {
+    final int parts = 3;
+    try (HostColumnVector keys = HostColumnVector.fromBoxedInts(1, 2, 3, null, 5, 6, 7, 8, 9);
+         HostColumnVector values = HostColumnVector.fromStrings(
+             "a", "b", null, "d", "e", "f", "g", "h", "i")) {
+      HostColumnVector[] table = {keys, values};
+      ByteArrayOutputStream[] streams = new ByteArrayOutputStream[parts];
+      for (int p = 0; p < parts; p++) {
+        streams[p] = new ByteArrayOutputStream();
+      }
+      int[] counts = HostHashing.hostHashPartition(table, new int[]{0},
+          HashType.HASH_SPARK_MURMUR3, streams);
+      int[] map = HostHashing.partitionMap(HashType.HASH_SPARK_MURMUR3, parts, keys);
+      for (int p = 0; p < parts; p++) {
+        int[] expectedRows = new int[counts[p]];
+        int numExpected = 0;
+        for (int row = 0; row < map.length; row++) {
+          if (map[row] == p) {
+            expectedRows[numExpected++] = row;
+          }
+        }
+        assertEquals(counts[p], numExpected);
+        if (numExpected == 0) {
+          assertEquals(0, streams[p].size());
+          continue;
+        }
+        HostColumnVector[] expected = HostGather.gather(table, expectedRows, 0, numExpected);
+        try (JCudfSerialization.TableAndRowCountPair result = JCudfSerialization.readTableFrom(
+                 new ByteArrayInputStream(streams[p].toByteArray()));
+             HostColumnVector outKeys = result.getTable().getColumn(0).copyToHost();
+             HostColumnVector outValues = result.getTable().getColumn(1).copyToHost()) {
+          assertEquals(numExpected, result.getNumRows());
+          assertColumnsAreEqual(expected[0], outKeys, "keys");
+          assertColumnsAreEqual(expected[1], outValues, "values");
+        } finally {
+          HostGather.closeAll(expected);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import ai.rapids.cudf.HostColumnVector.BasicType;
+import ai.rapids.cudf.HostColumnVector.ListType;
+import ai.rapids.cudf.HostColumnVector.StructData;
+import ai.rapids.cudf.HostColumnVector.StructType;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ai.rapids.cudf.TableTest.assertColumnsAreEqual;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HostJSONReaderTest extends CudfTestBase {
+
+  private static HostColumnVector[] read(Schema schema, JSONOptions opts, String data) {
+    return HostJSONReader.readJSON(schema, opts, data.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void closeAll(HostColumnVector[] columns) {
+    for (HostColumnVector c : columns) {
+      c.close();
+    }
+  }
+
+  @Test
+  void testFlatTypes() {
+    String data = "{\"b\": true, \"i\": 1, \"l\": 10, \"d\": 1.5, \"dec\": 3.14, \"s\": \"a\"}\n" +
+        "\n" +
+        "{\"s\": \"tab\\there \\\"q\\\" \\u00e9\\ud83d\\ude00\", \"i\": \"2\", \"extra\": [1, {\"x\": \"}\"}]}\r\n" +
+        "  {\"b\": false, \"i\": 1e3, \"l\": null, \"d\": \"abc\", \"dec\": -0.5, \"s\": 12.5}\n" +
+        "{}";
+    Schema schema = Schema.builder()
+        .column(DType.BOOL8, "b")
+        .column(DType.INT32, "i")
+        .column(DType.INT64, "l")
+        .column(DType.FLOAT64, "d")
+        .column(DType.create(DType.DTypeEnum.DECIMAL64, -2), "dec")
+        .column(DType.STRING, "s")
+        .build();
+    HostColumnVector[] cols = read(schema, JSONOptions.DEFAULT, data);
+    try (HostColumnVector b = HostColumnVector.fromBoxedBooleans(true, null, false, null);
+         HostColumnVector i = HostColumnVector.fromBoxedInts(1, 2, null, null);
+         HostColumnVector l = HostColumnVector.fromBoxedLongs(10L, null, null, null);
+         HostColumnVector d = HostColumnVector.fromBoxedDoubles(1.5, null, null, null);
+         HostColumnVector dec = HostColumnVector.decimalFromBoxedLongs(-2, 314L, null, -50L,
+             null);
+         HostColumnVector s = HostColumnVector.fromStrings("a",
+             "tab\there \"q\" \u00e9\ud83d\ude00", "12.5", null)) {
+      assertEquals(6, cols.length);
+      assertColumnsAreEqual(b, cols[0], "b");
+      assertColumnsAreEqual(i, cols[1], "i");
+      assertColumnsAreEqual(l, cols[2], "l");
+      assertColumnsAreEqual(d, cols[3], "d");
+      assertColumnsAreEqual(dec, cols[4], "dec");
+      assertColumnsAreEqual(s, cols[5], "s");
+    } finally {
+      closeAll(cols);
+    }
+  }
+
+  @Test
+  void testNestedTypes() {
+    String data = "{\"id\": 1, \"p\": {\"x\": 1, \"tags\": [\"a\", \"b\"]}, \"vals\": [1, 2, 3]}\n" +
+        "{\"id\": 2, \"p\": null, \"vals\": []}\n" +
+        "{\"vals\": [4, null], \"p\": {\"tags\": null, \"x\": 3}, \"id\": 3}\n" +
+        "{\"id\": 4, \"p\": 5, \"vals\": {\"a\": 1}}\n";
+    Schema.Builder builder = Schema.builder();
+    builder.column(DType.INT32, "id");
+    Schema.Builder p = builder.addColumn(DType.STRUCT, "p");
+    p.column(DType.INT64, "x");
+    p.addColumn(DType.LIST, "tags").column(DType.STRING, "element");
+    builder.addColumn(DType.LIST, "vals").column(DType.INT32, "element");
+    Schema schema = builder.build();
+    HostColumnVector[] cols = read(schema, JSONOptions.DEFAULT, data);
+    StructType pType = new StructType(true, new BasicType(true, DType.INT64),
+        new ListType(true, new BasicType(true, DType.STRING)));
+    ListType valsType = new ListType(true, new BasicType(true, DType.INT32));
+    try (HostColumnVector id = HostColumnVector.fromBoxedInts(1, 2, 3, 4);
+         HostColumnVector pCol = HostColumnVector.fromStructs(pType,
+             new StructData(1L, Arrays.asList("a", "b")),
+             null,
+             new StructData(3L, null),
+             null);
+         HostColumnVector vals = HostColumnVector.fromLists(valsType,
+             Arrays.asList(1, 2, 3), Arrays.asList(), Arrays.asList(4, null), null)) {
+      assertColumnsAreEqual(id, cols[0], "id");
+      assertColumnsAreEqual(pCol, cols[1], "p");
+      assertColumnsAreEqual(vals, cols[2], "vals");
+    } finally {
+      closeAll(cols);
+    }
+  }
+
+  @Test
+  void testSelectedColumns() {
+    String data = "{\"a\": 1, \"b\": {\"deep\": [1, 2, {\"c\": \"]\"}]}, \"c\": \"x\"}\n" +
+        "{\"c\": \"y\", \"a\": 2}\n";
+    Schema schema = Schema.builder()
+        .column(DType.INT32, "a")
+        .column(DType.STRING, "b")
+        .column(DType.STRING, "c")
+        .build();
+    JSONOptions opts = JSONOptions.builder().includeColumn("c").build();
+    HostColumnVector[] cols = read(schema, opts, data);
+    try (HostColumnVector c = HostColumnVector.fromStrings("x", "y")) {
+      assertEquals(1, cols.length);
+      assertColumnsAreEqual(c, cols[0], "c");
+    } finally {
+      closeAll(cols);
+    }
+    // Values that are not strings are read into string columns as JSON text
+    cols = read(schema, JSONOptions.builder().includeColumn("b").build(), data);
+    try (HostColumnVector b = HostColumnVector.fromStrings(
+        "{\"deep\": [1, 2, {\"c\": \"]\"}]}", null)) {
+      assertColumnsAreEqual(b, cols[0], "b");
+    } finally {
+      closeAll(cols);
+    }
+    assertThrows(IllegalArgumentException.class,
+        () -> read(schema, JSONOptions.DEFAULT, "{\"a\": 1}\n[1, 2]\n"));
+    assertThrows(IllegalArgumentException.class,
+        () -> read(schema, JSONOptions.DEFAULT, "{\"a\": 1, \"c\": \"open}\n"));
+    assertThrows(UnsupportedOperationException.class,
+        () -> read(Schema.INFERRED, JSONOptions.DEFAULT, data));
+  }
+
+  @Test
+  void testInvalidNestedSchemas() {
+    // The GPU readers only use the top level columns, so Schema itself allows these
+    Schema noElement = Schema.builder().column(DType.LIST, "l").build();
+    Schema.Builder builder = Schema.builder();
+    builder.addColumn(DType.INT32, "i").column(DType.INT32, "child");
+    Schema childOfInt = builder.build();
+    Schema.Builder twoElements = Schema.builder();
+    twoElements.addColumn(DType.LIST, "l")
+        .column(DType.INT32, "a")
+        .column(DType.INT32, "b");
+    assertThrows(IllegalArgumentException.class,
+        () -> read(noElement, JSONOptions.DEFAULT, "{\"l\": [1]}\n"));
+    assertThrows(IllegalArgumentException.class,
+        () -> read(childOfInt, JSONOptions.DEFAULT, "{\"i\": 1}\n"));
+    assertThrows(IllegalArgumentException.class,
+        () -> read(twoElements.build(), JSONOptions.DEFAULT, "{\"l\": [1]}\n"));
+  }
+
+  @Test
+  void testParallelChunks() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int rows = 20000;
+    for (int i = 0; i < rows; i++) {
+      sb.append("{\"id\": ").append(i)
+          .append(", \"name\": \"name ").append(i).append("\\n\"")
+          .append(", \"nums\": [").append(i).append(", ").append(-i).append("]}\n");
+    }
+    byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+    Schema.Builder builder = Schema.builder()
+        .column(DType.INT64, "id")
+        .column(DType.STRING, "name");
+    builder.addColumn(DType.LIST, "nums").column(DType.INT32, "element");
+    Schema schema = builder.build();
+    File file = File.createTempFile("host", ".json");
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    AtomicLong readRows = new AtomicLong();
+    AtomicLong readBytes = new AtomicLong();
+    try {
+      try (FileOutputStream out = new FileOutputStream(file)) {
+        out.write(bytes);
+      }
+      HostColumnVector[] cols = HostJSONReader.readJSON(schema, JSONOptions.DEFAULT, file, 8,
+          pool, (numBytes, numRows, elapsedNanos, bytesPerSecond) -> {
+            readBytes.set(numBytes);
+            readRows.set(numRows);
+            assertTrue(bytesPerSecond >= 0);
+          });
+      try {
+        assertEquals(rows, readRows.get());
+        assertEquals(bytes.length, readBytes.get());
+        assertEquals(rows, cols[0].getRowCount());
+        for (int i = 0; i < rows; i++) {
+          assertEquals(i, cols[0].getLong(i));
+          assertEquals("name " + i + "\n", cols[1].getJavaString(i));
+          List<?> nums = cols[2].getList(i);
+          assertEquals(Arrays.asList(i, -i), nums);
+        }
+      } finally {
+        closeAll(cols);
+      }
+    } finally {
+      pool.shutdown();
+      file.delete();
+    }
+  }
+
+  @Test
+  void testSplitLines() {
+    byte[] bytes = "{}\n{\"a\": 1}\n\n{\"b\": 2}".getBytes(StandardCharsets.UTF_8);
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(bytes.length)) {
+      buffer.setBytes(0, bytes, 0, bytes.length);
+      for (int n = 1; n < bytes.length + 2; n++) {
+        List<long[]> chunks = HostJSONReader.splitLines(buffer, 0, bytes.length, n);
+        long expected = 0;
+        for (long[] chunk : chunks) {
+          assertEquals(expected, chunk[0]);
+          assertTrue(chunk[0] == 0 || bytes[(int) chunk[0] - 1] == '\n');
+          assertTrue(chunk[1] > 0);
+          expected += chunk[1];
+        }
+        assertEquals(bytes.length, expected);
+        assertTrue(chunks.size() <= Math.min(n, 4));
+      }
+    }
+  }
+}
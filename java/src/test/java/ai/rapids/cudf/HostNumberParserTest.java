@@ -0,0 +1,152 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static ai.rapids.cudf.TableTest.assertColumnsAreEqual;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HostNumberParserTest extends CudfTestBase {
+
+  private static long viaBigDecimal(String s, int scale, RoundingMode mode) {
+    return new BigDecimal(s).setScale(-scale, mode).unscaledValue().longValueExact();
+  }
+
+  private static long parseUTF8(String s, int scale, RoundingMode mode) {
+    // Put the number in the middle of a larger buffer to check the offsets are honored
+    byte[] bytes = ("xx" + s + "yy").getBytes(StandardCharsets.UTF_8);
+    return HostNumberParser.parseUnscaledDecimalUTF8(bytes, 2, bytes.length - 4, scale, mode);
+  }
+
+  @Test
+  void testDecimalsMatchBigDecimal() {
+    String[] values = {"0", "-0", "1", "-1", "12.345", "-12.345", "12.355", "0.5", "-0.5",
+        "2.5", "-2.5", "1.05", "99.995", "0.0001", "-0.0049", "1e3", "1.5E-2", "-7.25e+1",
+        "000123.4500", ".75", "5.", "9223372036854775807", "-9223372036854775808",
+        "123456789.987654321", "1e-30", "-3e-30"};
+    int[] scales = {-4, -2, 0, 1, 3};
+    for (String v : values) {
+      for (int scale : scales) {
+        for (RoundingMode mode : RoundingMode.values()) {
+          long expected;
+          try {
+            expected = viaBigDecimal(v, scale, mode);
+          } catch (ArithmeticException e) {
+            assertThrows(ArithmeticException.class, () -> parseUTF8(v, scale, mode),
+                v + " " + scale + " " + mode);
+            assertThrows(ArithmeticException.class,
+                () -> HostNumberParser.parseUnscaledDecimal(v, 0, v.length(), scale, mode));
+            continue;
+          }
+          String msg = v + " at scale " + scale + " " + mode;
+          assertEquals(expected, parseUTF8(v, scale, mode), msg);
+          assertEquals(expected,
+              HostNumberParser.parseUnscaledDecimal(v, 0, v.length(), scale, mode), msg);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testIntegers() {
+    String[] values = {"0", "-0", "+7", "42", "-42", "9223372036854775807",
+        "-9223372036854775808"};
+    for (String v : values) {
+      byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+      assertEquals(Long.parseLong(v), HostNumberParser.parseLong(v));
+      assertEquals(Long.parseLong(v), HostNumberParser.parseLongUTF8(bytes, 0, bytes.length));
+    }
+    assertEquals(-1L, HostNumberParser.parseUnsignedLong("18446744073709551615", 0, 20));
+    assertThrows(ArithmeticException.class,
+        () -> HostNumberParser.parseUnsignedLong("18446744073709551616", 0, 20));
+    assertThrows(ArithmeticException.class,
+        () -> HostNumberParser.parseLong("9223372036854775808"));
+    for (String bad : new String[]{"", "-", "1.0", "1e3", " 1", "0x10", "１"}) {
+      assertThrows(NumberFormatException.class, () -> HostNumberParser.parseLong(bad), bad);
+    }
+  }
+
+  @Test
+  void testFloatingPoint() {
+    Random r = new Random(1234);
+    for (int i = 0; i < 10000; i++) {
+      double d;
+      switch (i % 3) {
+        case 0:
+          d = r.nextInt(1000000) / 1000.0;
+          break;
+        case 1:
+          d = Double.longBitsToDouble(r.nextLong());
+          break;
+        default:
+          d = r.nextGaussian() * Math.pow(10, r.nextInt(40) - 20);
+          break;
+      }
+      String s = Double.toString(d);
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      assertEquals(Double.parseDouble(s), HostNumberParser.parseDoubleUTF8(bytes, 0,
+          bytes.length), s);
+      assertEquals(Float.parseFloat(s), HostNumberParser.parseFloat(s, 0, s.length()), s);
+    }
+    String[] values = {"0.1", "-0.0", "1e22", "1e23", "123456789012345678901234567890",
+        "4.9e-324", "1.7976931348623157e308", "1e400", "NaN", "-Infinity", "3.4028236e38"};
+    for (String s : values) {
+      assertEquals(Double.parseDouble(s), HostNumberParser.parseDouble(s, 0, s.length()), s);
+      assertEquals(Float.parseFloat(s), HostNumberParser.parseFloat(s, 0, s.length()), s);
+    }
+    for (String bad : new String[]{"", ".", "1e", "1.0f", "1d", "--1", "Inf", "1.2.3"}) {
+      assertThrows(NumberFormatException.class,
+          () -> HostNumberParser.parseDouble(bad, 0, bad.length()), bad);
+    }
+  }
+
+  @Test
+  void testAppendParsed() {
+    DType dec = DType.create(DType.DTypeEnum.DECIMAL64, -2);
+    try (HostColumnVector decimals = HostColumnVector.build(dec, 3, b -> b
+             .appendParsed("1.234", RoundingMode.HALF_UP)
+             .appendParsedUTF8("-5".getBytes(StandardCharsets.UTF_8), 0, 2)
+             .appendParsed("0.125", RoundingMode.HALF_EVEN));
+         HostColumnVector expectedDecimals = HostColumnVector.build(dec, 3,
+             b -> b.appendUnscaledDecimal(123L).appendUnscaledDecimal(-500L)
+                 .appendUnscaledDecimal(12L));
+         HostColumnVector bytes = HostColumnVector.build(DType.UINT8, 2,
+             b -> b.appendParsed("255").appendParsed("1"));
+         HostColumnVector expectedBytes = HostColumnVector.build(DType.UINT8, 2,
+             b -> b.append((byte) -1).append((byte) 1));
+         HostColumnVector doubles = HostColumnVector.build(DType.FLOAT64, 2,
+             b -> b.appendParsed("1.5").appendParsed("-2e-3"));
+         HostColumnVector expectedDoubles = HostColumnVector.fromDoubles(1.5, -2e-3)) {
+      assertColumnsAreEqual(expectedDecimals, decimals, "decimals");
+      assertColumnsAreEqual(expectedBytes, bytes, "bytes");
+      assertColumnsAreEqual(expectedDoubles, doubles, "doubles");
+    }
+    assertThrows(ArithmeticException.class, () -> HostColumnVector.build(DType.INT8, 1,
+        b -> b.appendParsed("128")).close());
+    assertThrows(ArithmeticException.class, () -> HostColumnVector.build(dec, 1,
+        b -> b.appendParsed("1.234")).close());
+  }
+}
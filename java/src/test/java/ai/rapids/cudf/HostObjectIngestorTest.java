@@ -0,0 +1,259 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import ai.rapids.cudf.HostColumnVector.BasicType;
+import ai.rapids.cudf.HostColumnVector.ListType;
+import ai.rapids.cudf.HostColumnVector.StructData;
+import ai.rapids.cudf.HostColumnVector.StructType;
+import ai.rapids.cudf.HostObjectIngestor.Field;
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodHandles;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static ai.rapids.cudf.TableTest.assertColumnsAreEqual;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HostObjectIngestorTest extends CudfTestBase {
+
+  static class Point {
+    final int x;
+    final String label;
+
+    Point(int x, String label) {
+      this.x = x;
+      this.label = label;
+    }
+
+    int getX() {
+      return x;
+    }
+  }
+
+  static class Event {
+    long id;
+    double score;
+    boolean active;
+    Integer count;
+    String name;
+    Point point;
+    List<Integer> tags;
+
+    long getId() {
+      return id;
+    }
+
+    boolean isActive() {
+      return active;
+    }
+  }
+
+  private static List<Event> makeEvents(int numRows) {
+    List<Event> ret = new ArrayList<>(numRows);
+    for (int i = 0; i < numRows; i++) {
+      Event e = new Event();
+      e.id = i;
+      e.score = i / 4.0;
+      e.active = i % 2 == 0;
+      e.count = i % 3 == 0 ? null : i;
+      e.name = i % 5 == 0 ? null : "name" + i;
+      e.point = i % 7 == 0 ? null : new Point(-i, i % 11 == 0 ? null : "p" + i);
+      e.tags = i % 13 == 0 ? null : Arrays.asList(i, null, i + 1).subList(0, i % 3);
+      ret.add(e);
+    }
+    return ret;
+  }
+
+  private static HostObjectIngestor<Event> makeIngestor() {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    return new HostObjectIngestor<>(
+        Field.longs(DType.INT64, HostObjectIngestor.longGetter(lookup, Event.class, "getId")),
+        Field.doubles(DType.FLOAT64, HostObjectIngestor.doubleGetter(lookup, Event.class, "score")),
+        Field.booleans(HostObjectIngestor.booleanGetter(lookup, Event.class, "isActive")),
+        Field.values(new BasicType(true, DType.INT32),
+            HostObjectIngestor.getter(lookup, Event.class, "count")),
+        Field.values(new BasicType(true, DType.STRING), (Event e) -> e.name),
+        Field.struct(true, (Event e) -> e.point,
+            Field.ints(DType.INT32, HostObjectIngestor.intGetter(lookup, Point.class, "getX")),
+            Field.values(new BasicType(true, DType.STRING), (Point p) -> p.label)),
+        Field.list(true, (Event e) -> e.tags,
+            Field.values(new BasicType(true, DType.INT32), Function.identity())));
+  }
+
+  private static void checkEvents(List<Event> events, HostColumnVector[] columns) {
+    int numRows = events.size();
+    long[] ids = new long[numRows];
+    double[] scores = new double[numRows];
+    Boolean[] active = new Boolean[numRows];
+    Integer[] counts = new Integer[numRows];
+    String[] names = new String[numRows];
+    StructData[] points = new StructData[numRows];
+    List<List<Integer>> tags = new ArrayList<>(numRows);
+    for (int i = 0; i < numRows; i++) {
+      Event e = events.get(i);
+      ids[i] = e.id;
+      scores[i] = e.score;
+      active[i] = e.active;
+      counts[i] = e.count;
+      names[i] = e.name;
+      points[i] = e.point == null ? null : new StructData(e.point.x, e.point.label);
+      tags.add(e.tags);
+    }
+    StructType pointType = new StructType(true, new BasicType(false, DType.INT32),
+        new BasicType(true, DType.STRING));
+    try (HostColumnVector expectedIds = HostColumnVector.fromLongs(ids);
+         HostColumnVector expectedScores = HostColumnVector.fromDoubles(scores);
+         HostColumnVector expectedActive = HostColumnVector.fromBoxedBooleans(active);
+         HostColumnVector expectedCounts = HostColumnVector.fromBoxedInts(counts);
+         HostColumnVector expectedNames = HostColumnVector.fromStrings(names);
+         HostColumnVector expectedPoints = HostColumnVector.fromStructs(pointType, points);
+         HostColumnVector expectedTags = HostColumnVector.fromLists(
+             new ListType(true, new BasicType(true, DType.INT32)),
+             tags.toArray(new List[0]))) {
+      assertEquals(7, columns.length);
+      assertColumnsAreEqual(expectedIds, columns[0], "id");
+      assertColumnsAreEqual(expectedScores, columns[1], "score");
+      assertColumnsAreEqual(expectedActive, columns[2], "active");
+      assertColumnsAreEqual(expectedCounts, columns[3], "count");
+      assertColumnsAreEqual(expectedNames, columns[4], "name");
+      assertColumnsAreEqual(expectedPoints, columns[5], "point");
+      assertColumnsAreEqual(expectedTags, columns[6], "tags");
+    }
+  }
+
+  private static void closeAll(HostColumnVector[] columns) {
+    for (HostColumnVector cv : columns) {
+      cv.close();
+    }
+  }
+
+  @Test
+  void testSmallBatch() {
+    List<Event> events = makeEvents(20);
+    try (HostObjectIngestor<Event> ingestor = makeIngestor()) {
+      ingestor.addAll(events);
+      assertEquals(20, ingestor.getRowCount());
+      HostColumnVector[] columns = ingestor.build();
+      try {
+        checkEvents(events, columns);
+      } finally {
+        closeAll(columns);
+      }
+    }
+  }
+
+  @Test
+  void testMultipleFlushesAndBatches() {
+    int numRows = HostObjectIngestor.STAGING_ROWS * 2 + 100;
+    List<Event> events = makeEvents(numRows);
+    long[] reported = new long[1];
+    try (HostObjectIngestor<Event> ingestor = makeIngestor()) {
+      ingestor.setMetricsListener((rows, nanos, rowsPerSecond) -> reported[0] = rows);
+      for (int batch = 0; batch < 2; batch++) {
+        ingestor.addAll(events);
+        HostColumnVector[] columns = ingestor.build();
+        try {
+          assertEquals(numRows, reported[0]);
+          assertEquals(0, ingestor.getRowCount());
+          checkEvents(events, columns);
+        } finally {
+          closeAll(columns);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testFailedRowIsRolledBack() {
+    List<Event> events = makeEvents(HostObjectIngestor.STAGING_ROWS + 100);
+    Event bad = makeEvents(2).get(1);
+    // Enough list elements that the child flushes before the row fails
+    bad.tags = new AbstractList<Integer>() {
+      @Override
+      public Integer get(int index) {
+        if (index == HostObjectIngestor.STAGING_ROWS * 2) {
+          throw new IllegalStateException("bad element");
+        }
+        return index;
+      }
+
+      @Override
+      public int size() {
+        return HostObjectIngestor.STAGING_ROWS * 3;
+      }
+    };
+    try (HostObjectIngestor<Event> ingestor = makeIngestor()) {
+      for (int i = 0; i < events.size(); i++) {
+        // STAGING_ROWS - 1 makes the top level columns flush before the row fails
+        if (i % 1000 == 0 || i == HostObjectIngestor.STAGING_ROWS - 1) {
+          assertThrows(IllegalStateException.class, () -> ingestor.add(bad));
+        }
+        ingestor.add(events.get(i));
+      }
+      assertEquals(events.size(), ingestor.getRowCount());
+      HostColumnVector[] columns = ingestor.build();
+      try {
+        checkEvents(events, columns);
+      } finally {
+        closeAll(columns);
+      }
+    }
+  }
+
+  @Test
+  void testEmptyBatch() {
+    try (HostObjectIngestor<Event> ingestor = makeIngestor()) {
+      HostColumnVector[] columns = ingestor.build();
+      try {
+        checkEvents(new ArrayList<>(), columns);
+      } finally {
+        closeAll(columns);
+      }
+    }
+  }
+
+  @Test
+  void testSchema() {
+    try (HostObjectIngestor<Event> ingestor = makeIngestor()) {
+      StructType schema = ingestor.getSchema();
+      assertEquals(7, schema.getNumChildren());
+      assertEquals(DType.INT64, schema.getChild(0).getType());
+      assertEquals(DType.STRUCT, schema.getChild(5).getType());
+      assertEquals(DType.STRING, schema.getChild(5).getChild(1).getType());
+      assertEquals(DType.LIST, schema.getChild(6).getType());
+    }
+  }
+
+  @Test
+  void testBadAccessors() {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    assertThrows(IllegalArgumentException.class,
+        () -> HostObjectIngestor.intGetter(lookup, Event.class, "noSuchThing"));
+    assertThrows(IllegalArgumentException.class,
+        () -> Field.ints(DType.INT64, (Event e) -> 0));
+    assertThrows(IllegalArgumentException.class,
+        () -> Field.doubles(DType.INT32, (Event e) -> 0));
+  }
+}
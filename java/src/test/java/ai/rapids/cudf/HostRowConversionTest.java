@@ -0,0 +1,138 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.RoundingMode;
+
+import static ai.rapids.cudf.TableTest.assertColumnsAreEqual;
+import static ai.rapids.cudf.TableTest.assertTablesAreEqual;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HostRowConversionTest extends CudfTestBase {
+
+  private static Table buildTable() {
+    return new Table.TestBuilder()
+        .column(3L, 9L, 4L, 2L, 20L, null, 7L, 8L, 9L, 10L)
+        .column(5.0d, 9.5d, 0.9d, 7.23d, 2.8d, null, -1.0d, 0.0d, 1.0d, 2.0d)
+        .column(5, 1, 0, 2, 7, null, null, 3, 4, 5)
+        .column(true, false, false, true, false, null, true, true, null, false)
+        .column(1.0f, 3.5f, 5.9f, 7.1f, 9.8f, null, 1.1f, 2.2f, 3.3f, 4.4f)
+        .column(new Byte[]{2, 3, 4, 5, 9, null, 6, 7, 8, 9})
+        .column(new Short[]{2, 3, null, 5, 9, null, 6, 7, 8, 9})
+        .decimal32Column(-3, RoundingMode.UNNECESSARY,
+            5.0d, 9.5d, 0.9d, 7.23d, 2.8d, null, 1.0d, 2.0d, 3.0d, 4.0d)
+        .decimal64Column(-8, 3L, 9L, 4L, 2L, 20L, null, 1L, 2L, 3L, 4L)
+        .build();
+  }
+
+  private static HostColumnVector[] copyToHost(Table t) {
+    HostColumnVector[] ret = new HostColumnVector[t.getNumberOfColumns()];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = t.getColumn(i).copyToHost();
+    }
+    return ret;
+  }
+
+  private static DType[] schema(Table t) {
+    DType[] types = new DType[t.getNumberOfColumns()];
+    for (int i = 0; i < types.length; i++) {
+      types[i] = t.getColumn(i).getType();
+    }
+    return types;
+  }
+
+  @Test
+  void testDocumentedLayout() {
+    HostRowConversion.Layout layout = HostRowConversion.Layout.of(
+        DType.BOOL8, DType.INT16, DType.DURATION_DAYS);
+    assertEquals(0, layout.getColumnStart(0));
+    assertEquals(2, layout.getColumnStart(1));
+    assertEquals(4, layout.getColumnStart(2));
+    assertEquals(8, layout.getValidityOffset());
+    assertEquals(16, layout.getRowSize());
+
+    layout = HostRowConversion.Layout.of(DType.DURATION_DAYS, DType.INT16, DType.BOOL8);
+    assertEquals(0, layout.getColumnStart(0));
+    assertEquals(4, layout.getColumnStart(1));
+    assertEquals(6, layout.getColumnStart(2));
+    assertEquals(7, layout.getValidityOffset());
+    assertEquals(8, layout.getRowSize());
+  }
+
+  @Test
+  void testHostRowsReadOnDevice() {
+    HostColumnVector[] hostColumns = null;
+    HostColumnVector[] rows = null;
+    try (Table t = buildTable()) {
+      hostColumns = copyToHost(t);
+      rows = HostRowConversion.convertToRows(hostColumns);
+      assertEquals(1, rows.length);
+      assertEquals(t.getRowCount(), rows[0].getRowCount());
+      try (ColumnVector deviceRows = rows[0].copyToDevice();
+           Table backAgain = Table.convertFromRows(deviceRows, schema(t))) {
+        assertTablesAreEqual(t, backAgain);
+      }
+    } finally {
+      if (hostColumns != null) {
+        HostGather.closeAll(hostColumns);
+      }
+      if (rows != null) {
+        HostGather.closeAll(rows);
+      }
+    }
+  }
+
+  @Test
+  void testDeviceRowsReadOnHost() {
+    try (Table t = buildTable()) {
+      ColumnVector[] rows = t.convertToRows();
+      HostColumnVector[] backAgain = null;
+      try (HostColumnVector hostRows = rows[0].copyToHost()) {
+        backAgain = HostRowConversion.convertFromRows(hostRows, schema(t));
+        for (int i = 0; i < backAgain.length; i++) {
+          try (HostColumnVector expected = t.getColumn(i).copyToHost()) {
+            assertColumnsAreEqual(expected, backAgain[i], "column " + i);
+          }
+        }
+      } finally {
+        for (ColumnVector cv : rows) {
+          cv.close();
+        }
+        if (backAgain != null) {
+          HostGather.closeAll(backAgain);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testUnsupportedTypes() {
+    try (HostColumnVector strings = HostColumnVector.fromStrings("a", "b")) {
+      assertThrows(UnsupportedOperationException.class,
+          () -> HostRowConversion.convertToRows(strings));
+    }
+    try (HostColumnVector ints = HostColumnVector.fromInts(1, 2)) {
+      assertThrows(IllegalArgumentException.class,
+          () -> HostRowConversion.convertFromRows(ints, DType.INT32));
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import static ai.rapids.cudf.TableTest.assertColumnsAreEqual;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HostTopKTest extends CudfTestBase {
+
+  private static void assertMatchesDevice(Table table, OrderByArg[] args, int k,
+                                          HostColumnVector[] result) {
+    long expectedRows = Math.min(k, table.getRowCount());
+    assertEquals(expectedRows, result[0].getRowCount());
+    try (Table sorted = table.orderBy(args);
+         Table expected = new Table(sorted.getColumn(0).subVector(0, (int) expectedRows),
+             sorted.getColumn(1).subVector(0, (int) expectedRows),
+             sorted.getColumn(2).subVector(0, (int) expectedRows))) {
+      for (int i = 0; i < result.length; i++) {
+        try (HostColumnVector e = expected.getColumn(i).copyToHost()) {
+          assertColumnsAreEqual(e, result[i], "column " + i);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testTopKSingleBatch() {
+    // The last column is unique so the order is fully defined even with ties in the others
+    try (Table table = new Table.TestBuilder()
+        .column(5, null, 3, 3, 1, null, 7, 3, 9, 0)
+        .column(1.0, Double.NaN, 2.0, -0.0, null, 4.0, 0.0, 2.0, 1.0, -1.0)
+        .column("a", "b", "c", "d", "e", "f", "g", "h", "i", "j")
+        .build()) {
+      HostColumnVector[] host = new HostColumnVector[3];
+      try {
+        for (int i = 0; i < host.length; i++) {
+          host[i] = table.getColumn(i).copyToHost();
+        }
+        OrderByArg[][] orders = {
+            {OrderByArg.asc(0), OrderByArg.asc(2)},
+            {OrderByArg.desc(0, true), OrderByArg.desc(2)},
+            {OrderByArg.asc(1, true), OrderByArg.asc(2)},
+            {OrderByArg.desc(1), OrderByArg.asc(0), OrderByArg.asc(2)},
+        };
+        for (OrderByArg[] args : orders) {
+          for (int k : new int[]{1, 3, 10, 20}) {
+            HostColumnVector[] result = HostTopK.topK(host, args, k);
+            try {
+              assertMatchesDevice(table, args, k, result);
+            } finally {
+              HostGather.closeAll(result);
+            }
+          }
+        }
+      } finally {
+        HostGather.closeAll(host);
+      }
+    }
+  }
+
+  @Test
+  void testTopKMergeBatchesAndThreads() {
+    OrderByArg[] args = {OrderByArg.desc(0), OrderByArg.asc(1)};
+    try (HostColumnVector a0 = HostColumnVector.fromBoxedInts(1, 5, null, 5);
+         HostColumnVector a1 = HostColumnVector.fromStrings("a", "b", "c", "d");
+         HostColumnVector a2 = HostColumnVector.fromInts(0, 1, 2, 3);
+         HostColumnVector b0 = HostColumnVector.fromBoxedInts(7, 5, 2);
+         HostColumnVector b1 = HostColumnVector.fromStrings("e", "a", "g");
+         HostColumnVector b2 = HostColumnVector.fromInts(4, 5, 6);
+         HostColumnVector c0 = HostColumnVector.fromBoxedInts(9, 0);
+         HostColumnVector c1 = HostColumnVector.fromStrings("h", "i");
+         HostColumnVector c2 = HostColumnVector.fromInts(7, 8);
+         HostColumnVector expected = HostColumnVector.fromInts(2, 7, 4, 5, 1);
+         HostTopK first = new HostTopK(5, args);
+         HostTopK second = new HostTopK(5, args)) {
+      first.add(new HostColumnVector[]{a0, a1, a2});
+      first.add(new HostColumnVector[]{b0, b1, b2});
+      second.add(new HostColumnVector[]{c0, c1, c2});
+      first.merge(second);
+      HostColumnVector[] result = first.getResult();
+      try {
+        assertColumnsAreEqual(expected, result[2], "ids");
+      } finally {
+        HostGather.closeAll(result);
+      }
+    }
+  }
+
+  @Test
+  void testTopKErrors() {
+    assertThrows(IllegalArgumentException.class, () -> new HostTopK(0, OrderByArg.asc(0)));
+    try (HostTopK topK = new HostTopK(1, OrderByArg.asc(0))) {
+      assertThrows(IllegalStateException.class, topK::getResult);
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import ai.rapids.cudf.ORCFooter.Comparison;
+import ai.rapids.cudf.ORCFooter.Filter;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static ai.rapids.cudf.TableTest.assertTablesAreEqual;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ORCFooterTest extends CudfTestBase {
+  private static final File TEST_ORC_FILE = new File("src/test/resources/TestOrcFile.orc");
+  private static final int[] KEEP = {0};
+  private static final int[] NONE = {};
+
+  @Test
+  void testReadTail() throws IOException {
+    ORCFooter footer = ORCFooter.readFrom(TEST_ORC_FILE);
+    assertEquals(2, footer.getNumRows());
+    assertEquals(1, footer.getNumStripes());
+    assertEquals(2, footer.getStripeNumRows(0));
+    assertTrue(footer.hasStripeStatistics());
+    assertEquals(Arrays.asList("boolean1", "byte1", "short1", "int1", "long1", "float1",
+        "double1", "string1"), footer.getColumnNames());
+    assertEquals(3, footer.getStripeRange(0).getOffset());
+    byte[] data = Files.readAllBytes(TEST_ORC_FILE.toPath());
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(data.length + 5)) {
+      buffer.setBytes(5, data, 0, data.length);
+      ORCFooter fromBuffer = ORCFooter.readFrom(buffer, 5, data.length);
+      assertEquals(footer.getColumnNames(), fromBuffer.getColumnNames());
+      assertEquals(footer.getStripeRange(0), fromBuffer.getStripeRange(0));
+      assertThrows(IllegalStateException.class,
+          () -> ORCFooter.readFrom(buffer, 0, data.length - 1));
+    }
+  }
+
+  @Test
+  void testSelectStripes() throws IOException {
+    ORCFooter footer = ORCFooter.readFrom(TEST_ORC_FILE);
+    assertArrayEquals(KEEP, footer.selectStripes(Filter.compare("int1", Comparison.EQUAL,
+        65536L)));
+    assertArrayEquals(NONE, footer.selectStripes(Filter.compare("int1", Comparison.GREATER,
+        65536L)));
+    assertArrayEquals(NONE, footer.selectStripes(Filter.compare("byte1", Comparison.LESS, 1L)));
+    assertArrayEquals(KEEP, footer.selectStripes(Filter.compare("byte1", Comparison.LESS_EQUAL,
+        1L)));
+    assertArrayEquals(KEEP, footer.selectStripes(Filter.compare("short1", Comparison.EQUAL,
+        1500.5)));
+    assertArrayEquals(KEEP, footer.selectStripes(Filter.compare("long1", Comparison.EQUAL,
+        Long.MAX_VALUE)));
+    assertArrayEquals(NONE, footer.selectStripes(Filter.compare("float1",
+        Comparison.GREATER_EQUAL, 2.5)));
+    assertArrayEquals(NONE, footer.selectStripes(Filter.compare("double1", Comparison.GREATER,
+        -5L)));
+    assertArrayEquals(KEEP, footer.selectStripes(Filter.compare("double1", Comparison.LESS,
+        -5L)));
+    assertArrayEquals(KEEP, footer.selectStripes(Filter.compare("string1", Comparison.EQUAL,
+        "hi")));
+    assertArrayEquals(NONE, footer.selectStripes(Filter.compare("string1", Comparison.GREATER,
+        "hi")));
+    assertArrayEquals(NONE, footer.selectStripes(Filter.compare("string1", Comparison.LESS,
+        "bye")));
+    assertArrayEquals(NONE, footer.selectStripes(Filter.isNull("int1")));
+    assertArrayEquals(KEEP, footer.selectStripes(Filter.isNotNull("int1")));
+    // Filters that do not match the type of the column never prune
+    assertArrayEquals(KEEP, footer.selectStripes(Filter.compare("int1", Comparison.GREATER,
+        "zzz")));
+    assertArrayEquals(KEEP, footer.selectStripes(Filter.compare("boolean1", Comparison.GREATER,
+        5L)));
+    assertArrayEquals(KEEP, footer.selectStripes(Filter.compare("double1", Comparison.EQUAL,
+        Double.NaN)));
+    assertArrayEquals(KEEP, footer.selectStripes(Filter.or(
+        Filter.compare("int1", Comparison.GREATER, 65536L),
+        Filter.compare("string1", Comparison.EQUAL, "bye"))));
+    assertArrayEquals(NONE, footer.selectStripes(Filter.and(
+        Filter.compare("int1", Comparison.EQUAL, 65536L),
+        Filter.isNull("string1"))));
+    assertThrows(IllegalArgumentException.class,
+        () -> footer.selectStripes(Filter.isNull("missing")));
+  }
+
+  @Test
+  void testPrunedFile() throws IOException {
+    ORCFooter footer = ORCFooter.readFrom(TEST_ORC_FILE);
+    try (HostMemoryBuffer pruned = footer.buildPrunedFile(TEST_ORC_FILE, KEEP)) {
+      ORCFooter prunedFooter = ORCFooter.readFrom(pruned, 0, pruned.getLength());
+      assertEquals(2, prunedFooter.getNumRows());
+      assertEquals(footer.getColumnNames(), prunedFooter.getColumnNames());
+      assertArrayEquals(NONE, prunedFooter.selectStripes(
+          Filter.compare("int1", Comparison.GREATER, 65536L)));
+      try (Table expected = Table.readORC(TEST_ORC_FILE);
+           Table table = Table.readORC(ORCOptions.DEFAULT, pruned, 0, pruned.getLength())) {
+        assertTablesAreEqual(expected, table);
+      }
+    }
+    try (HostMemoryBuffer pruned = footer.buildPrunedFile(TEST_ORC_FILE, NONE)) {
+      ORCFooter prunedFooter = ORCFooter.readFrom(pruned, 0, pruned.getLength());
+      assertEquals(0, prunedFooter.getNumRows());
+      assertEquals(0, prunedFooter.getNumStripes());
+    }
+  }
+
+  @Test
+  void testStripesFromChunkedWriter() throws IOException {
+    File file = File.createTempFile("stripes", ".orc");
+    try {
+      ORCWriterOptions opts = ORCWriterOptions.builder()
+          .withColumnNames("id", "name")
+          .build();
+      // Each chunk is written as its own stripe
+      try (Table t0 = new Table.TestBuilder()
+               .column(0L, 1L, 2L).column("a", "b", null).build();
+           Table t1 = new Table.TestBuilder()
+               .column(10L, 11L, 12L).column("m", null, "n").build();
+           Table t2 = new Table.TestBuilder()
+               .column(20L, 21L, 22L).column((String) null, null, null).build();
+           TableWriter writer = Table.writeORCChunked(opts, file)) {
+        writer.write(t0);
+        writer.write(t1);
+        writer.write(t2);
+      }
+      ORCFooter footer = ORCFooter.readFrom(file);
+      assertEquals(9, footer.getNumRows());
+      assertEquals(3, footer.getNumStripes());
+      assertArrayEquals(new int[]{1, 2}, footer.selectStripes(
+          Filter.compare("id", Comparison.GREATER, 2L)));
+      assertArrayEquals(new int[]{0, 1}, footer.selectStripes(Filter.isNotNull("name")));
+      int[] keep = footer.selectStripes(Filter.or(
+          Filter.compare("id", Comparison.LESS, 1L),
+          Filter.compare("id", Comparison.EQUAL, 21L)));
+      assertArrayEquals(new int[]{0, 2}, keep);
+      List<ORCFooter.ByteRange> ranges = footer.getByteRanges(new int[]{0, 1});
+      assertEquals(1, ranges.size());
+      assertEquals(footer.getStripeRange(0).getLength() + footer.getStripeRange(1).getLength(),
+          ranges.get(0).getLength());
+      try (HostMemoryBuffer pruned = footer.buildPrunedFile(file, keep);
+           Table expected = new Table.TestBuilder()
+               .column(0L, 1L, 2L, 20L, 21L, 22L)
+               .column("a", "b", null, null, null, null)
+               .build();
+           Table table = Table.readORC(ORCOptions.DEFAULT, pruned, 0, pruned.getLength())) {
+        assertTablesAreEqual(expected, table);
+      }
+    } finally {
+      file.delete();
+    }
+  }
+}
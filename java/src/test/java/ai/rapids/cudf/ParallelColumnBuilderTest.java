@@ -0,0 +1,138 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ParallelColumnBuilderTest extends CudfTestBase {
+
+  @Test
+  void testParallelBuild() {
+    final int numRows = 100_003;
+    try (ParallelColumnBuilder strings = new ParallelColumnBuilder(DType.STRING, numRows, 7);
+         ParallelColumnBuilder longs = new ParallelColumnBuilder(DType.INT64, numRows, 7)) {
+      assertEquals(7, strings.getNumSegments());
+      IntStream.range(0, strings.getNumSegments()).parallel().forEach(i -> {
+        ParallelColumnBuilder.Segment s = strings.getSegment(i);
+        ParallelColumnBuilder.Segment l = longs.getSegment(i);
+        assertEquals(0, s.getStartRow() % 64);
+        for (long row = s.getStartRow(); row < s.getEndRow(); row++) {
+          if (row % 5 == 0) {
+            s.appendNull();
+          } else {
+            s.append("row" + row);
+          }
+          if (row % 9 == 0) {
+            l.appendNull();
+          } else {
+            l.append(row * 2);
+          }
+        }
+      });
+      try (HostColumnVector s = strings.build();
+           HostColumnVector l = longs.build()) {
+        assertEquals(numRows, s.getRowCount());
+        assertEquals((numRows + 4) / 5, s.getNullCount());
+        assertEquals((numRows + 8) / 9, l.getNullCount());
+        for (int row = 0; row < numRows; row++) {
+          assertEquals(row % 5 == 0, s.isNull(row));
+          if (row % 5 != 0) {
+            assertEquals("row" + row, s.getJavaString(row));
+          }
+          assertEquals(row % 9 == 0, l.isNull(row));
+          if (row % 9 != 0) {
+            assertEquals(row * 2L, l.getLong(row));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testNoNulls() {
+    try (ParallelColumnBuilder pb = new ParallelColumnBuilder(DType.FLOAT64, 1000, 4)) {
+      IntStream.range(0, pb.getNumSegments()).parallel().forEach(i -> {
+        ParallelColumnBuilder.Segment s = pb.getSegment(i);
+        for (long row = s.getStartRow(); row < s.getEndRow(); row++) {
+          s.append(row / 2.0);
+        }
+      });
+      try (HostColumnVector cv = pb.build()) {
+        assertFalse(cv.hasValidityVector());
+        for (int row = 0; row < 1000; row++) {
+          assertEquals(row / 2.0, cv.getDouble(row));
+        }
+      }
+    }
+  }
+
+  @Test
+  void testSmallColumnUsesOneSegment() {
+    try (ParallelColumnBuilder pb = new ParallelColumnBuilder(DType.INT8, 10, 4)) {
+      assertEquals(1, pb.getNumSegments());
+      assertEquals(10, pb.getSegment(0).getEndRow());
+    }
+  }
+
+  @Test
+  void testUnfilledSegment() {
+    try (ParallelColumnBuilder pb = new ParallelColumnBuilder(DType.INT32, 200, 2)) {
+      pb.getSegment(0).append(1);
+      assertThrows(IllegalStateException.class, pb::build);
+    }
+  }
+
+  @Test
+  void testFullSegmentThrows() {
+    try (ParallelColumnBuilder longs = new ParallelColumnBuilder(DType.INT64, 200, 2);
+         ParallelColumnBuilder strings = new ParallelColumnBuilder(DType.STRING, 200, 2)) {
+      ParallelColumnBuilder.Segment l = longs.getSegment(0);
+      ParallelColumnBuilder.Segment s = strings.getSegment(0);
+      for (long row = l.getStartRow(); row < l.getEndRow(); row++) {
+        l.append(row);
+        s.append("row" + row);
+      }
+      assertThrows(IllegalStateException.class, () -> l.append(-1L));
+      assertThrows(IllegalStateException.class, l::appendNull);
+      assertThrows(IllegalStateException.class, () -> s.append("past the end"));
+      assertThrows(IllegalStateException.class, s::appendNull);
+      ParallelColumnBuilder.Segment next = longs.getSegment(1);
+      for (long row = next.getStartRow(); row < next.getEndRow(); row++) {
+        next.append(row);
+      }
+      try (HostColumnVector cv = longs.build()) {
+        for (int row = 0; row < 200; row++) {
+          assertEquals(row, cv.getLong(row));
+        }
+      }
+    }
+  }
+
+  @Test
+  void testNestedNotSupported() {
+    assertThrows(UnsupportedOperationException.class,
+        () -> new ParallelColumnBuilder(DType.STRUCT, 10, 2));
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import ai.rapids.cudf.ParquetFooter.Comparison;
+import ai.rapids.cudf.ParquetFooter.Filter;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParquetFooterTest extends CudfTestBase {
+  private static final int ROWS = 20000;
+  private static File file;
+
+  @BeforeAll
+  static void writeFile() throws IOException {
+    file = File.createTempFile("footer-test", ".parquet");
+    file.delete();
+    Schema schema = SchemaBuilder.record("row").fields()
+        .requiredLong("id")
+        .requiredDouble("score")
+        .optionalString("name")
+        .endRecord();
+    // Small row groups so the file has many of them, with ids in order so they do not overlap
+    try (ParquetWriter<GenericRecord> writer = AvroParquetWriter.<GenericRecord>builder(
+        new Path(file.getAbsolutePath()))
+        .withSchema(schema)
+        .withRowGroupSize(32 * 1024)
+        .withPageSize(4 * 1024)
+        .build()) {
+      for (int i = 0; i < ROWS; i++) {
+        GenericRecord r = new GenericData.Record(schema);
+        r.put("id", (long) i);
+        r.put("score", i * 0.5);
+        // Names are null for the first half of the file
+        r.put("name", i < ROWS / 2 ? null : String.format("name-%06d", i));
+        writer.write(r);
+      }
+    }
+  }
+
+  @AfterAll
+  static void deleteFile() {
+    file.delete();
+  }
+
+  private static List<BlockMetaData> readBlocks(File f) throws IOException {
+    try (ParquetFileReader reader = ParquetFileReader.open(
+        HadoopInputFile.fromPath(new Path(f.getAbsolutePath()), new Configuration()))) {
+      return reader.getFooter().getBlocks();
+    }
+  }
+
+  private static long firstId(List<BlockMetaData> blocks, int rg) {
+    long id = 0;
+    for (int i = 0; i < rg; i++) {
+      id += blocks.get(i).getRowCount();
+    }
+    return id;
+  }
+
+  @Test
+  void testReadFooter() throws IOException {
+    ParquetFooter footer = ParquetFooter.readFrom(file);
+    List<BlockMetaData> blocks = readBlocks(file);
+    assertTrue(blocks.size() > 4, "expected many row groups but found " + blocks.size());
+    assertEquals(ROWS, footer.getNumRows());
+    assertEquals(blocks.size(), footer.getNumRowGroups());
+    assertEquals(Arrays.asList("id", "score", "name"), footer.getColumnPaths());
+    for (int i = 0; i < blocks.size(); i++) {
+      assertEquals(blocks.get(i).getRowCount(), footer.getRowGroupNumRows(i));
+      assertEquals(blocks.get(i).getStartingPos(), footer.getRowGroupRange(i).getOffset());
+      assertEquals(blocks.get(i).getCompressedSize(), footer.getRowGroupRange(i).getLength());
+      assertEquals(0, footer.getNullCount(i, "id"));
+    }
+    byte[] data = Files.readAllBytes(file.toPath());
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(data.length + 7)) {
+      buffer.setBytes(7, data, 0, data.length);
+      ParquetFooter fromBuffer = ParquetFooter.readFrom(buffer, 7, data.length);
+      assertEquals(footer.getNumRowGroups(), fromBuffer.getNumRowGroups());
+      assertThrows(IllegalStateException.class,
+          () -> ParquetFooter.readFrom(buffer, 0, data.length));
+    }
+  }
+
+  @Test
+  void testSelectRowGroups() throws IOException {
+    ParquetFooter footer = ParquetFooter.readFrom(file);
+    List<BlockMetaData> blocks = readBlocks(file);
+    int n = footer.getNumRowGroups();
+    int[] all = new int[n];
+    for (int i = 0; i < n; i++) {
+      all[i] = i;
+    }
+    long secondStart = firstId(blocks, 1);
+    long lastStart = firstId(blocks, n - 1);
+
+    assertArrayEquals(new int[]{0},
+        footer.selectRowGroups(Filter.compare("id", Comparison.LESS, secondStart)));
+    assertArrayEquals(new int[]{0, 1},
+        footer.selectRowGroups(Filter.compare("id", Comparison.LESS_EQUAL, secondStart)));
+    assertArrayEquals(new int[]{n - 1},
+        footer.selectRowGroups(Filter.compare("id", Comparison.GREATER_EQUAL, lastStart)));
+    assertArrayEquals(new int[]{1},
+        footer.selectRowGroups(Filter.compare("id", Comparison.EQUAL, secondStart + 1)));
+    assertArrayEquals(new int[0],
+        footer.selectRowGroups(Filter.compare("id", Comparison.GREATER, (long) ROWS)));
+    // A double literal against a long column, and a long literal against a double column
+    assertArrayEquals(new int[]{1},
+        footer.selectRowGroups(Filter.compare("id", Comparison.EQUAL, secondStart + 0.5)));
+    assertArrayEquals(new int[]{0},
+        footer.selectRowGroups(Filter.compare("score", Comparison.LESS, secondStart / 2)));
+
+    // Names are only set in the second half of the file
+    int[] withNames = footer.selectRowGroups(Filter.isNotNull("name"));
+    int[] withNulls = footer.selectRowGroups(Filter.isNull("name"));
+    assertEquals(n, withNames.length + withNulls.length - overlap(withNames, withNulls));
+    assertEquals(n - 1, withNames[withNames.length - 1]);
+    assertEquals(0, withNulls[0]);
+    assertTrue(withNames[0] > 0);
+    assertArrayEquals(withNames, footer.selectRowGroups(
+        Filter.compare("name", Comparison.GREATER_EQUAL, "name-")));
+    assertArrayEquals(new int[]{n - 1}, footer.selectRowGroups(
+        Filter.compare("name", Comparison.EQUAL, String.format("name-%06d", ROWS - 1))));
+
+    assertArrayEquals(new int[]{0, n - 1}, footer.selectRowGroups(Filter.or(
+        Filter.compare("id", Comparison.LESS, 1L),
+        Filter.compare("id", Comparison.GREATER_EQUAL, (long) ROWS - 1))));
+    assertArrayEquals(new int[0], footer.selectRowGroups(Filter.and(
+        Filter.compare("id", Comparison.LESS, 1L),
+        Filter.isNotNull("name"))));
+    assertArrayEquals(all,
+        footer.selectRowGroups(Filter.compare("id", Comparison.LESS, Double.NaN)));
+    assertThrows(IllegalArgumentException.class,
+        () -> footer.selectRowGroups(Filter.isNull("missing")));
+  }
+
+  @Test
+  void testInt32DecimalsAreNotPruned() throws IOException {
+    File decimalFile = File.createTempFile("footer-decimal", ".parquet");
+    decimalFile.delete();
+    try {
+      MessageType schema = MessageTypeParser.parseMessageType(
+          "message row { required int32 price (DECIMAL(9,2)); }");
+      try (ParquetWriter<Group> writer = ExampleParquetWriter.builder(
+          new Path(decimalFile.getAbsolutePath()))
+          .withType(schema)
+          .build()) {
+        SimpleGroupFactory groups = new SimpleGroupFactory(schema);
+        for (int i = 100; i < 1000; i++) {
+          // Unscaled values 100 to 999 hold the prices 1.00 to 9.99
+          writer.write(groups.newGroup().append("price", i));
+        }
+      }
+      ParquetFooter footer = ParquetFooter.readFrom(decimalFile);
+      assertEquals(1, footer.getNumRowGroups());
+      // Every price is below 50, but the unscaled minimum of 100 is not
+      assertArrayEquals(new int[]{0},
+          footer.selectRowGroups(Filter.compare("price", Comparison.LESS, 50L)));
+      assertArrayEquals(new int[]{0},
+          footer.selectRowGroups(Filter.compare("price", Comparison.LESS_EQUAL, 20.5)));
+    } finally {
+      decimalFile.delete();
+    }
+  }
+
+  private static int overlap(int[] a, int[] b) {
+    int count = 0;
+    for (int x : a) {
+      for (int y : b) {
+        if (x == y) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  @Test
+  void testByteRanges() throws IOException {
+    ParquetFooter footer = ParquetFooter.readFrom(file);
+    int n = footer.getNumRowGroups();
+    List<ParquetFooter.ByteRange> ranges = footer.getByteRanges(new int[]{0, 1, n - 1});
+    assertEquals(2, ranges.size());
+    ParquetFooter.ByteRange first = footer.getRowGroupRange(0);
+    ParquetFooter.ByteRange second = footer.getRowGroupRange(1);
+    assertEquals(4, first.getOffset());
+    assertEquals(first.getOffset(), ranges.get(0).getOffset());
+    assertEquals(first.getLength() + second.getLength(), ranges.get(0).getLength());
+    assertEquals(footer.getRowGroupRange(n - 1), ranges.get(1));
+  }
+
+  /**
+   * Read the id and score of every row with parquet-hadoop.
+   */
+  private static List<Group> readAll(File f) throws IOException {
+    List<Group> ret = new ArrayList<>();
+    try (ParquetFileReader reader = ParquetFileReader.open(
+        HadoopInputFile.fromPath(new Path(f.getAbsolutePath()), new Configuration()))) {
+      MessageType schema = reader.getFooter().getFileMetaData().getSchema();
+      MessageColumnIO columnIO = new ColumnIOFactory().getColumnIO(schema);
+      PageReadStore pages;
+      while ((pages = reader.readNextRowGroup()) != null) {
+        RecordReader<Group> records =
+            columnIO.getRecordReader(pages, new GroupRecordConverter(schema));
+        for (long i = 0; i < pages.getRowCount(); i++) {
+          ret.add(records.read());
+        }
+      }
+    }
+    return ret;
+  }
+
+  private static void checkPruned(HostMemoryBuffer pruned, int[] keep,
+                                  List<BlockMetaData> blocks) throws IOException {
+    byte[] data = new byte[(int) pruned.getLength()];
+    pruned.getBytes(data, 0, 0, data.length);
+    File out = File.createTempFile("pruned", ".parquet");
+    try {
+      try (FileOutputStream fos = new FileOutputStream(out)) {
+        fos.write(data);
+      }
+      List<Group> records = readAll(out);
+      List<Long> expected = new ArrayList<>();
+      for (int rg : keep) {
+        long start = firstId(blocks, rg);
+        for (long id = start; id < start + blocks.get(rg).getRowCount(); id++) {
+          expected.add(id);
+        }
+      }
+      assertEquals(expected.size(), records.size());
+      for (int i = 0; i < records.size(); i++) {
+        long id = records.get(i).getLong("id", 0);
+        assertEquals((long) expected.get(i), id);
+        assertEquals(id * 0.5, records.get(i).getDouble("score", 0));
+      }
+      ParquetFooter footer = ParquetFooter.readFrom(out);
+      assertEquals(expected.size(), footer.getNumRows());
+      assertEquals(keep.length, footer.getNumRowGroups());
+    } finally {
+      out.delete();
+    }
+  }
+
+  @Test
+  void testPrunedFile() throws IOException {
+    ParquetFooter footer = ParquetFooter.readFrom(file);
+    List<BlockMetaData> blocks = readBlocks(file);
+    int n = footer.getNumRowGroups();
+    int[] keep = footer.selectRowGroups(Filter.or(
+        Filter.compare("id", Comparison.EQUAL, firstId(blocks, 1)),
+        Filter.compare("name", Comparison.GREATER_EQUAL,
+            String.format("name-%06d", firstId(blocks, n - 1)))));
+    assertArrayEquals(new int[]{1, n - 1}, keep);
+    try (HostMemoryBuffer pruned = footer.buildPrunedFile(file, keep)) {
+      checkPruned(pruned, keep, blocks);
+    }
+    byte[] data = Files.readAllBytes(file.toPath());
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(data.length)) {
+      buffer.setBytes(0, data, 0, data.length);
+      int[] firstTwo = {0, 1};
+      try (HostMemoryBuffer pruned = footer.buildPrunedFile(buffer, 0, firstTwo)) {
+        checkPruned(pruned, firstTwo, blocks);
+      }
+      try (HostMemoryBuffer pruned = footer.buildPrunedFile(buffer, 0, new int[0])) {
+        checkPruned(pruned, new int[0], blocks);
+      }
+    }
+    assertThrows(IllegalArgumentException.class,
+        () -> footer.buildPrunedFile(file, new int[]{1, 0}));
+  }
+}
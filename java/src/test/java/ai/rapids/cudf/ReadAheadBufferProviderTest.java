@@ -0,0 +1,272 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Pipe;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static ai.rapids.cudf.TableTest.assertTablesAreEqual;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReadAheadBufferProviderTest extends CudfTestBase {
+
+  /**
+   * Provides the bytes of an array, failing once failAt bytes are read if it is not negative.
+   */
+  private static final class ArrayProvider implements HostBufferProvider {
+    private final byte[] data;
+    private final int failAt;
+    private int offset = 0;
+    boolean closed = false;
+
+    ArrayProvider(byte[] data, int failAt) {
+      this.data = data;
+      this.failAt = failAt;
+    }
+
+    @Override
+    public long readInto(HostMemoryBuffer buffer, long len) {
+      if (failAt >= 0 && offset >= failAt) {
+        throw new IllegalStateException("source failed");
+      }
+      int amount = (int) Math.min(len, data.length - offset);
+      buffer.setBytes(0, data, offset, amount);
+      offset += amount;
+      return amount;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  private static byte[] randomBytes(int len) {
+    byte[] ret = new byte[len];
+    new Random(len).nextBytes(ret);
+    return ret;
+  }
+
+  /**
+   * Read everything from a provider in reads of random sizes.
+   */
+  private static byte[] readAll(HostBufferProvider provider, int expectedLength) {
+    Random rand = new Random(3);
+    byte[] ret = new byte[expectedLength];
+    int offset = 0;
+    try (HostMemoryBuffer buffer = HostMemoryBuffer.allocate(5000)) {
+      while (true) {
+        long len = 1 + rand.nextInt(5000);
+        long read = provider.readInto(buffer, len);
+        assertTrue(read <= len);
+        buffer.getBytes(ret, offset, 0, read);
+        offset += read;
+        if (read < len) {
+          break;
+        }
+      }
+      // Past the end there is nothing more
+      assertEquals(0, provider.readInto(buffer, 10));
+    }
+    assertEquals(expectedLength, offset);
+    return ret;
+  }
+
+  @Test
+  void testWrapProvider() {
+    for (int len : new int[]{0, 1, 999, 1000, 1001, 100_000}) {
+      byte[] data = randomBytes(len);
+      ArrayProvider source = new ArrayProvider(data, -1);
+      try (ReadAheadBufferProvider provider = ReadAheadBufferProvider.wrap(source, 3, 1000)) {
+        assertArrayEquals(data, readAll(provider, len));
+        assertEquals(len, provider.getBytesProvided());
+        assertEquals(0, provider.getBufferedBytes());
+      }
+      assertTrue(source.closed);
+    }
+    assertThrows(IllegalArgumentException.class,
+        () -> ReadAheadBufferProvider.wrap(new ArrayProvider(new byte[1], -1), 0, 10));
+  }
+
+  @Test
+  void testSourceError() {
+    byte[] data = randomBytes(10_000);
+    try (ReadAheadBufferProvider provider =
+             ReadAheadBufferProvider.wrap(new ArrayProvider(data, 3000), 2, 1000);
+         HostMemoryBuffer buffer = HostMemoryBuffer.allocate(10_000)) {
+      // What was read before the error is still handed out
+      assertEquals(3000, provider.readInto(buffer, 3000));
+      byte[] read = new byte[3000];
+      buffer.getBytes(read, 0, 0, read.length);
+      for (int i = 0; i < read.length; i++) {
+        assertEquals(data[i], read[i]);
+      }
+      assertThrows(IllegalStateException.class, () -> provider.readInto(buffer, 10));
+    }
+  }
+
+  /**
+   * Reads from a pipe that nothing is written to, like a socket waiting on a quiet peer.
+   */
+  private static final class PipeProvider implements HostBufferProvider {
+    private final Pipe pipe;
+
+    PipeProvider() throws IOException {
+      pipe = Pipe.open();
+    }
+
+    @Override
+    public long readInto(HostMemoryBuffer buffer, long len) {
+      try {
+        return Math.max(0, pipe.source().read(buffer.asByteBuffer(0, (int) len)));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void close() {
+      try {
+        pipe.source().close();
+        pipe.sink().close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  @Test
+  void testCloseWhileReadIsBlocked() throws IOException {
+    // Unblocked by closing the source
+    ReadAheadBufferProvider piped = ReadAheadBufferProvider.wrap(new PipeProvider(), 2, 1000);
+    assertTimeoutPreemptively(Duration.ofSeconds(30), piped::close);
+
+    // Unblocked by interrupting the read-ahead thread
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch never = new CountDownLatch(1);
+    HostBufferProvider waiting = new HostBufferProvider() {
+      @Override
+      public long readInto(HostMemoryBuffer buffer, long len) {
+        started.countDown();
+        try {
+          never.await();
+        } catch (InterruptedException e) {
+          throw new IllegalStateException("interrupted", e);
+        }
+        return 0;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    ReadAheadBufferProvider provider = ReadAheadBufferProvider.wrap(waiting, 2, 1000);
+    assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+      started.await();
+      provider.close();
+    });
+  }
+
+  @Test
+  void testFiles() throws IOException {
+    byte[] data = randomBytes(1_000_000);
+    File file = File.createTempFile("readahead", ".bin");
+    try {
+      try (FileOutputStream out = new FileOutputStream(file)) {
+        out.write(data);
+      }
+      try (ReadAheadBufferProvider provider = ReadAheadBufferProvider.open(file, 2, 64 * 1024)) {
+        assertArrayEquals(data, readAll(provider, data.length));
+      }
+      try (MappedFileBufferProvider provider =
+               new MappedFileBufferProvider(file, 0, data.length, 64 * 1024)) {
+        assertArrayEquals(data, readAll(provider, data.length));
+        assertEquals(0, provider.getRemaining());
+      }
+      HostMemoryBuffer slice;
+      try (MappedFileBufferProvider provider =
+               new MappedFileBufferProvider(file, 100, 1000, 0)) {
+        slice = provider.readSlice(600);
+        assertEquals(400, provider.getRemaining());
+        try (HostMemoryBuffer rest = provider.readSlice(600)) {
+          assertEquals(400, rest.getLength());
+        }
+      }
+      // The slice outlives the provider
+      try (HostMemoryBuffer s = slice) {
+        assertEquals(600, s.getLength());
+        for (int i = 0; i < 600; i++) {
+          assertEquals(data[100 + i], s.getByte(i));
+        }
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void testArrowIPC() throws IOException {
+    File file = File.createTempFile("readahead", ".arrow");
+    try (Table table = new Table.TestBuilder()
+        .column(1, 2, null, 4)
+        .column("a", "b", "c", null)
+        .build()) {
+      ArrowIPCWriterOptions options = ArrowIPCWriterOptions.builder()
+          .withColumnNames("first", "second")
+          .build();
+      try (TableWriter writer = Table.writeArrowIPCChunked(options, file)) {
+        writer.write(table);
+        writer.write(table);
+      }
+      HostBufferProvider[] providers = {
+          ReadAheadBufferProvider.open(file, 2, 4096),
+          new MappedFileBufferProvider(file)
+      };
+      for (HostBufferProvider provider : providers) {
+        // The reader closes the provider
+        try (StreamedTableReader reader =
+                 Table.readArrowIPCChunked(ArrowIPCOptions.DEFAULT, provider)) {
+          int count = 0;
+          Table t;
+          while ((t = reader.getNextIfAvailable()) != null) {
+            try (Table read = t) {
+              assertTablesAreEqual(table, read);
+              count++;
+            }
+          }
+          assertEquals(2, count);
+        }
+      }
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -3374,6 +3374,49 @@ public class TableTest extends CudfTestBase {
     }
   }
 
+  @Test
+  void testSerializationRoundTripSlicedToHostColumns() throws IOException {
+    try (Table t = buildTestTable()) {
+      HostColumnVector[] expected = new HostColumnVector[t.getNumberOfColumns()];
+      try {
+        for (int i = 0; i < expected.length; i++) {
+          expected[i] = t.getColumn(i).copyToHost();
+        }
+        for (int sliceAmount = 1; sliceAmount < t.getRowCount(); sliceAmount++) {
+          ByteArrayOutputStream bout = new ByteArrayOutputStream();
+          for (int i = 0; i < t.getRowCount(); i += sliceAmount) {
+            int len = (int) Math.min(t.getRowCount() - i, sliceAmount);
+            JCudfSerialization.writeToStream(t, bout, i, len);
+          }
+          DataInputStream din = new DataInputStream(new ByteArrayInputStream(bout.toByteArray()));
+          long rowOffset = 0;
+          HostColumnVector[] found;
+          while ((found = JCudfSerialization.readHostColumnsFrom(din)) != null) {
+            try {
+              long len = found[0].getRowCount();
+              for (int i = 0; i < found.length; i++) {
+                assertPartialColumnsAreEqual(expected[i], rowOffset, len, found[i], "Column " + i,
+                    false, false);
+              }
+              rowOffset += len;
+            } finally {
+              for (HostColumnVector cv : found) {
+                cv.close();
+              }
+            }
+          }
+          assertEquals(t.getRowCount(), rowOffset);
+        }
+      } finally {
+        for (HostColumnVector cv : expected) {
+          if (cv != null) {
+            cv.close();
+          }
+        }
+      }
+    }
+  }
+
   @Test
   void testSerializationRoundTripSliced() throws IOException {
     try (Table t = buildTestTable()) {
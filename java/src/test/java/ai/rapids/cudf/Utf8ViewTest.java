@@ -0,0 +1,93 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Utf8ViewTest extends CudfTestBase {
+  private static final String[] VALUES = {"", "a", "abc", "abcdefghij", "abcdefghik",
+      "héllo wörld", "日本語", "abcdefgh", "😀x", "zz"};
+
+  private static byte[] utf8(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void testMatchesJavaStrings() {
+    try (HostColumnVector cv = HostColumnVector.fromStrings(VALUES)) {
+      Utf8View a = new Utf8View();
+      Utf8View b = new Utf8View();
+      for (int i = 0; i < VALUES.length; i++) {
+        assertSame(a, cv.getUTF8View(i, a));
+        assertEquals(VALUES[i], a.toString());
+        assertEquals(VALUES[i].length(), a.length());
+        assertEquals(utf8(VALUES[i]).length, a.getByteLength());
+        for (int c = 0; c < VALUES[i].length(); c++) {
+          assertEquals(VALUES[i].charAt(c), a.charAt(c));
+        }
+        assertTrue(a.contentEquals(utf8(VALUES[i])));
+        for (int j = 0; j < VALUES.length; j++) {
+          cv.getUTF8View(j, b);
+          assertEquals(VALUES[i].equals(VALUES[j]), a.equals(b));
+          assertEquals(VALUES[i].startsWith(VALUES[j]), a.startsWith(b));
+          assertEquals(VALUES[i].startsWith(VALUES[j]), a.startsWith(utf8(VALUES[j])));
+          assertEquals(VALUES[i].endsWith(VALUES[j]), a.endsWith(b));
+          assertEquals(VALUES[i].contains(VALUES[j]), a.contains(b));
+          assertEquals(VALUES[i].contains(VALUES[j]), a.contains(utf8(VALUES[j])));
+          // For these values code point order is the same as UTF-16 order
+          assertEquals(Integer.signum(VALUES[i].compareTo(VALUES[j])),
+              Integer.signum(a.compareTo(b)));
+        }
+      }
+    }
+  }
+
+  @Test
+  void testHashCode() {
+    try (HostColumnVector cv = HostColumnVector.fromStrings("abc", "xabc", "abc")) {
+      Utf8View a = cv.getUTF8View(0, new Utf8View());
+      Utf8View b = cv.getUTF8View(2, new Utf8View());
+      Utf8View c = cv.getUTF8View(1, new Utf8View());
+      assertEquals(a, b);
+      assertEquals(a.hashCode(), b.hashCode());
+      assertNotEquals(a, c);
+      assertEquals(a, c.subSequence(1, 4));
+    }
+  }
+
+  @Test
+  void testAsciiDetection() {
+    try (HostColumnVector cv = HostColumnVector.fromStrings("plain ascii text", "café")) {
+      Utf8View view = new Utf8View();
+      assertTrue(cv.getUTF8View(0, view).isAscii());
+      assertFalse(cv.getUTF8View(1, view).isAscii());
+      assertEquals("afé", view.subSequence(1, 4).toString());
+      assertThrows(IndexOutOfBoundsException.class, () -> view.getByte(5));
+    }
+  }
+}
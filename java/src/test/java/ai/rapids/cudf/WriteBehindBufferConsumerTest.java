@@ -0,0 +1,148 @@
+/*
+ *
+ *  Copyright (c) 2021, NVIDIA CORPORATION.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ai.rapids.cudf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static ai.rapids.cudf.TableTest.assertTablesAreEqual;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WriteBehindBufferConsumerTest extends CudfTestBase {
+
+  @Test
+  void testWritesInOrder() throws IOException {
+    File file = File.createTempFile("writebehind", ".bin");
+    Random rand = new Random(7);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    try {
+      try (WriteBehindBufferConsumer consumer = WriteBehindBufferConsumer.builder(file)
+          .withMaxInFlightBytes(1024)
+          .withSyncEveryBytes(4096)
+          .build()) {
+        for (int i = 0; i < 200; i++) {
+          byte[] data = new byte[1 + rand.nextInt(500)];
+          rand.nextBytes(data);
+          expected.write(data, 0, data.length);
+          // The buffer can be larger than the valid data in it
+          HostMemoryBuffer buffer = HostMemoryBuffer.allocate(data.length + 16);
+          buffer.setBytes(0, data, 0, data.length);
+          consumer.handleBuffer(buffer, data.length);
+          assertTrue(consumer.getInFlightBytes() <= 1024);
+        }
+        consumer.done();
+        assertEquals(expected.size(), consumer.getBytesWritten());
+        assertEquals(0, consumer.getQueueDepth());
+        assertEquals(0, consumer.getInFlightBytes());
+        assertTrue(consumer.getPeakInFlightBytes() <= 1024);
+        assertTrue(consumer.getPeakQueueDepth() >= 1);
+        assertTrue(consumer.getNumSyncs() >= 1);
+        assertTrue(consumer.getWriteBytesPerSecond() > 0);
+        assertThrows(IllegalStateException.class,
+            () -> consumer.handleBuffer(HostMemoryBuffer.allocate(1), 1));
+      }
+      assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file.toPath()));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void testLargeBufferAndChannel() throws IOException {
+    File file = File.createTempFile("writebehind", ".bin");
+    byte[] data = new byte[100_000];
+    new Random(1).nextBytes(data);
+    try {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+        // Write after data that is already in the channel
+        channel.write(java.nio.ByteBuffer.wrap(data, 0, 10));
+        try (WriteBehindBufferConsumer consumer = WriteBehindBufferConsumer.builder(channel)
+            .withMaxInFlightBytes(10)
+            .build()) {
+          HostMemoryBuffer buffer = HostMemoryBuffer.allocate(data.length);
+          buffer.setBytes(0, data, 0, data.length);
+          consumer.handleBuffer(buffer, data.length);
+          consumer.done();
+        }
+        // The channel belongs to the caller and is still open
+        assertTrue(channel.isOpen());
+      }
+      byte[] written = Files.readAllBytes(file.toPath());
+      assertEquals(data.length + 10, written.length);
+      for (int i = 0; i < data.length; i++) {
+        assertEquals(data[i], written[i + 10]);
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void testWriteError() throws IOException {
+    File file = File.createTempFile("writebehind", ".bin");
+    try (FileChannel readOnly = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+         WriteBehindBufferConsumer consumer = WriteBehindBufferConsumer.builder(readOnly)
+             .build()) {
+      HostMemoryBuffer buffer = HostMemoryBuffer.allocate(16);
+      buffer.setMemory(0, 16, (byte) 1);
+      consumer.handleBuffer(buffer, 16);
+      assertThrows(IllegalStateException.class, consumer::done);
+      assertEquals(0, consumer.getInFlightBytes());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void testParquetChunked() throws IOException {
+    File file = File.createTempFile("writebehind", ".parquet");
+    try {
+      ParquetWriterOptions options = ParquetWriterOptions.builder()
+          .withNullableColumns("a", "b")
+          .build();
+      try (Table table = new Table.TestBuilder()
+               .column(1, 2, 3, null)
+               .column("x", null, "y", "z")
+               .build();
+           WriteBehindBufferConsumer consumer = WriteBehindBufferConsumer.builder(file).build()) {
+        try (TableWriter writer = Table.writeParquetChunked(options, consumer)) {
+          writer.write(table);
+          writer.write(table);
+        }
+        assertTrue(consumer.getBytesWritten() > 0);
+        try (Table expected = Table.concatenate(table, table);
+             Table result = Table.readParquet(file)) {
+          assertTablesAreEqual(expected, result);
+        }
+      }
+    } finally {
+      file.delete();
+    }
+  }
+}